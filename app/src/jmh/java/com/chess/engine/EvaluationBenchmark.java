@@ -0,0 +1,112 @@
+package com.chess.engine;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.github.bhlangonijr.chesslib.Board;
+import com.github.bhlangonijr.chesslib.move.Move;
+
+/**
+ * Compares the hand-crafted evaluation with the network, both from scratch and with the
+ * incremental accumulator the search uses. The incremental benchmarks make and unmake a move
+ * around every evaluation, like a search does at its leaves.
+ * <p>
+ * Run with <code>./gradlew jmh</code>.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = { "--add-modules", "jdk.incubator.vector" })
+public class EvaluationBenchmark
+{
+    @Param({
+        "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1",
+        "r1bq1rk1/pp2bppp/2n1pn2/3p4/2PP4/2N1PN2/PP3PPP/R2QKB1R w KQ - 0 8",
+        "8/5k2/3p4/8/2P5/2P5/5K2/8 w - - 0 1"
+    })
+    public String fen;
+
+    @Param({ "256" })
+    public int hiddenSize;
+
+    private Board board;
+    private ChessEngine classicalEngine;
+    private ChessEngine nnueEngine;
+    private SearchContext classicalContext;
+    private SearchContext nnueContext;
+    private List<Move> moves;
+    private int moveIndex;
+
+    @Setup
+    public void Setup()
+    {
+        board = new Board();
+        board.loadFromFen(fen);
+        moves = board.legalMoves();
+
+        NnueNetwork _network = NnueNetwork.CreateRandom(hiddenSize, 1);
+        classicalEngine = new ChessEngine(board);
+        nnueEngine = new ChessEngine(board, _network);
+
+        classicalContext = new SearchContext(board, null);
+        nnueContext = new SearchContext(board, _network);
+        nnueContext.Reset(true, true, true, null);
+    }
+
+    @Benchmark
+    public float ClassicalEvaluate()
+    {
+        return classicalEngine.Evaluate(board, false);
+    }
+
+    @Benchmark
+    public float NnueEvaluateFromScratch()
+    {
+        return nnueEngine.Evaluate(board, false);
+    }
+
+    @Benchmark
+    public float ClassicalEvaluateAfterMove()
+    {
+        Move _move = NextMove();
+
+        classicalContext.DoMove(_move);
+        float _evaluation = classicalEngine.Evaluate(board, false);
+        classicalContext.UndoMove();
+
+        return _evaluation;
+    }
+
+    @Benchmark
+    public float NnueEvaluateAfterMove()
+    {
+        Move _move = NextMove();
+
+        nnueContext.DoMove(_move);
+        float _evaluation = nnueContext.accumulator.Evaluate(board.getSideToMove());
+        nnueContext.UndoMove();
+
+        return _evaluation;
+    }
+
+    private Move NextMove()
+    {
+        moveIndex = (moveIndex + 1) % moves.size();
+
+        return moves.get(moveIndex);
+    }
+}
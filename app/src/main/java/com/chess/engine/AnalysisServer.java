@@ -0,0 +1,536 @@
+package com.chess.engine;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.github.bhlangonijr.chesslib.Board;
+import com.github.bhlangonijr.chesslib.move.Move;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * A small HTTP service that analyzes positions with one shared com.chess.engine.ChessEngine.
+ * <p>
+ * <code>GET /analyze?fen=&lt;fen&gt;&amp;depth=&lt;n&gt;</code> answers with one JSON object.
+ * Every request is handled on its own virtual thread. Requests for the same position and depth
+ * that arrive while that search is still running wait for it instead of starting another one,
+ * and finished results are kept in a bounded least-recently-used cache keyed by the position's
+ * Zobrist key. A cached result answers any later request for the same position at the same or a
+ * lower depth.
+ * <p>
+ * The number of searches running at once is bounded by a com.chess.engine.SearchScheduler, since virtual
+ * threads themselves aren't. The scheduler can be shared with other services, like a com.chess.engine.GameManager,
+ * so that together they don't run more searches than there are cores.
+ * <p>
+ * Usage: <code>AnalysisServer [--port n] [--max-searches n] [--cache-size n] [--max-depth n]</code>
+ */
+public class AnalysisServer
+{
+    private static final int DEFAULT_PORT = 8080;
+    private static final int DEFAULT_CACHE_SIZE = 100000;
+    private static final int DEFAULT_DEPTH = 4;
+    private static final int DEFAULT_MAX_DEPTH = 8;
+
+    private static final int HTTP_OK = 200;
+    private static final int HTTP_BAD_REQUEST = 400;
+    private static final int HTTP_METHOD_NOT_ALLOWED = 405;
+    private static final int HTTP_INTERNAL_ERROR = 500;
+
+    private final ChessEngine engine;
+    private final int maxDepth;
+    private final SearchScheduler scheduler;
+
+    // searches that are still running, keyed by the Zobrist key and depth of their position
+    private final Map<InFlightKey, CompletableFuture<SearchResult>> inFlightSearches = new ConcurrentHashMap<>();
+    private final AnalysisCache cache;
+
+    private final AtomicLong numSearches = new AtomicLong();
+    private final AtomicLong numCoalesced = new AtomicLong();
+    private final AtomicLong numCacheHits = new AtomicLong();
+
+    private HttpServer server;
+
+    /**
+     * @param _engine the engine every request searches with
+     * @param _maxSearches the max number of searches that run at once
+     * @param _cacheSize the max number of positions in the result cache
+     * @param _maxDepth the deepest depth a request may ask for
+     */
+    public AnalysisServer(ChessEngine _engine, int _maxSearches, int _cacheSize, int _maxDepth)
+    {
+        this(_engine, new SearchScheduler(_maxSearches), _cacheSize, _maxDepth);
+    }
+
+    /**
+     * @param _engine the engine every request searches with
+     * @param _scheduler bounds the number of searches that run at once, shared with other services
+     * @param _cacheSize the max number of positions in the result cache
+     * @param _maxDepth the deepest depth a request may ask for
+     */
+    public AnalysisServer(ChessEngine _engine, SearchScheduler _scheduler, int _cacheSize, int _maxDepth)
+    {
+        if (_cacheSize < 1 || _maxDepth < 1)
+            throw new IllegalArgumentException("The cache size and max depth should both be at least 1.");
+
+        engine = _engine;
+        maxDepth = _maxDepth;
+        scheduler = _scheduler;
+        cache = new AnalysisCache(_cacheSize);
+    }
+
+    public static void main(String[] args) throws IOException
+    {
+        int _port = DEFAULT_PORT;
+        int _maxSearches = Runtime.getRuntime().availableProcessors();
+        int _cacheSize = DEFAULT_CACHE_SIZE;
+        int _maxDepth = DEFAULT_MAX_DEPTH;
+
+        for (int i = 0; i < args.length; i++)
+        {
+            switch (args[i])
+            {
+                case "--port":
+                    _port = Integer.parseInt(args[++i]);
+                    break;
+
+                case "--max-searches":
+                    _maxSearches = Integer.parseInt(args[++i]);
+                    break;
+
+                case "--cache-size":
+                    _cacheSize = Integer.parseInt(args[++i]);
+                    break;
+
+                case "--max-depth":
+                    _maxDepth = Integer.parseInt(args[++i]);
+                    break;
+
+                default:
+                    throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+
+        AnalysisServer _server = new AnalysisServer(new ChessEngine(new Board()), _maxSearches, _cacheSize, _maxDepth);
+        _server.Start(_port);
+
+        System.out.println("Listening on http://localhost:" + _port + "/analyze");
+    }
+
+    /**
+     * Starts listening on the loopback address.
+     * @param _port the port to listen on, or 0 for any free port
+     * @throws IOException if the port can't be bound
+     */
+    public void Start(int _port) throws IOException
+    {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), _port), 0);
+        server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+        server.createContext("/analyze", this::HandleAnalyze);
+        server.createContext("/stats", this::HandleStats);
+        server.start();
+    }
+
+    /**
+     * Stops listening. Requests that are being handled get up to a second to finish.
+     */
+    public void Stop()
+    {
+        if (server != null)
+            server.stop(1);
+    }
+
+    /**
+     * @return the port the server is listening on
+     */
+    public int GetPort()
+    {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Analyzes a position, reusing a cached or running search when there is one.
+     * @param _fen the position to analyze
+     * @param _depth the max number of plies to search into
+     * @return the result of the search and where it came from
+     * @throws IllegalArgumentException if the FEN or depth is invalid
+     * @throws InterruptedException if the thread is interrupted while waiting for a search
+     * @throws IllegalStateException if the search this request was waiting on failed
+     */
+    public Analysis Analyze(String _fen, int _depth) throws IllegalArgumentException, InterruptedException, IllegalStateException
+    {
+        if (_depth < 1 || _depth > maxDepth)
+            throw new IllegalArgumentException("The depth should be from 1 to " + maxDepth + ".");
+
+        Board _board = new Board();
+
+        try
+        {
+            _board.loadFromFen(_fen);
+        }
+
+        // chesslib throws other runtime exceptions for FENs it can't read
+        catch (RuntimeException e)
+        {
+            throw new IllegalArgumentException("Could not read the FEN: " + e.getMessage(), e);
+        }
+
+        long _zobristKey = _board.getZobristKey();
+        // the move counters don't change the search, so they don't have to match
+        String _position = _board.getFen(false);
+
+        SearchResult _cachedResult = cache.Get(_zobristKey, _position, _depth);
+        if (_cachedResult != null)
+        {
+            numCacheHits.incrementAndGet();
+            return new Analysis(_cachedResult, Analysis.Source.CACHE);
+        }
+
+        InFlightKey _key = new InFlightKey(_zobristKey, _depth);
+        CompletableFuture<SearchResult> _search = new CompletableFuture<>();
+        CompletableFuture<SearchResult> _runningSearch = inFlightSearches.putIfAbsent(_key, _search);
+
+        if (_runningSearch != null)
+        {
+            numCoalesced.incrementAndGet();
+            return new Analysis(Await(_runningSearch), Analysis.Source.COALESCED);
+        }
+
+        try
+        {
+            // another request may have finished this search between the first cache check and "putIfAbsent"
+            _cachedResult = cache.Get(_zobristKey, _position, _depth);
+            if (_cachedResult != null)
+            {
+                numCacheHits.incrementAndGet();
+                _search.complete(_cachedResult);
+
+                return new Analysis(_cachedResult, Analysis.Source.CACHE);
+            }
+
+            SearchResult _result = scheduler.Run(() ->
+            {
+                numSearches.incrementAndGet();
+                return engine.Search(_board, SearchLimits.OfDepth(_depth));
+            });
+
+            cache.Put(_zobristKey, _position, _result);
+            _search.complete(_result);
+
+            return new Analysis(_result, Analysis.Source.SEARCH);
+        }
+
+        catch (RuntimeException | InterruptedException e)
+        {
+            _search.completeExceptionally(e);
+            throw e;
+        }
+
+        finally
+        {
+            inFlightSearches.remove(_key, _search);
+        }
+    }
+
+    private SearchResult Await(CompletableFuture<SearchResult> _search) throws InterruptedException
+    {
+        try
+        {
+            return _search.join();
+        }
+
+        catch (CompletionException e)
+        {
+            // the position was already read, so whatever stopped that search is the server's fault, not this request's
+            throw new IllegalStateException("The search this request was waiting on failed: " + e.getCause(), e.getCause());
+        }
+    }
+
+    //#region Handlers
+    private void HandleAnalyze(HttpExchange _exchange) throws IOException
+    {
+        try
+        {
+            if (!_exchange.getRequestMethod().equals("GET"))
+            {
+                SendError(_exchange, HTTP_METHOD_NOT_ALLOWED, "Only GET is supported.");
+                return;
+            }
+
+            Map<String, String> _parameters = ParseQuery(_exchange.getRequestURI().getRawQuery());
+
+            String _fen = _parameters.get("fen");
+            if (_fen == null)
+            {
+                SendError(_exchange, HTTP_BAD_REQUEST, "The \"fen\" parameter is missing.");
+                return;
+            }
+
+            Analysis _analysis;
+            try
+            {
+                int _depth = _parameters.containsKey("depth") ? Integer.parseInt(_parameters.get("depth")) : DEFAULT_DEPTH;
+                _analysis = Analyze(_fen, _depth);
+            }
+
+            catch (IllegalArgumentException e)
+            {
+                SendError(_exchange, HTTP_BAD_REQUEST, String.valueOf(e.getMessage()));
+                return;
+            }
+
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                SendError(_exchange, HTTP_INTERNAL_ERROR, "Interrupted.");
+                return;
+            }
+
+            // bad FENs are IllegalArgumentExceptions, so anything else went wrong on the server's side
+            catch (RuntimeException e)
+            {
+                SendError(_exchange, HTTP_INTERNAL_ERROR, "Could not analyze the position: " + e.getMessage());
+                return;
+            }
+
+            Send(_exchange, HTTP_OK, ToJson(_fen, _analysis));
+        }
+
+        finally
+        {
+            _exchange.close();
+        }
+    }
+
+    private void HandleStats(HttpExchange _exchange) throws IOException
+    {
+        try
+        {
+            Send(_exchange, HTTP_OK, "{\"searches\":" + numSearches.get()
+                + ",\"coalesced\":" + numCoalesced.get()
+                + ",\"cacheHits\":" + numCacheHits.get()
+                + ",\"cachedPositions\":" + cache.Size()
+                + ",\"inFlight\":" + inFlightSearches.size()
+                + ",\"waitingSearches\":" + scheduler.GetNumWaiting() + "}");
+        }
+
+        finally
+        {
+            _exchange.close();
+        }
+    }
+
+    private static String ToJson(String _fen, Analysis _analysis)
+    {
+        SearchResult _result = _analysis.getResult();
+        List<Move> _line = _result.getBestLine().getLine();
+
+        return "{\"fen\":" + Json.Quote(_fen)
+            + ",\"bestMove\":" + (_line.isEmpty() ? "null" : Json.Quote(_line.get(0).toString()))
+            + ",\"score\":" + Json.Score(_result.getBestLine().getScore())
+            + ",\"pv\":" + Json.Moves(_line)
+            + ",\"depth\":" + _result.getDepth()
+            + ",\"nodes\":" + _result.getNumNodes()
+            + ",\"timeMs\":" + _result.getTimeNanoseconds() / 1000000.0
+            + ",\"source\":" + Json.Quote(_analysis.getSource().name().toLowerCase()) + "}";
+    }
+
+    private static void SendError(HttpExchange _exchange, int _status, String _message) throws IOException
+    {
+        Send(_exchange, _status, "{\"error\":" + Json.Quote(_message) + "}");
+    }
+
+    private static void Send(HttpExchange _exchange, int _status, String _json) throws IOException
+    {
+        byte[] _body = _json.getBytes(StandardCharsets.UTF_8);
+
+        _exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        _exchange.sendResponseHeaders(_status, _body.length);
+
+        try (OutputStream _output = _exchange.getResponseBody())
+        {
+            _output.write(_body);
+        }
+    }
+
+    private static Map<String, String> ParseQuery(String _rawQuery)
+    {
+        Map<String, String> _parameters = new HashMap<>();
+
+        if (_rawQuery == null)
+            return _parameters;
+
+        for (String _pair : _rawQuery.split("&"))
+        {
+            int _equalsIndex = _pair.indexOf('=');
+            if (_equalsIndex < 0)
+                continue;
+
+            _parameters.put
+            (
+                URLDecoder.decode(_pair.substring(0, _equalsIndex), StandardCharsets.UTF_8),
+                URLDecoder.decode(_pair.substring(_equalsIndex + 1), StandardCharsets.UTF_8)
+            );
+        }
+
+        return _parameters;
+    }
+    //#endregion
+
+    /**
+     * A finished analysis and whether it was searched, taken from the cache, or shared with
+     * another request for the same search.
+     */
+    public static class Analysis
+    {
+        public enum Source { SEARCH, COALESCED, CACHE }
+
+        private final SearchResult result;
+        private final Source source;
+
+        private Analysis(SearchResult _result, Source _source)
+        {
+            result = _result;
+            source = _source;
+        }
+
+        public SearchResult getResult()
+        {
+            return result;
+        }
+
+        public Source getSource()
+        {
+            return source;
+        }
+    }
+
+    private static class InFlightKey
+    {
+        private final long zobristKey;
+        private final int depth;
+
+        private InFlightKey(long _zobristKey, int _depth)
+        {
+            zobristKey = _zobristKey;
+            depth = _depth;
+        }
+
+        @Override
+        public boolean equals(Object _other)
+        {
+            return _other instanceof InFlightKey
+                && ((InFlightKey) _other).zobristKey == zobristKey
+                && ((InFlightKey) _other).depth == depth;
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return Long.hashCode(zobristKey) * 31 + depth;
+        }
+    }
+
+    /**
+     * Keeps the deepest result of the most recently used positions.
+     * A lock instead of synchronized so waiting virtual threads don't pin their carrier threads.
+     */
+    private static class AnalysisCache
+    {
+        private final ReentrantLock lock = new ReentrantLock();
+        private final LinkedHashMap<Long, CachedResult> results;
+
+        AnalysisCache(int _maxSize)
+        {
+            // access order so that the eldest entry is the least recently used one
+            results = new LinkedHashMap<Long, CachedResult>(16, 0.75f, true)
+            {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Long, CachedResult> _eldest)
+                {
+                    return size() > _maxSize;
+                }
+            };
+        }
+
+        /**
+         * @return the cached result, or null if the position isn't cached at the given depth or deeper
+         */
+        SearchResult Get(long _zobristKey, String _position, int _depth)
+        {
+            lock.lock();
+            try
+            {
+                CachedResult _cached = results.get(_zobristKey);
+
+                // the position is compared too because different positions can share a key
+                if (_cached == null || _cached.result.getDepth() < _depth || !_cached.position.equals(_position))
+                    return null;
+
+                return _cached.result;
+            }
+
+            finally
+            {
+                lock.unlock();
+            }
+        }
+
+        void Put(long _zobristKey, String _position, SearchResult _result)
+        {
+            lock.lock();
+            try
+            {
+                CachedResult _cached = results.get(_zobristKey);
+
+                // a shallower result never replaces a deeper one
+                if (_cached == null || _cached.result.getDepth() <= _result.getDepth() || !_cached.position.equals(_position))
+                    results.put(_zobristKey, new CachedResult(_position, _result));
+            }
+
+            finally
+            {
+                lock.unlock();
+            }
+        }
+
+        int Size()
+        {
+            lock.lock();
+            try
+            {
+                return results.size();
+            }
+
+            finally
+            {
+                lock.unlock();
+            }
+        }
+    }
+
+    private static class CachedResult
+    {
+        private final String position;
+        private final SearchResult result;
+
+        private CachedResult(String _position, SearchResult _result)
+        {
+            position = _position;
+            result = _result;
+        }
+    }
+}
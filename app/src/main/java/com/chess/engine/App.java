@@ -6,14 +6,14 @@ import org.apache.commons.lang3.mutable.MutableInt;
 
 import com.github.bhlangonijr.chesslib.Board;
 import com.github.bhlangonijr.chesslib.Side;
-import com.github.bhlangonijr.chesslib.Square;
 import com.github.bhlangonijr.chesslib.move.Move;
 
 public class App
 {
     public static void main(String[] args)
     {
-        PlayGame(Side.BLACK, 4);
+        // 5 minutes with a 2 second increment
+        PlayGame(Side.BLACK, 5 * 60 * 1000, 2000);
     }
     
     private static void BenchmarkEngine(String _fen, int _maxPlies, boolean _shouldRunIntermediatePlies,
@@ -153,108 +153,93 @@ public class App
 
     private static void PlayGame(Side _playerSide, int _ply)
     {
-        PlayGame(_playerSide, "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1", _ply);
+        PlayGame(_playerSide, "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1", _ply, 0, 0);
     }
 
-    private static void PlayGame(Side _playerSide, String _initialFen, int _ply)
+    /**
+     * Plays a game from the starting position where the engine is on a clock. Only the engine's time is kept.
+     */
+    private static void PlayGame(Side _playerSide, long _timeMilliseconds, long _incrementMilliseconds)
+    {
+        PlayGame
+        (
+            _playerSide, "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1",
+            ChessEngine.MAX_PLY - 2, _timeMilliseconds, _incrementMilliseconds
+        );
+    }
+
+    /**
+     * Plays a game against the engine in the console. The engine keeps its search state between its moves
+     * through a com.chess.engine.GameSession, so its later moves reuse the work of the earlier ones.
+     * @param _ply the max depth of the engine's searches
+     * @param _timeMilliseconds the engine's time for the game, or 0 to search every move to the max depth
+     * @param _incrementMilliseconds the time added to the engine's clock after each of its moves
+     */
+    private static void PlayGame(Side _playerSide, String _initialFen, int _ply, long _timeMilliseconds, long _incrementMilliseconds)
     {
         Scanner _input = new Scanner(System.in);
-        Board _board = new Board();
-        _board.loadFromFen(_initialFen);
-        ChessEngine _engine = new ChessEngine(_board);
+        ChessEngine _engine = new ChessEngine(new Board());
+        GameSession _game = _engine.NewGameSession(_initialFen);
+        long _engineTimeMilliseconds = _timeMilliseconds;
 
-        while (!_engine.getBoard().isDraw() || !_engine.getBoard().isMated())
+        while (!_game.IsGameOver())
         {
-            System.out.println("Immediate eval: " + _engine.Evaluate(false));
-            if (_playerSide == Side.WHITE)
+            Board _board = _game.GetBoard();
+            System.out.println("Immediate eval: " + _engine.Evaluate(_board, false));
+
+            if (_board.getSideToMove() == _playerSide)
             {
-                if (_board.getSideToMove() == Side.WHITE)
-                {
-                    System.out.println(_engine.getBoard().toString());
-    
-                    System.out.println("Enter move: ");
-    
-                    Move _playerMove = new Move(_input.nextLine(), Side.WHITE);
-                    _engine.getBoard().doMove(_playerMove);
-    
-                    ScoredMove _engineMove = _engine.FindBestMove(_ply, true, true, true, null);
+                System.out.println(_board.toString());
 
-                    if (_engineMove.getMove().equals(new Move(Square.NONE, Square.NONE))) break;
+                System.out.println("Enter move: ");
 
-                    if (!_engine.getBoard().isMoveLegal(_engineMove.getMove(), true)) break;
+                Move _playerMove = new Move(_input.nextLine(), _playerSide);
 
-                    _engine.getBoard().doMove(_engineMove.getMove());
-    
-                    System.out.println("Engine move: " + _engineMove.getMove());
-                    System.out.println();
+                try
+                {
+                    _game.DoMove(_playerMove);
                 }
 
-                else
+                catch (IllegalArgumentException e)
                 {
-                    ScoredMove _engineMove = _engine.FindBestMove(_ply, true, true, true, null);
-
-                    // if black (white) is mated
-                    if (_engineMove.getScore() == -Float.MAX_VALUE) break;
-
-                    _engine.getBoard().doMove(_engineMove.getMove());
-
-                    System.out.println(_engine.getBoard().toString());
-    
-                    System.out.println("Enter move: ");
-    
-                    Move _playerMove = new Move(_input.nextLine(), Side.WHITE);
-                    _engine.getBoard().doMove(_playerMove);
+                    System.out.println(e.getMessage());
                 }
             }
 
             else
             {
-                if (_board.getSideToMove() == Side.BLACK)
-                {
-                    System.out.println("Enter move: ");
-    
-                    Move _playerMove = new Move(_input.nextLine(), Side.WHITE);
-                    _engine.getBoard().doMove(_playerMove);
+                SearchLimits _limits = _timeMilliseconds > 0
+                    ? SearchLimits.OfClock(_engineTimeMilliseconds, _incrementMilliseconds, 0).toBuilder().depth(_ply).build()
+                    : SearchLimits.OfDepth(_ply);
 
-                    ScoredMove _engineMove = _engine.FindBestMove(_ply, true, true, true, null);
+                SearchResult _result = _game.Search(_limits);
+                Move _engineMove = _result.getBestLine().getLine().get(0);
 
-                    if (_engineMove.getMove().equals(new Move(Square.NONE, Square.NONE))) break;
+                _game.DoMove(_engineMove);
 
-                    if (!_engine.getBoard().isMoveLegal(_engineMove.getMove(), true)) break;
-
-                    _engine.getBoard().doMove(_engineMove.getMove());
-    
-                    System.out.println("Engine move: " + _engineMove.getMove());
-                    System.out.println();
-    
-                    System.out.println(_engine.getBoard().toString());
-    
-                    System.out.println();
-                }
+                System.out.println("Engine move: " + _engineMove);
+                System.out.println("Depth: " + _result.getDepth() + ", num nodes: " + _result.getNumNodes());
 
-                else
+                if (_timeMilliseconds > 0)
                 {
-                    ScoredMove _engineMove = _engine.FindBestMove(_ply, true, true, true, null);
-                    _engine.getBoard().doMove(_engineMove.getMove());
-    
-                    System.out.println("Engine move: " + _engineMove.getMove());
-                    System.out.println();
-    
-                    System.out.println(_engine.getBoard().toString());
-                    System.out.println();
+                    _engineTimeMilliseconds -= _result.getTimeNanoseconds() / 1000000;
 
-                    System.out.println("Enter move: ");
-    
-                    Move _playerMove = new Move(_input.nextLine(), Side.WHITE);
-                    _engine.getBoard().doMove(_playerMove);
+                    if (_engineTimeMilliseconds <= 0)
+                    {
+                        System.out.println("The engine ran out of time");
+                        break;
+                    }
+
+                    _engineTimeMilliseconds += _incrementMilliseconds;
 
-                    System.out.println();
+                    System.out.println("Engine time left (seconds): " + _engineTimeMilliseconds / 1000.0);
                 }
+                System.out.println();
             }
         }
     
         System.out.println();
-        System.out.println(_engine.getBoard().toString());
+        System.out.println(_game.GetBoard().toString());
         System.out.println();
         System.out.println("The game ended");
     }
@@ -0,0 +1,133 @@
+package com.chess.engine;
+
+import com.github.bhlangonijr.chesslib.Piece;
+import com.github.bhlangonijr.chesslib.PieceType;
+import com.github.bhlangonijr.chesslib.Side;
+
+/**
+ * The squares each side attacks in one position, calculated once per evaluation
+ * from the position's bitboards and com.chess.engine.Attacks.
+ * <p>
+ * Mobility, king safety, and hanging pieces are all read from the same maps, so none of them
+ * has to generate moves for each piece or change the board to find out what it attacks.
+ * Everything is indexed by the ordinal of the side.
+ */
+final class AttackMaps
+{
+    private static final long FILE_A = 0x0101010101010101L;
+    private static final long FILE_H = FILE_A << 7;
+
+    // knights should be able to move to more than three squares, bishops to more than four,
+    // rooks to more than five, and queens to more than seven. indexed by the ordinal of the piece type
+    private static final int[] MOBILITY_BASELINES = { 0, 3, 4, 5, 7 };
+    private static final PieceType[] PIECE_TYPES =
+    {
+        PieceType.PAWN, PieceType.KNIGHT, PieceType.BISHOP, PieceType.ROOK, PieceType.QUEEN, PieceType.KING
+    };
+
+    // every square a side attacks, including with its pawns and king
+    final long[] attacks = new long[2];
+    final long[] pawnAttacks = new long[2];
+    // [side][piece type] how many more squares the side's pieces of a type can safely move to
+    // than their baselines. only knights, bishops, rooks, and queens are counted
+    final int[][] mobility = new int[2][5];
+
+    private final long occupied;
+    private final long[] pieces = new long[2];
+    private final long[] pawnsAndKings = new long[2];
+    private final int[] kingSquares = new int[2];
+
+    /**
+     * @param _pieceBitboards the bitboard of every piece, indexed by the ordinal of the piece.
+     * It is only read while the maps are calculated.
+     */
+    AttackMaps(long[] _pieceBitboards)
+    {
+        long _occupied = 0L;
+
+        for (Side _side : Side.values())
+        {
+            int _sideIndex = _side.ordinal();
+
+            for (PieceType _type : PIECE_TYPES)
+                pieces[_sideIndex] |= _pieceBitboards[Piece.make(_side, _type).ordinal()];
+
+            _occupied |= pieces[_sideIndex];
+        }
+
+        occupied = _occupied;
+
+        for (Side _side : Side.values())
+        {
+            int _sideIndex = _side.ordinal();
+            long _pawns = _pieceBitboards[Piece.make(_side, PieceType.PAWN).ordinal()];
+            long _king = _pieceBitboards[Piece.make(_side, PieceType.KING).ordinal()];
+
+            pawnsAndKings[_sideIndex] = _pawns | _king;
+            pawnAttacks[_sideIndex] = _side == Side.WHITE
+                ? ((_pawns & ~FILE_A) << 7) | ((_pawns & ~FILE_H) << 9)
+                : ((_pawns & ~FILE_A) >>> 9) | ((_pawns & ~FILE_H) >>> 7);
+
+            kingSquares[_sideIndex] = Long.numberOfTrailingZeros(_king);
+            attacks[_sideIndex] = pawnAttacks[_sideIndex] | Attacks.GetKingAttacks(kingSquares[_sideIndex]);
+        }
+
+        for (Side _side : Side.values())
+        {
+            int _sideIndex = _side.ordinal();
+            // squares defended by an enemy pawn aren't safe for any piece to move to
+            long _safeSquares = ~pieces[_sideIndex] & ~pawnAttacks[_side.flip().ordinal()];
+
+            for (int _pieceType = PieceType.KNIGHT.ordinal(); _pieceType <= PieceType.QUEEN.ordinal(); _pieceType++)
+            {
+                PieceType _type = PIECE_TYPES[_pieceType];
+
+                for (long _pieces = _pieceBitboards[Piece.make(_side, _type).ordinal()]; _pieces != 0L; _pieces &= _pieces - 1)
+                {
+                    long _pieceAttacks = Attacks.GetAttacks(_type, Long.numberOfTrailingZeros(_pieces), occupied);
+
+                    attacks[_sideIndex] |= _pieceAttacks;
+                    mobility[_sideIndex][_pieceType] += Long.bitCount(_pieceAttacks & _safeSquares) - MOBILITY_BASELINES[_pieceType];
+                }
+            }
+        }
+    }
+
+    /**
+     * @param _side the side whose king is attacked
+     * @return the number of squares next to the side's king, and the king's own square, the other side attacks
+     */
+    int CountKingZoneAttacks(Side _side)
+    {
+        int _kingSquare = kingSquares[_side.ordinal()];
+        long _kingZone = Attacks.GetKingAttacks(_kingSquare) | (1L << _kingSquare);
+
+        return Long.bitCount(_kingZone & attacks[_side.flip().ordinal()]);
+    }
+
+    /**
+     * A king that could move far if it were a queen is open to attacks from those directions.
+     * @param _side the side of the king
+     * @return the number of squares the side's king could move to if it were a queen
+     */
+    int CountKingAsQueenMoves(Side _side)
+    {
+        int _sideIndex = _side.ordinal();
+
+        return Long.bitCount(Attacks.GetQueenAttacks(kingSquares[_sideIndex], occupied) & ~pieces[_sideIndex]);
+    }
+
+    /**
+     * @param _side the side whose pieces are checked
+     * @return the number of the side's knights, bishops, rooks, and queens that are attacked but not defended
+     */
+    int CountHangingPieces(Side _side)
+    {
+        int _sideIndex = _side.ordinal();
+
+        long _hangingPieces = pieces[_sideIndex] & ~pawnsAndKings[_sideIndex]
+            & attacks[_side.flip().ordinal()] & ~attacks[_sideIndex];
+
+        return Long.bitCount(_hangingPieces);
+    }
+}
@@ -0,0 +1,181 @@
+package com.chess.engine;
+
+import com.github.bhlangonijr.chesslib.PieceType;
+import com.github.bhlangonijr.chesslib.Side;
+
+/**
+ * Precomputed attack bitboards that don't need a Board.
+ * <p>
+ * Squares are indexed like <code>Square.ordinal()</code> (A1 = 0, H1 = 7, H8 = 63),
+ * so a square's bitboard is <code>1L &lt;&lt; square</code>. Sliding attacks use
+ * precomputed rays cut off at the first blocker.
+ */
+public final class Attacks
+{
+    private static final long[] KNIGHT_ATTACKS = new long[64];
+    private static final long[] KING_ATTACKS = new long[64];
+    private static final long[][] PAWN_ATTACKS = new long[2][64];
+
+    //#region Rays
+    // positive directions move towards higher squares, so their first blocker is the lowest set bit
+    private static final int NORTH = 0;
+    private static final int EAST = 1;
+    private static final int NORTH_EAST = 2;
+    private static final int NORTH_WEST = 3;
+    private static final int SOUTH = 4;
+    private static final int WEST = 5;
+    private static final int SOUTH_WEST = 6;
+    private static final int SOUTH_EAST = 7;
+
+    private static final int[] RANK_STEPS = new int[] { 1, 0, 1, 1, -1, 0, -1, -1 };
+    private static final int[] FILE_STEPS = new int[] { 0, 1, 1, -1, 0, -1, -1, 1 };
+
+    private static final long[][] RAYS = new long[8][64];
+    //#endregion
+
+    static
+    {
+        for (int _square = 0; _square < 64; _square++)
+        {
+            int _rank = _square >>> 3;
+            int _file = _square & 7;
+
+            KNIGHT_ATTACKS[_square] = GetOffsetBitboard(_rank, _file, new int[][]
+            {
+                { 2, 1 }, { 2, -1 }, { -2, 1 }, { -2, -1 }, { 1, 2 }, { 1, -2 }, { -1, 2 }, { -1, -2 }
+            });
+
+            KING_ATTACKS[_square] = GetOffsetBitboard(_rank, _file, new int[][]
+            {
+                { 1, 1 }, { 1, 0 }, { 1, -1 }, { 0, 1 }, { 0, -1 }, { -1, 1 }, { -1, 0 }, { -1, -1 }
+            });
+
+            PAWN_ATTACKS[Side.WHITE.ordinal()][_square] = GetOffsetBitboard(_rank, _file, new int[][] { { 1, 1 }, { 1, -1 } });
+            PAWN_ATTACKS[Side.BLACK.ordinal()][_square] = GetOffsetBitboard(_rank, _file, new int[][] { { -1, 1 }, { -1, -1 } });
+
+            for (int _direction = 0; _direction < 8; _direction++)
+            {
+                long _ray = 0L;
+                int _rayRank = _rank + RANK_STEPS[_direction];
+                int _rayFile = _file + FILE_STEPS[_direction];
+
+                while (_rayRank >= 0 && _rayRank < 8 && _rayFile >= 0 && _rayFile < 8)
+                {
+                    _ray |= 1L << (_rayRank * 8 + _rayFile);
+                    _rayRank += RANK_STEPS[_direction];
+                    _rayFile += FILE_STEPS[_direction];
+                }
+
+                RAYS[_direction][_square] = _ray;
+            }
+        }
+    }
+
+    private Attacks() { }
+
+    public static long GetKnightAttacks(int _square)
+    {
+        return KNIGHT_ATTACKS[_square];
+    }
+
+    public static long GetKingAttacks(int _square)
+    {
+        return KING_ATTACKS[_square];
+    }
+
+    /**
+     * @param _side the side of the pawn
+     * @param _square the square of the pawn
+     * @return the squares the pawn captures on
+     */
+    public static long GetPawnAttacks(Side _side, int _square)
+    {
+        return PAWN_ATTACKS[_side.ordinal()][_square];
+    }
+
+    public static long GetBishopAttacks(int _square, long _occupied)
+    {
+        return GetRayAttacks(NORTH_EAST, _square, _occupied) | GetRayAttacks(NORTH_WEST, _square, _occupied)
+        | GetRayAttacks(SOUTH_EAST, _square, _occupied) | GetRayAttacks(SOUTH_WEST, _square, _occupied);
+    }
+
+    public static long GetRookAttacks(int _square, long _occupied)
+    {
+        return GetRayAttacks(NORTH, _square, _occupied) | GetRayAttacks(EAST, _square, _occupied)
+        | GetRayAttacks(SOUTH, _square, _occupied) | GetRayAttacks(WEST, _square, _occupied);
+    }
+
+    public static long GetQueenAttacks(int _square, long _occupied)
+    {
+        return GetBishopAttacks(_square, _occupied) | GetRookAttacks(_square, _occupied);
+    }
+
+    /**
+     * Gets the attacks of any white or black piece type.
+     * @param _pieceType the type of the piece. Pawns attack like white pawns.
+     * @param _square the square of the piece
+     * @param _occupied every occupied square, used to block sliding pieces
+     * @return the attacked squares
+     */
+    public static long GetAttacks(PieceType _pieceType, int _square, long _occupied)
+    {
+        switch (_pieceType)
+        {
+            case PAWN:
+                return PAWN_ATTACKS[Side.WHITE.ordinal()][_square];
+
+            case KNIGHT:
+                return KNIGHT_ATTACKS[_square];
+
+            case BISHOP:
+                return GetBishopAttacks(_square, _occupied);
+
+            case ROOK:
+                return GetRookAttacks(_square, _occupied);
+
+            case QUEEN:
+                return GetQueenAttacks(_square, _occupied);
+
+            case KING:
+                return KING_ATTACKS[_square];
+
+            case NONE:
+            default:
+                return 0L;
+        }
+    }
+
+    private static long GetRayAttacks(int _direction, int _square, long _occupied)
+    {
+        long _ray = RAYS[_direction][_square];
+        long _blockers = _ray & _occupied;
+
+        if (_blockers != 0L)
+        {
+            int _firstBlocker = _direction < SOUTH
+                ? Long.numberOfTrailingZeros(_blockers)
+                : 63 - Long.numberOfLeadingZeros(_blockers);
+
+            // everything past the first blocker is hidden behind it
+            _ray ^= RAYS[_direction][_firstBlocker];
+        }
+
+        return _ray;
+    }
+
+    private static long GetOffsetBitboard(int _rank, int _file, int[][] _offsets)
+    {
+        long _bitboard = 0L;
+
+        for (int[] _offset : _offsets)
+        {
+            int _targetRank = _rank + _offset[0];
+            int _targetFile = _file + _offset[1];
+
+            if (_targetRank >= 0 && _targetRank < 8 && _targetFile >= 0 && _targetFile < 8)
+                _bitboard |= 1L << (_targetRank * 8 + _targetFile);
+        }
+
+        return _bitboard;
+    }
+}
@@ -0,0 +1,356 @@
+package com.chess.engine;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.github.bhlangonijr.chesslib.Board;
+import com.github.bhlangonijr.chesslib.move.Move;
+
+/**
+ * Analyzes every position of an EPD or FEN file and writes one JSON object per line.
+ * <p>
+ * Positions are read one at a time into a small bounded queue, and a fixed number of workers,
+ * each running on a virtual thread, take positions from it. All workers search with one shared
+ * com.chess.engine.ChessEngine through its thread-safe "Search" function. The reader blocks while the queue is full, and results are written as soon as they
+ * finish, so memory use doesn't depend on the size of the input. Results are written in the order
+ * they finish, so each one carries the line index of its position.
+ * <p>
+ * Usage: <code>BatchAnalyzer &lt;input file&gt; &lt;output file&gt; [--depth n] [--workers n]
+ * [--lazymargin pawns] [--profile] [--hashfile path] [--hashsize megabytes]</code>
+ * <p>
+ * With "--hashfile", deep results are kept in a com.chess.engine.PersistentHashStore, so analyzing
+ * the same or related positions again after a restart reuses them.
+ */
+public class BatchAnalyzer
+{
+    private static final int DEFAULT_DEPTH = 4;
+    private static final int POSITIONS_PER_WORKER_IN_QUEUE = 2;
+    private static final int DEFAULT_HASH_SIZE_MEGABYTES = 64;
+
+    // marks the end of the input for the workers
+    private static final Position END_OF_INPUT = new Position(-1, null, null);
+
+    private final SearchLimits limits;
+    private final int numWorkers;
+    private final ChessEngine engine = new ChessEngine(new Board());
+
+    private final ReentrantLock outputLock = new ReentrantLock();
+    private final AtomicLong numPositionsAnalyzed = new AtomicLong();
+    private final AtomicLong numNodes = new AtomicLong();
+    private final AtomicLong numLazyEvaluations = new AtomicLong();
+    // the per-ply counters of every search added together. null unless profiling
+    private final SearchProfile profile;
+    private final ReentrantLock profileLock = new ReentrantLock();
+    // the first write that failed. workers keep draining the queue after it so the reader never blocks forever
+    private volatile IOException writeFailure;
+
+    public BatchAnalyzer(int _depth, int _numWorkers)
+    {
+        this(_depth, _numWorkers, false);
+    }
+
+    /**
+     * @param _depth the depth of every search
+     * @param _numWorkers the number of positions analyzed at once
+     * @param _shouldProfile true to add up the per-ply counters of every search
+     */
+    public BatchAnalyzer(int _depth, int _numWorkers, boolean _shouldProfile)
+    {
+        if (_depth < 0 || _numWorkers < 1)
+            throw new IllegalArgumentException("The depth should be at least 0 and there should be at least 1 worker.");
+
+        limits = SearchLimits.builder().depth(_depth).profiling(_shouldProfile).build();
+        numWorkers = _numWorkers;
+        profile = _shouldProfile ? new SearchProfile() : null;
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException
+    {
+        if (args.length < 2)
+        {
+            System.out.println("Usage: BatchAnalyzer <input file> <output file> [--depth n] [--workers n] [--lazymargin pawns] [--profile] [--hashfile path] [--hashsize megabytes]");
+            return;
+        }
+
+        int _depth = DEFAULT_DEPTH;
+        int _numWorkers = Runtime.getRuntime().availableProcessors();
+        float _lazyEvaluationMargin = ChessEngine.DEFAULT_LAZY_EVALUATION_MARGIN;
+        boolean _shouldProfile = false;
+        Path _hashPath = null;
+        int _hashSizeMegabytes = DEFAULT_HASH_SIZE_MEGABYTES;
+
+        for (int i = 2; i < args.length; i++)
+        {
+            switch (args[i])
+            {
+                case "--depth":
+                    _depth = Integer.parseInt(args[++i]);
+                    break;
+
+                case "--workers":
+                    _numWorkers = Integer.parseInt(args[++i]);
+                    break;
+
+                case "--lazymargin":
+                    _lazyEvaluationMargin = Float.parseFloat(args[++i]);
+                    break;
+
+                case "--profile":
+                    _shouldProfile = true;
+                    break;
+
+                case "--hashfile":
+                    _hashPath = Paths.get(args[++i]);
+                    break;
+
+                case "--hashsize":
+                    _hashSizeMegabytes = Integer.parseInt(args[++i]);
+                    break;
+
+                default:
+                    throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+
+        BatchAnalyzer _analyzer = new BatchAnalyzer(_depth, _numWorkers, _shouldProfile);
+        _analyzer.engine.setLazyEvaluationMargin(_lazyEvaluationMargin);
+
+        PersistentHashStore _hashStore = _hashPath != null ? PersistentHashStore.Open(_hashPath, _hashSizeMegabytes) : null;
+        _analyzer.engine.setPersistentHashStore(_hashStore);
+
+        double _startTimeNanoseconds = System.nanoTime();
+        try
+        {
+            _analyzer.Analyze(Paths.get(args[0]), Paths.get(args[1]));
+        }
+
+        finally
+        {
+            if (_hashStore != null)
+                _hashStore.close();
+        }
+        double _timeTakenSeconds = (System.nanoTime() - _startTimeNanoseconds) / 1000000000;
+
+        long _numPositions = _analyzer.numPositionsAnalyzed.get();
+        System.out.println("Positions analyzed: " + _numPositions);
+        System.out.println("Num nodes: " + _analyzer.numNodes.get());
+        System.out.println("Num lazy evaluations: " + _analyzer.numLazyEvaluations.get());
+        System.out.println("Time taken (seconds): " + _timeTakenSeconds);
+        System.out.println("Positions per second: " + _numPositions / _timeTakenSeconds);
+
+        if (_analyzer.profile != null)
+        {
+            System.out.println();
+            _analyzer.profile.Print(System.out);
+        }
+    }
+
+    /**
+     * Analyzes every position of the input file.
+     * @param _inputPath an EPD or FEN file with one position per line. Empty lines and lines starting with '#' are skipped.
+     * @param _outputPath the JSON lines file to write
+     * @throws IOException if reading or writing fails
+     * @throws InterruptedException if the calling thread is interrupted while analyzing
+     */
+    public void Analyze(Path _inputPath, Path _outputPath) throws IOException, InterruptedException
+    {
+        BlockingQueue<Position> _positions = new ArrayBlockingQueue<>(numWorkers * POSITIONS_PER_WORKER_IN_QUEUE);
+        List<Thread> _workers = new ArrayList<>();
+
+        try (BufferedReader _reader = Files.newBufferedReader(_inputPath, StandardCharsets.UTF_8);
+             BufferedWriter _writer = Files.newBufferedWriter(_outputPath, StandardCharsets.UTF_8))
+        {
+            for (int i = 0; i < numWorkers; i++)
+                _workers.add(Thread.ofVirtual().name("batch-worker-" + i).start(() -> AnalyzePositions(_positions, _writer)));
+
+            try
+            {
+                String _line;
+                long _lineIndex = 0;
+
+                while ((_line = _reader.readLine()) != null)
+                {
+                    _lineIndex++;
+                    _line = _line.trim();
+
+                    if (_line.isEmpty() || _line.startsWith("#"))
+                        continue;
+
+                    // blocks while the workers are behind
+                    _positions.put(ParsePosition(_lineIndex, _line));
+                }
+            }
+
+            finally
+            {
+                for (int i = 0; i < numWorkers; i++)
+                    _positions.put(END_OF_INPUT);
+
+                for (Thread _worker : _workers)
+                    _worker.join();
+            }
+        }
+
+        if (writeFailure != null)
+            throw writeFailure;
+    }
+
+    private void AnalyzePositions(BlockingQueue<Position> _positions, BufferedWriter _writer)
+    {
+        while (true)
+        {
+            Position _position;
+            try
+            {
+                _position = _positions.take();
+            }
+
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                return;
+            }
+
+            if (_position == END_OF_INPUT)
+                return;
+
+            WriteResult(_writer, AnalyzePosition(_position));
+        }
+    }
+
+    private String AnalyzePosition(Position _position)
+    {
+        StringBuilder _result = new StringBuilder();
+        _result.append("{\"index\":").append(_position.index);
+
+        if (_position.id != null)
+            _result.append(",\"id\":").append(Json.Quote(_position.id));
+
+        _result.append(",\"fen\":").append(Json.Quote(_position.fen));
+
+        try
+        {
+            SearchResult _searchResult = engine.Search(_position.fen, limits);
+            ScoredLine _bestLine = _searchResult.getBestLine();
+            double _timeTakenMilliseconds = _searchResult.getTimeNanoseconds() / 1000000.0;
+
+            List<Move> _line = _bestLine.getLine();
+
+            _result.append(",\"bestMove\":").append(_line.isEmpty() ? "null" : Json.Quote(_line.get(0).toString()));
+            _result.append(",\"score\":").append(Json.Score(_bestLine.getScore()));
+            _result.append(",\"pv\":").append(Json.Moves(_line));
+            _result.append(",\"nodes\":").append(_searchResult.getNumNodes());
+            _result.append(",\"lazyEvaluations\":").append(_searchResult.getNumLazyEvaluations());
+            _result.append(",\"timeMs\":").append(_timeTakenMilliseconds);
+
+            numPositionsAnalyzed.incrementAndGet();
+            numNodes.addAndGet(_searchResult.getNumNodes());
+            numLazyEvaluations.addAndGet(_searchResult.getNumLazyEvaluations());
+
+            if (profile != null)
+            {
+                profileLock.lock();
+                try
+                {
+                    profile.Add(_searchResult.getProfile());
+                }
+
+                finally
+                {
+                    profileLock.unlock();
+                }
+            }
+        }
+
+        catch (RuntimeException e)
+        {
+            _result.append(",\"error\":").append(Json.Quote(String.valueOf(e.getMessage())));
+        }
+
+        return _result.append('}').toString();
+    }
+
+    private void WriteResult(BufferedWriter _writer, String _result)
+    {
+        // a lock instead of synchronized so waiting workers don't pin their carrier threads
+        outputLock.lock();
+        try
+        {
+            if (writeFailure != null)
+                return;
+
+            _writer.write(_result);
+            _writer.newLine();
+            _writer.flush();
+        }
+
+        catch (IOException e)
+        {
+            writeFailure = e;
+        }
+
+        finally
+        {
+            outputLock.unlock();
+        }
+    }
+
+    /**
+     * Reads a FEN, or an EPD record whose first four fields are the position and whose
+     * remaining fields are operations like <code>id "name";</code>.
+     */
+    static Position ParsePosition(long _index, String _line)
+    {
+        String[] _fields = _line.split("\\s+");
+
+        if (_fields.length >= 6 && _fields[4].matches("\\d+") && _fields[5].matches("\\d+"))
+            return new Position(_index, null, String.join(" ", _fields[0], _fields[1], _fields[2], _fields[3], _fields[4], _fields[5]));
+
+        if (_fields.length < 4)
+            return new Position(_index, null, _line);
+
+        String _fen = String.join(" ", _fields[0], _fields[1], _fields[2], _fields[3]) + " 0 1";
+
+        String _id = null;
+        int _idStart = _line.indexOf("id \"");
+        if (_idStart >= 0)
+        {
+            int _idEnd = _line.indexOf('"', _idStart + 4);
+
+            if (_idEnd > 0)
+                _id = _line.substring(_idStart + 4, _idEnd);
+        }
+
+        return new Position(_index, _id, _fen);
+    }
+
+    static class Position
+    {
+        private final long index;
+        private final String id;
+        private final String fen;
+
+        private Position(long _index, String _id, String _fen)
+        {
+            index = _index;
+            id = _id;
+            fen = _fen;
+        }
+
+        String getFen()
+        {
+            return fen;
+        }
+    }
+}
@@ -0,0 +1,193 @@
+package com.chess.engine;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import com.github.bhlangonijr.chesslib.Board;
+import com.github.bhlangonijr.chesslib.Piece;
+
+/**
+ * Statically evaluates large numbers of positions, like "ChessEngine.Evaluate" but without a com.chess.engine.ChessEngine
+ * board or FEN per position, for scoring datasets and training.
+ * <p>
+ * Positions are packed as a structure of arrays: one long array per piece, indexed by
+ * [piece ordinal][position], that holds the piece's bitboard in every position. The positions are split
+ * into ranges that are evaluated in parallel on every core, and the results are written into an array
+ * the caller supplies, so no board, FEN, or piece list is made for any position.
+ * <p>
+ * The evaluation is the hand-crafted one of the given parameters, from white's perspective.
+ * <p>
+ * Usage: <code>BatchEvaluator &lt;input file&gt; [--repeat n]</code>
+ */
+public class BatchEvaluator
+{
+    // small enough to spread the positions evenly over the cores,
+    // big enough that each range's passes read long runs of each array
+    private static final int POSITIONS_PER_RANGE = 4096;
+    private static final Piece[] PIECES = Piece.values();
+
+    private final ChessEngine engine;
+
+    public BatchEvaluator()
+    {
+        this(new EvaluationParameters());
+    }
+
+    /**
+     * @param _parameters the parameters of the hand-crafted evaluation
+     */
+    public BatchEvaluator(EvaluationParameters _parameters)
+    {
+        engine = new ChessEngine(new Board(), _parameters);
+    }
+
+    public static void main(String[] args) throws IOException
+    {
+        if (args.length < 1)
+        {
+            System.out.println("Usage: BatchEvaluator <input file> [--repeat n]");
+            return;
+        }
+
+        int _numRepeats = 1;
+
+        for (int i = 1; i < args.length; i++)
+        {
+            switch (args[i])
+            {
+                case "--repeat":
+                    _numRepeats = Integer.parseInt(args[++i]);
+                    break;
+
+                default:
+                    throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+
+        List<String> _fens = new ArrayList<>();
+        try (BufferedReader _reader = Files.newBufferedReader(Paths.get(args[0]), StandardCharsets.UTF_8))
+        {
+            String _line;
+            while ((_line = _reader.readLine()) != null)
+            {
+                _line = _line.trim();
+
+                if (!_line.isEmpty() && !_line.startsWith("#"))
+                    _fens.add(BatchAnalyzer.ParsePosition(_fens.size(), _line).getFen());
+            }
+        }
+
+        long[][] _bitboards = NewBitboards(_fens.size());
+        Board _board = new Board();
+
+        for (int i = 0; i < _fens.size(); i++)
+        {
+            _board.loadFromFen(_fens.get(i));
+            Pack(_board, _bitboards, i);
+        }
+
+        BatchEvaluator _evaluator = new BatchEvaluator();
+        int[] _centipawns = new int[_fens.size()];
+
+        double _startTimeNanoseconds = System.nanoTime();
+        for (int i = 0; i < _numRepeats; i++)
+            _evaluator.Evaluate(_bitboards, _fens.size(), _centipawns);
+        double _timeTakenSeconds = (System.nanoTime() - _startTimeNanoseconds) / 1000000000;
+
+        long _numEvaluations = (long) _fens.size() * _numRepeats;
+        System.out.println("Positions evaluated: " + _numEvaluations);
+        System.out.println("Time taken (seconds): " + _timeTakenSeconds);
+        System.out.println("Positions per second: " + _numEvaluations / _timeTakenSeconds);
+    }
+
+    /**
+     * @param _numPositions the number of positions to make room for
+     * @return empty bitboards for the positions, indexed by [piece ordinal][position]
+     */
+    public static long[][] NewBitboards(int _numPositions)
+    {
+        return new long[Piece.NONE.ordinal()][_numPositions];
+    }
+
+    /**
+     * Copies the bitboards of a board into the packed positions.
+     * @param _board the position to pack
+     * @param _bitboards the packed positions, indexed by [piece ordinal][position]
+     * @param _index the index to pack the position at
+     */
+    public static void Pack(Board _board, long[][] _bitboards, int _index)
+    {
+        for (int _piece = 0; _piece < _bitboards.length; _piece++)
+            _bitboards[_piece][_index] = _board.getBitboard(PIECES[_piece]);
+    }
+
+    /**
+     * Evaluates the first positions of the packed positions in parallel.
+     * @param _bitboards the packed positions, indexed by [piece ordinal][position]. Every position needs both kings.
+     * @param _numPositions the number of positions to evaluate
+     * @param _results receives the evaluation of each position at its index, in pawns from white's perspective
+     * @throws IllegalArgumentException if the arrays are too small
+     */
+    public void Evaluate(long[][] _bitboards, int _numPositions, float[] _results) throws IllegalArgumentException
+    {
+        CheckSizes(_bitboards, _numPositions, _results.length);
+
+        IntStream.range(0, GetNumRanges(_numPositions)).parallel().forEach(_range ->
+        {
+            int _start = _range * POSITIONS_PER_RANGE;
+            int _end = Math.min(_start + POSITIONS_PER_RANGE, _numPositions);
+
+            engine.EvaluateBatch(_bitboards, _start, _end, _results, _start);
+        });
+    }
+
+    /**
+     * Same as the other "Evaluate", but writes the evaluations rounded to centipawns.
+     * @param _bitboards the packed positions, indexed by [piece ordinal][position]. Every position needs both kings.
+     * @param _numPositions the number of positions to evaluate
+     * @param _results receives the evaluation of each position at its index, in centipawns from white's perspective
+     * @throws IllegalArgumentException if the arrays are too small
+     */
+    public void Evaluate(long[][] _bitboards, int _numPositions, int[] _results) throws IllegalArgumentException
+    {
+        CheckSizes(_bitboards, _numPositions, _results.length);
+
+        IntStream.range(0, GetNumRanges(_numPositions)).parallel().forEach(_range ->
+        {
+            int _start = _range * POSITIONS_PER_RANGE;
+            int _end = Math.min(_start + POSITIONS_PER_RANGE, _numPositions);
+            float[] _evaluations = new float[_end - _start];
+
+            engine.EvaluateBatch(_bitboards, _start, _end, _evaluations, 0);
+
+            for (int i = _start; i < _end; i++)
+                _results[i] = Math.round(_evaluations[i - _start] * 100);
+        });
+    }
+
+    private static int GetNumRanges(int _numPositions)
+    {
+        return (_numPositions + POSITIONS_PER_RANGE - 1) / POSITIONS_PER_RANGE;
+    }
+
+    private static void CheckSizes(long[][] _bitboards, int _numPositions, int _numResults)
+    {
+        if (_bitboards.length != Piece.NONE.ordinal())
+            throw new IllegalArgumentException("There should be one bitboard array per piece.");
+
+        for (long[] _pieceBitboards : _bitboards)
+        {
+            if (_pieceBitboards.length < _numPositions)
+                throw new IllegalArgumentException("Every bitboard array should hold at least " + _numPositions + " positions.");
+        }
+
+        if (_numResults < _numPositions)
+            throw new IllegalArgumentException("The results should hold at least " + _numPositions + " positions.");
+    }
+}
@@ -0,0 +1,244 @@
+package com.chess.engine;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import com.github.bhlangonijr.chesslib.PieceType;
+
+/**
+ * Generates the com.chess.engine.Bitbases files with retrograde analysis, so no tablebases
+ * need to be downloaded.
+ * <p>
+ * Every position starts as unknown. Checkmates, stalemates, and positions where the lone king
+ * can take the piece are resolved first. Then the positions are swept repeatedly: a position with
+ * the strong side to move is a win if some move reaches a loss for the lone king, and a position
+ * with the lone king to move is a loss if every move reaches a win for the strong side. Once a
+ * sweep changes nothing, every position still unknown is a draw.
+ * <p>
+ * The pawn bitbase looks up promotions in the queen and rook bitbases, so those are generated first.
+ * <p>
+ * Usage: <code>BitbaseGenerator [directory]</code>
+ */
+public class BitbaseGenerator
+{
+    // only used while generating
+    private static final byte ILLEGAL = (byte) Bitbases.NOT_FOUND;
+    private static final byte UNKNOWN = 4;
+
+    public static void main(String[] args) throws IOException
+    {
+        Path _directory = Paths.get(args.length > 0 ? args[0] : "bitbases");
+
+        double _startTimeNanoseconds = System.nanoTime();
+        GenerateAll(_directory);
+        double _timeTakenSeconds = (System.nanoTime() - _startTimeNanoseconds) / 1000000000;
+
+        System.out.println("Bitbases written to " + _directory.toAbsolutePath());
+        System.out.println("Time taken (seconds): " + _timeTakenSeconds);
+    }
+
+    /**
+     * Generates the queen, rook, and pawn bitbases and writes them to the given directory.
+     * @param _directory the directory to write to. It is created if it doesn't exist.
+     * @throws IOException if the files can't be written
+     */
+    public static void GenerateAll(Path _directory) throws IOException
+    {
+        Files.createDirectories(_directory);
+
+        byte[] _queenBitbase = Generate(PieceType.QUEEN, null, null);
+        byte[] _rookBitbase = Generate(PieceType.ROOK, null, null);
+        byte[] _pawnBitbase = Generate(PieceType.PAWN, ByteBuffer.wrap(_queenBitbase), ByteBuffer.wrap(_rookBitbase));
+
+        Write(_directory, PieceType.QUEEN, _queenBitbase);
+        Write(_directory, PieceType.ROOK, _rookBitbase);
+        Write(_directory, PieceType.PAWN, _pawnBitbase);
+    }
+
+    /**
+     * Generates one bitbase.
+     * @param _pieceType PAWN, ROOK, or QUEEN
+     * @param _queenBitbase the packed queen bitbase, only needed for pawns
+     * @param _rookBitbase the packed rook bitbase, only needed for pawns
+     * @return the bitbase packed with 2 bits per position
+     */
+    static byte[] Generate(PieceType _pieceType, ByteBuffer _queenBitbase, ByteBuffer _rookBitbase)
+    {
+        byte[] _results = new byte[Bitbases.NUM_POSITIONS];
+
+        for (int _index = 0; _index < Bitbases.NUM_POSITIONS; _index++)
+        {
+            _results[_index] = IsLegal(_pieceType, _index >>> 18, (_index >>> 12) & 63, (_index >>> 6) & 63, _index & 63)
+                ? UNKNOWN
+                : ILLEGAL;
+        }
+
+        boolean _hasChanged = true;
+        while (_hasChanged)
+        {
+            _hasChanged = false;
+
+            for (int _index = 0; _index < Bitbases.NUM_POSITIONS; _index++)
+            {
+                if (_results[_index] != UNKNOWN)
+                    continue;
+
+                int _strongKing = (_index >>> 12) & 63;
+                int _piece = (_index >>> 6) & 63;
+                int _weakKing = _index & 63;
+
+                byte _result = (_index >>> 18) == Bitbases.STRONG_SIDE_TO_MOVE
+                    ? ResolveStrongSideToMove(_results, _pieceType, _strongKing, _piece, _weakKing, _queenBitbase, _rookBitbase)
+                    : ResolveWeakSideToMove(_results, _pieceType, _strongKing, _piece, _weakKing);
+
+                if (_result != UNKNOWN)
+                {
+                    _results[_index] = _result;
+                    _hasChanged = true;
+                }
+            }
+        }
+
+        byte[] _packedResults = new byte[Bitbases.NUM_POSITIONS / 4];
+        for (int _index = 0; _index < Bitbases.NUM_POSITIONS; _index++)
+        {
+            int _result = _results[_index] == UNKNOWN ? Bitbases.DRAW : _results[_index];
+            _packedResults[_index >>> 2] |= (byte) (_result << ((_index & 3) << 1));
+        }
+
+        return _packedResults;
+    }
+
+    private static boolean IsLegal(PieceType _pieceType, int _sideToMove, int _strongKing, int _piece, int _weakKing)
+    {
+        if (_strongKing == _piece || _strongKing == _weakKing || _piece == _weakKing)
+            return false;
+
+        if ((Attacks.GetKingAttacks(_strongKing) & (1L << _weakKing)) != 0L)
+            return false;
+
+        // pawns can't be on the first or last rank
+        if (_pieceType == PieceType.PAWN && (_piece < 8 || _piece >= 56))
+            return false;
+
+        // the lone king can't be in check when it isn't its turn
+        long _occupied = (1L << _strongKing) | (1L << _piece) | (1L << _weakKing);
+        return _sideToMove == Bitbases.WEAK_SIDE_TO_MOVE
+            || (Attacks.GetAttacks(_pieceType, _piece, _occupied) & (1L << _weakKing)) == 0L;
+    }
+
+    private static byte ResolveStrongSideToMove(byte[] _results, PieceType _pieceType, int _strongKing,
+    int _piece, int _weakKing, ByteBuffer _queenBitbase, ByteBuffer _rookBitbase)
+    {
+        boolean _hasMove = false;
+        long _occupied = (1L << _strongKing) | (1L << _piece) | (1L << _weakKing);
+
+        long _kingMoves = Attacks.GetKingAttacks(_strongKing) & ~(1L << _piece) & ~Attacks.GetKingAttacks(_weakKing);
+        for (; _kingMoves != 0L; _kingMoves &= _kingMoves - 1)
+        {
+            _hasMove = true;
+            int _index = Bitbases.GetIndex(Bitbases.WEAK_SIDE_TO_MOVE, Long.numberOfTrailingZeros(_kingMoves), _piece, _weakKing);
+
+            if (_results[_index] == Bitbases.LOSS)
+                return Bitbases.WIN;
+        }
+
+        if (_pieceType == PieceType.PAWN)
+        {
+            int _pushSquare = _piece + 8;
+
+            if ((_occupied & (1L << _pushSquare)) == 0L)
+            {
+                _hasMove = true;
+                int _index = Bitbases.GetIndex(Bitbases.WEAK_SIDE_TO_MOVE, _strongKing, _pushSquare, _weakKing);
+
+                // promotion, where underpromoting to a rook can avoid stalemate
+                if (_pushSquare >= 56)
+                {
+                    if (Bitbases.Get(_queenBitbase, _index) == Bitbases.LOSS
+                        || Bitbases.Get(_rookBitbase, _index) == Bitbases.LOSS)
+                        return Bitbases.WIN;
+                }
+
+                else if (_results[_index] == Bitbases.LOSS)
+                    return Bitbases.WIN;
+
+                int _doublePushSquare = _piece + 16;
+                if (_piece < 16 && (_occupied & (1L << _doublePushSquare)) == 0L)
+                {
+                    _index = Bitbases.GetIndex(Bitbases.WEAK_SIDE_TO_MOVE, _strongKing, _doublePushSquare, _weakKing);
+
+                    if (_results[_index] == Bitbases.LOSS)
+                        return Bitbases.WIN;
+                }
+            }
+        }
+
+        else
+        {
+            long _pieceMoves = Attacks.GetAttacks(_pieceType, _piece, _occupied) & ~_occupied;
+            for (; _pieceMoves != 0L; _pieceMoves &= _pieceMoves - 1)
+            {
+                _hasMove = true;
+                int _index = Bitbases.GetIndex(Bitbases.WEAK_SIDE_TO_MOVE, _strongKing, Long.numberOfTrailingZeros(_pieceMoves), _weakKing);
+
+                if (_results[_index] == Bitbases.LOSS)
+                    return Bitbases.WIN;
+            }
+        }
+
+        // stalemating the strong side is possible with a blocked pawn
+        return _hasMove ? UNKNOWN : Bitbases.DRAW;
+    }
+
+    private static byte ResolveWeakSideToMove(byte[] _results, PieceType _pieceType, int _strongKing,
+    int _piece, int _weakKing)
+    {
+        // the lone king doesn't block the squares behind it
+        long _pieceAttacks = Attacks.GetAttacks(_pieceType, _piece, (1L << _strongKing) | (1L << _piece));
+        long _attacked = Attacks.GetKingAttacks(_strongKing) | _pieceAttacks;
+        boolean _isInCheck = (_pieceAttacks & (1L << _weakKing)) != 0L;
+
+        boolean _hasMove = false;
+        boolean _doAllMovesLose = true;
+
+        long _kingMoves = Attacks.GetKingAttacks(_weakKing) & ~_attacked;
+        for (; _kingMoves != 0L; _kingMoves &= _kingMoves - 1)
+        {
+            int _target = Long.numberOfTrailingZeros(_kingMoves);
+
+            // taking the undefended piece leaves two bare kings
+            if (_target == _piece)
+                return Bitbases.DRAW;
+
+            _hasMove = true;
+
+            if (_results[Bitbases.GetIndex(Bitbases.STRONG_SIDE_TO_MOVE, _strongKing, _piece, _target)] != Bitbases.WIN)
+                _doAllMovesLose = false;
+        }
+
+        if (!_hasMove)
+            return (byte) (_isInCheck ? Bitbases.LOSS : Bitbases.DRAW);
+
+        return _doAllMovesLose ? Bitbases.LOSS : UNKNOWN;
+    }
+
+    private static void Write(Path _directory, PieceType _pieceType, byte[] _packedResults) throws IOException
+    {
+        try (DataOutputStream _output = new DataOutputStream(new BufferedOutputStream
+        (
+            Files.newOutputStream(Bitbases.GetPath(_directory, _pieceType))
+        )))
+        {
+            _output.writeInt(Bitbases.MAGIC);
+            _output.writeInt(Bitbases.VERSION);
+            _output.writeInt(_pieceType.ordinal());
+            _output.write(_packedResults);
+        }
+    }
+}
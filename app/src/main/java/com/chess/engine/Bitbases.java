@@ -0,0 +1,169 @@
+package com.chess.engine;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import com.github.bhlangonijr.chesslib.Board;
+import com.github.bhlangonijr.chesslib.Piece;
+import com.github.bhlangonijr.chesslib.PieceType;
+import com.github.bhlangonijr.chesslib.Side;
+
+/**
+ * Win/draw/loss bitbases for king and pawn, king and rook, and
+ * king and queen against a lone king, generated by com.chess.engine.BitbaseGenerator.
+ * <p>
+ * Each bitbase stores 2 bits per position, indexed by the side to move, the strong king,
+ * the strong side's piece, and the weak king. Positions are always stored with white as
+ * the strong side, so positions where black is the strong side are mirrored when probing.
+ * The files are memory-mapped, so they live off-heap and can be shared by every engine.
+ */
+public class Bitbases
+{
+    //#region Results
+    // relative to the side to move
+    public static final int NOT_FOUND = 0;
+    public static final int DRAW = 1;
+    public static final int WIN = 2;
+    public static final int LOSS = 3;
+    //#endregion
+
+    static final int MAGIC = 0x43454242; // "CEBB"
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 4 + 4 + 4;
+
+    static final int STRONG_SIDE_TO_MOVE = 0;
+    static final int WEAK_SIDE_TO_MOVE = 1;
+    static final int NUM_POSITIONS = 2 * 64 * 64 * 64;
+
+    static final PieceType[] PIECE_TYPES = new PieceType[] { PieceType.PAWN, PieceType.ROOK, PieceType.QUEEN };
+
+    private final ByteBuffer pawnBitbase;
+    private final ByteBuffer rookBitbase;
+    private final ByteBuffer queenBitbase;
+
+    private Bitbases(ByteBuffer _pawnBitbase, ByteBuffer _rookBitbase, ByteBuffer _queenBitbase)
+    {
+        pawnBitbase = _pawnBitbase;
+        rookBitbase = _rookBitbase;
+        queenBitbase = _queenBitbase;
+    }
+
+    /**
+     * Maps the bitbases in the given directory. Missing bitbases are generated and written first,
+     * which takes a few seconds and only happens once per directory.
+     * @param _directory the directory holding the bitbase files
+     * @return the loaded bitbases
+     * @throws IOException if the bitbases can't be read or written
+     */
+    public static Bitbases Load(Path _directory) throws IOException
+    {
+        for (PieceType _pieceType : PIECE_TYPES)
+        {
+            if (!Files.exists(GetPath(_directory, _pieceType)))
+            {
+                BitbaseGenerator.GenerateAll(_directory);
+                break;
+            }
+        }
+
+        return new Bitbases
+        (
+            Map(GetPath(_directory, PieceType.PAWN), PieceType.PAWN),
+            Map(GetPath(_directory, PieceType.ROOK), PieceType.ROOK),
+            Map(GetPath(_directory, PieceType.QUEEN), PieceType.QUEEN)
+        );
+    }
+
+    /**
+     * Looks up the board's position.
+     * @param _board the board to probe. It is not modified.
+     * @return WIN, DRAW, or LOSS for the side to move, or NOT_FOUND if the
+     * position isn't king and pawn, rook, or queen against a lone king
+     */
+    public int Probe(Board _board)
+    {
+        if (Long.bitCount(_board.getBitboard()) != 3)
+            return NOT_FOUND;
+
+        for (Side _strongSide : Side.values())
+        {
+            for (PieceType _pieceType : PIECE_TYPES)
+            {
+                long _pieceBitboard = _board.getBitboard(Piece.make(_strongSide, _pieceType));
+
+                if (_pieceBitboard == 0L)
+                    continue;
+
+                int _strongKing = _board.getKingSquare(_strongSide).ordinal();
+                int _piece = Long.numberOfTrailingZeros(_pieceBitboard);
+                int _weakKing = _board.getKingSquare(_strongSide.flip()).ordinal();
+
+                // flipping the ranks turns black into white
+                if (_strongSide == Side.BLACK)
+                {
+                    _strongKing ^= 56;
+                    _piece ^= 56;
+                    _weakKing ^= 56;
+                }
+
+                int _sideToMove = _board.getSideToMove() == _strongSide ? STRONG_SIDE_TO_MOVE : WEAK_SIDE_TO_MOVE;
+
+                return Get(GetBitbase(_pieceType), GetIndex(_sideToMove, _strongKing, _piece, _weakKing));
+            }
+        }
+
+        return NOT_FOUND;
+    }
+
+    private ByteBuffer GetBitbase(PieceType _pieceType)
+    {
+        switch (_pieceType)
+        {
+            case PAWN:
+                return pawnBitbase;
+
+            case ROOK:
+                return rookBitbase;
+
+            default:
+                return queenBitbase;
+        }
+    }
+
+    static int GetIndex(int _sideToMove, int _strongKing, int _piece, int _weakKing)
+    {
+        return _sideToMove << 18 | _strongKing << 12 | _piece << 6 | _weakKing;
+    }
+
+    static int Get(ByteBuffer _bitbase, int _index)
+    {
+        return (_bitbase.get(_index >>> 2) >>> ((_index & 3) << 1)) & 3;
+    }
+
+    static Path GetPath(Path _directory, PieceType _pieceType)
+    {
+        // KPK, KRK, or KQK
+        return _directory.resolve("K" + _pieceType.name().charAt(0) + "K.bitbase");
+    }
+
+    private static ByteBuffer Map(Path _path, PieceType _pieceType) throws IOException
+    {
+        try (FileChannel _channel = FileChannel.open(_path, StandardOpenOption.READ))
+        {
+            MappedByteBuffer _mapped = _channel.map(FileChannel.MapMode.READ_ONLY, 0, _channel.size());
+            _mapped.order(ByteOrder.BIG_ENDIAN);
+
+            if (_mapped.capacity() != HEADER_SIZE + NUM_POSITIONS / 4 || _mapped.getInt(0) != MAGIC
+                || _mapped.getInt(4) != VERSION || _mapped.getInt(8) != _pieceType.ordinal())
+                throw new IOException(_path + " is not a valid " + _pieceType + " bitbase.");
+
+            return _mapped.slice(HEADER_SIZE, NUM_POSITIONS / 4);
+        }
+    }
+}
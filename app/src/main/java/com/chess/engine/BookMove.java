@@ -0,0 +1,37 @@
+package com.chess.engine;
+
+import com.github.bhlangonijr.chesslib.move.Move;
+
+import lombok.Data;
+
+@Data
+public class BookMove implements Comparable<BookMove>
+{
+    private final Move move;
+    private final int numGames;
+    // in half points (win = 2, draw = 1, loss = 0)
+    // from the perspective of the side that played the move
+    private final int numHalfPoints;
+
+    /**
+     * @return the fraction of points scored by the side that played the move, from 0 to 1
+     */
+    public float getScore()
+    {
+        if (numGames == 0)
+            return 0.5f;
+
+        return numHalfPoints / (2f * numGames);
+    }
+
+    /**
+     * Orders more popular moves first.
+     * @param _comparingBookMove the com.chess.engine.BookMove to compare to
+     * @return the comparison result
+     */
+    @Override
+    public int compareTo(BookMove _comparingBookMove)
+    {
+        return Integer.compare(_comparingBookMove.numGames, numGames);
+    }
+}
@@ -1,9 +1,17 @@
 package com.chess.engine;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
-import java.util.Random;
+import java.util.Queue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Flow;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.apache.commons.lang3.mutable.MutableInt;
 
@@ -15,7 +23,6 @@ import com.github.bhlangonijr.chesslib.Rank;
 import com.github.bhlangonijr.chesslib.Side;
 import com.github.bhlangonijr.chesslib.Square;
 import com.github.bhlangonijr.chesslib.move.Move;
-import com.github.bhlangonijr.chesslib.move.MoveGenerator;
 
 import lombok.Getter;
 import lombok.Setter;
@@ -25,171 +32,589 @@ public class ChessEngine
     @Setter
     @Getter
     private Board board;
-    private Random rand;
+    // searches on the engine's internal board
+    private final SearchContext gameContext;
+    // searches on positions passed in by the caller, one context per concurrent search
+    private final Queue<SearchContext> contextPool = new ConcurrentLinkedQueue<>();
+
+    // optional, probed for exact results in small endgames
+    @Setter
+    @Getter
+    private Bitbases bitbases;
+
+    // optional, keeps deep search results across restarts. the caller opens and closes it
+    @Setter
+    @Getter
+    private PersistentHashStore persistentHashStore;
 
     private static final float SCORE_TOLERANCE = 0.005f;
+    // move ordering bonuses of quiet moves, in pawns
+    private static final float FIRST_KILLER_BONUS = 0.9f;
+    private static final float SECOND_KILLER_BONUS = 0.8f;
+    private static final float MAX_HISTORY_BONUS = 0.5f;
+    static final int MAX_PLY = 128;
+
+    // higher than any evaluation, but lower than checkmate
+    // so that the engine still goes for the fastest mate
+    private static final float BITBASE_WIN_SCORE = 1000f;
+
+    // past this endgame weight, the king is placed by its endgame table alone, because of
+    // how strongly the middlegame table punishes being in the center
+    private static final float KING_ENDGAME_TABLE_WEIGHT = 0.7f;
+
+    // bigger than the mobility, pawn structure, king safety, and threat terms
+    // together add up to in all but the most lopsided positions
+    public static final float DEFAULT_LAZY_EVALUATION_MARGIN = 3f;
+
+    // how far outside the search window the material and piece placement of a leaf can be before the
+    // rest of its evaluation is skipped. 0 turns lazy evaluation off
+    @Setter
+    @Getter
+    private volatile float lazyEvaluationMargin = DEFAULT_LAZY_EVALUATION_MARGIN;
 
-    //#region Evaluation Constants
-    //#region Pawn structure penalties
-    private static final float DOUBLED_PAWN_PENALTY = 0.095f;
-    private static final float ISOLATED_PAWN_PENALTY = 0.105f;
-    private static final float DOUBLED_AND_ISOLATED_PENALTY = 0.21f;
-    //#endregion
+    // read-only, so it can be shared with other engines
+    @Getter
+    private final EvaluationParameters parameters;
+    // replaces the hand-crafted evaluation when set. read-only, so it can be shared with other engines
+    @Getter
+    private final NnueNetwork network;
+    private static final EvaluationParameters DEFAULT_PARAMETERS = new EvaluationParameters();
+    private static final Piece[] PIECES = Piece.values();
+    private static final long FILE_A = 0x0101010101010101L;
 
-    //#region Endgame weight calculation
-    // pawns don't count that much to endgame weight
-    // minor pieces have a decent influence on endgame weight
-    // rooks have slightly multiplied difference
-    // both queens on the board moves the game away from endgame by a lot
-    private static final float PAWN_WEIGHT = 0.35f;
-    private static final float MINOR_PIECE_WEIGHT = 1f;
-    private static final float ROOK_WEIGHT = 1.095f;
-    private static final float QUEEN_WEIGHT = 1.3f;
-    //#endregion
+    public static final int DEFAULT_TRANSPOSITION_TABLE_SIZE_MEGABYTES = 16;
 
-    //#region Piece values
-    private static final float PAWN_VALUE = 1f;
-    private static final float KNIGHT_VALUE = 3f;
-    private static final float BISHOP_VALUE = 3.15f;
-    private static final float ROOK_VALUE = 5f;
-    private static final float QUEEN_VALUE = 10f;
-    //#endregion
+    // shared by every search of the engine, including concurrent ones
+    private final TranspositionTable transpositionTable;
 
-    //#region Piece square tables
-    // favors pushed pawns, but doesn't favor overextended pawns as strongly.
-    // even pawns about to promote are not as highly regarded because
-    // they could prove to be weaknesses that can be targeted by the opponent.
-    // also, likes pawns not being pushed at the castling locations
-    private static final float[][] PAWN_PLACEMENT_TABLE_MIDDLEGAME = new float[][]
-    {
-        new float[] { QUEEN_VALUE, QUEEN_VALUE, QUEEN_VALUE, QUEEN_VALUE, QUEEN_VALUE, QUEEN_VALUE, QUEEN_VALUE, QUEEN_VALUE },
-        new float[] { 0.075f, 0.075f, 0.1f, 0.14f, 0.14f, 0.1f, 0.075f, 0.075f },
-        new float[] { 0.02f, 0.045f, 0.11f, 0.15f, 0.15f, 0.11f, 0.045f, 0.02f },
-        new float[] { 0.025f, 0.08f, 0.13f, 0.16f, 0.16f, 0.13f, 0.08f, 0.025f },
-        new float[] { 0.03f, 0.065f, 0.085f, 0.145f, 0.145f, 0.085f, 0.065f, 0.03f },
-        new float[] { 0.035f, 0f, 0.035f, 0.035f, 0.035f, 0f, 0f, 0.035f },
-        new float[] { 0.085f, 0.085f, 0.085f, -0.1f, -0.1f, 0.085f, 0.085f, 0.085f },
-        new float[] { -0.175f, -0.175f, -0.175f, -0.175f, -0.175f, -0.175f, -0.175f, -0.175f }
-    };
-
-    // favors pawns closer to promotion
-    // favors flank pawns more strongly
-    // huge jump in pawn value from 5th rank to 6th rank
-    private static final float[][] PAWN_PLACEMENT_TABLE_ENDGAME = new float[][]
-    {
-        new float[] { QUEEN_VALUE, QUEEN_VALUE, QUEEN_VALUE, QUEEN_VALUE, QUEEN_VALUE, QUEEN_VALUE, QUEEN_VALUE, QUEEN_VALUE },
-        new float[] { 2.65f, 2f, 1.85f, 1.85f, 1.85f, 1.85f, 2f, 2.65f },
-        new float[] { 1.75f, 1.65f, 1.6f, 1.6f, 1.6f, 1.6f, 1.65f, 1.75f },
-        new float[] { 0.4f, 0.3f, 0.225f, 0.225f, 0.225f, 0.225f, 0.3f, 0.4f },
-        new float[] { 0.175f, 0.15f, 0.125f, 0.125f, 0.125f, 0.125f, 0.15f, 0.175f },
-        new float[] { -0.075f, -0.075f, -0.075f, -0.075f, -0.075f, -0.075f, -0.075f, -0.075f },
-        new float[] { -0.15f, -0.15f, -0.15f, -0.15f, -0.15f, -0.15f, -0.15f, -0.15f },
-        new float[] { -0.25f, -0.25f, -0.25f, -0.25f, -0.25f, -0.25f, -0.25f, -0.25f }
-    };
-
-    // favors knights closer to the center
-    // knights on opponent's edge are not punished as harshly
-    // because they are likely applying some pressure to the opponent's position
-    private static final float[][] KNIGHT_PLACEMENT_TABLE = new float[][]
-    {
-        new float[] { -0.155f, -0.075f, -0.075f, -0.075f, -0.075f, -0.075f, -0.075f, -0.155f },
-        new float[] { -0.135f, 0.035f, 0.05f, 0.05f, 0.05f, 0.05f, 0.035f, -0.135f },
-        new float[] { -0.11f, 0.1f, 0.125f, 0.1f, 0.1f, 0.125f, 0.1f, -0.11f },
-        new float[] { -0.1f, 0.125f, 0.175f, 0.175f, 0.175f, 0.175f, 0.125f, -0.1f },
-        new float[] { -0.1f, 0.125f, 0.175f, 0.175f, 0.175f, 0.175f, 0.125f, -0.1f },
-        new float[] { -0.125f, 0.1f, 0.125f, 0.1f, 0.1f, 0.125f, 0.1f, -0.125f },
-        new float[] { -0.175f, 0.035f, 0.05f, 0.05f, 0.05f, 0.05f, 0.035f, -0.175f },
-        new float[] { -0.25f, -0.1f, -0.1f, -0.1f, -0.1f, -0.1f, -0.1f, -0.25f }
-    };
-
-    // favors bishops closer to the center
-    // slight buff given to bishops in fianchetto position
-    // compared to other squares in the same rank
-    private static final float[][] BISHOP_PLACEMENT_TABLE = new float[][]
-    {
-        new float[] { -0.2f, -0.25f, -0.25f, -0.25f, -0.25f, -0.25f, -0.25f, -0.2f },
-        new float[] { -0.175f, 0.125f, 0.12f, 0.12f, 0.12f, 0.12f, 0.125f, -0.175f },
-        new float[] { 0.15f, 0.14f, 0.15f, 0.15f, 0.15f, 0.15f, 0.14f, 0.15f },
-        new float[] { -0.125f, 0.165f, 0.175f, 0.18f, 0.18f, 0.175f, 0.165f, -0.125f },
-        new float[] { -0.12f, 0.155f, 0.1675f, 0.175f, 0.175f, 0.1675f, 0.155f, -0.12f },
-        new float[] { -0.15f, 0.14f, 0.15f, 0.15f, 0.15f, 0.15f, 0.14f, -0.15f },
-        new float[] { -0.175f, 0.125f, 0.12f, 0.12f, 0.12f, 0.12f, 0.125f, -0.175f },
-        new float[] { -0.2f, -0.25f, -0.25f, -0.25f, -0.25f, -0.25f, -0.25f, -0.2f }
-    };
-
-    // favors rooks closer to the center
-    // also rooks near the enemy's side
-    // and rooks in the middle two files
-    private static final float[][] ROOK_PLACEMENT_TABLE = new float[][]
-    {
-        new float[] { 0.125f, 0.145f, 0.16f, 0.185f, 0.185f, 0.16f, 0.145f, 0.125f },
-        new float[] { 0.125f, 0.145f, 0.16f, 0.185f, 0.185f, 0.16f, 0.145f, 0.125f },
-        new float[] { 0.1f, 0.135f, 0.15f, 0.15f, 0.15f, 0.15f, 0.135f, 0.1f },
-        new float[] { 0.085f, 0.145f, 0.16f, 0.19f, 0.19f, 0.16f, 0.145f, 0.085f },
-        new float[] { 0.05f, 0.145f, 0.16f, 0.19f, 0.19f, 0.16f, 0.145f, 0.05f },
-        new float[] { 0f, 0.12f, 0.12f, 0.135f, 0.135f, 0.12f, 0.12f, 0f },
-        new float[] { -0.1f, 0.065f, 0.065f, 0.085f, 0.085f, 0.065f, 0.065f, -0.1f },
-        new float[] { -0.1f, -0.075f, 0.025f, 0.075f, 0.075f, 0.025f, -0.075f, -0.1f }
-    };
-
-    // favors queens closer to the center. harshly peanlizes queens at the edges
-    // slightly buffs queens on the opponent's edge of the board
-    private static final float[][] QUEEN_PLACEMENT_TABLE = new float[][]
-    {
-        new float[] { -0.125f, 0.035f, 0.045f, 0.045f, 0.045f, 0.045f, 0.035f, -0.125f },
-        new float[] { -0.075f, 0.07f, 0.095f, 0.095f, 0.095f, 0.095f, 0.07f, -0.075f },
-        new float[] { -0.035f, 0.085f, 0.1f, 0.125f, 0.125f, 0.1f, 0.085f, -0.035f },
-        new float[] { 0f, 0.085f, 0.1f, 0.185f, 0.185f, 0.1f, 0.085f, 0f },
-        new float[] { 0f, 0.085f, 0.1f, 0.185f, 0.185f, 0.1f, 0.085f, 0f },
-        new float[] { -0.035f, 0.1f, 0.1f, 0.1f, 0.1f, 0.1f, 0.1f, -0.035f },
-        new float[] { -0.075f, 0.065f, 0.065f, 0.07f, 0.07f, 0.065f, 0.065f, -0.075f },
-        new float[] { -0.125f, -0.025f, 0f, 0.045f, 0.045f, 0f, -0.025f, -0.125f }
-    };
-
-    // buffs hiding in the corners on the king's side
-    // heavily punishes being in the opponent's side or in the middle
-    private static final float[][] KING_PLACEMENT_TABLE_MIDDLEGAME = new float[][]
-    {
-        new float[] { -QUEEN_VALUE, -QUEEN_VALUE, -QUEEN_VALUE, -QUEEN_VALUE, -QUEEN_VALUE, -QUEEN_VALUE, -QUEEN_VALUE, -QUEEN_VALUE },
-        new float[] { -4f, -5f, -6f, -8f, -8f, -6f, -5f, -4f },
-        new float[] { -4f, -5f, -6f, -8f, -8f, -6f, -5f, -4f },
-        new float[] { -4f, -5f, -6f, -8f, -8f, -6f, -5f, -4f },
-        new float[] { -1f, -1.75f, -2.5f, -4f, -4f, -2.5f, -1.75f, -1f },
-        new float[] { -0.185f, -0.3f, -0.45f, -0.75f, -0.75f, -0.45f, -0.3f, -0.185f },
-        new float[] { 0.035f, 0.035f, 0.035f, -0.115f, -0.115f, 0.035f, 0.035f, 0.035f },
-        new float[] { 0.175f, 0.15f, 0.1f, -0.1f, -0.1f, 0.1f, 0.15f, 0.175f }
-    };
-
-    // same as queen's placement table
-    private static final float[][] KING_PLACEMENT_TABLE_ENDGAME = new float[][]
-    {
-        new float[] { -0.125f, 0.035f, 0.045f, 0.045f, 0.045f, 0.045f, 0.035f, -0.125f },
-        new float[] { -0.075f, 0.07f, 0.095f, 0.095f, 0.095f, 0.095f, 0.07f, -0.075f },
-        new float[] { -0.035f, 0.085f, 0.1f, 0.125f, 0.125f, 0.1f, 0.085f, -0.035f },
-        new float[] { 0f, 0.085f, 0.1f, 0.185f, 0.185f, 0.1f, 0.085f, 0f },
-        new float[] { 0f, 0.085f, 0.1f, 0.185f, 0.185f, 0.1f, 0.085f, 0f },
-        new float[] { -0.035f, 0.1f, 0.1f, 0.1f, 0.1f, 0.1f, 0.1f, -0.035f },
-        new float[] { -0.075f, 0.065f, 0.065f, 0.07f, 0.07f, 0.065f, 0.065f, -0.075f },
-        new float[] { -0.125f, -0.025f, 0f, 0.045f, 0.045f, 0f, -0.025f, -0.125f }
-    };
-    //#endregion
-    
-    //#region King safety movement penalty
-    private static final float KING_AS_QUEEN_MOVEMENT_PENALTY = 0.075f;
-    //#endregion
-    //#endregion
+    // the piece square tables of the parameters, indexed by [piece][square]
+    private final float[][] middlegamePlacementTables;
+    private final float[][] endgamePlacementTables;
 
     public ChessEngine(Board _board)
+    {
+        this(_board, DEFAULT_PARAMETERS);
+    }
+
+    /**
+     * @param _board the engine's internal Chess board
+     * @param _parameters the weights of the evaluation. They must not be changed while the engine is in use.
+     */
+    public ChessEngine(Board _board, EvaluationParameters _parameters)
+    {
+        this(_board, _parameters, null);
+    }
+
+    /**
+     * @param _board the engine's internal Chess board
+     * @param _network the network that evaluates positions instead of the hand-crafted evaluation
+     */
+    public ChessEngine(Board _board, NnueNetwork _network)
+    {
+        this(_board, DEFAULT_PARAMETERS, _network);
+    }
+
+    private ChessEngine(Board _board, EvaluationParameters _parameters, NnueNetwork _network)
     {
         board = _board;
-        rand = new Random();
+        parameters = _parameters;
+        middlegamePlacementTables = BuildPlacementTables(_parameters, true);
+        endgamePlacementTables = BuildPlacementTables(_parameters, false);
+        network = _network;
+        transpositionTable = new TranspositionTable(DEFAULT_TRANSPOSITION_TABLE_SIZE_MEGABYTES * 1024L);
+        gameContext = NewContext(_board, transpositionTable);
     }
 
     //#region Searching
+    /**
+     * Searches the given position without touching the engine's internal Chess board.
+     * <p>
+     * Unlike "FindBestMove", this function is thread-safe. Every call runs on its own
+     * pooled search context with its own board, so any number of threads can search with
+     * the same engine at once while sharing its read-only tables.
+     * <p>
+     * The search deepens one ply at a time until it reaches the depth of the limits or runs out of
+     * nodes or time, and the result of the deepest completed depth is returned.
+     * @param _fen the position to search
+     * @param _limits how deep and how long to search
+     * @return the result of the search. If the best line's score is positive, the position was evaluated
+     * as better for white, but if the score is negative, the position is better for black.
+     * @throws IllegalArgumentException if the depth of the limits is out of range
+     */
+    public SearchResult Search(String _fen, SearchLimits _limits) throws IllegalArgumentException
+    {
+        SearchContext _context = AcquireContext();
+
+        try
+        {
+            _context.board.loadFromFen(_fen);
+
+            return Search(_context, _limits);
+        }
+
+        finally
+        {
+            ReleaseContext(_context);
+        }
+    }
+
+    /**
+     * Same as the FEN overload of "Search", except that the positions played on the board before
+     * its current one count too, so that the search sees repetitions of them. The given board is only
+     * read, never modified.
+     * @param _position the position to search, with the game that led to it
+     * @param _limits how deep and how long to search
+     * @return the result of the search
+     * @throws IllegalArgumentException if the depth of the limits is out of range
+     */
+    public SearchResult Search(Board _position, SearchLimits _limits) throws IllegalArgumentException
+    {
+        SearchContext _context = AcquireContext();
+
+        try
+        {
+            LoadPosition(_context.board, _position);
+
+            return Search(_context, _limits);
+        }
+
+        finally
+        {
+            ReleaseContext(_context);
+        }
+    }
+
+    /**
+     * Same as "SearchAsync" with an iteration subscriber, without one.
+     * @param _fen the position to search
+     * @param _limits how deep and how long to search
+     * @return the best line of the search, completed once the search ends
+     */
+    public CompletableFuture<ScoredLine> SearchAsync(String _fen, SearchLimits _limits)
+    {
+        return SearchAsync(_fen, _limits, null);
+    }
+
+    /**
+     * Starts a search like "Search" on its own virtual thread and returns right away.
+     * <p>
+     * Cancelling the returned future stops the search within about a thousand nodes, which is a few
+     * milliseconds at most. The best line of every completed depth is published to the subscriber as soon
+     * as the depth finishes, so that a caller can show ever deeper results while the search runs. The
+     * subscriber is completed when the search ends, or completed exceptionally if it was cancelled or failed.
+     * @param _fen the position to search
+     * @param _limits how deep and how long to search
+     * @param _iterationSubscriber the subscriber to the best lines of the completed depths, or null
+     * @return the best line of the search, completed once the search ends. Like "Search", a positive
+     * score means the position was evaluated as better for white.
+     */
+    public CompletableFuture<ScoredLine> SearchAsync(String _fen, SearchLimits _limits, Flow.Subscriber<? super ScoredLine> _iterationSubscriber)
+    {
+        CompletableFuture<ScoredLine> _result = new CompletableFuture<>();
+        SubmissionPublisher<ScoredLine> _iterations = new SubmissionPublisher<>();
+        AtomicBoolean _stopSignal = new AtomicBoolean();
+
+        // subscribed before the search starts so that no depth is missed
+        if (_iterationSubscriber != null)
+            _iterations.subscribe(_iterationSubscriber);
+
+        // a cancelled future stops the search
+        _result.whenComplete((_line, _exception) -> _stopSignal.set(true));
+
+        Thread.ofVirtual().name("async-search").start(() ->
+        {
+            SearchContext _context = AcquireContext();
+
+            try
+            {
+                _context.board.loadFromFen(_fen);
+                _context.stopSignal = _stopSignal;
+                _context.iterationListener = _iterations::submit;
+
+                _result.complete(Search(_context, _limits).getBestLine());
+
+                if (_result.isCancelled())
+                    _iterations.closeExceptionally(new CancellationException("The search was cancelled."));
+
+                else
+                    _iterations.close();
+            }
+
+            catch (RuntimeException | Error e)
+            {
+                _result.completeExceptionally(e);
+                _iterations.closeExceptionally(e);
+            }
+
+            finally
+            {
+                ReleaseContext(_context);
+            }
+        });
+
+        return _result;
+    }
+
+    /**
+     * Searches for the best lines that start with different root moves, so that the alternatives
+     * to the best move can be compared. Like "Search", this can be called by several threads at once.
+     * <p>
+     * Every depth first searches for the best line, then searches again without the root moves of
+     * the lines found so far, until it has the number of lines asked for. The searches share the
+     * transposition table, so each one after the first mostly reuses the work of the ones before it.
+     * @param _fen the position to search
+     * @param _limits how deep and how long to search
+     * @param _numLines the number of lines to find
+     * @return the lines ordered from best to worst for the side to move. There are fewer lines
+     * if there are fewer legal moves, and a single empty line if the game is already over.
+     * Like "Search", a positive score means the position was evaluated as better for white.
+     * @throws IllegalArgumentException if the depth of the limits is out of range or there isn't at least one line
+     */
+    public List<ScoredLine> SearchMultiPv(String _fen, SearchLimits _limits, int _numLines) throws IllegalArgumentException
+    {
+        if (_numLines < 1)
+            throw new IllegalArgumentException("The number of lines should be at least 1.");
+
+        CheckNumPlies(_limits.getDepth());
+
+        SearchContext _context = AcquireContext();
+
+        try
+        {
+            _context.board.loadFromFen(_fen);
+
+            _context.Reset
+            (
+                _limits.isAlphaBetaPruning(), _limits.isHeuristicMoveOrdering(),
+                _limits.isQuiescence(), null
+            );
+            _context.SetLimits(_limits, System.nanoTime());
+            _context.ClearMoveOrdering();
+
+            List<ScoredLine> _bestLines = new ArrayList<>();
+
+            ScoredLine _gameOverLine = GetGameOverLine(_context.board);
+            if (_gameOverLine != null)
+            {
+                _bestLines.add(_gameOverLine);
+                return _bestLines;
+            }
+
+            for (int _depth = 1; _depth <= Math.max(1, _limits.getDepth()); _depth++)
+            {
+                List<ScoredLine> _lines = new ArrayList<>();
+                List<Move> _excludedMoves = new ArrayList<>();
+
+                SearchIterationEvent _event = new SearchIterationEvent();
+                _event.begin();
+
+                while (_lines.size() < _numLines)
+                {
+                    ScoredLine _line = SearchRoot(_context, _depth, _excludedMoves);
+
+                    // every root move already has a line
+                    if (_line == null || _context.isStopped)
+                        break;
+
+                    _lines.add(_line);
+                    _excludedMoves.add(_line.getLine().get(0));
+                }
+
+                CommitIterationEvent(_event, _context, _depth, _lines.isEmpty() ? null : _lines.get(0));
+
+                // an unfinished depth is only used if no depth has finished
+                if (_context.isStopped)
+                {
+                    if (_bestLines.isEmpty())
+                        _bestLines = _lines;
+
+                    break;
+                }
+
+                _bestLines = _lines;
+
+                ScoredLine _bestLineOfDepth = _lines.get(0);
+                if (_context.timeManager != null && !_context.timeManager.ShouldStartNextIteration
+                (
+                    _bestLineOfDepth.getLine().get(0), GetSideMultiplier(_context.board) * _bestLineOfDepth.getScore(), System.nanoTime()
+                ))
+                    break;
+            }
+
+            if (_bestLines.isEmpty())
+                _bestLines.add(GetFallbackLine(_context.board));
+
+            // the scores are from white's perspective, so black's best lines have the lowest scores
+            if (_context.board.getSideToMove() == Side.WHITE)
+                _bestLines.sort(Collections.reverseOrder());
+
+            else
+                Collections.sort(_bestLines);
+
+            return _bestLines;
+        }
+
+        finally
+        {
+            ReleaseContext(_context);
+        }
+    }
+
+    /**
+     * Empties the transposition table, so that later searches don't depend on earlier ones.
+     * Must not be called while the engine is searching.
+     */
+    public void ClearTranspositionTable()
+    {
+        transpositionTable.Clear();
+    }
+
+    /**
+     * Starts a game from the given position whose searches keep their state from one move to the next.
+     * @param _fen the position the game starts from
+     * @return the session of the game
+     */
+    public GameSession NewGameSession(String _fen)
+    {
+        return new GameSession(this, NewContext(new Board(), transpositionTable), _fen);
+    }
+
+    /**
+     * Same as the other "NewGameSession", but the game gets a small transposition table of its own
+     * instead of sharing the engine's, for hosting many games at once. The other tables of the engine,
+     * like the piece square tables, bitbases, and persistent hash store, are still shared.
+     * @param _fen the position the game starts from
+     * @param _tableSizeKilobytes the max size of the game's transposition table
+     * @return the session of the game
+     * @throws IllegalArgumentException if the table size is less than 1 kilobyte
+     */
+    public GameSession NewGameSession(String _fen, int _tableSizeKilobytes) throws IllegalArgumentException
+    {
+        return new GameSession(this, NewContext(new Board(), new TranspositionTable(_tableSizeKilobytes)), _fen);
+    }
+
+    /**
+     * Searches the current position of a com.chess.engine.GameSession. The transposition table moves on
+     * to a new generation and the context's move ordering is aged instead of cleared.
+     * @param _context the session's own context, whose board is at the position to search
+     * @param _limits how deep and how long to search
+     * @param _predictedMove the move the session's last search expected to play now, or null
+     * @param _numPliesPlayed the number of moves played since the session's last search
+     * @return the result of the search
+     */
+    SearchResult SearchGameSession(SearchContext _context, SearchLimits _limits, Move _predictedMove, int _numPliesPlayed)
+    {
+        _context.transpositionTable.AdvanceGeneration();
+        _context.AgeMoveOrdering(_numPliesPlayed);
+
+        return Search(_context, _limits, _predictedMove != null ? PackedMove.Encode(_predictedMove) : PackedMove.NONE);
+    }
+
+    /**
+     * Searches a single root move the way "Search" searches it among the others, for the searches
+     * that split the root moves between several engines. Like "Search", this function is thread-safe.
+     * @param _fen the root position
+     * @param _rootMove the legal root move to search
+     * @param _numPlies the max number of plies to search into, counting the root move
+     * @param _alpha the score the move has to beat, from the perspective of the side to move at the root.
+     * A move that doesn't beat it is scored as exactly <code>_alpha</code>, which is much cheaper to find.
+     * @return the result of the search. Its line starts with the root move, and its score is positive if
+     * the position after the move is better for white, like the score of "Search".
+     * @throws IllegalArgumentException if _numPlies is out of range
+     */
+    SearchResult SearchRootMove(String _fen, Move _rootMove, int _numPlies, float _alpha) throws IllegalArgumentException
+    {
+        return SearchRootMove(_fen, _rootMove, _numPlies, _alpha, null);
+    }
+
+    /**
+     * Same as the other "SearchRootMove", but another thread can stop the search within about a thousand
+     * nodes by setting the signal, when nobody wants its result anymore. The result of a stopped search
+     * is meaningless.
+     * @param _stopSignal the signal that stops the search once it is set, or null
+     */
+    SearchResult SearchRootMove(String _fen, Move _rootMove, int _numPlies, float _alpha, AtomicBoolean _stopSignal)
+    throws IllegalArgumentException
+    {
+        CheckNumPlies(_numPlies);
+
+        SearchContext _context = AcquireContext();
+
+        try
+        {
+            long _startTimeNanoseconds = System.nanoTime();
+
+            _context.board.loadFromFen(_fen);
+            _context.Reset(true, true, true, null);
+            _context.ClearMoveOrdering();
+            _context.stopSignal = _stopSignal;
+
+            float _eval = 0f;
+            List<Move> _line = null;
+
+            // the shallower depths fill the table and killer moves that order the deepest one
+            for (int _depth = 1; _depth <= Math.max(1, _numPlies); _depth++)
+            {
+                _context.DoMove(_rootMove);
+                _eval = -FindBestMove(_context, _depth, -Float.MAX_VALUE, -_alpha, 2);
+                _context.UndoMove();
+
+                _line = GetRootLine(_context, _rootMove);
+
+                if (_context.isStopped)
+                    break;
+            }
+
+            return new SearchResult
+            (
+                new ScoredLine(_line, GetSideMultiplier(_context.board) * _eval), _numPlies,
+                _context.numNodes, _context.numLazyEvaluations, System.nanoTime() - _startTimeNanoseconds, null
+            );
+        }
+
+        finally
+        {
+            ReleaseContext(_context);
+        }
+    }
+
+    /**
+     * Searches the context's board without the move ordering of any earlier search.
+     */
+    SearchResult Search(SearchContext _context, SearchLimits _limits)
+    {
+        _context.ClearMoveOrdering();
+
+        return Search(_context, _limits, PackedMove.NONE);
+    }
+
+    /**
+     * @param _predictedMove the packed move to search first at the root, or PackedMove.NONE
+     */
+    private SearchResult Search(SearchContext _context, SearchLimits _limits, short _predictedMove)
+    {
+        CheckNumPlies(_limits.getDepth());
+
+        long _startTimeNanoseconds = System.nanoTime();
+        _context.Reset
+        (
+            _limits.isAlphaBetaPruning(), _limits.isHeuristicMoveOrdering(),
+            _limits.isQuiescence(), null
+        );
+        _context.SetLimits(_limits, _startTimeNanoseconds);
+        _context.rootMoveHint = _predictedMove;
+
+        ScoredLine _bestLine = GetGameOverLine(_context.board);
+        int _completedDepth = 0;
+
+        PersistentHashStore _store = persistentHashStore;
+        // at a skill level, the root move is picked with noise, so it isn't the position's real best move.
+        // it mustn't be stored for full strength searches, and a stored best move would skip the noise
+        boolean _shouldUseStore = _store != null && _context.shouldUseTranspositionTable && _context.rootScoreNoise == 0f;
+
+        if (_bestLine == null && _shouldUseStore)
+        {
+            long _entry = _store.Probe(_context.GetKey());
+            Move _storedMove = _entry != TranspositionTable.NO_ENTRY ? PackedMove.Decode(TranspositionTable.GetMove(_entry)) : null;
+
+            // the position was already searched at least as deep, maybe before a restart
+            if (_storedMove != null && TranspositionTable.GetBound(_entry) == TranspositionTable.EXACT
+                && TranspositionTable.GetDepth(_entry) >= _limits.getDepth()
+                && _context.board.legalMoves().contains(_storedMove))
+            {
+                List<Move> _line = new ArrayList<>();
+                _line.add(_storedMove);
+
+                _bestLine = new ScoredLine(_line, GetSideMultiplier(_context.board) * TranspositionTable.GetScore(_entry));
+                _completedDepth = TranspositionTable.GetDepth(_entry);
+            }
+        }
+
+        if (_bestLine == null)
+        {
+            for (int _depth = 1; _depth <= Math.max(1, _limits.getDepth()); _depth++)
+            {
+                SearchIterationEvent _event = new SearchIterationEvent();
+                _event.begin();
+
+                ScoredLine _line = SearchRoot(_context, _depth);
+                CommitIterationEvent(_event, _context, _depth, _line);
+
+                // an unfinished depth is only used if no depth has finished
+                if (_context.isStopped)
+                {
+                    if (_bestLine == null)
+                        _bestLine = _line;
+
+                    break;
+                }
+
+                _bestLine = _line;
+                _completedDepth = _depth;
+                _context.rootMoveHint = PackedMove.Encode(_line.getLine().get(0));
+
+                if (_context.iterationListener != null)
+                    _context.iterationListener.accept(_line);
+
+                // the clock can end the search early once the best move has settled
+                if (_context.timeManager != null && !_context.timeManager.ShouldStartNextIteration
+                (
+                    _line.getLine().get(0), GetSideMultiplier(_context.board) * _line.getScore(), System.nanoTime()
+                ))
+                    break;
+            }
+
+            // stopped before a single root move was searched
+            if (_bestLine == null)
+                _bestLine = GetFallbackLine(_context.board);
+
+            else if (_shouldUseStore && _completedDepth >= PersistentHashStore.MIN_DEPTH)
+            {
+                _store.Store
+                (
+                    _context.GetKey(), _completedDepth, TranspositionTable.EXACT,
+                    GetSideMultiplier(_context.board) * _bestLine.getScore(), PackedMove.Encode(_bestLine.getLine().get(0))
+                );
+            }
+        }
+
+        return new SearchResult
+        (
+            _bestLine, _completedDepth, _context.numNodes, _context.numLazyEvaluations,
+            System.nanoTime() - _startTimeNanoseconds, _context.profile
+        );
+    }
+
+    /**
+     * Fills in and commits an iteration event if a Java Flight Recorder recording wants it.
+     * @param _event the event, begun before the depth was searched
+     * @param _context the context that searched the depth
+     * @param _depth the depth
+     * @param _line the best line of the depth, or null if there isn't one
+     */
+    private void CommitIterationEvent(SearchIterationEvent _event, SearchContext _context, int _depth, ScoredLine _line)
+    {
+        _event.end();
+
+        if (!_event.shouldCommit())
+            return;
+
+        _event.fen = _context.board.getFen();
+        _event.depth = _depth;
+        _event.bestMove = _line != null && !_line.getLine().isEmpty() ? _line.getLine().get(0).toString() : null;
+        _event.score = _line != null ? _line.getScore() : 0f;
+        _event.numNodes = _context.numNodes;
+        _event.isCompleted = !_context.isStopped;
+        _event.commit();
+    }
+
     /**
      * Finds the best move for the side to move according to the engine's internal Chess board.
      * This function uses the Negamax algorithm.
      * Various settings can be turned on and off using the boolean parameters.
+     * <p>
+     * This function searches on the engine's internal board, so it should not be called by several
+     * threads at once. Use "Search" for concurrent searches.
      * @param _numPlies the max number of plies to search into
      * @param _shouldUseAlphaBetaPruning a boolean flag that determines if alpha beta pruning is used
      * @param _shouldUseHeuristicMoveOrdering a boolean flag that determines if heuristic move ordering is used
@@ -204,189 +629,691 @@ public class ChessEngine
     boolean _shouldUseHeuristicMoveOrdering, boolean _shouldUseQuiescence,
     MutableInt _numMovesEvaluatedReciever) throws IllegalArgumentException
     {
-        //#region Initial exit conditions
-        if (board.isDraw())
-            return new ScoredMove(new Move(Square.NONE, Square.NONE), 0f);
+        ScoredLine _bestLine = FindBestLine
+        (
+            _numPlies, _shouldUseAlphaBetaPruning, _shouldUseHeuristicMoveOrdering,
+            _shouldUseQuiescence, _numMovesEvaluatedReciever
+        );
+
+        List<Move> _line = _bestLine.getLine();
+        if (_line.isEmpty())
+            return new ScoredMove(new Move(Square.NONE, Square.NONE), _bestLine.getScore());
+
+        return new ScoredMove(_line.get(0), _bestLine.getScore());
+    }
+
+    /**
+     * Same as "FindBestMove", but also returns the principal variation,
+     * the line of best play for both sides that the engine expects after the best move.
+     * @param _numPlies the max number of plies to search into
+     * @param _shouldUseAlphaBetaPruning a boolean flag that determines if alpha beta pruning is used
+     * @param _shouldUseHeuristicMoveOrdering a boolean flag that determines if heuristic move ordering is used
+     * @param _numMovesEvaluatedReciever an object to count the number of moves evaluated.
+     * If move counting is not required, set this parameter to null.
+     * @return the best line for the side to move, starting with the best move.
+     * The line is empty if the game is already over.
+     * If the line's score is positive, the position was evaluated as better for white,
+     * but if the line's score is negative, the position is better for black.
+     * @throws IllegalArgumentException if _numPlies is less than 0 or too large to keep track of the line
+     */
+    public ScoredLine FindBestLine(int _numPlies, boolean _shouldUseAlphaBetaPruning,
+    boolean _shouldUseHeuristicMoveOrdering, boolean _shouldUseQuiescence,
+    MutableInt _numMovesEvaluatedReciever) throws IllegalArgumentException
+    {
+        ScoredLine _gameOverLine = GetGameOverLine(board);
+        if (_gameOverLine != null)
+            return _gameOverLine;
+
+        CheckNumPlies(_numPlies);
 
-        if (board.isMated())
+        gameContext.board = board;
+        gameContext.Reset
+        (
+            _shouldUseAlphaBetaPruning, _shouldUseHeuristicMoveOrdering,
+            _shouldUseQuiescence, _numMovesEvaluatedReciever
+        );
+        gameContext.ClearMoveOrdering();
+
+        return SearchRoot(gameContext, _numPlies);
+    }
+
+    /**
+     * @param _board the board to check
+     * @return an empty line scored as a draw or checkmate if the game is over, or null if it isn't
+     */
+    private ScoredLine GetGameOverLine(Board _board)
+    {
+        if (_board.isDraw())
+            return new ScoredLine(new ArrayList<>(), 0f);
+
+        if (_board.isMated())
         {
-            Square _whiteKingLocation = board.getKingSquare(Side.WHITE);
+            Square _whiteKingLocation = _board.getKingSquare(Side.WHITE);
 
-            if (board.squareAttackedBy(_whiteKingLocation, Side.BLACK) != 0L)
-                return new ScoredMove(new Move(Square.NONE, Square.NONE), Float.MAX_VALUE);
+            if (_board.squareAttackedBy(_whiteKingLocation, Side.BLACK) != 0L)
+                return new ScoredLine(new ArrayList<>(), Float.MAX_VALUE);
 
             else
-                return new ScoredMove(new Move(Square.NONE, Square.NONE), -Float.MAX_VALUE);
+                return new ScoredLine(new ArrayList<>(), -Float.MAX_VALUE);
         }
-        //#endregion
 
-        //#region Argument checking
+        return null;
+    }
+
+    /**
+     * @param _board the board to get a move for
+     * @return the first legal move, scored by the static evaluation
+     */
+    private ScoredLine GetFallbackLine(Board _board)
+    {
+        List<Move> _line = new ArrayList<>();
+        _line.add(_board.legalMoves().get(0));
+
+        return new ScoredLine(_line, Evaluate(_board, false));
+    }
+
+    private void CheckNumPlies(int _numPlies) throws IllegalArgumentException
+    {
         if (_numPlies < 0)
         {
             throw new IllegalArgumentException("The \"maxDepth\" parameter for the given" +
             " SearchingArgs is " + _numPlies + " when it should be greater than or equal to 0.");
         }
-        //#endregion
 
-        List<Move> _legalMoves = board.legalMoves();
-        if (_shouldUseHeuristicMoveOrdering)
-            SortMovesHeuristically(_legalMoves, false, false);
+        if (_numPlies >= MAX_PLY - 1)
+        {
+            throw new IllegalArgumentException("The \"maxDepth\" parameter for the given" +
+            " SearchingArgs is " + _numPlies + " when it should be less than " + (MAX_PLY - 1) + ".");
+        }
+    }
 
-        ScoredMove _bestMoveForSide = null;
+    /**
+     * Searches every root move of the context's board.
+     * @param _context the context to search with. Its board must not be a finished game.
+     * @param _numPlies the max number of plies to search into
+     * @return the best line, or null if the search was stopped before any root move was searched.
+     * If the line's score is positive, the position was evaluated as better for white,
+     * but if the line's score is negative, the position is better for black.
+     */
+    private ScoredLine SearchRoot(SearchContext _context, int _numPlies)
+    {
+        return SearchRoot(_context, _numPlies, Collections.emptyList());
+    }
 
-        float _alpha = -Float.MAX_VALUE;
+    /**
+     * Searches every root move of the context's board except the excluded ones.
+     * @param _context the context to search with. Its board must not be a finished game.
+     * @param _numPlies the max number of plies to search into
+     * @param _excludedMoves the root moves to skip
+     * @return the best line, or null if the search was stopped before any root move was searched
+     * or every root move is excluded
+     */
+    private ScoredLine SearchRoot(SearchContext _context, int _numPlies, List<Move> _excludedMoves)
+    {
+        Board _board = _context.board;
+
+        List<Move> _legalMoves = _board.legalMoves();
+        _legalMoves.removeAll(_excludedMoves);
+
+        if (_context.shouldUseHeuristicMoveOrdering)
+        {
+            SortMovesHeuristically(_board, _legalMoves, false, _context, 1, false);
+
+            // the best move of the last depth, or the predicted move of a game, is the most likely to be best again
+            PackedMove.MoveToFront(_legalMoves, _context.rootMoveHint);
+        }
+
+        ScoredMove _bestMoveForSide = null;
         float _beta = Float.MAX_VALUE;
 
-        List<ScoredMove> _equalMoves = new ArrayList<>();
+        // the root moves within this much of the best one are the candidates to be played
+        float _candidateMargin = Math.max(_context.rootScoreMargin, SCORE_TOLERANCE);
+
+        // every move searched against the best score minus the margin instead of the best score itself,
+        // so the moves that could be candidates come back with exact scores, while worse moves are still
+        // cut off as soon as they are shown to be worse
+        List<ScoredMove> _candidateMoves = new ArrayList<>();
+        List<List<Move>> _candidateLines = new ArrayList<>();
 
-        for (Move _curMove : _legalMoves)
+        for (int _moveIndex = 0; _moveIndex < _legalMoves.size(); _moveIndex++)
         {
-            board.doMove(_curMove);
+            Move _curMove = _legalMoves.get(_moveIndex);
 
-            float _eval = -FindBestMove
-            (
-                _numPlies, _shouldUseAlphaBetaPruning, _shouldUseHeuristicMoveOrdering,
-                _shouldUseQuiescence, _numMovesEvaluatedReciever, -_beta, -_alpha, 2
-            );
+            RootMoveEvent _event = new RootMoveEvent();
+            _event.begin();
+            long _numNodesBefore = _context.numNodes;
 
-            board.undoMove();
+            float _alpha = _bestMoveForSide == null ? -Float.MAX_VALUE : _bestMoveForSide.getScore() - _candidateMargin;
 
-            if (_bestMoveForSide == null)
-            {
-                _bestMoveForSide = new ScoredMove(_curMove, _eval);
-                _equalMoves.add(_bestMoveForSide);
-            }
+            _context.DoMove(_curMove);
 
-            else if (_eval + SCORE_TOLERANCE > _bestMoveForSide.getScore()
-                && _eval - SCORE_TOLERANCE < _bestMoveForSide.getScore())
-            {
-                _equalMoves.add(_bestMoveForSide);
-            }
+            float _eval = -FindBestMove(_context, _numPlies, -_beta, -_alpha, 2);
 
-            else
+            _context.UndoMove();
+
+            // the score of an unfinished move can't be trusted
+            if (_context.isStopped)
+                break;
+
+            _event.end();
+            if (_event.shouldCommit())
             {
-                if (_eval > _bestMoveForSide.getScore())
-                {
-                    _bestMoveForSide = new ScoredMove(_curMove, _eval);
-                    _equalMoves.clear();
-                    _equalMoves.add(_bestMoveForSide);
-                }
-                
-                _alpha = Math.max(_alpha, _eval);
-                
-                if (_shouldUseAlphaBetaPruning && _alpha >= _beta) break;
+                _event.move = _curMove.toString();
+                _event.moveIndex = _moveIndex;
+                _event.depth = _numPlies;
+                _event.score = _eval;
+                _event.numNodes = _context.numNodes - _numNodesBefore;
+                _event.commit();
             }
-        }
 
-        // only with the initial call because this method
-        // only returns the root move, not the line, so this won't
-        // affect the outcome for other depths
-        if (_equalMoves.size() != 1)
-        {
-            int _randIndex = rand.nextInt(_equalMoves.size());
-            _bestMoveForSide = _equalMoves.get(_randIndex);
+            // a move that doesn't beat alpha comes back scored as exactly alpha, which isn't its real score
+            if (_bestMoveForSide != null && _eval <= _alpha)
+                continue;
+
+            ScoredMove _scoredMove = new ScoredMove(_curMove, _eval);
+            _candidateMoves.add(_scoredMove);
+            _candidateLines.add(GetRootLine(_context, _curMove));
+
+            if (_bestMoveForSide == null || _eval > _bestMoveForSide.getScore())
+                _bestMoveForSide = _scoredMove;
+
+            if (_context.shouldUseAlphaBetaPruning && _bestMoveForSide.getScore() >= _beta) break;
         }
 
+        if (_bestMoveForSide == null)
+            return null;
+
+        int _pickedIndex = PickCandidate(_candidateMoves, _bestMoveForSide.getScore() - _candidateMargin, _context.rootScoreNoise);
+
         // changing score variable to be negative when
         // black is better, positive when white is better
-        _bestMoveForSide = new ScoredMove
+        return new ScoredLine
         (
-            _bestMoveForSide.getMove(),
-            GetSideMultiplier() * _bestMoveForSide.getScore()
+            _candidateLines.get(_pickedIndex), GetSideMultiplier(_board) * _candidateMoves.get(_pickedIndex).getScore()
         );
+    }
+
+    /**
+     * Picks the root move to play among the candidates. Without noise, every candidate is as good as
+     * the best move, and one is picked at random. With noise, every candidate's score gets a random
+     * amount added, and the highest noisy score is picked, so the further a candidate is behind the
+     * best move, the less often it's played.
+     * @param _candidateMoves the root moves with exact scores, from the perspective of the side to move
+     * @param _minScore the lowest score a candidate can have to be picked. The best move always has it.
+     * @param _noise the standard deviation of the noise, in pawns
+     * @return the index of the picked candidate
+     */
+    private int PickCandidate(List<ScoredMove> _candidateMoves, float _minScore, float _noise)
+    {
+        ThreadLocalRandom _random = ThreadLocalRandom.current();
+        int _pickedIndex = -1;
+        int _numCandidates = 0;
+        float _bestNoisyScore = 0f;
+
+        for (int i = 0; i < _candidateMoves.size(); i++)
+        {
+            float _score = _candidateMoves.get(i).getScore();
+
+            // the best score rose after the move was searched
+            if (_score < _minScore)
+                continue;
+
+            if (_noise > 0f)
+            {
+                float _noisyScore = _score + (float) _random.nextGaussian() * _noise;
+
+                if (_pickedIndex < 0 || _noisyScore > _bestNoisyScore)
+                {
+                    _pickedIndex = i;
+                    _bestNoisyScore = _noisyScore;
+                }
+            }
+
+            // each of the equal moves is kept with the same chance
+            else if (_random.nextInt(++_numCandidates) == 0)
+                _pickedIndex = i;
+        }
 
-        return _bestMoveForSide;
+        return _pickedIndex;
+    }
+
+    /**
+     * Builds the line starting with the given root move from
+     * the principal variation the search just found after it.
+     * @param _context the context that searched the root move
+     * @param _rootMove the root move that was just searched
+     * @return the root move followed by the principal variation
+     */
+    private List<Move> GetRootLine(SearchContext _context, Move _rootMove)
+    {
+        List<Move> _line = new ArrayList<>();
+        _line.add(_rootMove);
+
+        for (int i = 2; i < _context.pvLengths[2]; i++)
+            _line.add(PackedMove.Decode(_context.pvTable[2][i]));
+
+        return _line;
     }
 
     /**
      * Internal function for recursion so that outside callers do not need to pass in every parameter.
+     * @param _context the search's board, settings, and bookkeeping
      * @param _numPlies
-     * @param _shouldUseAlphaBetaPruning
-     * @param _shouldUseHeuristicMoveOrdering
-     * @param _numPositionsEvaluatedReciever
-     * @param _rootMove
-     * @param _curPerspective
      * @param _alpha
      * @param _beta
      * @param _ply
-     * @return the best move for the side to move, which is determined by the engine's Chess board.
+     * @return the best move for the side to move, which is determined by the context's Chess board.
      */
-    private float FindBestMove(int _numPlies, boolean _shouldUseAlphaBetaPruning,
-    boolean _shouldUseHeuristicMoveOrdering, boolean _shouldUseQuiescence,
-    MutableInt _numPositionsEvaluatedReciever, float _alpha, float _beta, int _ply)
+    private float FindBestMove(SearchContext _context, int _numPlies, float _alpha, float _beta, int _ply)
     {
+        Board _board = _context.board;
+
+        // the principal variation from this ply is empty until a move raises alpha
+        _context.pvLengths[_ply] = _ply;
+
         //#region Exit conditions
-        if (board.isDraw())
+        if (_context.CountNode())
             return 0f;
 
-        // the side whose turn it is currently must be the side
-        // that is mated because it is not possible for a side to
-        // checkmate itself
+        // the positions after the root moves are ply 1 of the profile
+        if (_context.profile != null)
+            _context.profile.CountNode(_ply - 1);
+
+        if (_context.IsDraw())
+            return 0f;
+
+        if (bitbases != null)
+        {
+            int _bitbaseResult = bitbases.Probe(_board);
+
+            // a mated position is a loss in the bitbases too, but it has to score as mate, or delivering
+            // mate would look no better than any other winning move. it's scored below like every other mate
+            if (_bitbaseResult != Bitbases.NOT_FOUND
+                && (_bitbaseResult != Bitbases.LOSS || !IsCheckmated(_board)))
+                return GetBitbaseScore(_context, _bitbaseResult);
+        }
+
+        if (_ply > _numPlies)
+        {
+            if (_context.numPositionsEvaluatedReciever != null)
+                _context.numPositionsEvaluatedReciever.increment();
+
+            if (_context.shouldUseQuiescence)
+            {
+                if (!QuiescenceBurstEvent.IsSampled(_context.numQuiescenceSearches++))
+                    return Quiescence(_context, _alpha, _beta, _ply);
+
+                QuiescenceBurstEvent _event = new QuiescenceBurstEvent();
+                _event.begin();
+                long _numNodesBefore = _context.numNodes;
+
+                float _score = Quiescence(_context, _alpha, _beta, _ply);
+
+                _event.end();
+                if (_event.shouldCommit())
+                {
+                    _event.fen = _board.getFen();
+                    _event.ply = _ply - 1;
+                    _event.numNodes = _context.numNodes - _numNodesBefore;
+                    _event.commit();
+                }
+
+                return _score;
+            }
+
+            if (IsCheckmated(_board))
+                return -Float.MAX_VALUE;
+
+            if (IsStalemated(_board))
+                return 0f;
+
+            return EvaluateForSideToMove(_context, _alpha, _beta);
+        }
+
+        // the number of plies searched below this node
+        int _depth = _numPlies - _ply + 1;
+        long _key = _context.GetKey();
+        short _hashMove = PackedMove.NONE;
+
+        if (_context.shouldUseTranspositionTable)
+        {
+            long _entry = ProbeHashEntry(_context.transpositionTable, _key, _depth);
+
+            if (_entry != TranspositionTable.NO_ENTRY)
+            {
+                _hashMove = TranspositionTable.GetMove(_entry);
+
+                if (TranspositionTable.GetDepth(_entry) >= _depth)
+                {
+                    float _score = TranspositionTable.GetScore(_entry);
+                    int _bound = TranspositionTable.GetBound(_entry);
+
+                    if (_bound != TranspositionTable.UPPER_BOUND && _score >= _beta)
+                        return _beta;
+
+                    if (_bound != TranspositionTable.LOWER_BOUND && _score <= _alpha)
+                        return _alpha;
+
+                    if (_bound == TranspositionTable.EXACT)
+                    {
+                        // the rest of the line isn't stored, so the principal variation ends at the stored move
+                        if (_hashMove != PackedMove.NONE)
+                        {
+                            _context.pvTable[_ply][_ply] = _hashMove;
+                            _context.pvLengths[_ply] = _ply + 1;
+                        }
+
+                        return _score;
+                    }
+                }
+            }
+        }
+        //#endregion
+
+        List<Move> _sortedLegalMoves = _board.legalMoves();
+
+        // the one move generation of the node also finds out whether the game is over.
+        // the side whose turn it is currently must be the side that is mated because it is
+        // not possible for a side to checkmate itself
 
         // so, always returning -Float.MAX_VALUE because this function uses
         // negamax algorithm
-        if (board.isMated())
+        if (_sortedLegalMoves.isEmpty())
+            return _board.isKingAttacked() ? -Float.MAX_VALUE : 0f;
+
+        if (_context.shouldUseHeuristicMoveOrdering) SortMovesHeuristically(_board, _sortedLegalMoves, false, _context, _ply, false);
+
+        // the best move of an earlier search of the position is the most likely to cause a cutoff
+        PackedMove.MoveToFront(_sortedLegalMoves, _hashMove);
+
+        short _bestMove = PackedMove.NONE;
+
+        for (int _moveIndex = 0; _moveIndex < _sortedLegalMoves.size(); _moveIndex++)
+        {
+            Move _curMove = _sortedLegalMoves.get(_moveIndex);
+
+            _context.DoMove(_curMove);
+            float _eval = -FindBestMove(_context, _numPlies, -_beta, -_alpha, _ply + 1);
+            _context.UndoMove();
+
+            if (_context.isStopped)
+                return 0f;
+
+            if (_context.shouldUseAlphaBetaPruning && _eval >= _beta)
+            {
+                if (_context.profile != null)
+                    _context.profile.CountCutoff(_ply - 1, _moveIndex);
+
+                if (_context.shouldUseHeuristicMoveOrdering
+                    && _board.getPiece(_curMove.getTo()) == Piece.NONE && _curMove.getPromotion() == Piece.NONE)
+                    _context.AddCutoffMove(PackedMove.Encode(_curMove), _ply, _depth);
+
+                if (_context.shouldUseTranspositionTable)
+                    StoreHashEntry(_context.transpositionTable, _key, _depth, TranspositionTable.LOWER_BOUND, _beta, PackedMove.Encode(_curMove));
+
+                return _beta;
+            }
+
+            if (_eval > _alpha)
+            {
+                _alpha = _eval;
+                _bestMove = PackedMove.Encode(_curMove);
+                UpdatePrincipalVariation(_context, _bestMove, _ply);
+            }
+        }
+
+        if (_context.shouldUseTranspositionTable)
+        {
+            StoreHashEntry
+            (
+                _context.transpositionTable, _key, _depth, _bestMove != PackedMove.NONE ? TranspositionTable.EXACT : TranspositionTable.UPPER_BOUND,
+                _alpha, _bestMove
+            );
+        }
+
+        return _alpha;
+    }
+    
+    /**
+     * Probes the transposition table, and the persistent hash store if the table
+     * doesn't have an entry deep enough for the node.
+     * @param _table the transposition table of the search
+     * @param _key the Zobrist key of the node
+     * @param _depth the number of plies the node will be searched to
+     * @return the deepest entry found, or TranspositionTable.NO_ENTRY
+     */
+    private long ProbeHashEntry(TranspositionTable _table, long _key, int _depth)
+    {
+        long _entry = _table.Probe(_key);
+        PersistentHashStore _store = persistentHashStore;
+
+        if (_store != null && _depth >= PersistentHashStore.MIN_DEPTH
+            && (_entry == TranspositionTable.NO_ENTRY || TranspositionTable.GetDepth(_entry) < _depth))
+        {
+            long _storedEntry = _store.Probe(_key);
+
+            if (_storedEntry != TranspositionTable.NO_ENTRY
+                && (_entry == TranspositionTable.NO_ENTRY || TranspositionTable.GetDepth(_storedEntry) > TranspositionTable.GetDepth(_entry)))
+                _entry = _storedEntry;
+        }
+
+        return _entry;
+    }
+
+    /**
+     * Stores a search result in the transposition table, and in the persistent hash store if it is deep enough.
+     */
+    private void StoreHashEntry(TranspositionTable _table, long _key, int _depth, int _bound, float _score, short _bestMove)
+    {
+        _table.Store(_key, _depth, _bound, _score, _bestMove);
+
+        PersistentHashStore _store = persistentHashStore;
+        if (_store != null && _depth >= PersistentHashStore.MIN_DEPTH)
+            _store.Store(_key, _depth, _bound, _score, _bestMove);
+    }
+
+    /**
+     * Makes the given move followed by the principal variation of the next ply
+     * the principal variation of the given ply.
+     * @param _context the context whose principal variation is updated
+     * @param _move the move that raised alpha at the given ply
+     * @param _ply the ply of the move
+     */
+    private void UpdatePrincipalVariation(SearchContext _context, short _move, int _ply)
+    {
+        short[][] _pvTable = _context.pvTable;
+        int[] _pvLengths = _context.pvLengths;
+
+        _pvTable[_ply][_ply] = _move;
+
+        int _nextPly = _ply + 1;
+        System.arraycopy(_pvTable[_nextPly], _nextPly, _pvTable[_ply], _nextPly, _pvLengths[_nextPly] - _nextPly);
+        _pvLengths[_ply] = _pvLengths[_nextPly];
+    }
+
+    /**
+     * Searches only captures on the engine's internal Chess board until the position is quiet.
+     * @param _alpha
+     * @param _beta
+     * @return the score of the position for the side to move
+     */
+    public float Quiescence(float _alpha, float _beta)
+    {
+        gameContext.board = board;
+        gameContext.Reset(true, true, true, null);
+
+        return Quiescence(gameContext, _alpha, _beta, 1);
+    }
+
+    float Quiescence(SearchContext _context, float _alpha, float _beta, int _ply)
+    {
+        Board _board = _context.board;
+
+        if (_context.CountNode())
+            return 0f;
+
+        if (_context.profile != null)
+            _context.profile.CountQuiescenceNode(_ply - 1);
+
+        // before the bitbases, which score a mated position as any other loss
+        if (IsCheckmated(_board))
             return -Float.MAX_VALUE;
 
-        if (_ply > _numPlies)
+        if (IsStalemated(_board))
+            return 0f;
+
+        if (bitbases != null)
         {
-            if (_numPositionsEvaluatedReciever != null)
-                _numPositionsEvaluatedReciever.increment();
+            int _bitbaseResult = bitbases.Probe(_board);
+
+            if (_bitbaseResult != Bitbases.NOT_FOUND)
+                return GetBitbaseScore(_context, _bitbaseResult);
+        }
+
+        float _standPat = EvaluateForSideToMove(_context, _alpha, _beta);
 
-            if (_shouldUseQuiescence)
-                return Quiescence(_alpha, _beta);
+        if (_standPat >= _beta)
+            return _standPat;
+        
+        _alpha = Math.max(_alpha, _standPat);
 
-            return Evaluate(false) * GetSideMultiplier();
+        List<Move> _captures = _board.pseudoLegalCaptures();
+        SortMovesHeuristically(_board, _captures, true, _context, _ply, false);
+        for (int _moveIndex = 0; _moveIndex < _captures.size(); _moveIndex++)
+        {
+            Move _capture = _captures.get(_moveIndex);
+
+            _context.DoMove(_capture);
+            float _eval = -Quiescence(_context, -_beta, -_alpha, _ply + 1);
+            _context.UndoMove();
+
+            if (_context.isStopped)
+                return 0f;
+
+            if (_eval >= _beta)
+            {
+                if (_context.profile != null)
+                    _context.profile.CountCutoff(_ply - 1, _moveIndex);
+
+                return _eval;
+            }
+
+            _alpha = Math.max(_alpha, _eval);
         }
-        //#endregion
 
-        List<Move> _sortedLegalMoves = board.legalMoves();
+        return _alpha;
+    }
+
+    /**
+     * Leaves don't generate their moves, so they look for checkmate here instead.
+     * Only a side in check can be mated, so the legal moves are only generated when the king is attacked.
+     * @param _board the board to check
+     * @return true if the side to move is checkmated
+     */
+    private static boolean IsCheckmated(Board _board)
+    {
+        return _board.isKingAttacked() && _board.legalMoves().isEmpty();
+    }
+
+    /**
+     * Leaves look for stalemate here, but only when the side to move has nothing left but its king
+     * and pawns, which is where stalemates happen in practice. With any other piece left, a stalemate
+     * needs that piece to be pinned or blocked, which is rare enough that generating the moves of
+     * every leaf to find it isn't worth it.
+     * @param _board the board to check
+     * @return true if the side to move is stalemated
+     */
+    private static boolean IsStalemated(Board _board)
+    {
+        Side _side = _board.getSideToMove();
+        long _kingAndPawns = _board.getBitboard(Piece.make(_side, PieceType.KING))
+            | _board.getBitboard(Piece.make(_side, PieceType.PAWN));
+
+        return (_board.getBitboard(_side) & ~_kingAndPawns) == 0L
+            && !_board.isKingAttacked() && _board.legalMoves().isEmpty();
+    }
+
+    /**
+     * Converts a bitbase result into a score for the side to move.
+     * The evaluation is added to won and lost positions so that the
+     * winning side still makes progress towards checkmate.
+     * @param _context the context whose board was probed
+     * @param _bitbaseResult Bitbases.WIN, Bitbases.DRAW, or Bitbases.LOSS
+     * @return the score from the perspective of the side to move
+     */
+    private float GetBitbaseScore(SearchContext _context, int _bitbaseResult)
+    {
+        if (_bitbaseResult == Bitbases.DRAW)
+            return 0f;
+
+        float _evaluation = EvaluateForSideToMove(_context, -Float.MAX_VALUE, Float.MAX_VALUE);
+
+        return _bitbaseResult == Bitbases.WIN
+            ? BITBASE_WIN_SCORE + _evaluation
+            : -BITBASE_WIN_SCORE + _evaluation;
+    }
+
+    /**
+     * Evaluates the context's board with the network's accumulators if the engine has a network,
+     * or with the hand-crafted evaluation if it doesn't.
+     * <p>
+     * The hand-crafted evaluation is lazy: if the material and piece placement are already
+     * far enough outside the window, the rest of the terms are skipped.
+     * @param _context the context to evaluate the board of
+     * @param _alpha the lower bound of the search window, from the perspective of the side to move
+     * @param _beta the upper bound of the search window, from the perspective of the side to move
+     * @return the evaluation from the perspective of the side to move
+     */
+    private float EvaluateForSideToMove(SearchContext _context, float _alpha, float _beta)
+    {
+        if (_context.accumulator != null)
+            return _context.accumulator.Evaluate(_context.board.getSideToMove());
 
-        if (_shouldUseHeuristicMoveOrdering) SortMovesHeuristically(_sortedLegalMoves, false, false);
+        int _sideMultiplier = GetSideMultiplier(_context.board);
 
-        for (Move _curMove : _sortedLegalMoves)
-        {
-            board.doMove(_curMove);
-            float _eval = -FindBestMove
-            (
-                _numPlies, _shouldUseAlphaBetaPruning, _shouldUseHeuristicMoveOrdering,
-                _shouldUseQuiescence, _numPositionsEvaluatedReciever, -_beta, -_alpha, _ply + 1
-            );
-            board.undoMove();
+        // the window is flipped for black, because the hand-crafted evaluation is from white's perspective
+        float _evaluation = _sideMultiplier == 1
+            ? Evaluate(_context.board, _alpha, _beta, false, _context)
+            : Evaluate(_context.board, -_beta, -_alpha, false, _context);
 
-            _alpha = Math.max(_alpha, _eval);
+        return _evaluation * _sideMultiplier;
+    }
 
-            if (_shouldUseAlphaBetaPruning && _alpha >= _beta)
-                return _beta;
-        }
+    /**
+     * Loads the position of one board into another along with the keys of the positions played before it,
+     * which is all a search reads of a game's history.
+     * @param _board the board to load into
+     * @param _position the board to copy the position and history of
+     */
+    private static void LoadPosition(Board _board, Board _position)
+    {
+        _board.loadFromFen(_position.getFen());
 
-        return _alpha;
+        // the history ends with the current position's key, like the one "loadFromFen" leaves
+        _board.getHistory().clear();
+        _board.getHistory().addAll(_position.getHistory());
     }
-    
-    public float Quiescence(float _alpha, float _beta)
-    {
-        float _standPat = Evaluate(false) * GetSideMultiplier();
 
-        if (_standPat >= _beta)
-            return _standPat;
-        
-        _alpha = Math.max(_alpha, _standPat);
+    private SearchContext AcquireContext()
+    {
+        SearchContext _context = contextPool.poll();
 
-        List<Move> _captures = MoveGenerator.generatePseudoLegalCaptures(board);        
-        SortMovesHeuristically(_captures, true, false);
-        for (Move _capture : _captures)
-        {
-            board.doMove(_capture);
-            float _eval = -Quiescence(-_beta, -_alpha);
-            board.undoMove();
+        return _context != null ? _context : NewContext(new Board(), transpositionTable);
+    }
 
-            if (_eval >= _beta)
-                return _eval;
+    private SearchContext NewContext(Board _board, TranspositionTable _table)
+    {
+        SearchContext _context = new SearchContext(_board, network);
+        _context.transpositionTable = _table;
 
-            _alpha = Math.max(_alpha, _eval);
-        }
+        return _context;
+    }
 
-        return _alpha;
+    private void ReleaseContext(SearchContext _context)
+    {
+        _context.stopSignal = null;
+        _context.iterationListener = null;
+        contextPool.offer(_context);
     }
     //#endregion
 
@@ -398,29 +1325,56 @@ public class ChessEngine
      */
     public float Evaluate(boolean _debug)
     {
-        Square _whiteKingLocation = board.getFistPieceLocation(Piece.WHITE_KING);
-        
-        if (board.isMated())
-        {
-            if (board.squareAttackedBy(_whiteKingLocation, Side.BLACK) != 0L)
-                return -Float.MAX_VALUE;
+        return Evaluate(board, _debug);
+    }
 
-            else return Float.MAX_VALUE;
-        }
-        
-        List<Square> _whitePawnLocations = board.getPieceLocation(Piece.WHITE_PAWN);
-        List<Square> _whiteKnightLocations = board.getPieceLocation(Piece.WHITE_KNIGHT);
-        List<Square> _whiteBishopLocations = board.getPieceLocation(Piece.WHITE_BISHOP);
-        List<Square> _whiteRookLocations = board.getPieceLocation(Piece.WHITE_ROOK);
-        Square _whiteQueenLocation = board.getFistPieceLocation(Piece.WHITE_QUEEN);
+    /**
+     * Evaluates the position of the given Chess board. The board is only read, so this
+     * function can be called by several threads at once as long as each has its own board.
+     * <p>
+     * If the engine has a network, the network evaluates the board from scratch.
+     * <p>
+     * Checkmate is not detected here. The search finds it from the moves it generates anyway.
+     * @param _board the board to evaluate
+     * @return the evaluation of the position. A positive number indicates a favorable position for
+     * white, and a negative number favors black.
+     */
+    public float Evaluate(Board _board, boolean _debug)
+    {
+        if (network != null)
+            return network.Evaluate(_board);
+
+        return Evaluate(_board, -Float.MAX_VALUE, Float.MAX_VALUE, _debug, null);
+    }
+
+    /**
+     * The hand-crafted evaluation. The material and piece placement are calculated first, and if they are
+     * at least "lazyEvaluationMargin" outside the window, the rest of the evaluation can't bring them back
+     * into it, so they are returned as they are.
+     * @param _board the board to evaluate
+     * @param _alpha the lower bound of the window, from white's perspective
+     * @param _beta the upper bound of the window, from white's perspective
+     * @param _context counts the lazy evaluations. Can be null.
+     * @return the evaluation of the position. A positive number indicates a favorable position for
+     * white, and a negative number favors black.
+     */
+    private float Evaluate(Board _board, float _alpha, float _beta, boolean _debug, SearchContext _context)
+    {
+        Square _whiteKingLocation = _board.getFistPieceLocation(Piece.WHITE_KING);
+
+        List<Square> _whitePawnLocations = _board.getPieceLocation(Piece.WHITE_PAWN);
+        List<Square> _whiteKnightLocations = _board.getPieceLocation(Piece.WHITE_KNIGHT);
+        List<Square> _whiteBishopLocations = _board.getPieceLocation(Piece.WHITE_BISHOP);
+        List<Square> _whiteRookLocations = _board.getPieceLocation(Piece.WHITE_ROOK);
+        Square _whiteQueenLocation = _board.getFistPieceLocation(Piece.WHITE_QUEEN);
         boolean _isThereWhiteQueen = _whiteQueenLocation != Square.NONE;
         
-        Square _blackKingLocation = board.getFistPieceLocation(Piece.BLACK_KING);
-        List<Square> _blackPawnLocations = board.getPieceLocation(Piece.BLACK_PAWN);
-        List<Square> _blackKnightLocations = board.getPieceLocation(Piece.BLACK_KNIGHT);
-        List<Square> _blackBishopLocations = board.getPieceLocation(Piece.BLACK_BISHOP);
-        List<Square> _blackRookLocations = board.getPieceLocation(Piece.BLACK_ROOK);
-        Square _blackQueenLocation = board.getFistPieceLocation(Piece.BLACK_QUEEN);
+        Square _blackKingLocation = _board.getFistPieceLocation(Piece.BLACK_KING);
+        List<Square> _blackPawnLocations = _board.getPieceLocation(Piece.BLACK_PAWN);
+        List<Square> _blackKnightLocations = _board.getPieceLocation(Piece.BLACK_KNIGHT);
+        List<Square> _blackBishopLocations = _board.getPieceLocation(Piece.BLACK_BISHOP);
+        List<Square> _blackRookLocations = _board.getPieceLocation(Piece.BLACK_ROOK);
+        Square _blackQueenLocation = _board.getFistPieceLocation(Piece.BLACK_QUEEN);
         boolean _isThereBlackQueen = _blackQueenLocation != Square.NONE;
 
         final float _ENDGAME_WEIGHT = CalculateEndgameWeight
@@ -445,18 +1399,34 @@ public class ChessEngine
             _isThereBlackQueen ? 1 : 0, _debug
         );
 
-        float _whitePosition = EvaluatePosition
+        long[] _pieceBitboards = GetPieceBitboards(_board);
+
+        float _whitePlacement = EvaluatePiecePlacement(_pieceBitboards, Side.WHITE, _ENDGAME_WEIGHT);
+        float _blackPlacement = EvaluatePiecePlacement(_pieceBitboards, Side.BLACK, _ENDGAME_WEIGHT);
+
+        float _lazyEvaluation = (_whiteMaterial + _whitePlacement) - (_blackMaterial + _blackPlacement);
+        float _lazyEvaluationMargin = lazyEvaluationMargin;
+
+        if (_lazyEvaluationMargin > 0f
+            && (_lazyEvaluation - _lazyEvaluationMargin >= _beta || _lazyEvaluation + _lazyEvaluationMargin <= _alpha))
+        {
+            if (_context != null)
+                _context.numLazyEvaluations++;
+
+            return _lazyEvaluation;
+        }
+
+        AttackMaps _attackMaps = new AttackMaps(_pieceBitboards);
+
+        float _whitePosition = _whitePlacement + EvaluatePosition
         (
-            Side.WHITE, _ENDGAME_WEIGHT, _whitePawnLocations, _whiteKnightLocations,
-            _whiteBishopLocations, _whiteRookLocations, _whiteQueenLocation,
-            _whiteKingLocation
+            Side.WHITE, _ENDGAME_WEIGHT, _pieceBitboards[Piece.WHITE_PAWN.ordinal()], _attackMaps
         );
 
 
-        float _blackPosition = EvaluatePosition
+        float _blackPosition = _blackPlacement + EvaluatePosition
         (
-            Side.BLACK, _ENDGAME_WEIGHT, _blackPawnLocations, _blackKnightLocations, _blackBishopLocations,
-            _blackRookLocations, _blackQueenLocation, _blackKingLocation
+            Side.BLACK, _ENDGAME_WEIGHT, _pieceBitboards[Piece.BLACK_PAWN.ordinal()], _attackMaps
         );
 
         if (_debug)
@@ -471,6 +1441,229 @@ public class ChessEngine
         return (_whiteMaterial + _whitePosition) - (_blackMaterial + _blackPosition);
     }
 
+    /**
+     * Evaluates many positions packed as bitboards, for com.chess.engine.BatchEvaluator.
+     * The evaluations are the same as "Evaluate" without the lazy exit.
+     * <p>
+     * The positions are a structure of arrays, one array per piece, so the material and endgame weights
+     * of the whole range are calculated first in one pass that reads the arrays in order. The rest of the
+     * terms need all the bitboards of a position together, so they are gathered into one small array
+     * that is reused for every position.
+     * @param _bitboards the bitboards of the positions, indexed by [piece ordinal][position]
+     * @param _start the index of the first position to evaluate
+     * @param _end the index after the last position to evaluate
+     * @param _results receives the evaluations from white's perspective, the one of position i at
+     * _resultsOffset + i - _start
+     * @param _resultsOffset the index in the results of the evaluation of the first position
+     */
+    void EvaluateBatch(long[][] _bitboards, int _start, int _end, float[] _results, int _resultsOffset)
+    {
+        float[] _endgameWeights = new float[_end - _start];
+
+        long[] _whitePawns = _bitboards[Piece.WHITE_PAWN.ordinal()];
+        long[] _whiteKnights = _bitboards[Piece.WHITE_KNIGHT.ordinal()];
+        long[] _whiteBishops = _bitboards[Piece.WHITE_BISHOP.ordinal()];
+        long[] _whiteRooks = _bitboards[Piece.WHITE_ROOK.ordinal()];
+        long[] _whiteQueens = _bitboards[Piece.WHITE_QUEEN.ordinal()];
+        long[] _blackPawns = _bitboards[Piece.BLACK_PAWN.ordinal()];
+        long[] _blackKnights = _bitboards[Piece.BLACK_KNIGHT.ordinal()];
+        long[] _blackBishops = _bitboards[Piece.BLACK_BISHOP.ordinal()];
+        long[] _blackRooks = _bitboards[Piece.BLACK_ROOK.ordinal()];
+        long[] _blackQueens = _bitboards[Piece.BLACK_QUEEN.ordinal()];
+
+        // material and endgame weights
+        for (int i = _start; i < _end; i++)
+        {
+            int _numWhiteQueens = _whiteQueens[i] != 0L ? 1 : 0;
+            int _numBlackQueens = _blackQueens[i] != 0L ? 1 : 0;
+
+            float _whiteMaterial = EvaluateMaterial
+            (
+                Long.bitCount(_whitePawns[i]), Long.bitCount(_whiteKnights[i]), Long.bitCount(_whiteBishops[i]),
+                Long.bitCount(_whiteRooks[i]), _numWhiteQueens, false
+            );
+
+            float _blackMaterial = EvaluateMaterial
+            (
+                Long.bitCount(_blackPawns[i]), Long.bitCount(_blackKnights[i]), Long.bitCount(_blackBishops[i]),
+                Long.bitCount(_blackRooks[i]), _numBlackQueens, false
+            );
+
+            _endgameWeights[i - _start] = CalculateEndgameWeight
+            (
+                Long.bitCount(_whitePawns[i] | _blackPawns[i]),
+                Long.bitCount(_whiteKnights[i] | _whiteBishops[i] | _blackKnights[i] | _blackBishops[i]),
+                Long.bitCount(_whiteRooks[i] | _blackRooks[i]), _numWhiteQueens + _numBlackQueens
+            );
+
+            _results[_resultsOffset + i - _start] = _whiteMaterial - _blackMaterial;
+        }
+
+        // piece placement, pawn structure, mobility, king safety, and threats
+        long[] _pieceBitboards = new long[Piece.NONE.ordinal()];
+
+        for (int i = _start; i < _end; i++)
+        {
+            for (int _piece = 0; _piece < _pieceBitboards.length; _piece++)
+                _pieceBitboards[_piece] = _bitboards[_piece][i];
+
+            float _endgameWeight = _endgameWeights[i - _start];
+            AttackMaps _attackMaps = new AttackMaps(_pieceBitboards);
+
+            float _whitePosition = EvaluatePiecePlacement(_pieceBitboards, Side.WHITE, _endgameWeight)
+                + EvaluatePosition(Side.WHITE, _endgameWeight, _whitePawns[i], _attackMaps);
+            float _blackPosition = EvaluatePiecePlacement(_pieceBitboards, Side.BLACK, _endgameWeight)
+                + EvaluatePosition(Side.BLACK, _endgameWeight, _blackPawns[i], _attackMaps);
+
+            _results[_resultsOffset + i - _start] += _whitePosition - _blackPosition;
+        }
+    }
+
+    /**
+     * @return the bitboard of every piece of the board, indexed by the ordinal of the piece
+     */
+    static long[] GetPieceBitboards(Board _board)
+    {
+        long[] _pieceBitboards = new long[Piece.NONE.ordinal()];
+
+        for (int _piece = 0; _piece < _pieceBitboards.length; _piece++)
+            _pieceBitboards[_piece] = _board.getBitboard(PIECES[_piece]);
+
+        return _pieceBitboards;
+    }
+
+    /**
+     * Writes how much each tuned parameter adds to the evaluation of the given board, so that
+     * the evaluation is the dot product of the features and "EvaluationParameters.ToVector".
+     * Used by the com.chess.engine.TexelTuner, so it must be kept in sync with "Evaluate".
+     * <p>
+     * The endgame weight is calculated with the engine's own parameters, so the features
+     * only stay exact while the piece values and endgame weights are the same.
+     * @param _board the board to extract the features of. It should not be checkmate.
+     * @param _features receives the features. Its length should be EvaluationParameters.NUM_TUNED_PARAMETERS.
+     */
+    void ExtractFeatures(Board _board, float[] _features)
+    {
+        Arrays.fill(_features, 0f);
+
+        final float _ENDGAME_WEIGHT = CalculateEndgameWeight
+        (
+            _board.getPieceLocation(Piece.WHITE_PAWN), _board.getPieceLocation(Piece.WHITE_KNIGHT),
+            _board.getPieceLocation(Piece.WHITE_BISHOP), _board.getPieceLocation(Piece.WHITE_ROOK),
+            _board.getFistPieceLocation(Piece.WHITE_QUEEN), _board.getFistPieceLocation(Piece.WHITE_KING),
+            _board.getPieceLocation(Piece.BLACK_PAWN), _board.getPieceLocation(Piece.BLACK_KNIGHT),
+            _board.getPieceLocation(Piece.BLACK_BISHOP), _board.getPieceLocation(Piece.BLACK_ROOK),
+            _board.getFistPieceLocation(Piece.BLACK_QUEEN), _board.getFistPieceLocation(Piece.BLACK_KING)
+        );
+
+        AttackMaps _attackMaps = new AttackMaps(GetPieceBitboards(_board));
+
+        AddFeatures(_board, Side.WHITE, 1f, _ENDGAME_WEIGHT, _attackMaps, _features);
+        AddFeatures(_board, Side.BLACK, -1f, _ENDGAME_WEIGHT, _attackMaps, _features);
+    }
+
+    private void AddFeatures(Board _board, Side _side, float _sign, float _endgameWeight, AttackMaps _attackMaps,
+    float[] _features)
+    {
+        //#region Material and piece placement
+        PieceType[] _pieceTypes = { PieceType.PAWN, PieceType.KNIGHT, PieceType.BISHOP, PieceType.ROOK };
+        int[] _tableIndices =
+        {
+            EvaluationParameters.PAWN_TABLE_MIDDLEGAME_INDEX, EvaluationParameters.KNIGHT_TABLE_INDEX,
+            EvaluationParameters.BISHOP_TABLE_INDEX, EvaluationParameters.ROOK_TABLE_INDEX
+        };
+
+        for (int i = 0; i < _pieceTypes.length; i++)
+        {
+            for (Square _location : _board.getPieceLocation(Piece.make(_side, _pieceTypes[i])))
+            {
+                _features[EvaluationParameters.PIECE_VALUES_INDEX + i] += _sign;
+
+                int _square = GetTableSquare(_side, _location);
+
+                // only pawns are tapered
+                if (_pieceTypes[i] == PieceType.PAWN)
+                {
+                    _features[EvaluationParameters.PAWN_TABLE_MIDDLEGAME_INDEX + _square] += _sign * (1 - _endgameWeight);
+                    _features[EvaluationParameters.PAWN_TABLE_ENDGAME_INDEX + _square] += _sign * _endgameWeight;
+                }
+
+                else
+                    _features[_tableIndices[i] + _square] += _sign;
+            }
+        }
+
+        // like "Evaluate", only one queen is counted
+        Square _queenLocation = _board.getFistPieceLocation(Piece.make(_side, PieceType.QUEEN));
+        if (_queenLocation != Square.NONE)
+        {
+            _features[EvaluationParameters.PIECE_VALUES_INDEX + 4] += _sign;
+            _features[EvaluationParameters.QUEEN_TABLE_INDEX + GetTableSquare(_side, _queenLocation)] += _sign;
+        }
+
+        int _kingSquare = GetTableSquare(_side, _board.getFistPieceLocation(Piece.make(_side, PieceType.KING)));
+        if (_endgameWeight > KING_ENDGAME_TABLE_WEIGHT)
+            _features[EvaluationParameters.KING_TABLE_ENDGAME_INDEX + _kingSquare] += _sign;
+
+        else
+        {
+            _features[EvaluationParameters.KING_TABLE_MIDDLEGAME_INDEX + _kingSquare] += _sign * (1 - _endgameWeight);
+            _features[EvaluationParameters.KING_TABLE_ENDGAME_INDEX + _kingSquare] += _sign * _endgameWeight;
+        }
+        //#endregion
+
+        //#region Pawn structure
+        int[] _numPawnsPerFile = new int[8];
+        for (Square _pawnLocation : _board.getPieceLocation(Piece.make(_side, PieceType.PAWN)))
+            _numPawnsPerFile[_pawnLocation.getFile().ordinal()]++;
+
+        // the same penalties as "EvaluatePawnStructure"
+        for (int _file = 0; _file < 8; _file++)
+        {
+            int _numPawns = _numPawnsPerFile[_file];
+            if (_numPawns == 0)
+                continue;
+
+            boolean _isIsolated = (_file == 0 || _numPawnsPerFile[_file - 1] == 0)
+                && (_file == 7 || _numPawnsPerFile[_file + 1] == 0);
+
+            _features[EvaluationParameters.DOUBLED_PAWN_PENALTY_INDEX] -= _sign * (_numPawns + (_numPawns >= 2 ? 1 : 0));
+
+            if (_isIsolated)
+                _features[EvaluationParameters.ISOLATED_PAWN_PENALTY_INDEX] -= _sign * _numPawns;
+
+            if (_isIsolated && _numPawns >= 2)
+                _features[EvaluationParameters.DOUBLED_AND_ISOLATED_PENALTY_INDEX] -= _sign;
+        }
+        //#endregion
+
+        //#region Mobility, king safety, and threats
+        int[] _mobility = _attackMaps.mobility[_side.ordinal()];
+        for (int i = 0; i < 4; i++)
+            _features[EvaluationParameters.MOBILITY_WEIGHTS_INDEX + i] += _sign * _mobility[PieceType.KNIGHT.ordinal() + i];
+
+        float _kingSafetyWeight = GetKingSafetyWeight(_endgameWeight);
+        _features[EvaluationParameters.KING_AS_QUEEN_MOVEMENT_PENALTY_INDEX] -=
+            _sign * _kingSafetyWeight * _attackMaps.CountKingAsQueenMoves(_side);
+        _features[EvaluationParameters.KING_ZONE_ATTACK_PENALTY_INDEX] -=
+            _sign * _kingSafetyWeight * _attackMaps.CountKingZoneAttacks(_side);
+
+        _features[EvaluationParameters.HANGING_PIECE_PENALTY_INDEX] -= _sign * _attackMaps.CountHangingPieces(_side);
+        //#endregion
+    }
+
+    /**
+     * @return the index of the square in the piece square tables, which are written from white's perspective
+     */
+    private int GetTableSquare(Side _side, Square _location)
+    {
+        // same orientation as "EvaluatePiecePlacement"
+        if (_side == Side.WHITE)
+            return (7 - _location.getRank().ordinal()) * 8 + _location.getFile().ordinal();
+
+        return _location.getRank().ordinal() * 8 + 7 - _location.getFile().ordinal();
+    }
+
     /**
      * <STRONG>IMPORTANT NOTE:</STRONG> A negative number does not mean
      * an evaluation that favors black and a positive number does
@@ -499,8 +1692,8 @@ public class ChessEngine
             System.out.println("Num rooks: " + _numRooks);
             System.out.println("Num queens: " + _queenNum);
         }
-        float _totalMaterialValue = PAWN_VALUE * _numPawns + KNIGHT_VALUE * _numKnights
-        + BISHOP_VALUE * _numBishops + ROOK_VALUE * _numRooks + QUEEN_VALUE * _queenNum;
+        float _totalMaterialValue = parameters.pawnValue * _numPawns + parameters.knightValue * _numKnights
+        + parameters.bishopValue * _numBishops + parameters.rookValue * _numRooks + parameters.queenValue * _queenNum;
 
         return _totalMaterialValue;
     }
@@ -511,40 +1704,23 @@ public class ChessEngine
      * not mean an evaluation favors white necessarily.
      * That is applied in the "Evaluate" function.
      * <p>
-     * Evaluates the positional aspect of a Chess board by calling functions such as
-     * "EvaluatePiecePlacement", "EvaluatePawnStructure", and more internally.
-     * The function takes in the pawn and piece location parameters to optimize
+     * Evaluates the positional aspect of a Chess board other than the piece placement, which "Evaluate"
+     * calculates first, by calling functions such as "EvaluatePawnStructure" and more internally.
+     * The function takes in the pawns and attack maps to optimize
      * the "Evaluate" function.
      * <p>
-     * These parameters should be counted from the same side, position, and board.
-     * If there are no pawns, knights, bishops, or rooks, pass in an empty list.
-     * If there is no queen or king, pass in "Square.NONE" as the value.
-     * @param _pawnLocations the locations of every pawn of a side
-     * @param _knightLocations the locations of every knight of a side
-     * @param _bishopLocations the locations of every bishop of a side
-     * @param _rookLocations the locations of every rook of a side
-     * @param _queenLocation the location of the queen of a side
-     * @param _kingLocation the locations of every pawn of a side
-     * @return the evaluation of the board for a side based on its positional aspects.
+     * These parameters should be calculated from the same position.
+     * @param _pawns the bitboard of every pawn of a side
+     * @param _attackMaps the attacks of both sides in the position
+     * @return the evaluation of the position for a side based on its positional aspects.
      * A more positive number indicates that the position is better for the side being evaluated.
      */
-    private float EvaluatePosition(Side _side, float _endgameWeight,
-    List<Square> _pawnLocations, List<Square> _knightLocations, List<Square> _bishopLocations,
-    List<Square> _rookLocations, Square _queenLocation, Square _kingLocation)
+    private float EvaluatePosition(Side _side, float _endgameWeight, long _pawns, AttackMaps _attackMaps)
     {
-        return EvaluatePiecePlacement
-        (
-            _side, _endgameWeight, _pawnLocations, _knightLocations,
-            _bishopLocations, _rookLocations, _queenLocation, _kingLocation
-        )
-        + EvaluatePieceMobility
-        (
-            _knightLocations, _bishopLocations,
-            _rookLocations, _queenLocation
-        )
-        + EvaluatePawnStructure(_pawnLocations)
-        // clamping so that king safety does not have an affect in the endgame
-        + EvaluateKingSafety(_side, _kingLocation, _queenLocation) * Clamp(0.735f - _endgameWeight, 0f, 1f);
+        return EvaluatePieceMobility(_side, _attackMaps)
+        + EvaluatePawnStructure(_pawns)
+        + EvaluateKingSafety(_side, _attackMaps) * GetKingSafetyWeight(_endgameWeight)
+        - _attackMaps.CountHangingPieces(_side) * parameters.hangingPiecePenalty;
     }
 
     /**
@@ -574,8 +1750,6 @@ public class ChessEngine
     List<Square> _enemyBishopLocations, List<Square> _enemyRookLocations, Square _enemyQueenLocation,
     Square _enemyKingLocation)
     {
-        // if all pawns & pieces are present, endgame weight is 0
-
         // at most, 16
         int _numPawns = _pawnLocations.size() + _enemyPawnLocations.size();
         // at most, 8
@@ -587,13 +1761,25 @@ public class ChessEngine
         int _numQueens = (_queenLocation == Square.NONE ? 0 : 1)
         + (_enemyQueenLocation == Square.NONE ? 0 : 1);
 
+        return CalculateEndgameWeight(_numPawns, _numMinorPieces, _numRooks, _numQueens);
+    }
+
+    /**
+     * Same as the other "CalculateEndgameWeight", from the numbers of pieces of both sides.
+     * Only one queen of each side is counted.
+     */
+    private float CalculateEndgameWeight(int _numPawns, int _numMinorPieces, int _numRooks, int _numQueens)
+    {
+        // if all pawns & pieces are present, endgame weight is 0
         float _endgameWeight = 1f;
 
-        final float _PIECE_WEIGHT_SUM = (_numPawns * PAWN_VALUE * PAWN_WEIGHT) +
-        (_numMinorPieces * BISHOP_VALUE * MINOR_PIECE_WEIGHT) + (_numRooks * ROOK_VALUE * ROOK_WEIGHT)
-        + (_numQueens * QUEEN_VALUE * QUEEN_WEIGHT);
-        final float _MAX_WEIGHT_SUM = 16 * PAWN_VALUE * PAWN_WEIGHT + 8 * BISHOP_VALUE * MINOR_PIECE_WEIGHT
-        + 4 * ROOK_VALUE * ROOK_WEIGHT + 2 * QUEEN_VALUE * QUEEN_WEIGHT;
+        final float _PIECE_WEIGHT_SUM = (_numPawns * parameters.pawnValue * parameters.pawnWeight)
+        + (_numMinorPieces * parameters.bishopValue * parameters.minorPieceWeight)
+        + (_numRooks * parameters.rookValue * parameters.rookWeight)
+        + (_numQueens * parameters.queenValue * parameters.queenWeight);
+        final float _MAX_WEIGHT_SUM = 16 * parameters.pawnValue * parameters.pawnWeight
+        + 8 * parameters.bishopValue * parameters.minorPieceWeight
+        + 4 * parameters.rookValue * parameters.rookWeight + 2 * parameters.queenValue * parameters.queenWeight;
 
         // dividing by max result to "normalize" the subtraction
         // and keep it in the range 0 to 1
@@ -608,175 +1794,125 @@ public class ChessEngine
      * not mean an evaluation favors white necessarily.
      * That is applied in the "Evaluate" function.
      * <p>
-     * Evaluates the placement of each piece based on the private
-     * piece square tables in the engine. All given pawn and piece locations should be from the same
-     * side and board.
+     * Evaluates the placement of each piece of a side based on the engine's piece square tables.
+     * The middlegame and endgame placements are summed separately and tapered once at the end.
+     * Past KING_ENDGAME_TABLE_WEIGHT, the king's endgame table is added to both sums, which tapers
+     * to the endgame table alone.
+     * @param _pieceBitboards the bitboard of every piece, indexed by the ordinal of the piece
      * @param _perspective the side whose pieces are being evaluated
      * @param _endgameWeight a float from 0-1 representing how close the game is to the endgame.
      * A value closer to 1 represents a game closer to the endgame.
-     * @param _pawnLocations the squares of each pawn
-     * @param _knightLocations the squares of each knight
-     * @param _bishopLocations the squares of each bishop
-     * @param _rookLocations the squares of each rook
-     * @param _queenLocation the square of the queen
-     * @param _kingLocation the square of the king
      * @return the evaluation of the piece locations. A negative value indicates bad piece placement,
      * while a positive value means the opposite.
      */
-    private float EvaluatePiecePlacement(Side _perspective, float _endgameWeight,
-    List<Square> _pawnLocations, List<Square> _knightLocations, List<Square> _bishopLocations,
-    List<Square> _rookLocations, Square _queenLocation, Square _kingLocation)
+    private float EvaluatePiecePlacement(long[] _pieceBitboards, Side _perspective, float _endgameWeight)
     {
-        if (_perspective.equals(Side.WHITE))
-        {
-            float _piecePlacementEvaluation = 0f;
-
-            for (Square _pawnLocation : _pawnLocations)
-            {
-                int _row = 7 - _pawnLocation.getRank().ordinal();
-                int _column = _pawnLocation.getFile().ordinal();
-
-                _piecePlacementEvaluation += Lerp
-                (
-                    PAWN_PLACEMENT_TABLE_MIDDLEGAME[_row][_column],
-                    PAWN_PLACEMENT_TABLE_ENDGAME[_row][_column], _endgameWeight
-                );
-            }
-
-            for (Square _knightLocation : _knightLocations)
-            {
-                int _row = 7 - _knightLocation.getRank().ordinal();
-                int _column = _knightLocation.getFile().ordinal();
-
-                _piecePlacementEvaluation += KNIGHT_PLACEMENT_TABLE[_row][_column];
-            }
-
-            for (Square _bishopLocation : _bishopLocations)
-            {
-                int _row = 7 - _bishopLocation.getRank().ordinal();
-                int _column = _bishopLocation.getFile().ordinal();
-
-                _piecePlacementEvaluation += BISHOP_PLACEMENT_TABLE[_row][_column];
-            }
+        float _middlegamePlacement = 0f;
+        float _endgamePlacement = 0f;
 
-            for (Square _rookLocation : _rookLocations)
-            {
-                int _row = 7 - _rookLocation.getRank().ordinal();
-                int _column = _rookLocation.getFile().ordinal();
+        int _pawn = Piece.make(_perspective, PieceType.PAWN).ordinal();
+        int _queen = Piece.make(_perspective, PieceType.QUEEN).ordinal();
+        int _king = Piece.make(_perspective, PieceType.KING).ordinal();
 
-                _piecePlacementEvaluation += ROOK_PLACEMENT_TABLE[_row][_column];
-            }
+        // pawns, knights, bishops, and rooks
+        for (int _piece = _pawn; _piece < _queen; _piece++)
+        {
+            float[] _middlegameTable = middlegamePlacementTables[_piece];
+            float[] _endgameTable = endgamePlacementTables[_piece];
 
-            if (!_queenLocation.equals(Square.NONE))
+            for (long _pieces = _pieceBitboards[_piece]; _pieces != 0L; _pieces &= _pieces - 1)
             {
-                int _queenRow = 7 - _queenLocation.getRank().ordinal();
-                int _queenColumn = _queenLocation.getFile().ordinal();
+                int _square = Long.numberOfTrailingZeros(_pieces);
 
-                _piecePlacementEvaluation += QUEEN_PLACEMENT_TABLE[_queenRow][_queenColumn];
+                _middlegamePlacement += _middlegameTable[_square];
+                _endgamePlacement += _endgameTable[_square];
             }
-
-            int _kingRow = 7 - _kingLocation.getRank().ordinal();
-            int _kingColumn = _kingLocation.getFile().ordinal();
-
-            // doing this if it is most likely the endgame instead of lerping
-            // because of how strong the punishments are for being in center
-            // in the king middlegame table
-            if (_endgameWeight > 0.7) _piecePlacementEvaluation +=
-            KING_PLACEMENT_TABLE_ENDGAME[_kingRow][_kingColumn];
-
-            else _piecePlacementEvaluation +=
-            Lerp
-            (
-                KING_PLACEMENT_TABLE_MIDDLEGAME[_kingRow][_kingColumn],
-                KING_PLACEMENT_TABLE_ENDGAME[_kingRow][_kingColumn], _endgameWeight
-            );
-
-            return _piecePlacementEvaluation;
         }
 
-        else
+        // like the material, only the first queen counts
+        long _queens = _pieceBitboards[_queen];
+        if (_queens != 0L)
         {
-            float _piecePlacementEvaluation = 0f;
+            int _square = Long.numberOfTrailingZeros(_queens);
 
-            for (Square _pawnLocation : _pawnLocations)
-            {
-                int _row = _pawnLocation.getRank().ordinal();
-                int _column = 7 - _pawnLocation.getFile().ordinal();
+            _middlegamePlacement += middlegamePlacementTables[_queen][_square];
+            _endgamePlacement += endgamePlacementTables[_queen][_square];
+        }
 
-                _piecePlacementEvaluation += Lerp
-                (
-                    PAWN_PLACEMENT_TABLE_MIDDLEGAME[_row][_column],
-                    PAWN_PLACEMENT_TABLE_ENDGAME[_row][_column], _endgameWeight
-                );
-            }
+        int _kingSquare = Long.numberOfTrailingZeros(_pieceBitboards[_king]);
+        float[] _kingMiddlegameTable = _endgameWeight > KING_ENDGAME_TABLE_WEIGHT
+            ? endgamePlacementTables[_king]
+            : middlegamePlacementTables[_king];
 
-            for (Square _knightLocation : _knightLocations)
-            {
-                int _row = _knightLocation.getRank().ordinal();
-                int _column = 7 - _knightLocation.getFile().ordinal();
+        _middlegamePlacement += _kingMiddlegameTable[_kingSquare];
+        _endgamePlacement += endgamePlacementTables[_king][_kingSquare];
 
-                _piecePlacementEvaluation += KNIGHT_PLACEMENT_TABLE[_row][_column];
-            }
+        return Lerp(_middlegamePlacement, _endgamePlacement, _endgameWeight);
+    }
 
-            for (Square _bishopLocation : _bishopLocations)
-            {
-                int _row = _bishopLocation.getRank().ordinal();
-                int _column = 7 - _bishopLocation.getFile().ordinal();
+    /**
+     * Flattens the piece square tables of the parameters into one 64-entry table per piece,
+     * indexed by square and already flipped for black, so evaluating doesn't need any rank
+     * or file arithmetic. Pieces whose placement isn't tapered get the same table in both phases.
+     * @param _parameters the parameters with the tables
+     * @param _isMiddlegame true for the middlegame tables, false for the endgame tables
+     * @return the tables, indexed by [piece][square]
+     */
+    private static float[][] BuildPlacementTables(EvaluationParameters _parameters, boolean _isMiddlegame)
+    {
+        float[][][] _tablesByType =
+        {
+            _isMiddlegame ? _parameters.pawnPlacementTableMiddlegame : _parameters.pawnPlacementTableEndgame,
+            _parameters.knightPlacementTable,
+            _parameters.bishopPlacementTable,
+            _parameters.rookPlacementTable,
+            _parameters.queenPlacementTable,
+            _isMiddlegame ? _parameters.kingPlacementTableMiddlegame : _parameters.kingPlacementTableEndgame
+        };
 
-                _piecePlacementEvaluation += BISHOP_PLACEMENT_TABLE[_row][_column];
-            }
+        float[][] _placementTables = new float[PIECES.length][64];
 
-            for (Square _rookLocation : _rookLocations)
-            {
-                int _row = _rookLocation.getRank().ordinal();
-                int _column = 7 - _rookLocation.getFile().ordinal();
+        for (Piece _piece : PIECES)
+        {
+            if (_piece == Piece.NONE)
+                continue;
 
-                _piecePlacementEvaluation += ROOK_PLACEMENT_TABLE[_row][_column];
-            }
+            float[][] _table = _tablesByType[_piece.getPieceType().ordinal()];
 
-            if (!_queenLocation.equals(Square.NONE))
+            for (int _square = 0; _square < 64; _square++)
             {
-                int _queenRow = _queenLocation.getRank().ordinal();
-                int _queenColumn = 7 - _queenLocation.getFile().ordinal();
-    
-                _piecePlacementEvaluation += QUEEN_PLACEMENT_TABLE[_queenRow][_queenColumn];
-            }
-
-            int _kingRow = _kingLocation.getRank().ordinal();
-            int _kingColumn = 7 - _kingLocation.getFile().ordinal();
-
-            // doing this if it is most likely the endgame instead of lerping
-            // because of how strong the punishments are for being in center
-            // in the king middlegame table
-            if (_endgameWeight > 0.7) _piecePlacementEvaluation +=
-            KING_PLACEMENT_TABLE_ENDGAME[_kingRow][_kingColumn];
+                int _rank = _square / 8;
+                int _file = _square % 8;
 
-            else  _piecePlacementEvaluation +=
-            Lerp
-            (
-                KING_PLACEMENT_TABLE_MIDDLEGAME[_kingRow][_kingColumn],
-                KING_PLACEMENT_TABLE_ENDGAME[_kingRow][_kingColumn], _endgameWeight
-            );
-
-            return _piecePlacementEvaluation;
+                // the tables are written from white's perspective, with the eighth rank first
+                _placementTables[_piece.ordinal()][_square] = _piece.getPieceSide() == Side.WHITE
+                    ? _table[7 - _rank][_file]
+                    : _table[_rank][7 - _file];
+            }
         }
+
+        return _placementTables;
     }
 
-    // TODO
-    private float EvaluatePieceMobility(List<Square> _knightLocations,
-    List<Square> _bishopLocations, List<Square> _rookLocations, Square _queenLocation)
+    /**
+     * <STRONG>IMPORTANT NOTE:</STRONG> A negative number does not mean
+     * an evaluation that favors black and a positive number does
+     * not mean an evaluation favors white necessarily.
+     * That is applied in the "Evaluate" function.
+     * <p>
+     * Evaluates how many squares the knights, bishops, rooks, and queens of a side can safely move to.
+     * @param _side the side being evaluated
+     * @param _attackMaps the attacks of both sides
+     * @return the evaluation of the mobility. A negative value means the pieces are more cramped than they should be.
+     */
+    private float EvaluatePieceMobility(Side _side, AttackMaps _attackMaps)
     {
-        // knights should be able to make more than three moves
-        // List<Move> _knightMoves = new ArrayList<>();
-        // MoveGenerator.generateKnightMoves(board, _knightMoves);
-
-        // bishops should be able to make more than 4 moves
-
-        // rooks should be able to make more than x moves
-
-        // queens should be able to make more than x moves
+        int[] _mobility = _attackMaps.mobility[_side.ordinal()];
 
-        return 0f;
+        return _mobility[PieceType.KNIGHT.ordinal()] * parameters.knightMobilityWeight
+        + _mobility[PieceType.BISHOP.ordinal()] * parameters.bishopMobilityWeight
+        + _mobility[PieceType.ROOK.ordinal()] * parameters.rookMobilityWeight
+        + _mobility[PieceType.QUEEN.ordinal()] * parameters.queenMobilityWeight;
     }
 
     /**
@@ -787,71 +1923,62 @@ public class ChessEngine
      * <p>
      * Evaluates the pawn structure of a side.
      * <p>
-     * The pawn locations should be counted from the same side, position, and board.
-     * The function takes in the pawn locations to optimize the "Evaluation" function.
-     * @param _pawnLocations the locations of every pawn of a side
+     * Every pawn is penalized as a doubled pawn, and one pawn of each file with more than one pawn is
+     * penalized twice. Pawns without a pawn of their side on the files next to them are isolated,
+     * and each file of doubled, isolated pawns is penalized once more.
+     * @param _pawns the bitboard of every pawn of a side
      * @return the evaluation of the pawn structure of a side.
      * A more positive number means that the pawn structure is better for the side being evaluted.
      */
-    private float EvaluatePawnStructure(List<Square> _pawnLocations)
+    private float EvaluatePawnStructure(long _pawns)
     {
         float _pawnStructurePenalty = 0f;
 
-        // so that n doubled pawns in the same
-        // file only get points deducted for each
-        // of them rather than applying penalties
-        // n * (n - 1) times
-        boolean[] _doubledPawnFiles = new boolean[8];
-
-        for (int i = 0; i < _pawnLocations.size(); i++)
+        for (int _file = 0; _file < 8; _file++)
         {
-            int _numDoubledPawns = 0;
-            boolean _isIsolated = true;
-
-            File _pawnFile = _pawnLocations.get(i).getFile();
+            int _numPawns = Long.bitCount(_pawns & (FILE_A << _file));
+            if (_numPawns == 0)
+                continue;
 
-            for (int j = 0; j < _pawnLocations.size(); j++)
-            {
-                if (j == i) continue;
+            long _adjacentFiles = (_file > 0 ? FILE_A << (_file - 1) : 0L) | (_file < 7 ? FILE_A << (_file + 1) : 0L);
+            boolean _isIsolated = (_pawns & _adjacentFiles) == 0L;
 
-                File _comparingPawnFile = _pawnLocations.get(j).getFile();
+            _pawnStructurePenalty -= (_numPawns + (_numPawns >= 2 ? 1 : 0)) * parameters.doubledPawnPenalty;
 
-                if (_pawnFile.equals(_comparingPawnFile) && !_doubledPawnFiles[_pawnFile.ordinal()])
-                {
-                    _numDoubledPawns++;
-                    _doubledPawnFiles[_pawnFile.ordinal()] = true;
-                }
+            if (_isIsolated)
+            {
+                _pawnStructurePenalty -= _numPawns * parameters.isolatedPawnPenalty;
 
-                else if (_pawnFile.ordinal() + 1 == _comparingPawnFile.ordinal()
-                         || _pawnFile.ordinal() - 1 == _comparingPawnFile.ordinal())
-                    _isIsolated = false;
+                if (_numPawns >= 2)
+                    _pawnStructurePenalty -= parameters.doubledAndIsolatedPenalty;
             }
-
-            // +1 to count for itself
-            _pawnStructurePenalty -= (_numDoubledPawns + 1) * DOUBLED_PAWN_PENALTY;
-            _pawnStructurePenalty -= _isIsolated ? ISOLATED_PAWN_PENALTY : 0f;
-
-            if (_numDoubledPawns > 0 && _isIsolated)
-                _pawnStructurePenalty -= DOUBLED_AND_ISOLATED_PENALTY;
         }
 
         return _pawnStructurePenalty;
     }
 
-    // TODO: fix error that occurs when this function is uncommented and playing a game
-    private float EvaluateKingSafety(Side _side, Square _kingLocation, Square _queenLocation)
+    /**
+     * <STRONG>IMPORTANT NOTE:</STRONG> A negative number does not mean
+     * an evaluation that favors black and a positive number does
+     * not mean an evaluation favors white necessarily.
+     * That is applied in the "Evaluate" function.
+     * <p>
+     * Evaluates how exposed the king of a side is: how far it could move if it were a queen,
+     * and how many squares around it the opponent attacks.
+     * @param _side the side being evaluated
+     * @param _attackMaps the attacks of both sides
+     * @return the evaluation of the king safety, which is never positive
+     */
+    private float EvaluateKingSafety(Side _side, AttackMaps _attackMaps)
     {
-        // board.setPiece(Piece.make(_side, PieceType.QUEEN), _kingLocation);
-        // board.setPiece(Piece.make(_side, PieceType.PAWN), _queenLocation);
-
-        // List<Move> _movesIfKingWasQueen = new ArrayList<>();
-        // MoveGenerator.generateQueenMoves(board, _movesIfKingWasQueen);
-
-        // board.setPiece(Piece.make(_side, PieceType.KING), _kingLocation);
-        // board.setPiece(Piece.make(_side, PieceType.QUEEN), _queenLocation);
+        return -_attackMaps.CountKingAsQueenMoves(_side) * parameters.kingAsQueenMovementPenalty
+        - _attackMaps.CountKingZoneAttacks(_side) * parameters.kingZoneAttackPenalty;
+    }
 
-        // return _movesIfKingWasQueen.size() * KING_AS_QUEEN_MOVEMENT_PENALTY;
-        return 0f;
+    // clamping so that king safety does not have an affect in the endgame
+    private float GetKingSafetyWeight(float _endgameWeight)
+    {
+        return Clamp(0.735f - _endgameWeight, 0f, 1f);
     }
     //#endregion
 
@@ -864,44 +1991,53 @@ public class ChessEngine
      * <p>
      * If illegal moves are given and the <code>_isQuiescence</code> flag is true,
      * the function will additionally remove those moves from the list.
+     * @param _board the board the moves are played on
      * @param _movesToOrder the moves to order
+     * @param _context the search whose killer moves and history scores order the quiet moves,
+     * and whose buffer holds the guessed scores, or null to order them without
+     * @param _ply the ply of the position the moves are played in
      */
-    private void SortMovesHeuristically(List<Move> _movesToOrder, boolean _isQuiescence, boolean _shouldDebug)
+    void SortMovesHeuristically(Board _board, List<Move> _movesToOrder, boolean _isQuiescence,
+    SearchContext _context, int _ply, boolean _shouldDebug)
     {
         if (_shouldDebug)
         {
-            System.out.println(board.toString());
+            System.out.println(_board.toString());
             System.out.println();
         }
 
-        List<ScoredMove> _movesToOrderScored = new ArrayList<>();
-        
-        for (Move _moveToOrder : _movesToOrder)
+        // the guesses are kept next to the moves instead of wrapping every move
+        float[] _scores = _context != null ? _context.orderingScores : new float[_movesToOrder.size()];
+        int _numMoves = 0;
+
+        for (int _moveIndex = 0; _moveIndex < _movesToOrder.size(); _moveIndex++)
         {
+            Move _moveToOrder = _movesToOrder.get(_moveIndex);
+
             if (_isQuiescence)
             {
                 try {
-                    if (!board.isMoveLegal(_moveToOrder, false))
+                    if (!_board.isMoveLegal(_moveToOrder, false))
                         continue;
                 }
                 
                 catch (Exception e) {
-                    System.out.println("Board:\n" + board);
-                    System.out.println("Fen: " + board.getFen());
+                    System.out.println("Board:\n" + _board);
+                    System.out.println("Fen: " + _board.getFen());
                     System.out.println("Move: " + _moveToOrder);
                     throw new IllegalAccessError();
                 }
             }
 
             float _moveEvaluationGuess = 0f;
-            Piece _movingPiece = board.getPiece(_moveToOrder.getFrom());
-            Piece _attackedPiece = board.getPiece(_moveToOrder.getTo());
+            Piece _movingPiece = _board.getPiece(_moveToOrder.getFrom());
+            Piece _attackedPiece = _board.getPiece(_moveToOrder.getTo());
 
             // if the other side attacks the to square
-            if (board.squareAttackedBy(_moveToOrder.getTo(), _movingPiece.getPieceSide().flip()) != 0L)
+            if (_board.squareAttackedBy(_moveToOrder.getTo(), _movingPiece.getPieceSide().flip()) != 0L)
             {
                 // penalty if the piece's side doesn't defend the to square
-                if (board.squareAttackedBy(_moveToOrder.getTo(), _movingPiece.getPieceSide()) == 0L)
+                if (_board.squareAttackedBy(_moveToOrder.getTo(), _movingPiece.getPieceSide()) == 0L)
                 {
                     _moveEvaluationGuess -= GetPieceValue(_movingPiece);
                 }
@@ -925,7 +2061,7 @@ public class ChessEngine
                     {
                         if (_moveToOrder.getTo().getRank().equals(Rank.RANK_8))
                         {
-                            _moveEvaluationGuess += QUEEN_VALUE;
+                            _moveEvaluationGuess += parameters.queenValue;
                         }
                     }
 
@@ -933,7 +2069,7 @@ public class ChessEngine
                     {
                         if (_moveToOrder.getTo().getRank().equals(Rank.RANK_1))
                         {
-                            _moveEvaluationGuess += QUEEN_VALUE;
+                            _moveEvaluationGuess += parameters.queenValue;
                         }
                     }
                 }
@@ -943,43 +2079,65 @@ public class ChessEngine
                     _moveEvaluationGuess += GetPieceValue(_attackedPiece);
             }
 
+            // quiet moves that caused cutoffs elsewhere in the search are likely to cause one here too
+            if (_context != null && !_isQuiescence
+                && _attackedPiece == Piece.NONE && _moveToOrder.getPromotion() == Piece.NONE)
+                _moveEvaluationGuess += GetQuietMoveBonus(_context, PackedMove.Encode(_moveToOrder), _ply);
+
             // bonus for giving check
-            board.doMove(_moveToOrder);
-            if (board.isKingAttacked())
+            _board.doMove(_moveToOrder);
+            if (_board.isKingAttacked())
             {
-                _moveEvaluationGuess += PAWN_VALUE;
+                _moveEvaluationGuess += parameters.pawnValue;
             }
-            board.undoMove();
+            _board.undoMove();
 
-            _movesToOrderScored.add(new ScoredMove(_moveToOrder, _moveEvaluationGuess));
+            // illegal moves are dropped by moving the legal ones down over them
+            _movesToOrder.set(_numMoves, _moveToOrder);
+            _scores[_numMoves] = _moveEvaluationGuess;
+            _numMoves++;
         }
 
-        // sorting _movesToOrder based on _movesToOrderScored
-
-        // should find a better way to sort
-        // 1 N*log(N) sort and 2 N operations
-        // One N operation is clearing
-        // the other is adding to _movesToOrder list
-        
-        // maybe remove this and opt for
-        // manually finding best move (O(N^2) worst case, but one of
-        // the first moves likely cause a cutoff)
-        Collections.sort(_movesToOrderScored);
+        _movesToOrder.subList(_numMoves, _movesToOrder.size()).clear();
 
-        _movesToOrder.clear();
-        for (ScoredMove _moveToOrderScored : _movesToOrderScored)
+        // insertion sort from the highest guess to the lowest. the lists are short, and moves
+        // with the same guess keep their order like they did with "Collections.sort"
+        for (int i = 1; i < _numMoves; i++)
         {
-            _movesToOrder.add(_moveToOrderScored.getMove());
+            Move _move = _movesToOrder.get(i);
+            float _score = _scores[i];
+            int j = i - 1;
+
+            for (; j >= 0 && _scores[j] < _score; j--)
+            {
+                _movesToOrder.set(j + 1, _movesToOrder.get(j));
+                _scores[j + 1] = _scores[j];
+            }
+
+            _movesToOrder.set(j + 1, _move);
+            _scores[j + 1] = _score;
         }
 
         if (_shouldDebug)
         {
-            System.out.println(_movesToOrderScored);
-    
+            for (int i = 0; i < _numMoves; i++)
+                System.out.print(_movesToOrder.get(i) + "=" + _scores[i] + " ");
+
+            System.out.println();
             System.out.println();
         }
     }
 
+    private float GetQuietMoveBonus(SearchContext _context, short _move, int _ply)
+    {
+        short[] _killers = _context.killerMoves[_ply];
+        float _bonus = _move == _killers[0] ? FIRST_KILLER_BONUS
+            : _move == _killers[1] ? SECOND_KILLER_BONUS
+            : 0f;
+
+        return (_bonus + MAX_HISTORY_BONUS * _context.GetHistoryFraction(_move)) * parameters.pawnValue;
+    }
+
     private float GetPieceValue(Piece _piece)
     {
         PieceType _typeOfPiece = _piece.getPieceType();
@@ -987,19 +2145,19 @@ public class ChessEngine
         switch (_typeOfPiece)
         {
             case PAWN:
-                return PAWN_VALUE;
+                return parameters.pawnValue;
 
             case KNIGHT:
-                return KNIGHT_VALUE;
+                return parameters.knightValue;
             
             case BISHOP:
-                return BISHOP_VALUE;
+                return parameters.bishopValue;
                 
             case ROOK:
-                return ROOK_VALUE;
+                return parameters.rookValue;
 
             case QUEEN:
-                return QUEEN_VALUE;
+                return parameters.queenValue;
 
             case KING:
                 return Float.MAX_VALUE;
@@ -1026,9 +2184,9 @@ public class ChessEngine
         return _clampTarget;
     }
     
-    private int GetSideMultiplier()
+    private int GetSideMultiplier(Board _board)
     {
-        return board.getSideToMove() == Side.WHITE ? 1 : -1;
+        return _board.getSideToMove() == Side.WHITE ? 1 : -1;
     }
     //#endregion
 }
\ No newline at end of file
@@ -0,0 +1,426 @@
+package com.chess.engine;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.github.bhlangonijr.chesslib.Board;
+import com.github.bhlangonijr.chesslib.Side;
+import com.github.bhlangonijr.chesslib.move.Move;
+
+/**
+ * Splits the root moves of a search between com.chess.engine.ClusterWorker processes, on this host or others,
+ * for analyses too big for one JVM.
+ * <p>
+ * Each root move is a unit of work. The best move of a shallower local search is searched first, by
+ * itself, so that its score can be the bound for all the others. The rest are then handed to the
+ * workers as they free up, each with the best score found so far as its alpha, so a move that can't
+ * beat it is refuted as cheaply as on a single engine. The result is the same kind of best line
+ * "ChessEngine.Search" returns.
+ * <p>
+ * A worker that disconnects or stops answering is dropped, and its unit goes back to the queue for the
+ * other workers. Units that are left when every worker is gone are searched by the coordinator's own
+ * engine, so a search always finishes. Dropped workers are reconnected to at the start of the next search,
+ * and why each one was dropped can be read with "GetWorkerErrors".
+ * <p>
+ * A worker that answers that it couldn't search a unit is still fine, since any other worker would fail
+ * the same way. The search stops and throws the worker's reason instead.
+ * <p>
+ * Usage: <code>ClusterCoordinator &lt;fen&gt; --workers host:port[,host:port...] [--depth n]</code>
+ */
+public class ClusterCoordinator implements AutoCloseable
+{
+    private static final int DEFAULT_DEPTH = 6;
+    private static final int CONNECT_TIMEOUT_MILLISECONDS = 2000;
+    // how much shallower the local search that picks the first root move is
+    private static final int ORDERING_DEPTH_REDUCTION = 2;
+
+    private final ChessEngine engine;
+    private final List<WorkerConnection> workers = new ArrayList<>();
+    // why workers couldn't be connected to or were dropped during the last search
+    private final List<IOException> workerErrors = Collections.synchronizedList(new ArrayList<>());
+
+    /**
+     * @param _engine the engine that orders the root moves and searches them if every worker is lost
+     * @param _workerAddresses the addresses of the workers
+     */
+    public ClusterCoordinator(ChessEngine _engine, List<InetSocketAddress> _workerAddresses)
+    {
+        engine = _engine;
+
+        for (InetSocketAddress _address : _workerAddresses)
+            workers.add(new WorkerConnection(_address));
+    }
+
+    public static void main(String[] args)
+    {
+        if (args.length < 1)
+        {
+            System.out.println("Usage: ClusterCoordinator <fen> --workers host:port[,host:port...] [--depth n]");
+            return;
+        }
+
+        List<InetSocketAddress> _workerAddresses = new ArrayList<>();
+        int _depth = DEFAULT_DEPTH;
+
+        for (int i = 1; i < args.length; i++)
+        {
+            switch (args[i])
+            {
+                case "--workers":
+                    for (String _address : args[++i].split(","))
+                    {
+                        int _colonIndex = _address.lastIndexOf(':');
+                        _workerAddresses.add(new InetSocketAddress
+                        (
+                            _address.substring(0, _colonIndex), Integer.parseInt(_address.substring(_colonIndex + 1))
+                        ));
+                    }
+                    break;
+
+                case "--depth":
+                    _depth = Integer.parseInt(args[++i]);
+                    break;
+
+                default:
+                    throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+
+        try (ClusterCoordinator _coordinator = new ClusterCoordinator(new ChessEngine(new Board()), _workerAddresses))
+        {
+            SearchResult _result = _coordinator.Search(args[0], _depth);
+
+            for (IOException _error : _coordinator.GetWorkerErrors())
+                System.out.println(_error.getMessage());
+
+            System.out.println("Best line: " + _result.getBestLine().getLine());
+            System.out.println("Score: " + _result.getBestLine().getScore());
+            System.out.println("Nodes: " + _result.getNumNodes());
+            System.out.println("Live workers: " + _coordinator.GetNumLiveWorkers() + "/" + _workerAddresses.size());
+            System.out.println("Time taken (seconds): " + _result.getTimeNanoseconds() / 1000000000.0);
+        }
+    }
+
+    /**
+     * Searches a position with the workers. Only one search runs at a time.
+     * @param _fen the position to search
+     * @param _depth the max number of plies to search into
+     * @return the result of the search. If the best line's score is positive, the position was evaluated
+     * as better for white, but if the score is negative, the position is better for black.
+     * @throws IllegalArgumentException if the depth is out of range
+     * @throws IllegalStateException if a worker couldn't search one of the root moves
+     */
+    public synchronized SearchResult Search(String _fen, int _depth) throws IllegalArgumentException, IllegalStateException
+    {
+        workerErrors.clear();
+
+        Board _board = new Board();
+        _board.loadFromFen(_fen);
+
+        List<Move> _legalMoves = _board.legalMoves();
+
+        // nothing to split up
+        if (_depth <= 1 || _legalMoves.size() <= 1 || _board.isDraw())
+            return engine.Search(_fen, SearchLimits.OfDepth(_depth));
+
+        long _startTimeNanoseconds = System.nanoTime();
+        ConnectWorkers();
+
+        SearchResult _orderingResult = engine.Search(_fen, SearchLimits.OfDepth(Math.max(1, _depth - ORDERING_DEPTH_REDUCTION)));
+        Move _firstMove = _orderingResult.getBestMove();
+        _legalMoves.remove(_firstMove);
+
+        RootSearch _rootSearch = new RootSearch(_fen, _depth, _board.getSideToMove() == Side.WHITE ? 1 : -1);
+        _rootSearch.numNodes.addAndGet(_orderingResult.getNumNodes());
+
+        // the first move is searched alone, since the others are searched against its score
+        Queue<Move> _units = new ConcurrentLinkedQueue<>();
+        _units.add(_firstMove);
+        SearchUnits(_rootSearch, _units);
+
+        _units.addAll(_legalMoves);
+        SearchUnits(_rootSearch, _units);
+
+        if (_rootSearch.unitError != null)
+            throw _rootSearch.unitError;
+
+        return new SearchResult
+        (
+            new ScoredLine(_rootSearch.bestLine, _rootSearch.sideMultiplier * _rootSearch.alpha), _depth,
+            _rootSearch.numNodes.get(), _rootSearch.numLazyEvaluations.get(),
+            System.nanoTime() - _startTimeNanoseconds, null
+        );
+    }
+
+    /**
+     * @return the number of workers that are connected
+     */
+    public synchronized int GetNumLiveWorkers()
+    {
+        int _numLiveWorkers = 0;
+
+        for (WorkerConnection _worker : workers)
+        {
+            if (_worker.IsConnected())
+                _numLiveWorkers++;
+        }
+
+        return _numLiveWorkers;
+    }
+
+    /**
+     * @return why workers couldn't be connected to or were dropped during the last search, in the order it happened
+     */
+    public synchronized List<IOException> GetWorkerErrors()
+    {
+        return new ArrayList<>(workerErrors);
+    }
+
+    /**
+     * Disconnects from every worker.
+     */
+    @Override
+    public synchronized void close()
+    {
+        for (WorkerConnection _worker : workers)
+            _worker.Disconnect();
+    }
+
+    private void ConnectWorkers()
+    {
+        for (WorkerConnection _worker : workers)
+        {
+            if (_worker.IsConnected())
+                continue;
+
+            try
+            {
+                _worker.Connect();
+            }
+
+            catch (IOException e)
+            {
+                workerErrors.add(new IOException("Could not connect to the worker at " + _worker.address + ": " + e.getMessage(), e));
+                _worker.Disconnect();
+            }
+        }
+    }
+
+    /**
+     * Searches every unit of the queue, with one thread per connected worker taking units until the queue is empty.
+     */
+    private void SearchUnits(RootSearch _rootSearch, Queue<Move> _units)
+    {
+        List<Thread> _threads = new ArrayList<>();
+
+        for (WorkerConnection _worker : workers)
+        {
+            if (_worker.IsConnected())
+                _threads.add(Thread.ofVirtual().name("cluster-" + _worker.address).start(() -> DrainUnits(_worker, _rootSearch, _units)));
+        }
+
+        for (Thread _thread : _threads)
+        {
+            try
+            {
+                _thread.join();
+            }
+
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for the workers.");
+            }
+        }
+
+        // the search fails anyway, and the coordinator's engine would fail the same way
+        if (_rootSearch.unitError != null)
+            return;
+
+        // left behind by lost workers
+        Move _move;
+        while ((_move = _units.poll()) != null)
+            _rootSearch.Add(engine.SearchRootMove(_rootSearch.fen, _move, _rootSearch.numPlies, _rootSearch.GetAlpha()));
+    }
+
+    private void DrainUnits(WorkerConnection _worker, RootSearch _rootSearch, Queue<Move> _units)
+    {
+        Move _move;
+
+        while (_rootSearch.unitError == null && (_move = _units.poll()) != null)
+        {
+            try
+            {
+                _rootSearch.Add(_worker.Search(_rootSearch.fen, _move, _rootSearch.numPlies, _rootSearch.GetAlpha()));
+            }
+
+            catch (IllegalStateException e)
+            {
+                // the unit failed, not the worker, so the worker stays connected
+                _rootSearch.unitError = e;
+                return;
+            }
+
+            catch (IOException e)
+            {
+                workerErrors.add(new IOException("Lost the worker at " + _worker.address + ": " + e.getMessage(), e));
+                _worker.Disconnect();
+                _units.add(_move);
+
+                return;
+            }
+        }
+    }
+
+    /**
+     * The best root move found so far by every worker.
+     */
+    private static class RootSearch
+    {
+        final String fen;
+        final int numPlies;
+        final int sideMultiplier;
+
+        final AtomicLong numNodes = new AtomicLong();
+        final AtomicLong numLazyEvaluations = new AtomicLong();
+
+        // from the perspective of the side to move
+        float alpha = -Float.MAX_VALUE;
+        List<Move> bestLine;
+        // set once a worker couldn't search a unit
+        volatile IllegalStateException unitError;
+
+        RootSearch(String _fen, int _numPlies, int _sideMultiplier)
+        {
+            fen = _fen;
+            numPlies = _numPlies;
+            sideMultiplier = _sideMultiplier;
+        }
+
+        synchronized float GetAlpha()
+        {
+            return alpha;
+        }
+
+        /**
+         * @param _result the result of one root move
+         */
+        synchronized void Add(SearchResult _result)
+        {
+            numNodes.addAndGet(_result.getNumNodes());
+            numLazyEvaluations.addAndGet(_result.getNumLazyEvaluations());
+
+            float _score = sideMultiplier * _result.getBestLine().getScore();
+
+            // moves that didn't beat their alpha come back scored as exactly that alpha
+            if (bestLine == null || _score > alpha)
+            {
+                alpha = _score;
+                bestLine = _result.getBestLine().getLine();
+            }
+        }
+    }
+
+    /**
+     * The connection to one worker. Only one thread uses it at a time.
+     */
+    private static class WorkerConnection
+    {
+        final InetSocketAddress address;
+
+        private Socket socket;
+        private DataInputStream input;
+        private DataOutputStream output;
+
+        WorkerConnection(InetSocketAddress _address)
+        {
+            address = _address;
+        }
+
+        boolean IsConnected()
+        {
+            return socket != null;
+        }
+
+        void Connect() throws IOException
+        {
+            socket = new Socket();
+            socket.connect(address, CONNECT_TIMEOUT_MILLISECONDS);
+            socket.setTcpNoDelay(true);
+            socket.setSoTimeout(ClusterProtocol.READ_TIMEOUT_MILLISECONDS);
+
+            input = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            output = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+
+            ClusterProtocol.WriteHandshake(output);
+            ClusterProtocol.ReadHandshake(input);
+        }
+
+        void Disconnect()
+        {
+            if (socket == null)
+                return;
+
+            try
+            {
+                socket.close();
+            }
+
+            catch (IOException e)
+            {
+                // already closed
+            }
+
+            socket = null;
+        }
+
+        /**
+         * @return the result of the root move, scored like the result of "ChessEngine.SearchRootMove"
+         * @throws IOException if the worker is lost
+         * @throws IllegalStateException if the worker answered that it couldn't search the unit
+         */
+        SearchResult Search(String _fen, Move _rootMove, int _numPlies, float _alpha) throws IOException, IllegalStateException
+        {
+            long _startTimeNanoseconds = System.nanoTime();
+
+            output.writeByte(ClusterProtocol.SEARCH);
+            output.writeUTF(_fen);
+            output.writeShort(PackedMove.Encode(_rootMove));
+            output.writeByte(_numPlies);
+            output.writeFloat(_alpha);
+            output.flush();
+
+            // a read that times out means the heartbeats stopped
+            byte _messageType;
+            while ((_messageType = input.readByte()) == ClusterProtocol.HEARTBEAT) { }
+
+            if (_messageType == ClusterProtocol.ERROR)
+                throw new IllegalStateException("The worker at " + address + " could not search " + _rootMove + ": " + input.readUTF());
+
+            if (_messageType != ClusterProtocol.RESULT)
+                throw new IOException("Expected a result, but got message type " + _messageType + ".");
+
+            float _score = input.readFloat();
+            long _numNodes = input.readLong();
+            long _numLazyEvaluations = input.readLong();
+            List<Move> _line = ClusterProtocol.ReadLine(input);
+
+            return new SearchResult
+            (
+                new ScoredLine(_line, _score), _numPlies, _numNodes, _numLazyEvaluations,
+                System.nanoTime() - _startTimeNanoseconds, null
+            );
+        }
+    }
+}
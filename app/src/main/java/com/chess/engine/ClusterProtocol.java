@@ -0,0 +1,100 @@
+package com.chess.engine;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.github.bhlangonijr.chesslib.move.Move;
+
+/**
+ * The binary protocol between a com.chess.engine.ClusterCoordinator and its com.chess.engine.ClusterWorker processes.
+ * <p>
+ * Both sides open a connection by sending MAGIC and VERSION, and close it if the other side's don't match.
+ * After that, the coordinator sends one SEARCH message at a time and reads messages back until the
+ * unit's RESULT or ERROR arrives. Every value is big-endian, as written by DataOutputStream.
+ * <ul>
+ * <li>SEARCH: the FEN of the root (UTF), the packed root move (short), the number of plies (byte),
+ * and alpha from the perspective of the side to move at the root (float)</li>
+ * <li>RESULT: the score, positive if better for white (float), the number of nodes (long),
+ * the number of lazy evaluations (long), and the line as a count (byte) followed by packed moves (shorts)</li>
+ * <li>HEARTBEAT: nothing. Sent by the worker every HEARTBEAT_INTERVAL_MILLISECONDS while it searches,
+ * so the coordinator can tell a long search from a lost worker.</li>
+ * <li>ERROR: the reason the unit couldn't be searched (UTF)</li>
+ * </ul>
+ */
+final class ClusterProtocol
+{
+    // "CHES"
+    static final int MAGIC = 0x43484553;
+    static final int VERSION = 1;
+
+    static final byte SEARCH = 1;
+    static final byte RESULT = 2;
+    static final byte HEARTBEAT = 3;
+    static final byte ERROR = 4;
+
+    static final int HEARTBEAT_INTERVAL_MILLISECONDS = 1000;
+    // a worker that hasn't sent anything for this long is treated as lost
+    static final int READ_TIMEOUT_MILLISECONDS = 5 * HEARTBEAT_INTERVAL_MILLISECONDS;
+
+    private ClusterProtocol() { }
+
+    /**
+     * Sends this side's half of the handshake.
+     * @param _output the connection's output
+     * @throws IOException if the connection fails
+     */
+    static void WriteHandshake(DataOutputStream _output) throws IOException
+    {
+        _output.writeInt(MAGIC);
+        _output.writeInt(VERSION);
+        _output.flush();
+    }
+
+    /**
+     * Reads the other side's half of the handshake.
+     * @param _input the connection's input
+     * @throws IOException if the connection fails or the other side doesn't speak this version of the protocol
+     */
+    static void ReadHandshake(DataInputStream _input) throws IOException
+    {
+        if (_input.readInt() != MAGIC)
+            throw new IOException("The other side isn't a cluster coordinator or worker.");
+
+        int _version = _input.readInt();
+        if (_version != VERSION)
+            throw new IOException("The other side speaks version " + _version + " of the protocol instead of " + VERSION + ".");
+    }
+
+    /**
+     * @param _output the connection's output
+     * @param _line the moves to write
+     * @throws IOException if the connection fails
+     */
+    static void WriteLine(DataOutputStream _output, List<Move> _line) throws IOException
+    {
+        int _numMoves = Math.min(_line.size(), Byte.MAX_VALUE);
+        _output.writeByte(_numMoves);
+
+        for (int i = 0; i < _numMoves; i++)
+            _output.writeShort(PackedMove.Encode(_line.get(i)));
+    }
+
+    /**
+     * @param _input the connection's input
+     * @return the moves read
+     * @throws IOException if the connection fails
+     */
+    static List<Move> ReadLine(DataInputStream _input) throws IOException
+    {
+        int _numMoves = _input.readByte();
+        List<Move> _line = new ArrayList<>(_numMoves);
+
+        for (int i = 0; i < _numMoves; i++)
+            _line.add(PackedMove.Decode(_input.readShort()));
+
+        return _line;
+    }
+}
@@ -0,0 +1,288 @@
+package com.chess.engine;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+import com.github.bhlangonijr.chesslib.Board;
+import com.github.bhlangonijr.chesslib.move.Move;
+
+import lombok.Setter;
+
+/**
+ * A process that searches the root moves a com.chess.engine.ClusterCoordinator sends it over TCP.
+ * <p>
+ * Every connection is handled on its own virtual thread and searches one root move at a time, so a
+ * coordinator that opens one connection per worker uses one core of it. Run one worker per core to use
+ * them all. The connections share the worker's engine, and with it the transposition table.
+ * <p>
+ * The worker doesn't authenticate coordinators, so it only listens on the loopback interface unless
+ * it is given the address of another one to listen on.
+ * <p>
+ * Usage: <code>ClusterWorker [--host address] [--port n]</code>
+ */
+public class ClusterWorker
+{
+    private static final int DEFAULT_PORT = 9090;
+
+    private final ChessEngine engine;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final Set<Socket> connections = ConcurrentHashMap.newKeySet();
+
+    private ServerSocket serverSocket;
+
+    // optional, gets why a coordinator's connection was dropped
+    @Setter
+    private Consumer<IOException> errorListener;
+
+    /**
+     * @param _engine the engine the root moves are searched with
+     */
+    public ClusterWorker(ChessEngine _engine)
+    {
+        engine = _engine;
+    }
+
+    public static void main(String[] args) throws IOException
+    {
+        String _host = null;
+        int _port = DEFAULT_PORT;
+
+        for (int i = 0; i < args.length; i++)
+        {
+            switch (args[i])
+            {
+                case "--host":
+                    _host = args[++i];
+                    break;
+
+                case "--port":
+                    _port = Integer.parseInt(args[++i]);
+                    break;
+
+                default:
+                    throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+
+        ClusterWorker _worker = new ClusterWorker(new ChessEngine(new Board()));
+        _worker.setErrorListener(e -> System.out.println("Dropped a coordinator: " + e.getMessage()));
+
+        if (_host != null)
+            _worker.Start(_host, _port);
+
+        else
+            _worker.Start(_port);
+
+        System.out.println("Waiting for a coordinator on port " + _worker.GetPort());
+    }
+
+    /**
+     * Starts accepting coordinators on this host only.
+     * @param _port the port to listen on, or 0 for any free port
+     * @throws IOException if the port can't be bound
+     */
+    public void Start(int _port) throws IOException
+    {
+        Start(InetAddress.getLoopbackAddress(), _port);
+    }
+
+    /**
+     * Starts accepting coordinators on the given address, like "0.0.0.0" for every network interface
+     * when the coordinators run on other hosts of a trusted network.
+     * @param _host the address to listen on
+     * @param _port the port to listen on, or 0 for any free port
+     * @throws IOException if the address can't be resolved or the port can't be bound
+     */
+    public void Start(String _host, int _port) throws IOException
+    {
+        Start(InetAddress.getByName(_host), _port);
+    }
+
+    private void Start(InetAddress _address, int _port) throws IOException
+    {
+        serverSocket = new ServerSocket(_port, 0, _address);
+        executor.execute(this::AcceptConnections);
+    }
+
+    /**
+     * Stops accepting coordinators and drops the connected ones, whose coordinators treat this worker as lost.
+     */
+    public void Stop()
+    {
+        CloseQuietly(serverSocket);
+
+        for (Socket _connection : connections)
+            CloseQuietly(_connection);
+
+        executor.shutdownNow();
+    }
+
+    /**
+     * @return the port the worker is listening on
+     */
+    public int GetPort()
+    {
+        return serverSocket.getLocalPort();
+    }
+
+    private void AcceptConnections()
+    {
+        while (!serverSocket.isClosed())
+        {
+            try
+            {
+                Socket _connection = serverSocket.accept();
+                connections.add(_connection);
+                executor.execute(() -> HandleConnection(_connection));
+            }
+
+            catch (IOException e)
+            {
+                // closed by "Stop"
+                return;
+            }
+        }
+    }
+
+    private void HandleConnection(Socket _connection)
+    {
+        try
+        {
+            _connection.setTcpNoDelay(true);
+
+            DataInputStream _input = new DataInputStream(new BufferedInputStream(_connection.getInputStream()));
+            DataOutputStream _output = new DataOutputStream(new BufferedOutputStream(_connection.getOutputStream()));
+
+            ClusterProtocol.ReadHandshake(_input);
+            ClusterProtocol.WriteHandshake(_output);
+
+            while (true)
+            {
+                byte _messageType = _input.readByte();
+                if (_messageType != ClusterProtocol.SEARCH)
+                    throw new IOException("Expected a search, but got message type " + _messageType + ".");
+
+                String _fen = _input.readUTF();
+                short _rootMove = _input.readShort();
+                int _numPlies = _input.readByte();
+                float _alpha = _input.readFloat();
+
+                SearchUnit(_output, _fen, _rootMove, _numPlies, _alpha);
+            }
+        }
+
+        catch (EOFException e)
+        {
+            // the coordinator is done with this worker
+        }
+
+        catch (IOException e)
+        {
+            Consumer<IOException> _errorListener = errorListener;
+            if (!_connection.isClosed() && _errorListener != null)
+                _errorListener.accept(e);
+        }
+
+        finally
+        {
+            connections.remove(_connection);
+            CloseQuietly(_connection);
+        }
+    }
+
+    /**
+     * Searches one root move and sends its result, with heartbeats while the search runs.
+     */
+    private void SearchUnit(DataOutputStream _output, String _fen, short _rootMove, int _numPlies, float _alpha) throws IOException
+    {
+        Move _move = PackedMove.Decode(_rootMove);
+        // cancelling the future wouldn't stop the search running on the executor, so it has a signal of its own
+        AtomicBoolean _stopSignal = new AtomicBoolean();
+        CompletableFuture<SearchResult> _search = CompletableFuture.supplyAsync
+        (
+            () -> engine.SearchRootMove(_fen, _move, _numPlies, _alpha, _stopSignal), executor
+        );
+
+        SearchResult _result;
+
+        try
+        {
+            while (true)
+            {
+                try
+                {
+                    _result = _search.get(ClusterProtocol.HEARTBEAT_INTERVAL_MILLISECONDS, TimeUnit.MILLISECONDS);
+                    break;
+                }
+
+                catch (TimeoutException e)
+                {
+                    _output.writeByte(ClusterProtocol.HEARTBEAT);
+                    _output.flush();
+                }
+
+                catch (ExecutionException e)
+                {
+                    // chesslib throws runtime exceptions for FENs and moves it can't read
+                    _output.writeByte(ClusterProtocol.ERROR);
+                    _output.writeUTF(String.valueOf(e.getCause().getMessage()));
+                    _output.flush();
+                    return;
+                }
+
+                catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted.");
+                }
+            }
+        }
+
+        // the connection failed or the worker is stopping, so nobody will read the result
+        catch (IOException e)
+        {
+            _stopSignal.set(true);
+            throw e;
+        }
+
+        _output.writeByte(ClusterProtocol.RESULT);
+        _output.writeFloat(_result.getBestLine().getScore());
+        _output.writeLong(_result.getNumNodes());
+        _output.writeLong(_result.getNumLazyEvaluations());
+        ClusterProtocol.WriteLine(_output, _result.getBestLine().getLine());
+        _output.flush();
+    }
+
+    private static void CloseQuietly(AutoCloseable _closeable)
+    {
+        if (_closeable == null)
+            return;
+
+        try
+        {
+            _closeable.close();
+        }
+
+        catch (Exception e)
+        {
+            // already closed
+        }
+    }
+}
@@ -0,0 +1,442 @@
+package com.chess.engine;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Every weight of the evaluation, so that they can be loaded from a file and tuned
+ * instead of being hard-coded. A new instance holds the hand-tuned defaults.
+ * <p>
+ * The file format is one parameter per line: the name of the parameter followed by its value,
+ * or by the 64 values of a piece square table, row by row. Lines starting with '#' are comments,
+ * and parameters missing from the file keep their defaults.
+ * <p>
+ * Piece square tables are written from white's perspective, so the first row is the eighth rank.
+ * <p>
+ * The com.chess.engine.TexelTuner only tunes the parameters the evaluation is linear in: the piece values, the pawn
+ * structure penalties, the piece square tables, the mobility weights, and the king safety and threat penalties.
+ * They are laid out in a vector by "ToVector". The endgame weights can only be changed by hand.
+ * <p>
+ * A com.chess.engine.ChessEngine only reads its parameters, so one instance can be shared by many engines,
+ * but it must not be changed while an engine is searching with it.
+ */
+public class EvaluationParameters
+{
+    //#region Vector layout
+    // piece values are in PieceType order: pawn, knight, bishop, rook, queen
+    static final int PIECE_VALUES_INDEX = 0;
+    static final int DOUBLED_PAWN_PENALTY_INDEX = 5;
+    static final int ISOLATED_PAWN_PENALTY_INDEX = 6;
+    static final int DOUBLED_AND_ISOLATED_PENALTY_INDEX = 7;
+    // each table takes 64 entries, indexed by row * 8 + column
+    static final int PAWN_TABLE_MIDDLEGAME_INDEX = 8;
+    static final int PAWN_TABLE_ENDGAME_INDEX = PAWN_TABLE_MIDDLEGAME_INDEX + 64;
+    static final int KNIGHT_TABLE_INDEX = PAWN_TABLE_ENDGAME_INDEX + 64;
+    static final int BISHOP_TABLE_INDEX = KNIGHT_TABLE_INDEX + 64;
+    static final int ROOK_TABLE_INDEX = BISHOP_TABLE_INDEX + 64;
+    static final int QUEEN_TABLE_INDEX = ROOK_TABLE_INDEX + 64;
+    static final int KING_TABLE_MIDDLEGAME_INDEX = QUEEN_TABLE_INDEX + 64;
+    static final int KING_TABLE_ENDGAME_INDEX = KING_TABLE_MIDDLEGAME_INDEX + 64;
+    // mobility weights are in PieceType order too: knight, bishop, rook, queen
+    static final int MOBILITY_WEIGHTS_INDEX = KING_TABLE_ENDGAME_INDEX + 64;
+    static final int KING_AS_QUEEN_MOVEMENT_PENALTY_INDEX = MOBILITY_WEIGHTS_INDEX + 4;
+    static final int KING_ZONE_ATTACK_PENALTY_INDEX = KING_AS_QUEEN_MOVEMENT_PENALTY_INDEX + 1;
+    static final int HANGING_PIECE_PENALTY_INDEX = KING_ZONE_ATTACK_PENALTY_INDEX + 1;
+    public static final int NUM_TUNED_PARAMETERS = HANGING_PIECE_PENALTY_INDEX + 1;
+    //#endregion
+
+    //#region Pawn structure penalties
+    float doubledPawnPenalty = 0.095f;
+    float isolatedPawnPenalty = 0.105f;
+    float doubledAndIsolatedPenalty = 0.21f;
+    //#endregion
+
+    //#region Endgame weight calculation
+    // pawns don't count that much to endgame weight
+    // minor pieces have a decent influence on endgame weight
+    // rooks have slightly multiplied difference
+    // both queens on the board moves the game away from endgame by a lot
+    float pawnWeight = 0.35f;
+    float minorPieceWeight = 1f;
+    float rookWeight = 1.095f;
+    float queenWeight = 1.3f;
+    //#endregion
+
+    //#region Piece values
+    float pawnValue = 1f;
+    float knightValue = 3f;
+    float bishopValue = 3.15f;
+    float rookValue = 5f;
+    float queenValue = 10f;
+    //#endregion
+
+    //#region Piece square tables
+    // favors pushed pawns, but doesn't favor overextended pawns as strongly.
+    // even pawns about to promote are not as highly regarded because
+    // they could prove to be weaknesses that can be targeted by the opponent.
+    // also, likes pawns not being pushed at the castling locations
+    float[][] pawnPlacementTableMiddlegame = new float[][]
+    {
+        new float[] { queenValue, queenValue, queenValue, queenValue, queenValue, queenValue, queenValue, queenValue },
+        new float[] { 0.075f, 0.075f, 0.1f, 0.14f, 0.14f, 0.1f, 0.075f, 0.075f },
+        new float[] { 0.02f, 0.045f, 0.11f, 0.15f, 0.15f, 0.11f, 0.045f, 0.02f },
+        new float[] { 0.025f, 0.08f, 0.13f, 0.16f, 0.16f, 0.13f, 0.08f, 0.025f },
+        new float[] { 0.03f, 0.065f, 0.085f, 0.145f, 0.145f, 0.085f, 0.065f, 0.03f },
+        new float[] { 0.035f, 0f, 0.035f, 0.035f, 0.035f, 0f, 0f, 0.035f },
+        new float[] { 0.085f, 0.085f, 0.085f, -0.1f, -0.1f, 0.085f, 0.085f, 0.085f },
+        new float[] { -0.175f, -0.175f, -0.175f, -0.175f, -0.175f, -0.175f, -0.175f, -0.175f }
+    };
+
+    // favors pawns closer to promotion
+    // favors flank pawns more strongly
+    // huge jump in pawn value from 5th rank to 6th rank
+    float[][] pawnPlacementTableEndgame = new float[][]
+    {
+        new float[] { queenValue, queenValue, queenValue, queenValue, queenValue, queenValue, queenValue, queenValue },
+        new float[] { 2.65f, 2f, 1.85f, 1.85f, 1.85f, 1.85f, 2f, 2.65f },
+        new float[] { 1.75f, 1.65f, 1.6f, 1.6f, 1.6f, 1.6f, 1.65f, 1.75f },
+        new float[] { 0.4f, 0.3f, 0.225f, 0.225f, 0.225f, 0.225f, 0.3f, 0.4f },
+        new float[] { 0.175f, 0.15f, 0.125f, 0.125f, 0.125f, 0.125f, 0.15f, 0.175f },
+        new float[] { -0.075f, -0.075f, -0.075f, -0.075f, -0.075f, -0.075f, -0.075f, -0.075f },
+        new float[] { -0.15f, -0.15f, -0.15f, -0.15f, -0.15f, -0.15f, -0.15f, -0.15f },
+        new float[] { -0.25f, -0.25f, -0.25f, -0.25f, -0.25f, -0.25f, -0.25f, -0.25f }
+    };
+
+    // favors knights closer to the center
+    // knights on opponent's edge are not punished as harshly
+    // because they are likely applying some pressure to the opponent's position
+    float[][] knightPlacementTable = new float[][]
+    {
+        new float[] { -0.155f, -0.075f, -0.075f, -0.075f, -0.075f, -0.075f, -0.075f, -0.155f },
+        new float[] { -0.135f, 0.035f, 0.05f, 0.05f, 0.05f, 0.05f, 0.035f, -0.135f },
+        new float[] { -0.11f, 0.1f, 0.125f, 0.1f, 0.1f, 0.125f, 0.1f, -0.11f },
+        new float[] { -0.1f, 0.125f, 0.175f, 0.175f, 0.175f, 0.175f, 0.125f, -0.1f },
+        new float[] { -0.1f, 0.125f, 0.175f, 0.175f, 0.175f, 0.175f, 0.125f, -0.1f },
+        new float[] { -0.125f, 0.1f, 0.125f, 0.1f, 0.1f, 0.125f, 0.1f, -0.125f },
+        new float[] { -0.175f, 0.035f, 0.05f, 0.05f, 0.05f, 0.05f, 0.035f, -0.175f },
+        new float[] { -0.25f, -0.1f, -0.1f, -0.1f, -0.1f, -0.1f, -0.1f, -0.25f }
+    };
+
+    // favors bishops closer to the center
+    // slight buff given to bishops in fianchetto position
+    // compared to other squares in the same rank
+    float[][] bishopPlacementTable = new float[][]
+    {
+        new float[] { -0.2f, -0.25f, -0.25f, -0.25f, -0.25f, -0.25f, -0.25f, -0.2f },
+        new float[] { -0.175f, 0.125f, 0.12f, 0.12f, 0.12f, 0.12f, 0.125f, -0.175f },
+        new float[] { 0.15f, 0.14f, 0.15f, 0.15f, 0.15f, 0.15f, 0.14f, 0.15f },
+        new float[] { -0.125f, 0.165f, 0.175f, 0.18f, 0.18f, 0.175f, 0.165f, -0.125f },
+        new float[] { -0.12f, 0.155f, 0.1675f, 0.175f, 0.175f, 0.1675f, 0.155f, -0.12f },
+        new float[] { -0.15f, 0.14f, 0.15f, 0.15f, 0.15f, 0.15f, 0.14f, -0.15f },
+        new float[] { -0.175f, 0.125f, 0.12f, 0.12f, 0.12f, 0.12f, 0.125f, -0.175f },
+        new float[] { -0.2f, -0.25f, -0.25f, -0.25f, -0.25f, -0.25f, -0.25f, -0.2f }
+    };
+
+    // favors rooks closer to the center
+    // also rooks near the enemy's side
+    // and rooks in the middle two files
+    float[][] rookPlacementTable = new float[][]
+    {
+        new float[] { 0.125f, 0.145f, 0.16f, 0.185f, 0.185f, 0.16f, 0.145f, 0.125f },
+        new float[] { 0.125f, 0.145f, 0.16f, 0.185f, 0.185f, 0.16f, 0.145f, 0.125f },
+        new float[] { 0.1f, 0.135f, 0.15f, 0.15f, 0.15f, 0.15f, 0.135f, 0.1f },
+        new float[] { 0.085f, 0.145f, 0.16f, 0.19f, 0.19f, 0.16f, 0.145f, 0.085f },
+        new float[] { 0.05f, 0.145f, 0.16f, 0.19f, 0.19f, 0.16f, 0.145f, 0.05f },
+        new float[] { 0f, 0.12f, 0.12f, 0.135f, 0.135f, 0.12f, 0.12f, 0f },
+        new float[] { -0.1f, 0.065f, 0.065f, 0.085f, 0.085f, 0.065f, 0.065f, -0.1f },
+        new float[] { -0.1f, -0.075f, 0.025f, 0.075f, 0.075f, 0.025f, -0.075f, -0.1f }
+    };
+
+    // favors queens closer to the center. harshly peanlizes queens at the edges
+    // slightly buffs queens on the opponent's edge of the board
+    float[][] queenPlacementTable = new float[][]
+    {
+        new float[] { -0.125f, 0.035f, 0.045f, 0.045f, 0.045f, 0.045f, 0.035f, -0.125f },
+        new float[] { -0.075f, 0.07f, 0.095f, 0.095f, 0.095f, 0.095f, 0.07f, -0.075f },
+        new float[] { -0.035f, 0.085f, 0.1f, 0.125f, 0.125f, 0.1f, 0.085f, -0.035f },
+        new float[] { 0f, 0.085f, 0.1f, 0.185f, 0.185f, 0.1f, 0.085f, 0f },
+        new float[] { 0f, 0.085f, 0.1f, 0.185f, 0.185f, 0.1f, 0.085f, 0f },
+        new float[] { -0.035f, 0.1f, 0.1f, 0.1f, 0.1f, 0.1f, 0.1f, -0.035f },
+        new float[] { -0.075f, 0.065f, 0.065f, 0.07f, 0.07f, 0.065f, 0.065f, -0.075f },
+        new float[] { -0.125f, -0.025f, 0f, 0.045f, 0.045f, 0f, -0.025f, -0.125f }
+    };
+
+    // buffs hiding in the corners on the king's side
+    // heavily punishes being in the opponent's side or in the middle
+    float[][] kingPlacementTableMiddlegame = new float[][]
+    {
+        new float[] { -queenValue, -queenValue, -queenValue, -queenValue, -queenValue, -queenValue, -queenValue, -queenValue },
+        new float[] { -4f, -5f, -6f, -8f, -8f, -6f, -5f, -4f },
+        new float[] { -4f, -5f, -6f, -8f, -8f, -6f, -5f, -4f },
+        new float[] { -4f, -5f, -6f, -8f, -8f, -6f, -5f, -4f },
+        new float[] { -1f, -1.75f, -2.5f, -4f, -4f, -2.5f, -1.75f, -1f },
+        new float[] { -0.185f, -0.3f, -0.45f, -0.75f, -0.75f, -0.45f, -0.3f, -0.185f },
+        new float[] { 0.035f, 0.035f, 0.035f, -0.115f, -0.115f, 0.035f, 0.035f, 0.035f },
+        new float[] { 0.175f, 0.15f, 0.1f, -0.1f, -0.1f, 0.1f, 0.15f, 0.175f }
+    };
+
+    // same as queen's placement table
+    float[][] kingPlacementTableEndgame = new float[][]
+    {
+        new float[] { -0.125f, 0.035f, 0.045f, 0.045f, 0.045f, 0.045f, 0.035f, -0.125f },
+        new float[] { -0.075f, 0.07f, 0.095f, 0.095f, 0.095f, 0.095f, 0.07f, -0.075f },
+        new float[] { -0.035f, 0.085f, 0.1f, 0.125f, 0.125f, 0.1f, 0.085f, -0.035f },
+        new float[] { 0f, 0.085f, 0.1f, 0.185f, 0.185f, 0.1f, 0.085f, 0f },
+        new float[] { 0f, 0.085f, 0.1f, 0.185f, 0.185f, 0.1f, 0.085f, 0f },
+        new float[] { -0.035f, 0.1f, 0.1f, 0.1f, 0.1f, 0.1f, 0.1f, -0.035f },
+        new float[] { -0.075f, 0.065f, 0.065f, 0.07f, 0.07f, 0.065f, 0.065f, -0.075f },
+        new float[] { -0.125f, -0.025f, 0f, 0.045f, 0.045f, 0f, -0.025f, -0.125f }
+    };
+    //#endregion
+    
+    //#region Mobility
+    // per square above a piece's baseline that it can move to without being taken by a pawn.
+    // minor pieces depend on their mobility the most
+    float knightMobilityWeight = 0.04f;
+    float bishopMobilityWeight = 0.035f;
+    float rookMobilityWeight = 0.02f;
+    float queenMobilityWeight = 0.01f;
+    //#endregion
+
+    //#region King safety penalties
+    float kingAsQueenMovementPenalty = 0.075f;
+    // per square around the king the opponent attacks
+    float kingZoneAttackPenalty = 0.05f;
+    //#endregion
+
+    //#region Threats
+    // per piece that is attacked and not defended
+    float hangingPiecePenalty = 0.15f;
+    //#endregion
+
+    /**
+     * Reads parameters from a file. Parameters missing from the file keep their defaults.
+     * @param _path the file to read
+     * @return the parameters
+     * @throws IOException if the file can't be read
+     * @throws IllegalArgumentException if the file has an unknown parameter or the wrong number of values
+     */
+    public static EvaluationParameters Load(Path _path) throws IOException, IllegalArgumentException
+    {
+        EvaluationParameters _parameters = new EvaluationParameters();
+        int _lineNumber = 0;
+
+        for (String _line : Files.readAllLines(_path, StandardCharsets.UTF_8))
+        {
+            _lineNumber++;
+            _line = _line.trim();
+
+            if (_line.isEmpty() || _line.startsWith("#"))
+                continue;
+
+            String[] _tokens = _line.split("\\s+");
+            Field _field = GetField(_tokens[0]);
+
+            if (_field == null)
+                throw new IllegalArgumentException("Unknown parameter \"" + _tokens[0] + "\" on line " + _lineNumber + ".");
+
+            try
+            {
+                if (_field.getType() == float.class)
+                {
+                    if (_tokens.length != 2)
+                        throw new IllegalArgumentException("Parameter \"" + _tokens[0] + "\" on line " + _lineNumber + " should have 1 value.");
+
+                    _field.setFloat(_parameters, Float.parseFloat(_tokens[1]));
+                }
+
+                else
+                {
+                    if (_tokens.length != 65)
+                        throw new IllegalArgumentException("Parameter \"" + _tokens[0] + "\" on line " + _lineNumber + " should have 64 values.");
+
+                    float[][] _table = (float[][]) _field.get(_parameters);
+                    for (int i = 0; i < 64; i++)
+                        _table[i / 8][i % 8] = Float.parseFloat(_tokens[i + 1]);
+                }
+            }
+
+            catch (IllegalAccessException e)
+            {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        return _parameters;
+    }
+
+    /**
+     * Writes every parameter to a file that "Load" can read.
+     * @param _path the file to write
+     * @throws IOException if the file can't be written
+     */
+    public void Save(Path _path) throws IOException
+    {
+        try (BufferedWriter _writer = Files.newBufferedWriter(_path, StandardCharsets.UTF_8))
+        {
+            for (Field _field : GetFields())
+            {
+                _writer.write(_field.getName());
+
+                if (_field.getType() == float.class)
+                    _writer.write(" " + _field.getFloat(this));
+
+                else
+                {
+                    for (float[] _row : (float[][]) _field.get(this))
+                    {
+                        for (float _value : _row)
+                            _writer.write(" " + _value);
+                    }
+                }
+
+                _writer.newLine();
+            }
+        }
+
+        catch (IllegalAccessException e)
+        {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @return a deep copy of the parameters
+     */
+    public EvaluationParameters Copy()
+    {
+        EvaluationParameters _copy = new EvaluationParameters();
+
+        try
+        {
+            for (Field _field : GetFields())
+            {
+                if (_field.getType() == float.class)
+                    _field.setFloat(_copy, _field.getFloat(this));
+
+                else
+                {
+                    float[][] _table = (float[][]) _field.get(this);
+                    float[][] _copiedTable = (float[][]) _field.get(_copy);
+
+                    for (int i = 0; i < 8; i++)
+                        System.arraycopy(_table[i], 0, _copiedTable[i], 0, 8);
+                }
+            }
+        }
+
+        catch (IllegalAccessException e)
+        {
+            throw new IllegalStateException(e);
+        }
+
+        return _copy;
+    }
+
+    /**
+     * @return the tuned parameters, laid out by the *_INDEX constants
+     */
+    public double[] ToVector()
+    {
+        double[] _vector = new double[NUM_TUNED_PARAMETERS];
+
+        _vector[PIECE_VALUES_INDEX] = pawnValue;
+        _vector[PIECE_VALUES_INDEX + 1] = knightValue;
+        _vector[PIECE_VALUES_INDEX + 2] = bishopValue;
+        _vector[PIECE_VALUES_INDEX + 3] = rookValue;
+        _vector[PIECE_VALUES_INDEX + 4] = queenValue;
+        _vector[DOUBLED_PAWN_PENALTY_INDEX] = doubledPawnPenalty;
+        _vector[ISOLATED_PAWN_PENALTY_INDEX] = isolatedPawnPenalty;
+        _vector[DOUBLED_AND_ISOLATED_PENALTY_INDEX] = doubledAndIsolatedPenalty;
+        _vector[MOBILITY_WEIGHTS_INDEX] = knightMobilityWeight;
+        _vector[MOBILITY_WEIGHTS_INDEX + 1] = bishopMobilityWeight;
+        _vector[MOBILITY_WEIGHTS_INDEX + 2] = rookMobilityWeight;
+        _vector[MOBILITY_WEIGHTS_INDEX + 3] = queenMobilityWeight;
+        _vector[KING_AS_QUEEN_MOVEMENT_PENALTY_INDEX] = kingAsQueenMovementPenalty;
+        _vector[KING_ZONE_ATTACK_PENALTY_INDEX] = kingZoneAttackPenalty;
+        _vector[HANGING_PIECE_PENALTY_INDEX] = hangingPiecePenalty;
+
+        float[][][] _tables = GetTunedTables();
+        for (int _table = 0; _table < _tables.length; _table++)
+        {
+            for (int i = 0; i < 64; i++)
+                _vector[PAWN_TABLE_MIDDLEGAME_INDEX + _table * 64 + i] = _tables[_table][i / 8][i % 8];
+        }
+
+        return _vector;
+    }
+
+    /**
+     * Sets the tuned parameters from a vector laid out like the one "ToVector" returns.
+     * @param _vector the tuned parameters
+     */
+    public void FromVector(double[] _vector)
+    {
+        if (_vector.length != NUM_TUNED_PARAMETERS)
+            throw new IllegalArgumentException("The vector should have " + NUM_TUNED_PARAMETERS + " values.");
+
+        pawnValue = (float) _vector[PIECE_VALUES_INDEX];
+        knightValue = (float) _vector[PIECE_VALUES_INDEX + 1];
+        bishopValue = (float) _vector[PIECE_VALUES_INDEX + 2];
+        rookValue = (float) _vector[PIECE_VALUES_INDEX + 3];
+        queenValue = (float) _vector[PIECE_VALUES_INDEX + 4];
+        doubledPawnPenalty = (float) _vector[DOUBLED_PAWN_PENALTY_INDEX];
+        isolatedPawnPenalty = (float) _vector[ISOLATED_PAWN_PENALTY_INDEX];
+        doubledAndIsolatedPenalty = (float) _vector[DOUBLED_AND_ISOLATED_PENALTY_INDEX];
+        knightMobilityWeight = (float) _vector[MOBILITY_WEIGHTS_INDEX];
+        bishopMobilityWeight = (float) _vector[MOBILITY_WEIGHTS_INDEX + 1];
+        rookMobilityWeight = (float) _vector[MOBILITY_WEIGHTS_INDEX + 2];
+        queenMobilityWeight = (float) _vector[MOBILITY_WEIGHTS_INDEX + 3];
+        kingAsQueenMovementPenalty = (float) _vector[KING_AS_QUEEN_MOVEMENT_PENALTY_INDEX];
+        kingZoneAttackPenalty = (float) _vector[KING_ZONE_ATTACK_PENALTY_INDEX];
+        hangingPiecePenalty = (float) _vector[HANGING_PIECE_PENALTY_INDEX];
+
+        float[][][] _tables = GetTunedTables();
+        for (int _table = 0; _table < _tables.length; _table++)
+        {
+            for (int i = 0; i < 64; i++)
+                _tables[_table][i / 8][i % 8] = (float) _vector[PAWN_TABLE_MIDDLEGAME_INDEX + _table * 64 + i];
+        }
+    }
+
+    // in the order of the *_TABLE_INDEX constants
+    private float[][][] GetTunedTables()
+    {
+        return new float[][][]
+        {
+            pawnPlacementTableMiddlegame, pawnPlacementTableEndgame, knightPlacementTable, bishopPlacementTable,
+            rookPlacementTable, queenPlacementTable, kingPlacementTableMiddlegame, kingPlacementTableEndgame
+        };
+    }
+
+    private static List<Field> GetFields()
+    {
+        List<Field> _fields = new ArrayList<>();
+
+        for (Field _field : EvaluationParameters.class.getDeclaredFields())
+        {
+            if (!Modifier.isStatic(_field.getModifiers()))
+                _fields.add(_field);
+        }
+
+        return _fields;
+    }
+
+    private static Field GetField(String _name)
+    {
+        for (Field _field : GetFields())
+        {
+            if (_field.getName().equals(_name))
+                return _field;
+        }
+
+        return null;
+    }
+}
@@ -0,0 +1,374 @@
+package com.chess.engine;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.github.bhlangonijr.chesslib.Board;
+import com.github.bhlangonijr.chesslib.move.Move;
+
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * Hosts many engine games at once, like a server for bot opponents.
+ * <p>
+ * Every game is a com.chess.engine.GameSession with its own board, move ordering tables, and small transposition
+ * table, and runs on its own virtual thread, so a game only ever touches its own state and an idle game
+ * costs no platform thread. Everything read-only, like the evaluation's tables, the bitbases, and the
+ * opening book, is shared by all the games through the one engine.
+ * <p>
+ * A game's memory is capped by the size of its transposition table and by the max number of plies it may
+ * last, since the board keeps every move played. The searches of all the games go through a
+ * com.chess.engine.SearchScheduler, which keeps the number of searches running at once near the number of
+ * cores and lets the rest wait their turn in order.
+ * <p>
+ * Usage: <code>GameManager [--games n] [--skill n] [--max-searches n]</code> plays that many
+ * self-play games at once and reports the throughput.
+ */
+public class GameManager implements AutoCloseable
+{
+    public static final int DEFAULT_TABLE_SIZE_KILOBYTES = 256;
+    // long enough for almost any real game. the game is over once it is reached
+    public static final int DEFAULT_MAX_PLIES_PER_GAME = 600;
+
+    private static final String STARTING_FEN = "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1";
+    private static final int DEFAULT_NUM_GAMES = 1000;
+    private static final int DEFAULT_SKILL_LEVEL = 5;
+
+    private final ChessEngine engine;
+    private final SearchScheduler scheduler;
+    private final int tableSizeKilobytes;
+    private final int maxPliesPerGame;
+
+    private final Map<Long, Game> games = new ConcurrentHashMap<>();
+    private final Semaphore gameSlots;
+    private final AtomicLong nextGameId = new AtomicLong(1);
+
+    // optional, played from before searching
+    @Setter
+    @Getter
+    private OpeningBook openingBook;
+
+    /**
+     * @param _engine the engine every game searches with
+     * @param _scheduler bounds the number of searches that run at once, maybe shared with other services
+     * @param _maxGames the max number of games hosted at once
+     * @param _tableSizeKilobytes the size of each game's transposition table
+     * @param _maxPliesPerGame the number of plies after which a game is over
+     */
+    public GameManager(ChessEngine _engine, SearchScheduler _scheduler, int _maxGames, int _tableSizeKilobytes, int _maxPliesPerGame)
+    {
+        if (_maxGames < 1 || _tableSizeKilobytes < 1 || _maxPliesPerGame < 1)
+            throw new IllegalArgumentException("The max games, table size, and max plies should all be at least 1.");
+
+        engine = _engine;
+        scheduler = _scheduler;
+        gameSlots = new Semaphore(_maxGames);
+        tableSizeKilobytes = _tableSizeKilobytes;
+        maxPliesPerGame = _maxPliesPerGame;
+    }
+
+    public static void main(String[] args)
+    {
+        int _numGames = DEFAULT_NUM_GAMES;
+        int _skillLevel = DEFAULT_SKILL_LEVEL;
+        int _maxSearches = Runtime.getRuntime().availableProcessors();
+
+        for (int i = 0; i < args.length; i++)
+        {
+            switch (args[i])
+            {
+                case "--games":
+                    _numGames = Integer.parseInt(args[++i]);
+                    break;
+
+                case "--skill":
+                    _skillLevel = Integer.parseInt(args[++i]);
+                    break;
+
+                case "--max-searches":
+                    _maxSearches = Integer.parseInt(args[++i]);
+                    break;
+
+                default:
+                    throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+
+        SearchLimits _limits = SearchLimits.OfSkill(_skillLevel);
+        AtomicLong _numMoves = new AtomicLong();
+
+        try (GameManager _manager = new GameManager
+        (
+            new ChessEngine(new Board()), new SearchScheduler(_maxSearches),
+            _numGames, DEFAULT_TABLE_SIZE_KILOBYTES, DEFAULT_MAX_PLIES_PER_GAME
+        ))
+        {
+            double _startTimeNanoseconds = System.nanoTime();
+            List<Thread> _players = new ArrayList<>();
+
+            for (int i = 0; i < _numGames; i++)
+            {
+                long _gameId = _manager.StartGame(STARTING_FEN, _limits);
+
+                // the engine plays both sides
+                _players.add(Thread.ofVirtual().start(() ->
+                {
+                    while (_manager.PlayMove(_gameId, null).join() != null)
+                        _numMoves.incrementAndGet();
+
+                    _manager.EndGame(_gameId);
+                }));
+            }
+
+            for (Thread _player : _players)
+                _player.join();
+
+            double _timeTakenSeconds = (System.nanoTime() - _startTimeNanoseconds) / 1000000000;
+
+            System.out.println("Games played: " + _numGames);
+            System.out.println("Moves played: " + _numMoves.get());
+            System.out.println("Time taken (seconds): " + _timeTakenSeconds);
+            System.out.println("Moves per second: " + _numMoves.get() / _timeTakenSeconds);
+        }
+
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Starts hosting a game.
+     * @param _fen the position the game starts from
+     * @param _limits the limits of every search of the engine in the game, like "SearchLimits.OfSkill"
+     * @return the id of the game
+     * @throws IllegalStateException if the max number of games are already hosted
+     */
+    public long StartGame(String _fen, SearchLimits _limits) throws IllegalStateException
+    {
+        if (!gameSlots.tryAcquire())
+            throw new IllegalStateException("No more games can be hosted until one ends.");
+
+        try
+        {
+            long _gameId = nextGameId.getAndIncrement();
+            games.put(_gameId, new Game(engine.NewGameSession(_fen, tableSizeKilobytes), _limits, _gameId));
+
+            return _gameId;
+        }
+
+        // chesslib throws runtime exceptions for FENs it can't read
+        catch (RuntimeException e)
+        {
+            gameSlots.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Plays the opponent's move, if there is one, and then the engine's reply, on the game's thread.
+     * @param _gameId the id of the game
+     * @param _opponentMove the opponent's move, or null to have the engine move for the side to move
+     * @return completes with the engine's move, or null if the game is over. Completes exceptionally if the
+     * opponent's move isn't legal, and is cancelled if the game ends before the move is played.
+     * @throws IllegalArgumentException if there is no game with the id, or it has ended
+     */
+    public CompletableFuture<Move> PlayMove(long _gameId, Move _opponentMove) throws IllegalArgumentException
+    {
+        Game _game = GetGame(_gameId);
+
+        return Submit(_game, _gameId, () -> PlayMove(_game, _opponentMove));
+    }
+
+    /**
+     * @param _gameId the id of the game
+     * @return a copy of the game's current position
+     * @throws IllegalArgumentException if there is no game with the id, or it ends before the position is copied
+     */
+    public Board GetBoard(long _gameId) throws IllegalArgumentException
+    {
+        Game _game = GetGame(_gameId);
+
+        try
+        {
+            // the board is only touched on the game's own thread
+            return Submit(_game, _gameId, _game.session::GetBoard).join();
+        }
+
+        catch (CancellationException e)
+        {
+            throw new IllegalArgumentException("The game " + _gameId + " has ended.");
+        }
+    }
+
+    /**
+     * Stops hosting a game without waiting for it. The futures of the moves that were still waiting to be
+     * played are cancelled. A search the game is running finishes first, and only then is there room for
+     * another game, so "StartGame" can still fail for a moment after this returns.
+     * @param _gameId the id of the game
+     */
+    public void EndGame(long _gameId)
+    {
+        Game _game = games.remove(_gameId);
+
+        if (_game != null)
+        {
+            // every queued task is a GameTask, since they're only submitted through "Submit"
+            for (Runnable _task : _game.executor.shutdownNow())
+                ((GameTask<?>) _task).result.cancel(false);
+
+            // the slot is freed once the game's thread is done, so that the games searching never outnumber the slots
+            Thread.ofVirtual().name("game-" + _gameId + "-end").start(() ->
+            {
+                try
+                {
+                    _game.executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+                }
+
+                catch (InterruptedException e)
+                {
+                    // nothing interrupts this thread
+                }
+
+                finally
+                {
+                    gameSlots.release();
+                }
+            });
+        }
+    }
+
+    /**
+     * @return the number of games hosted
+     */
+    public int GetNumGames()
+    {
+        return games.size();
+    }
+
+    /**
+     * Ends every game.
+     */
+    @Override
+    public void close()
+    {
+        for (long _gameId : games.keySet())
+            EndGame(_gameId);
+    }
+
+    /**
+     * Runs a task on the game's thread.
+     * @return completes with the task's result, exceptionally if the task throws or is interrupted
+     * while its search waits for its turn, or is cancelled if the game ends before the task runs
+     * @throws IllegalArgumentException if the game has ended
+     */
+    private static <T> CompletableFuture<T> Submit(Game _game, long _gameId, Callable<T> _body) throws IllegalArgumentException
+    {
+        GameTask<T> _task = new GameTask<>(_body);
+
+        try
+        {
+            _game.executor.execute(_task);
+        }
+
+        catch (RejectedExecutionException e)
+        {
+            throw new IllegalArgumentException("The game " + _gameId + " has ended.");
+        }
+
+        return _task.result;
+    }
+
+    private Game GetGame(long _gameId) throws IllegalArgumentException
+    {
+        Game _game = games.get(_gameId);
+
+        if (_game == null)
+            throw new IllegalArgumentException("There is no game " + _gameId + ".");
+
+        return _game;
+    }
+
+    /**
+     * Runs on the game's thread.
+     */
+    private Move PlayMove(Game _game, Move _opponentMove) throws InterruptedException
+    {
+        if (_opponentMove != null)
+        {
+            _game.session.DoMove(_opponentMove);
+            _game.numPlies++;
+        }
+
+        if (_game.session.IsGameOver() || _game.numPlies >= maxPliesPerGame)
+            return null;
+
+        Move _move = null;
+
+        OpeningBook _book = openingBook;
+        if (_book != null)
+            _move = _book.PickMove(_game.session.GetBoard(), ThreadLocalRandom.current());
+
+        if (_move == null)
+            _move = scheduler.Run(() -> _game.session.Search(_game.limits)).getBestMove();
+
+        _game.session.DoMove(_move);
+        _game.numPlies++;
+
+        return _move;
+    }
+
+    private static class GameTask<T> implements Runnable
+    {
+        final CompletableFuture<T> result = new CompletableFuture<>();
+        private final Callable<T> body;
+
+        GameTask(Callable<T> _body)
+        {
+            body = _body;
+        }
+
+        @Override
+        public void run()
+        {
+            try
+            {
+                result.complete(body.call());
+            }
+
+            catch (Exception e)
+            {
+                result.completeExceptionally(e);
+            }
+        }
+    }
+
+    private static class Game
+    {
+        final GameSession session;
+        final SearchLimits limits;
+        final ExecutorService executor;
+        // only used on the game's thread
+        int numPlies;
+
+        Game(GameSession _session, SearchLimits _limits, long _gameId)
+        {
+            session = _session;
+            limits = _limits;
+            executor = Executors.newSingleThreadExecutor(Thread.ofVirtual().name("game-" + _gameId).factory());
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package com.chess.engine;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.github.bhlangonijr.chesslib.Board;
+import com.github.bhlangonijr.chesslib.move.Move;
+
+/**
+ * One game played by a com.chess.engine.ChessEngine, whose searches pick up where the last one left off
+ * instead of starting cold.
+ * <p>
+ * The session keeps its own search context for the whole game, so the killer moves and history scores
+ * of one search order the moves of the next, aged so that the new position soon outweighs them. The
+ * session's transposition table, which is the engine's unless the session was given its own, moves on
+ * to a new generation before each search, which lets the entries of the positions the game left behind
+ * be replaced first. If the game follows the line the last search expected, the move that line predicts
+ * is searched first at the root.
+ * <p>
+ * Create sessions with "ChessEngine.NewGameSession". A session should only be used by one thread at a time,
+ * but any number of sessions and "ChessEngine.Search" calls can run at once on the same engine.
+ */
+public class GameSession
+{
+    private final ChessEngine engine;
+    private final SearchContext context;
+
+    // the rest of the line the last search expected, starting from the current position
+    private final List<Move> expectedLine = new ArrayList<>();
+    private int numPliesSinceLastSearch;
+
+    GameSession(ChessEngine _engine, SearchContext _context, String _fen)
+    {
+        engine = _engine;
+        context = _context;
+        context.board.loadFromFen(_fen);
+        context.ClearMoveOrdering();
+    }
+
+    /**
+     * Searches the current position of the game. The position isn't changed; play the chosen move with "DoMove".
+     * @param _limits how deep and how long to search
+     * @return the result of the search. If the best line's score is positive, the position was evaluated
+     * as better for white, but if the score is negative, the position is better for black.
+     * @throws IllegalArgumentException if the depth of the limits is out of range
+     */
+    public SearchResult Search(SearchLimits _limits) throws IllegalArgumentException
+    {
+        Move _predictedMove = !expectedLine.isEmpty() ? expectedLine.get(0) : null;
+
+        SearchResult _result = engine.SearchGameSession(context, _limits, _predictedMove, numPliesSinceLastSearch);
+
+        expectedLine.clear();
+        expectedLine.addAll(_result.getBestLine().getLine());
+        numPliesSinceLastSearch = 0;
+
+        return _result;
+    }
+
+    /**
+     * Plays a move of either side in the game.
+     * @param _move the move to play
+     * @throws IllegalArgumentException if the move isn't legal in the current position
+     */
+    public void DoMove(Move _move) throws IllegalArgumentException
+    {
+        if (!context.board.legalMoves().contains(_move))
+            throw new IllegalArgumentException("The move " + _move + " is not legal in " + context.board.getFen() + ".");
+
+        context.board.doMove(_move);
+        numPliesSinceLastSearch++;
+
+        // the rest of the expected line only helps while the game follows it
+        if (!expectedLine.isEmpty() && expectedLine.get(0).equals(_move))
+            expectedLine.remove(0);
+
+        else
+            expectedLine.clear();
+    }
+
+    /**
+     * @return a copy of the game's current position
+     */
+    public Board GetBoard()
+    {
+        return context.board.clone();
+    }
+
+    /**
+     * @return true if the game is over by checkmate, stalemate, or a draw
+     */
+    public boolean IsGameOver()
+    {
+        Board _board = context.board;
+
+        return _board.isDraw() || _board.legalMoves().isEmpty();
+    }
+}
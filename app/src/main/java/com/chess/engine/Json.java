@@ -0,0 +1,98 @@
+package com.chess.engine;
+
+import java.util.List;
+
+import com.github.bhlangonijr.chesslib.move.Move;
+
+/**
+ * Just enough JSON writing for the engine's tools and services, without pulling in a library.
+ */
+final class Json
+{
+    private Json() { }
+
+    /**
+     * @param _value the string to quote
+     * @return the string as a JSON string literal, or null if the string is null
+     */
+    static String Quote(String _value)
+    {
+        if (_value == null)
+            return "null";
+
+        StringBuilder _quoted = new StringBuilder(_value.length() + 2);
+        _quoted.append('"');
+
+        for (int i = 0; i < _value.length(); i++)
+        {
+            char _character = _value.charAt(i);
+
+            switch (_character)
+            {
+                case '"':
+                    _quoted.append("\\\"");
+                    break;
+
+                case '\\':
+                    _quoted.append("\\\\");
+                    break;
+
+                case '\n':
+                    _quoted.append("\\n");
+                    break;
+
+                case '\r':
+                    _quoted.append("\\r");
+                    break;
+
+                case '\t':
+                    _quoted.append("\\t");
+                    break;
+
+                default:
+                    if (_character < 0x20)
+                        _quoted.append(String.format("\\u%04x", (int) _character));
+
+                    else
+                        _quoted.append(_character);
+                    break;
+            }
+        }
+
+        return _quoted.append('"').toString();
+    }
+
+    /**
+     * @param _score a score in pawns, where checkmates are +/- Float.MAX_VALUE
+     * @return the score as a JSON number. Checkmates are written as +/- 1e9 because JSON has no infinity.
+     */
+    static String Score(float _score)
+    {
+        if (_score >= Float.MAX_VALUE)
+            return "1e9";
+
+        if (_score <= -Float.MAX_VALUE)
+            return "-1e9";
+
+        return Float.toString(_score);
+    }
+
+    /**
+     * @param _line the moves to write
+     * @return the moves as a JSON array of UCI strings
+     */
+    static String Moves(List<Move> _line)
+    {
+        StringBuilder _moves = new StringBuilder("[");
+
+        for (int i = 0; i < _line.size(); i++)
+        {
+            if (i > 0)
+                _moves.append(',');
+
+            _moves.append('"').append(_line.get(i)).append('"');
+        }
+
+        return _moves.append(']').toString();
+    }
+}
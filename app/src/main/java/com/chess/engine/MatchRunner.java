@@ -0,0 +1,332 @@
+package com.chess.engine;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.github.bhlangonijr.chesslib.Board;
+import com.github.bhlangonijr.chesslib.Side;
+import com.github.bhlangonijr.chesslib.move.Move;
+
+/**
+ * Plays games between two search configurations of the engine to find out whether one is
+ * stronger than the other, instead of only comparing node counts.
+ * <p>
+ * Every opening of the suite is played twice with the colors swapped, so neither configuration
+ * gets the better side of an opening. Games run concurrently on a fixed number of threads, and both
+ * sides search under the same node or time limit. After every game the results are checked with
+ * a com.chess.engine.Sprt, and the match stops as soon as the test accepts either hypothesis.
+ * <p>
+ * A configuration is a set of letters: <code>a</code> turns on alpha beta pruning,
+ * <code>o</code> heuristic move ordering, <code>q</code> quiescence, and <code>t</code> the transposition table.
+ * Each configuration searches with its own engine, so they don't share a transposition table,
+ * and follows each game in a com.chess.engine.GameSession of its engine.
+ * <p>
+ * Usage: <code>MatchRunner [--test aoqt] [--base aoqt] [--openings file] [--games n] [--threads n]
+ * [--depth n] [--nodes n] [--movetime ms] [--elo0 n] [--elo1 n] [--alpha n] [--beta n]</code>
+ */
+public class MatchRunner
+{
+    private static final String START_POSITION = "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1";
+
+    // games this long are called a draw
+    private static final int MAX_GAME_PLIES = 400;
+
+    private static final int WIN = 1;
+    private static final int DRAW = 0;
+    private static final int LOSS = -1;
+
+    private final ChessEngine testEngine = new ChessEngine(new Board());
+    private final ChessEngine baseEngine = new ChessEngine(new Board());
+    private final SearchLimits testLimits;
+    private final SearchLimits baseLimits;
+    private final Sprt sprt;
+
+    private final ReentrantLock resultsLock = new ReentrantLock();
+    // results from the perspective of the test configuration
+    private int numWins;
+    private int numDraws;
+    private int numLosses;
+    private volatile boolean isFinished;
+
+    public MatchRunner(SearchLimits _testLimits, SearchLimits _baseLimits, Sprt _sprt)
+    {
+        testLimits = _testLimits;
+        baseLimits = _baseLimits;
+        sprt = _sprt;
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException
+    {
+        String _testFeatures = "aoqt";
+        String _baseFeatures = "aoqt";
+        String _openingsPath = null;
+        int _maxGames = 1000;
+        int _numThreads = Runtime.getRuntime().availableProcessors();
+        int _depth = 0;
+        long _maxNodes = 0;
+        long _moveTimeMilliseconds = 0;
+        double _elo0 = 0;
+        double _elo1 = 10;
+        double _alpha = 0.05;
+        double _beta = 0.05;
+
+        for (int i = 0; i < args.length; i++)
+        {
+            switch (args[i])
+            {
+                case "--test":
+                    _testFeatures = args[++i];
+                    break;
+
+                case "--base":
+                    _baseFeatures = args[++i];
+                    break;
+
+                case "--openings":
+                    _openingsPath = args[++i];
+                    break;
+
+                case "--games":
+                    _maxGames = Integer.parseInt(args[++i]);
+                    break;
+
+                case "--threads":
+                    _numThreads = Integer.parseInt(args[++i]);
+                    break;
+
+                case "--depth":
+                    _depth = Integer.parseInt(args[++i]);
+                    break;
+
+                case "--nodes":
+                    _maxNodes = Long.parseLong(args[++i]);
+                    break;
+
+                case "--movetime":
+                    _moveTimeMilliseconds = Long.parseLong(args[++i]);
+                    break;
+
+                case "--elo0":
+                    _elo0 = Double.parseDouble(args[++i]);
+                    break;
+
+                case "--elo1":
+                    _elo1 = Double.parseDouble(args[++i]);
+                    break;
+
+                case "--alpha":
+                    _alpha = Double.parseDouble(args[++i]);
+                    break;
+
+                case "--beta":
+                    _beta = Double.parseDouble(args[++i]);
+                    break;
+
+                default:
+                    throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+
+        if (_depth == 0)
+        {
+            // without a node or time limit, a fixed depth is the only thing that ends a search.
+            // with one, the depth is only a safety net
+            _depth = _maxNodes > 0 || _moveTimeMilliseconds > 0 ? ChessEngine.MAX_PLY - 2 : 4;
+        }
+
+        SearchLimits _limits = SearchLimits.builder()
+            .depth(_depth)
+            .maxNodes(_maxNodes)
+            .moveTimeMilliseconds(_moveTimeMilliseconds)
+            .build();
+
+        List<String> _openings = new ArrayList<>();
+        if (_openingsPath == null)
+            _openings.add(START_POSITION);
+
+        else
+        {
+            for (String _line : Files.readAllLines(Paths.get(_openingsPath), StandardCharsets.UTF_8))
+            {
+                _line = _line.trim();
+
+                if (!_line.isEmpty() && !_line.startsWith("#"))
+                    _openings.add(BatchAnalyzer.ParsePosition(0, _line).getFen());
+            }
+        }
+
+        MatchRunner _runner = new MatchRunner
+        (
+            WithFeatures(_limits, _testFeatures), WithFeatures(_limits, _baseFeatures),
+            new Sprt(_elo0, _elo1, _alpha, _beta)
+        );
+
+        double _startTimeNanoseconds = System.nanoTime();
+        _runner.Run(_openings, _maxGames, _numThreads);
+        double _timeTakenSeconds = (System.nanoTime() - _startTimeNanoseconds) / 1000000000;
+
+        System.out.println();
+        System.out.println(_runner.GetSummary());
+        System.out.println("Time taken (seconds): " + _timeTakenSeconds);
+    }
+
+    private static SearchLimits WithFeatures(SearchLimits _limits, String _features)
+    {
+        return _limits.toBuilder()
+            .alphaBetaPruning(_features.contains("a"))
+            .heuristicMoveOrdering(_features.contains("o"))
+            .quiescence(_features.contains("q"))
+            .transpositionTable(_features.contains("t"))
+            .build();
+    }
+
+    /**
+     * Plays the match. Returns once the max number of games is played or the SPRT reaches a decision.
+     * @param _openings the FENs to start games from. Each one is played twice with the colors swapped.
+     * @param _maxGames the max number of games to play
+     * @param _numThreads the number of games played at once
+     * @throws InterruptedException if the calling thread is interrupted while waiting for the games
+     */
+    public void Run(List<String> _openings, int _maxGames, int _numThreads) throws InterruptedException
+    {
+        // the games are CPU bound, so one platform thread per core
+        ExecutorService _executor = Executors.newFixedThreadPool(_numThreads);
+
+        try
+        {
+            for (int _gameIndex = 0; _gameIndex < _maxGames; _gameIndex++)
+            {
+                String _opening = _openings.get((_gameIndex / 2) % _openings.size());
+                boolean _isTestWhite = _gameIndex % 2 == 0;
+
+                _executor.execute(() ->
+                {
+                    if (!isFinished)
+                        RecordResult(PlayGame(_opening, _isTestWhite));
+                });
+            }
+        }
+
+        finally
+        {
+            _executor.shutdown();
+            _executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Plays one game between the two configurations.
+     * @param _opening the FEN to start from
+     * @param _isTestWhite true if the test configuration plays white
+     * @return WIN, DRAW, or LOSS from the perspective of the test configuration
+     */
+    private int PlayGame(String _opening, boolean _isTestWhite)
+    {
+        Board _board = new Board();
+        _board.loadFromFen(_opening);
+
+        // each side follows the game in its own session, so that its searches see the positions
+        // played before and carry their move ordering from one move to the next like in a real game
+        GameSession _testSession = testEngine.NewGameSession(_opening);
+        GameSession _baseSession = baseEngine.NewGameSession(_opening);
+
+        for (int _ply = 0; _ply < MAX_GAME_PLIES; _ply++)
+        {
+            if (_board.isMated())
+            {
+                boolean _hasWhiteLost = _board.getSideToMove() == Side.WHITE;
+                return _hasWhiteLost == _isTestWhite ? LOSS : WIN;
+            }
+
+            if (_board.isDraw())
+                return DRAW;
+
+            boolean _isTestToMove = (_board.getSideToMove() == Side.WHITE) == _isTestWhite;
+            Move _move = _isTestToMove
+                ? _testSession.Search(testLimits).getBestMove()
+                : _baseSession.Search(baseLimits).getBestMove();
+
+            _board.doMove(_move);
+            _testSession.DoMove(_move);
+            _baseSession.DoMove(_move);
+        }
+
+        return DRAW;
+    }
+
+    private void RecordResult(int _result)
+    {
+        resultsLock.lock();
+        try
+        {
+            if (isFinished)
+                return;
+
+            if (_result == WIN)
+                numWins++;
+
+            else if (_result == DRAW)
+                numDraws++;
+
+            else
+                numLosses++;
+
+            double _logLikelihoodRatio = sprt.CalculateLogLikelihoodRatio(numWins, numDraws, numLosses);
+            System.out.printf("Games: %d, +%d =%d -%d, LLR: %.2f (%.2f, %.2f)%n",
+                numWins + numDraws + numLosses, numWins, numDraws, numLosses,
+                _logLikelihoodRatio, sprt.GetLowerBound(), sprt.GetUpperBound());
+
+            if (sprt.GetDecision(numWins, numDraws, numLosses) != Sprt.CONTINUE)
+                isFinished = true;
+        }
+
+        finally
+        {
+            resultsLock.unlock();
+        }
+    }
+
+    /**
+     * @return the results, Elo difference with its 95% error margin, and the SPRT decision
+     */
+    public String GetSummary()
+    {
+        resultsLock.lock();
+        try
+        {
+            String _decision;
+            switch (sprt.GetDecision(numWins, numDraws, numLosses))
+            {
+                case Sprt.ACCEPT_H1:
+                    _decision = "H1 accepted: the test configuration is stronger";
+                    break;
+
+                case Sprt.ACCEPT_H0:
+                    _decision = "H0 accepted: the test configuration is not stronger";
+                    break;
+
+                default:
+                    _decision = "no decision yet";
+                    break;
+            }
+
+            return String.format("Games: %d (+%d =%d -%d)%nElo: %.1f +/- %.1f%nSPRT: %s",
+                numWins + numDraws + numLosses, numWins, numDraws, numLosses,
+                Sprt.CalculateElo(numWins, numDraws, numLosses),
+                Sprt.CalculateEloErrorMargin(numWins, numDraws, numLosses), _decision);
+        }
+
+        finally
+        {
+            resultsLock.unlock();
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package com.chess.engine;
+
+import com.github.bhlangonijr.chesslib.Board;
+import com.github.bhlangonijr.chesslib.File;
+import com.github.bhlangonijr.chesslib.Piece;
+import com.github.bhlangonijr.chesslib.PieceType;
+import com.github.bhlangonijr.chesslib.Side;
+import com.github.bhlangonijr.chesslib.Square;
+import com.github.bhlangonijr.chesslib.move.Move;
+
+/**
+ * A stack of com.chess.engine.NnueNetwork accumulators, one entry per move made since the last refresh.
+ * <p>
+ * Making a move copies the top accumulators and only adds and subtracts the inputs of the
+ * pieces the move changes, which is a handful of vector additions instead of a sum over every
+ * piece. Unmaking a move just pops the stack.
+ * <p>
+ * Each search context has its own stack, so nothing here is synchronized.
+ */
+class NnueAccumulator
+{
+    private final NnueNetwork network;
+    // [ply][perspective] where perspective is the ordinal of the side
+    private final short[][][] accumulators;
+    private int top;
+
+    /**
+     * @param _network the network the accumulators belong to
+     * @param _maxDepth the max number of moves made on top of a refresh
+     */
+    NnueAccumulator(NnueNetwork _network, int _maxDepth)
+    {
+        network = _network;
+        accumulators = new short[_maxDepth + 1][2][_network.GetHiddenSize()];
+    }
+
+    /**
+     * Calculates the accumulators of the board from scratch and empties the stack.
+     * @param _board the board to calculate the accumulators of
+     */
+    void Refresh(Board _board)
+    {
+        top = 0;
+
+        for (Side _perspective : Side.values())
+        {
+            short[] _accumulator = accumulators[0][_perspective.ordinal()];
+            System.arraycopy(network.hiddenBiases, 0, _accumulator, 0, _accumulator.length);
+
+            for (int _square = 0; _square < 64; _square++)
+            {
+                Piece _piece = _board.getPiece(Square.squareAt(_square));
+
+                if (_piece != Piece.NONE)
+                    network.AddInput(_accumulator, NnueNetwork.GetInputIndex(_perspective, _piece, Square.squareAt(_square)), true);
+            }
+        }
+    }
+
+    /**
+     * Pushes the accumulators of the position after the move. Must be called before the move is made.
+     * @param _board the board before the move
+     * @param _move the move about to be made
+     */
+    void Push(Board _board, Move _move)
+    {
+        Square _from = _move.getFrom();
+        Square _to = _move.getTo();
+        Piece _movingPiece = _board.getPiece(_from);
+        Piece _capturedPiece = _board.getPiece(_to);
+        Square _capturedSquare = _to;
+
+        // a pawn moving diagonally onto an empty square is taking en passant
+        if (_movingPiece.getPieceType() == PieceType.PAWN && _capturedPiece == Piece.NONE
+            && _from.getFile() != _to.getFile())
+        {
+            _capturedSquare = Square.squareAt(_from.getRank().ordinal() * 8 + _to.getFile().ordinal());
+            _capturedPiece = _board.getPiece(_capturedSquare);
+        }
+
+        Piece _placedPiece = _move.getPromotion() != null && _move.getPromotion() != Piece.NONE
+            ? _move.getPromotion()
+            : _movingPiece;
+
+        top++;
+
+        for (Side _perspective : Side.values())
+        {
+            short[] _accumulator = accumulators[top][_perspective.ordinal()];
+            System.arraycopy(accumulators[top - 1][_perspective.ordinal()], 0, _accumulator, 0, _accumulator.length);
+
+            network.AddInput(_accumulator, NnueNetwork.GetInputIndex(_perspective, _movingPiece, _from), false);
+            network.AddInput(_accumulator, NnueNetwork.GetInputIndex(_perspective, _placedPiece, _to), true);
+
+            if (_capturedPiece != Piece.NONE)
+                network.AddInput(_accumulator, NnueNetwork.GetInputIndex(_perspective, _capturedPiece, _capturedSquare), false);
+
+            // castling is a king move of two files, and the rook jumps over the king
+            if (_movingPiece.getPieceType() == PieceType.KING
+                && Math.abs(_from.getFile().ordinal() - _to.getFile().ordinal()) == 2)
+            {
+                boolean _isKingside = _to.getFile().ordinal() > _from.getFile().ordinal();
+                int _rankStart = _from.getRank().ordinal() * 8;
+
+                Square _rookFrom = Square.squareAt(_rankStart + (_isKingside ? File.FILE_H : File.FILE_A).ordinal());
+                Square _rookTo = Square.squareAt(_rankStart + (_isKingside ? File.FILE_F : File.FILE_D).ordinal());
+                Piece _rook = Piece.make(_movingPiece.getPieceSide(), PieceType.ROOK);
+
+                network.AddInput(_accumulator, NnueNetwork.GetInputIndex(_perspective, _rook, _rookFrom), false);
+                network.AddInput(_accumulator, NnueNetwork.GetInputIndex(_perspective, _rook, _rookTo), true);
+            }
+        }
+    }
+
+    /**
+     * Pops the accumulators of the last move.
+     */
+    void Pop()
+    {
+        top--;
+    }
+
+    /**
+     * @param _sideToMove the side to move in the current position
+     * @return the evaluation in pawns from the side to move's perspective
+     */
+    float Evaluate(Side _sideToMove)
+    {
+        return network.Propagate
+        (
+            accumulators[top][_sideToMove.ordinal()],
+            accumulators[top][_sideToMove.flip().ordinal()]
+        );
+    }
+}
@@ -0,0 +1,240 @@
+package com.chess.engine;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+import com.github.bhlangonijr.chesslib.Board;
+import com.github.bhlangonijr.chesslib.Piece;
+import com.github.bhlangonijr.chesslib.Side;
+import com.github.bhlangonijr.chesslib.Square;
+
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.ShortVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * A small quantised neural network that can replace the hand-crafted evaluation.
+ * <p>
+ * The network has 768 inputs, one for each combination of piece color, piece type, and square,
+ * seen from each side's perspective: the perspective's own pieces come first, and black sees the
+ * board flipped vertically. Both perspectives share one hidden layer of int16 weights, whose sums,
+ * the accumulators, are kept up to date by a com.chess.engine.NnueAccumulator as moves are made and unmade.
+ * The output layer clips the side to move's accumulator and then the other side's accumulator to
+ * [0, QA], multiplies them by their int16 output weights, and sums them in int32.
+ * <p>
+ * Both layers use the incubating Vector API, so the JVM has to run with
+ * <code>--add-modules jdk.incubator.vector</code>.
+ * <p>
+ * The file format is a 16 byte header of big-endian ints: MAGIC, VERSION, the hidden layer size, and the
+ * output scale. It is followed by little-endian int16 arrays: the input weights (768 rows of the hidden
+ * layer size), the hidden biases, and the output weights (twice the hidden layer size), and then
+ * the little-endian int32 output bias.
+ */
+public final class NnueNetwork
+{
+    public static final int MAGIC = 0x4E4E5545;
+    public static final int VERSION = 1;
+
+    public static final int NUM_INPUTS = 768;
+    // the quantisation of the hidden layer and the output weights
+    static final int QA = 255;
+    static final int QB = 64;
+
+    static final VectorSpecies<Short> SHORT_SPECIES = ShortVector.SPECIES_PREFERRED;
+    // as many int lanes as half a short vector, so that shorts can be widened into them
+    private static final VectorSpecies<Integer> INT_SPECIES = IntVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Short> HALF_SHORT_SPECIES = VectorSpecies.of
+    (
+        short.class, VectorShape.forBitSize(INT_SPECIES.vectorBitSize() / 2)
+    );
+
+    private final int hiddenSize;
+    // centipawns per unit of the dequantised output
+    private final int outputScale;
+    // input i's weights are hiddenSize entries starting at i * hiddenSize
+    final short[] inputWeights;
+    final short[] hiddenBiases;
+    // the side to move's half comes first
+    private final short[] outputWeights;
+    private final int outputBias;
+
+    private NnueNetwork(int _hiddenSize, int _outputScale, short[] _inputWeights, short[] _hiddenBiases,
+    short[] _outputWeights, int _outputBias)
+    {
+        if (_hiddenSize <= 0 || _hiddenSize % SHORT_SPECIES.length() != 0)
+        {
+            throw new IllegalArgumentException("The hidden layer size should be a positive multiple of "
+                + SHORT_SPECIES.length() + ".");
+        }
+
+        hiddenSize = _hiddenSize;
+        outputScale = _outputScale;
+        inputWeights = _inputWeights;
+        hiddenBiases = _hiddenBiases;
+        outputWeights = _outputWeights;
+        outputBias = _outputBias;
+    }
+
+    /**
+     * Reads a network file.
+     * @param _path the network file
+     * @return the network
+     * @throws IOException if the file can't be read or isn't a network
+     */
+    public static NnueNetwork Load(Path _path) throws IOException
+    {
+        try (DataInputStream _input = new DataInputStream(new BufferedInputStream(Files.newInputStream(_path))))
+        {
+            if (_input.readInt() != MAGIC || _input.readInt() != VERSION)
+                throw new IOException(_path + " is not a network file.");
+
+            int _hiddenSize = _input.readInt();
+            int _outputScale = _input.readInt();
+
+            short[] _inputWeights = ReadShorts(_input, NUM_INPUTS * _hiddenSize);
+            short[] _hiddenBiases = ReadShorts(_input, _hiddenSize);
+            short[] _outputWeights = ReadShorts(_input, 2 * _hiddenSize);
+
+            byte[] _outputBias = new byte[4];
+            _input.readFully(_outputBias);
+
+            return new NnueNetwork
+            (
+                _hiddenSize, _outputScale, _inputWeights, _hiddenBiases, _outputWeights,
+                ByteBuffer.wrap(_outputBias).order(ByteOrder.LITTLE_ENDIAN).getInt()
+            );
+        }
+    }
+
+    private static short[] ReadShorts(DataInputStream _input, int _count) throws IOException
+    {
+        byte[] _bytes = new byte[_count * 2];
+        _input.readFully(_bytes);
+
+        short[] _values = new short[_count];
+        ByteBuffer.wrap(_bytes).order(ByteOrder.LITTLE_ENDIAN).asShortBuffer().get(_values);
+
+        return _values;
+    }
+
+    /**
+     * Creates a network with small random weights. It plays badly, but costs the same to run
+     * as a trained network of the same size, so it can be used for benchmarks and tests.
+     * @param _hiddenSize the size of the hidden layer
+     * @param _seed the seed of the weights
+     * @return the network
+     */
+    public static NnueNetwork CreateRandom(int _hiddenSize, long _seed)
+    {
+        Random _random = new Random(_seed);
+
+        short[] _inputWeights = new short[NUM_INPUTS * _hiddenSize];
+        for (int i = 0; i < _inputWeights.length; i++)
+            _inputWeights[i] = (short) (_random.nextInt(17) - 8);
+
+        short[] _hiddenBiases = new short[_hiddenSize];
+        for (int i = 0; i < _hiddenBiases.length; i++)
+            _hiddenBiases[i] = (short) (_random.nextInt(64));
+
+        short[] _outputWeights = new short[2 * _hiddenSize];
+        for (int i = 0; i < _outputWeights.length; i++)
+            _outputWeights[i] = (short) (_random.nextInt(33) - 16);
+
+        return new NnueNetwork(_hiddenSize, 400, _inputWeights, _hiddenBiases, _outputWeights, 0);
+    }
+
+    public int GetHiddenSize()
+    {
+        return hiddenSize;
+    }
+
+    /**
+     * @param _perspective the side whose accumulator the input belongs to
+     * @param _piece the piece on the square
+     * @param _square the square
+     * @return the index of the input
+     */
+    static int GetInputIndex(Side _perspective, Piece _piece, Square _square)
+    {
+        int _color = _piece.getPieceSide() == _perspective ? 0 : 1;
+        int _square64 = _perspective == Side.WHITE ? _square.ordinal() : _square.ordinal() ^ 56;
+
+        return _color * 384 + _piece.getPieceType().ordinal() * 64 + _square64;
+    }
+
+    /**
+     * Evaluates a board without an accumulator by calculating both accumulators from scratch.
+     * @param _board the board to evaluate
+     * @return the evaluation in pawns. A positive number favors white.
+     */
+    public float Evaluate(Board _board)
+    {
+        NnueAccumulator _accumulator = new NnueAccumulator(this, 1);
+        _accumulator.Refresh(_board);
+
+        float _evaluation = _accumulator.Evaluate(_board.getSideToMove());
+
+        return _board.getSideToMove() == Side.WHITE ? _evaluation : -_evaluation;
+    }
+
+    //#region Layers
+    /**
+     * Adds (or subtracts) an input's weights to an accumulator.
+     */
+    void AddInput(short[] _accumulator, int _input, boolean _isAdding)
+    {
+        int _weightsStart = _input * hiddenSize;
+
+        for (int i = 0; i < hiddenSize; i += SHORT_SPECIES.length())
+        {
+            ShortVector _values = ShortVector.fromArray(SHORT_SPECIES, _accumulator, i);
+            ShortVector _weights = ShortVector.fromArray(SHORT_SPECIES, inputWeights, _weightsStart + i);
+
+            (_isAdding ? _values.add(_weights) : _values.sub(_weights)).intoArray(_accumulator, i);
+        }
+    }
+
+    /**
+     * Runs the output layer.
+     * @param _sideToMoveAccumulator the accumulator of the side to move
+     * @param _otherAccumulator the accumulator of the other side
+     * @return the evaluation in pawns from the side to move's perspective
+     */
+    float Propagate(short[] _sideToMoveAccumulator, short[] _otherAccumulator)
+    {
+        long _output = (long) Dot(_sideToMoveAccumulator, 0) + Dot(_otherAccumulator, hiddenSize) + outputBias;
+
+        return (float) _output * outputScale / (QA * QB) / 100f;
+    }
+
+    // the dot product of the clipped accumulator and half of the output weights
+    private int Dot(short[] _accumulator, int _weightsStart)
+    {
+        IntVector _sums = IntVector.zero(INT_SPECIES);
+
+        for (int i = 0; i < hiddenSize; i += HALF_SHORT_SPECIES.length())
+        {
+            ShortVector _values = ShortVector.fromArray(HALF_SHORT_SPECIES, _accumulator, i)
+                .max((short) 0)
+                .min((short) QA);
+            ShortVector _weights = ShortVector.fromArray(HALF_SHORT_SPECIES, outputWeights, _weightsStart + i);
+
+            // widened first because the products don't fit in 16 bits
+            IntVector _wideValues = (IntVector) _values.convertShape(VectorOperators.S2I, INT_SPECIES, 0);
+            IntVector _wideWeights = (IntVector) _weights.convertShape(VectorOperators.S2I, INT_SPECIES, 0);
+
+            _sums = _sums.add(_wideValues.mul(_wideWeights));
+        }
+
+        return _sums.reduceLanes(VectorOperators.ADD);
+    }
+    //#endregion
+}
@@ -0,0 +1,203 @@
+package com.chess.engine;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import com.github.bhlangonijr.chesslib.Board;
+import com.github.bhlangonijr.chesslib.move.Move;
+
+/**
+ * Read-only opening book built by com.chess.engine.OpeningBookBuilder.
+ * <p>
+ * The book file is memory-mapped, so opening a book is cheap and
+ * the same book can be shared by any number of engines and threads.
+ * Entries are sorted by Zobrist key, and probing is a binary search.
+ * <p>
+ * A single mapping can't be larger than 2 GB, so the entries are mapped in chunks
+ * of a whole number of entries each, and a book can be as large as the file system allows.
+ * <p>
+ * File layout (big endian):
+ * <pre>
+ * header: magic (int), version (int), max ply (int), entry count (long)
+ * entry:  Zobrist key (long), move (short, see com.chess.engine.PackedMove), games (int), half points (int)
+ * </pre>
+ */
+public class OpeningBook
+{
+    static final int MAGIC = 0x4345424B; // "CEBK"
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 4 + 4 + 4 + 8;
+    static final int ENTRY_SIZE = 8 + 2 + 4 + 4;
+    // about 1.1 GB per mapping
+    private static final int DEFAULT_ENTRIES_PER_CHUNK = 1 << 26;
+
+    // chunk n holds the entries from n * entriesPerChunk on
+    private final ByteBuffer[] chunks;
+    private final int entriesPerChunk;
+    private final long numEntries;
+    private final int maxPly;
+
+    public OpeningBook(Path _bookPath) throws IOException
+    {
+        this(_bookPath, DEFAULT_ENTRIES_PER_CHUNK);
+    }
+
+    /**
+     * @param _bookPath the book file
+     * @param _entriesPerChunk the number of entries in each mapping. Smaller chunks let tests cross
+     * chunk boundaries without writing gigabytes.
+     */
+    OpeningBook(Path _bookPath, int _entriesPerChunk) throws IOException
+    {
+        if (_entriesPerChunk < 1 || (long) _entriesPerChunk * ENTRY_SIZE > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("The entries per chunk should be greater than 0 and fit in one mapping.");
+
+        entriesPerChunk = _entriesPerChunk;
+
+        try (FileChannel _channel = FileChannel.open(_bookPath, StandardOpenOption.READ))
+        {
+            if (_channel.size() < HEADER_SIZE)
+                throw new IOException(_bookPath + " is not an opening book.");
+
+            MappedByteBuffer _header = _channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+            _header.order(ByteOrder.BIG_ENDIAN);
+
+            if (_header.getInt(0) != MAGIC)
+                throw new IOException(_bookPath + " is not an opening book.");
+
+            if (_header.getInt(4) != VERSION)
+                throw new IOException("Unsupported opening book version " + _header.getInt(4) + ".");
+
+            maxPly = _header.getInt(8);
+            numEntries = _header.getLong(12);
+
+            if (numEntries < 0 || numEntries > (_channel.size() - HEADER_SIZE) / ENTRY_SIZE)
+                throw new IOException("The opening book " + _bookPath + " is truncated.");
+
+            chunks = new ByteBuffer[(int) ((numEntries + entriesPerChunk - 1) / entriesPerChunk)];
+            for (int i = 0; i < chunks.length; i++)
+            {
+                long _firstEntry = (long) i * entriesPerChunk;
+                long _numChunkEntries = Math.min(entriesPerChunk, numEntries - _firstEntry);
+
+                chunks[i] = _channel.map
+                (
+                    FileChannel.MapMode.READ_ONLY, HEADER_SIZE + _firstEntry * ENTRY_SIZE, _numChunkEntries * ENTRY_SIZE
+                ).order(ByteOrder.BIG_ENDIAN);
+            }
+        }
+    }
+
+    public long getNumEntries()
+    {
+        return numEntries;
+    }
+
+    public int getMaxPly()
+    {
+        return maxPly;
+    }
+
+    /**
+     * Finds every book move for the position with the given Zobrist key.
+     * @param _zobristKey the Zobrist key of the position, as given by <code>Board.getZobristKey()</code>
+     * @return the book moves ordered by popularity. The list is empty if the position is not in the book.
+     */
+    public List<BookMove> Probe(long _zobristKey)
+    {
+        List<BookMove> _bookMoves = new ArrayList<>();
+
+        // lower bound binary search on the sorted keys
+        long _low = 0;
+        long _high = numEntries;
+        while (_low < _high)
+        {
+            long _middle = (_low + _high) >>> 1;
+
+            if (Long.compareUnsigned(GetKey(_middle), _zobristKey) < 0)
+                _low = _middle + 1;
+
+            else
+                _high = _middle;
+        }
+
+        for (long i = _low; i < numEntries && GetKey(i) == _zobristKey; i++)
+        {
+            ByteBuffer _chunk = GetChunk(i);
+            int _offset = GetOffset(i);
+
+            _bookMoves.add(new BookMove
+            (
+                PackedMove.Decode(_chunk.getShort(_offset + 8)),
+                _chunk.getInt(_offset + 10),
+                _chunk.getInt(_offset + 14)
+            ));
+        }
+
+        Collections.sort(_bookMoves);
+
+        return _bookMoves;
+    }
+
+    /**
+     * Picks a book move for the board's position, weighted by how often each move was played.
+     * @param _board the board whose position is looked up. It is not modified.
+     * @param _rand the random number generator used to pick the move
+     * @return a legal book move, or null if the position is not in the book
+     */
+    public Move PickMove(Board _board, Random _rand)
+    {
+        List<BookMove> _bookMoves = Probe(_board.getZobristKey());
+
+        long _totalGames = 0;
+        for (BookMove _bookMove : _bookMoves)
+            _totalGames += _bookMove.getNumGames();
+
+        if (_totalGames == 0)
+            return null;
+
+        long _pick = (long) (_rand.nextDouble() * _totalGames);
+        for (BookMove _bookMove : _bookMoves)
+        {
+            _pick -= _bookMove.getNumGames();
+
+            if (_pick < 0)
+            {
+                // guards against Zobrist collisions with a different position
+                if (!_board.legalMoves().contains(_bookMove.getMove()))
+                    return null;
+
+                return _bookMove.getMove();
+            }
+        }
+
+        return null;
+    }
+
+    private long GetKey(long _index)
+    {
+        return GetChunk(_index).getLong(GetOffset(_index));
+    }
+
+    private ByteBuffer GetChunk(long _index)
+    {
+        return chunks[(int) (_index / entriesPerChunk)];
+    }
+
+    /**
+     * @return the offset of the entry in its chunk
+     */
+    private int GetOffset(long _index)
+    {
+        return (int) (_index % entriesPerChunk) * ENTRY_SIZE;
+    }
+}
@@ -0,0 +1,838 @@
+package com.chess.engine;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.github.bhlangonijr.chesslib.Board;
+import com.github.bhlangonijr.chesslib.Piece;
+import com.github.bhlangonijr.chesslib.PieceType;
+import com.github.bhlangonijr.chesslib.Side;
+import com.github.bhlangonijr.chesslib.move.Move;
+
+/**
+ * Builds a com.chess.engine.OpeningBook from PGN files of any size.
+ * <p>
+ * One thread streams the PGN files and splits them into games, and every
+ * other core replays games with its own Board, resolving the SAN moves on it as it goes. Each replaying thread
+ * collects (position, move, result) records in a fixed-size buffer, which is
+ * sorted and spilled to a temporary run file whenever it fills up. Once all
+ * games are replayed, the sorted runs are merged into the final book file.
+ * Memory use is bounded by the number of threads times the run size, no
+ * matter how large the input is.
+ * <p>
+ * Usage: <code>OpeningBookBuilder &lt;book file&gt; &lt;pgn file&gt;... [--max-ply n]
+ * [--min-games n] [--run-size n] [--threads n]</code>
+ */
+public class OpeningBookBuilder
+{
+    private static final int DEFAULT_MAX_PLY = 20;
+    private static final int DEFAULT_MIN_GAMES = 1;
+    // records per replaying thread. each record takes 16 bytes
+    private static final int DEFAULT_RUN_SIZE = 1 << 21;
+    private static final int GAMES_PER_THREAD_IN_QUEUE = 64;
+    private static final int RUN_READ_BUFFER_SIZE = 1 << 16;
+
+    // the piece letters of SAN and their types. the king is first so that no promotion can match it
+    private static final String SAN_PIECES = "KQRBN";
+    private static final PieceType[] SAN_PIECE_TYPES =
+    {
+        PieceType.KING, PieceType.QUEEN, PieceType.ROOK, PieceType.BISHOP, PieceType.KNIGHT
+    };
+
+    // marks the end of the input for the replaying threads
+    private static final String END_OF_INPUT = new String("END_OF_INPUT");
+
+    private final int maxPly;
+    private final int minGames;
+    private final int runSize;
+    private final int numThreads;
+
+    private final List<Path> runFiles = Collections.synchronizedList(new ArrayList<>());
+    private final AtomicLong numGamesReplayed = new AtomicLong();
+    private final AtomicLong numGamesSkipped = new AtomicLong();
+
+    public OpeningBookBuilder(int _maxPly, int _minGames, int _runSize, int _numThreads)
+    {
+        if (_maxPly < 1 || _minGames < 1 || _runSize < 1 || _numThreads < 1)
+        {
+            throw new IllegalArgumentException("The max ply, min games, run size, and number of threads" +
+            " should all be greater than 0.");
+        }
+
+        maxPly = _maxPly;
+        minGames = _minGames;
+        runSize = _runSize;
+        numThreads = _numThreads;
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException
+    {
+        if (args.length < 2)
+        {
+            System.out.println("Usage: OpeningBookBuilder <book file> <pgn file>... [--max-ply n]" +
+            " [--min-games n] [--run-size n] [--threads n]");
+            return;
+        }
+
+        Path _bookPath = Paths.get(args[0]);
+        List<Path> _pgnPaths = new ArrayList<>();
+        int _maxPly = DEFAULT_MAX_PLY;
+        int _minGames = DEFAULT_MIN_GAMES;
+        int _runSize = DEFAULT_RUN_SIZE;
+        // one core is left for the reading thread
+        int _numThreads = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+
+        for (int i = 1; i < args.length; i++)
+        {
+            switch (args[i])
+            {
+                case "--max-ply":
+                    _maxPly = Integer.parseInt(args[++i]);
+                    break;
+
+                case "--min-games":
+                    _minGames = Integer.parseInt(args[++i]);
+                    break;
+
+                case "--run-size":
+                    _runSize = Integer.parseInt(args[++i]);
+                    break;
+
+                case "--threads":
+                    _numThreads = Integer.parseInt(args[++i]);
+                    break;
+
+                default:
+                    _pgnPaths.add(Paths.get(args[i]));
+                    break;
+            }
+        }
+
+        OpeningBookBuilder _builder = new OpeningBookBuilder(_maxPly, _minGames, _runSize, _numThreads);
+
+        double _startTimeNanoseconds = System.nanoTime();
+        long _numEntries = _builder.Build(_pgnPaths, _bookPath);
+        double _timeTakenSeconds = (System.nanoTime() - _startTimeNanoseconds) / 1000000000;
+
+        System.out.println("Games replayed: " + _builder.numGamesReplayed.get());
+        System.out.println("Games skipped: " + _builder.numGamesSkipped.get());
+        System.out.println("Book entries: " + _numEntries);
+        System.out.println("Time taken (seconds): " + _timeTakenSeconds);
+    }
+
+    /**
+     * Streams the given PGN files and writes the opening book.
+     * @param _pgnPaths the PGN files to read
+     * @param _bookPath where the book is written. The temporary run files are written next to it.
+     * @return the number of entries in the book
+     * @throws IOException if a PGN file can't be read or the book can't be written
+     * @throws InterruptedException if the calling thread is interrupted while building
+     */
+    public long Build(List<Path> _pgnPaths, Path _bookPath) throws IOException, InterruptedException
+    {
+        Path _runDirectory = _bookPath.toAbsolutePath().getParent();
+        BlockingQueue<String> _games = new ArrayBlockingQueue<>(numThreads * GAMES_PER_THREAD_IN_QUEUE);
+
+        List<Thread> _replayThreads = new ArrayList<>();
+        List<Throwable> _replayErrors = Collections.synchronizedList(new ArrayList<>());
+
+        for (int i = 0; i < numThreads; i++)
+        {
+            Thread _replayThread = new Thread(() ->
+            {
+                try
+                {
+                    ReplayGames(_games, _runDirectory);
+                }
+
+                catch (Throwable e)
+                {
+                    _replayErrors.add(e);
+
+                    // keeps draining so the reading thread never blocks forever on a full queue
+                    try
+                    {
+                        while (_games.take() != END_OF_INPUT);
+                    }
+
+                    catch (InterruptedException _interruptedException)
+                    {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            }, "book-replay-" + i);
+
+            _replayThread.start();
+            _replayThreads.add(_replayThread);
+        }
+
+        try
+        {
+            for (Path _pgnPath : _pgnPaths)
+                ReadGames(_pgnPath, _games, _replayErrors);
+        }
+
+        finally
+        {
+            for (int i = 0; i < numThreads; i++)
+                _games.put(END_OF_INPUT);
+
+            for (Thread _replayThread : _replayThreads)
+                _replayThread.join();
+        }
+
+        try
+        {
+            if (!_replayErrors.isEmpty())
+                throw new IOException("Replaying games failed.", _replayErrors.get(0));
+
+            return MergeRuns(_bookPath);
+        }
+
+        finally
+        {
+            for (Path _runFile : runFiles)
+                Files.deleteIfExists(_runFile);
+
+            runFiles.clear();
+        }
+    }
+
+    //#region Reading
+    /**
+     * Splits a PGN file into games and hands them to the replaying threads.
+     * Blocks while the replaying threads are behind so that the games in memory stay bounded.
+     */
+    private void ReadGames(Path _pgnPath, BlockingQueue<String> _games, List<Throwable> _replayErrors)
+    throws IOException, InterruptedException
+    {
+        // Latin-1 never fails to decode, and move text is plain ASCII
+        try (BufferedReader _reader = new BufferedReader(new InputStreamReader
+        (
+            Files.newInputStream(_pgnPath), StandardCharsets.ISO_8859_1), RUN_READ_BUFFER_SIZE
+        ))
+        {
+            StringBuilder _game = new StringBuilder();
+            boolean _hasMoveText = false;
+
+            String _line;
+            while ((_line = _reader.readLine()) != null && _replayErrors.isEmpty())
+            {
+                if (_line.startsWith("["))
+                {
+                    // a tag after move text starts the next game
+                    if (_hasMoveText)
+                    {
+                        _games.put(_game.toString());
+                        _game.setLength(0);
+                        _hasMoveText = false;
+                    }
+                }
+
+                else if (!_line.isBlank())
+                    _hasMoveText = true;
+
+                _game.append(_line).append('\n');
+            }
+
+            if (_hasMoveText)
+                _games.put(_game.toString());
+        }
+    }
+    //#endregion
+
+    //#region Replaying
+    private void ReplayGames(BlockingQueue<String> _games, Path _runDirectory)
+    throws IOException, InterruptedException
+    {
+        Board _board = new Board();
+        RunBuffer _runBuffer = new RunBuffer(runSize);
+
+        while (true)
+        {
+            String _game = _games.take();
+
+            if (_game == END_OF_INPUT)
+                break;
+
+            if (ReplayGame(_game, _board, _runBuffer, _runDirectory))
+                numGamesReplayed.incrementAndGet();
+
+            else
+                numGamesSkipped.incrementAndGet();
+        }
+
+        if (_runBuffer.size > 0)
+            runFiles.add(_runBuffer.Spill(_runDirectory));
+    }
+
+    /**
+     * Replays the first <code>maxPly</code> moves of a game and records the moves played in each position.
+     * @return false if the game was skipped because it has no result or its moves can't be parsed
+     */
+    private boolean ReplayGame(String _game, Board _board, RunBuffer _runBuffer, Path _runDirectory)
+    throws IOException
+    {
+        String _result = null;
+        String _fen = null;
+        StringBuilder _moveText = new StringBuilder();
+
+        for (String _line : _game.split("\n"))
+        {
+            if (_line.startsWith("["))
+            {
+                if (_line.startsWith("[Result "))
+                    _result = GetTagValue(_line);
+
+                else if (_line.startsWith("[FEN "))
+                    _fen = GetTagValue(_line);
+            }
+
+            else
+                _moveText.append(_line).append(' ');
+        }
+
+        int _whiteHalfPoints;
+        if ("1-0".equals(_result))
+            _whiteHalfPoints = 2;
+
+        else if ("0-1".equals(_result))
+            _whiteHalfPoints = 0;
+
+        else if ("1/2-1/2".equals(_result))
+            _whiteHalfPoints = 1;
+
+        // unfinished games don't say anything about the moves played
+        else
+            return false;
+
+        String _sanMoves = ExtractSanMoves(_moveText);
+        if (_sanMoves.isEmpty())
+            return false;
+
+        try
+        {
+            if (_fen == null)
+                _board.loadFromFen("rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1");
+
+            else
+                _board.loadFromFen(_fen);
+        }
+
+        catch (Exception e)
+        {
+            return false;
+        }
+
+        // each move is resolved on the board as the game is replayed, so the game is only played once.
+        // the records are only added once every move resolved, so that a bad game adds nothing
+        String[] _sans = _sanMoves.split(" ");
+        long[] _keys = new long[_sans.length];
+        short[] _packedMoves = new short[_sans.length];
+        int[] _halfPoints = new int[_sans.length];
+
+        for (int i = 0; i < _sans.length; i++)
+        {
+            Move _move = FindSanMove(_board, _sans[i]);
+
+            if (_move == null)
+                return false;
+
+            _keys[i] = _board.getZobristKey();
+            _packedMoves[i] = PackedMove.Encode(_move);
+            _halfPoints[i] = _board.getSideToMove() == Side.WHITE ? _whiteHalfPoints : 2 - _whiteHalfPoints;
+            _board.doMove(_move);
+        }
+
+        for (int i = 0; i < _sans.length; i++)
+        {
+            if (_runBuffer.IsFull())
+                runFiles.add(_runBuffer.Spill(_runDirectory));
+
+            _runBuffer.Add(_keys[i], _packedMoves[i], _halfPoints[i]);
+        }
+
+        return true;
+    }
+
+    /**
+     * Finds the legal move of the board's position that a SAN move stands for.
+     * @param _board the board the move is played on
+     * @param _san the move, like "Nbd7", "exd5", "e8=Q+", or "O-O"
+     * @return the move, or null if no legal move or more than one matches it
+     */
+    static Move FindSanMove(Board _board, String _san)
+    {
+        // check and mate marks don't change the move
+        int _end = _san.length();
+        while (_end > 0 && (_san.charAt(_end - 1) == '+' || _san.charAt(_end - 1) == '#'))
+            _end--;
+        _san = _san.substring(0, _end);
+
+        PieceType _pieceType;
+        PieceType _promotion = null;
+        int _toIndex;
+        String _disambiguation;
+
+        if (_san.equals("O-O") || _san.equals("0-0") || _san.equals("O-O-O") || _san.equals("0-0-0"))
+        {
+            // the king's own move, which is how chesslib stores a castle
+            _pieceType = PieceType.KING;
+            _toIndex = (_san.length() == 3 ? 6 : 2) + (_board.getSideToMove() == Side.WHITE ? 0 : 56);
+            _disambiguation = "";
+        }
+
+        else
+        {
+            // promotions are written with or without the '='
+            int _promotionIndex = _san.indexOf('=');
+            if (_promotionIndex < 0 && _san.length() > 2 && SAN_PIECES.indexOf(_san.charAt(_san.length() - 1)) > 0)
+                _promotionIndex = _san.length() - 1;
+
+            if (_promotionIndex >= 0)
+            {
+                if (_promotionIndex + 1 >= _san.length() || SAN_PIECES.indexOf(_san.charAt(_san.length() - 1)) <= 0)
+                    return null;
+
+                _promotion = SAN_PIECE_TYPES[SAN_PIECES.indexOf(_san.charAt(_san.length() - 1))];
+                _san = _san.substring(0, _promotionIndex);
+            }
+
+            int _pieceIndex = _san.isEmpty() ? -1 : SAN_PIECES.indexOf(_san.charAt(0));
+            _pieceType = _pieceIndex >= 0 ? SAN_PIECE_TYPES[_pieceIndex] : PieceType.PAWN;
+
+            if (_san.length() < 2)
+                return null;
+
+            char _file = _san.charAt(_san.length() - 2);
+            char _rank = _san.charAt(_san.length() - 1);
+            if (_file < 'a' || _file > 'h' || _rank < '1' || _rank > '8')
+                return null;
+
+            _toIndex = (_rank - '1') * 8 + (_file - 'a');
+            _disambiguation = _san.substring(_pieceIndex >= 0 ? 1 : 0, _san.length() - 2).replace("x", "");
+        }
+
+        Move _foundMove = null;
+        for (Move _move : _board.legalMoves())
+        {
+            int _fromIndex = _move.getFrom().ordinal();
+            PieceType _movePromotion = _move.getPromotion() == Piece.NONE ? null : _move.getPromotion().getPieceType();
+
+            if (_move.getTo().ordinal() != _toIndex || _movePromotion != _promotion
+                || _board.getPiece(_move.getFrom()).getPieceType() != _pieceType)
+                continue;
+
+            boolean _isDisambiguated = true;
+            for (int i = 0; i < _disambiguation.length(); i++)
+            {
+                char _character = _disambiguation.charAt(i);
+
+                if (_character >= 'a' && _character <= 'h')
+                    _isDisambiguated &= _fromIndex % 8 == _character - 'a';
+
+                else if (_character >= '1' && _character <= '8')
+                    _isDisambiguated &= _fromIndex / 8 == _character - '1';
+
+                else
+                    return null;
+            }
+
+            if (!_isDisambiguated)
+                continue;
+
+            // more than one move fits, so the SAN is ambiguous
+            if (_foundMove != null)
+                return null;
+
+            _foundMove = _move;
+        }
+
+        return _foundMove;
+    }
+
+    /**
+     * Strips comments, variations, annotations, move numbers, and the result
+     * from PGN move text, and keeps at most <code>maxPly</code> moves.
+     * @return the SAN moves separated by spaces
+     */
+    private String ExtractSanMoves(CharSequence _moveText)
+    {
+        StringBuilder _sanMoves = new StringBuilder();
+        int _numMoves = 0;
+        int _variationDepth = 0;
+        int i = 0;
+
+        while (i < _moveText.length() && _numMoves < maxPly)
+        {
+            char _character = _moveText.charAt(i);
+
+            if (_character == '{')
+            {
+                while (i < _moveText.length() && _moveText.charAt(i) != '}')
+                    i++;
+
+                i++;
+                continue;
+            }
+
+            if (_character == '(')
+            {
+                _variationDepth++;
+                i++;
+                continue;
+            }
+
+            if (_character == ')')
+            {
+                _variationDepth = Math.max(0, _variationDepth - 1);
+                i++;
+                continue;
+            }
+
+            if (Character.isWhitespace(_character))
+            {
+                i++;
+                continue;
+            }
+
+            int _tokenStart = i;
+            while (i < _moveText.length() && !Character.isWhitespace(_moveText.charAt(i))
+                   && "{}()".indexOf(_moveText.charAt(i)) < 0)
+                i++;
+
+            if (_variationDepth > 0)
+                continue;
+
+            String _token = _moveText.subSequence(_tokenStart, i).toString();
+
+            // move numbers can be glued to the move, like "12.e4" or "12...e5"
+            int _lastDot = _token.lastIndexOf('.');
+            if (_lastDot >= 0)
+                _token = _token.substring(_lastDot + 1);
+
+            // annotations like "!?" are dropped, but "+" and "#" are kept
+            int _end = _token.length();
+            while (_end > 0 && (_token.charAt(_end - 1) == '!' || _token.charAt(_end - 1) == '?'))
+                _end--;
+            _token = _token.substring(0, _end);
+
+            if (_token.isEmpty() || _token.startsWith("$") || _token.equals("*") || _token.equals("1-0")
+                || _token.equals("0-1") || _token.equals("1/2-1/2"))
+                continue;
+
+            _sanMoves.append(_token).append(' ');
+            _numMoves++;
+        }
+
+        return _sanMoves.toString().trim();
+    }
+
+    private static String GetTagValue(String _tagLine)
+    {
+        int _start = _tagLine.indexOf('"');
+        int _end = _tagLine.lastIndexOf('"');
+
+        if (_start < 0 || _end <= _start)
+            return null;
+
+        return _tagLine.substring(_start + 1, _end);
+    }
+    //#endregion
+
+    //#region Merging
+    /**
+     * Merges the sorted run files into the final book, summing the
+     * statistics of (position, move) pairs that appear in several runs.
+     * @return the number of entries in the book
+     */
+    private long MergeRuns(Path _bookPath) throws IOException
+    {
+        PriorityQueue<RunReader> _runReaders = new PriorityQueue<>();
+        long _numEntries = 0;
+
+        try (DataOutputStream _output = new DataOutputStream(new BufferedOutputStream
+        (
+            Files.newOutputStream(_bookPath), RUN_READ_BUFFER_SIZE
+        )))
+        {
+            for (Path _runFile : runFiles)
+            {
+                RunReader _runReader = new RunReader(_runFile);
+
+                if (_runReader.Next())
+                    _runReaders.add(_runReader);
+
+                else
+                    _runReader.Close();
+            }
+
+            _output.writeInt(OpeningBook.MAGIC);
+            _output.writeInt(OpeningBook.VERSION);
+            _output.writeInt(maxPly);
+            // the entry count is filled in once it is known
+            _output.writeLong(0L);
+
+            while (!_runReaders.isEmpty())
+            {
+                RunReader _smallest = _runReaders.peek();
+                long _key = _smallest.key;
+                short _move = _smallest.move;
+                int _numGames = 0;
+                int _numHalfPoints = 0;
+
+                while (!_runReaders.isEmpty() && _runReaders.peek().key == _key
+                       && _runReaders.peek().move == _move)
+                {
+                    RunReader _runReader = _runReaders.poll();
+                    _numGames += _runReader.numGames;
+                    _numHalfPoints += _runReader.numHalfPoints;
+
+                    if (_runReader.Next())
+                        _runReaders.add(_runReader);
+
+                    else
+                        _runReader.Close();
+                }
+
+                if (_numGames < minGames)
+                    continue;
+
+                _output.writeLong(_key);
+                _output.writeShort(_move);
+                _output.writeInt(_numGames);
+                _output.writeInt(_numHalfPoints);
+                _numEntries++;
+            }
+        }
+
+        finally
+        {
+            for (RunReader _runReader : _runReaders)
+                _runReader.Close();
+        }
+
+        try (RandomAccessFile _book = new RandomAccessFile(_bookPath.toFile(), "rw"))
+        {
+            _book.seek(12);
+            _book.writeLong(_numEntries);
+        }
+
+        return _numEntries;
+    }
+
+    private static int CompareRecords(long _key, short _move, long _comparingKey, short _comparingMove)
+    {
+        // unsigned so that the book can be binary searched with Long.compareUnsigned
+        int _keyComparison = Long.compareUnsigned(_key, _comparingKey);
+
+        if (_keyComparison != 0)
+            return _keyComparison;
+
+        return Integer.compare(_move & 0xFFFF, _comparingMove & 0xFFFF);
+    }
+    //#endregion
+
+    //#region Run buffer
+    /**
+     * Fixed-size buffer of (position, move, result) records kept in two
+     * primitive arrays so that filling it doesn't allocate.
+     */
+    private static class RunBuffer
+    {
+        private final long[] keys;
+        // packed move in bits 32 to 47, half points in the low bits
+        private final long[] values;
+        private int size;
+
+        private RunBuffer(int _capacity)
+        {
+            keys = new long[_capacity];
+            values = new long[_capacity];
+        }
+
+        private boolean IsFull()
+        {
+            return size == keys.length;
+        }
+
+        private void Add(long _key, short _move, int _halfPoints)
+        {
+            keys[size] = _key;
+            values[size] = ((long) (_move & 0xFFFF) << 32) | _halfPoints;
+            size++;
+        }
+
+        /**
+         * Sorts the buffer, writes it to a new run file with equal records
+         * combined, and empties the buffer.
+         * @return the run file
+         */
+        private Path Spill(Path _runDirectory) throws IOException
+        {
+            Sort(0, size - 1);
+
+            Path _runFile = Files.createTempFile(_runDirectory, "book-run-", ".tmp");
+            try (DataOutputStream _output = new DataOutputStream(new BufferedOutputStream
+            (
+                Files.newOutputStream(_runFile), RUN_READ_BUFFER_SIZE
+            )))
+            {
+                int i = 0;
+                while (i < size)
+                {
+                    long _key = keys[i];
+                    short _move = GetMove(i);
+                    int _numGames = 0;
+                    int _numHalfPoints = 0;
+
+                    while (i < size && keys[i] == _key && GetMove(i) == _move)
+                    {
+                        _numGames++;
+                        _numHalfPoints += (int) values[i];
+                        i++;
+                    }
+
+                    _output.writeLong(_key);
+                    _output.writeShort(_move);
+                    _output.writeInt(_numGames);
+                    _output.writeInt(_numHalfPoints);
+                }
+            }
+
+            size = 0;
+
+            return _runFile;
+        }
+
+        private short GetMove(int _index)
+        {
+            return (short) (values[_index] >>> 32);
+        }
+
+        private int Compare(int _index, int _comparingIndex)
+        {
+            return CompareRecords(keys[_index], GetMove(_index), keys[_comparingIndex], GetMove(_comparingIndex));
+        }
+
+        // quicksort on both arrays at once, recursing into the smaller half
+        private void Sort(int _low, int _high)
+        {
+            while (_high - _low > 16)
+            {
+                int _middle = (_low + _high) >>> 1;
+
+                // median of three as the pivot, moved to _high
+                if (Compare(_middle, _low) < 0) Swap(_middle, _low);
+                if (Compare(_high, _low) < 0) Swap(_high, _low);
+                if (Compare(_middle, _high) < 0) Swap(_middle, _high);
+
+                int _store = _low;
+                for (int i = _low; i < _high; i++)
+                {
+                    if (Compare(i, _high) < 0)
+                        Swap(i, _store++);
+                }
+                Swap(_store, _high);
+
+                if (_store - _low < _high - _store)
+                {
+                    Sort(_low, _store - 1);
+                    _low = _store + 1;
+                }
+
+                else
+                {
+                    Sort(_store + 1, _high);
+                    _high = _store - 1;
+                }
+            }
+
+            for (int i = _low + 1; i <= _high; i++)
+            {
+                for (int j = i; j > _low && Compare(j, j - 1) < 0; j--)
+                    Swap(j, j - 1);
+            }
+        }
+
+        private void Swap(int _index, int _otherIndex)
+        {
+            long _key = keys[_index];
+            keys[_index] = keys[_otherIndex];
+            keys[_otherIndex] = _key;
+
+            long _value = values[_index];
+            values[_index] = values[_otherIndex];
+            values[_otherIndex] = _value;
+        }
+    }
+
+    /**
+     * Reads one sorted run file record by record during the merge.
+     */
+    private static class RunReader implements Comparable<RunReader>
+    {
+        private final DataInputStream input;
+        private long key;
+        private short move;
+        private int numGames;
+        private int numHalfPoints;
+
+        private RunReader(Path _runFile) throws IOException
+        {
+            input = new DataInputStream(new BufferedInputStream(Files.newInputStream(_runFile), RUN_READ_BUFFER_SIZE));
+        }
+
+        /**
+         * @return false once the run has no more records
+         */
+        private boolean Next() throws IOException
+        {
+            try
+            {
+                key = input.readLong();
+            }
+
+            catch (EOFException e)
+            {
+                return false;
+            }
+
+            move = input.readShort();
+            numGames = input.readInt();
+            numHalfPoints = input.readInt();
+
+            return true;
+        }
+
+        private void Close() throws IOException
+        {
+            input.close();
+        }
+
+        @Override
+        public int compareTo(RunReader _comparingRunReader)
+        {
+            return CompareRecords(key, move, _comparingRunReader.key, _comparingRunReader.move);
+        }
+    }
+    //#endregion
+}
@@ -0,0 +1,125 @@
+package com.chess.engine;
+
+import java.util.List;
+
+import com.github.bhlangonijr.chesslib.Piece;
+import com.github.bhlangonijr.chesslib.PieceType;
+import com.github.bhlangonijr.chesslib.Rank;
+import com.github.bhlangonijr.chesslib.Side;
+import com.github.bhlangonijr.chesslib.Square;
+import com.github.bhlangonijr.chesslib.move.Move;
+
+/**
+ * Moves packed into 16 bits: the from square (6 bits), the to square (6 bits), the promotion type
+ * (3 bits, 0 for none), and a free flag bit that is always 0.
+ * <p>
+ * The search keeps its moves in this form wherever it stores them: the principal variation table, the killer
+ * moves, the root move hint, the com.chess.engine.TranspositionTable, the com.chess.engine.PersistentHashStore,
+ * and the com.chess.engine.OpeningBook file. Packed moves are plain shorts, so storing and comparing them
+ * allocates nothing, and they are only turned back into chesslib moves for the public API.
+ */
+final class PackedMove
+{
+    // from and to are both a1, which no move can be
+    static final short NONE = 0;
+
+    private static final int SQUARE_MASK = 0x3F;
+    private static final int TO_SHIFT = 6;
+    private static final int PROMOTION_SHIFT = 12;
+    private static final int PROMOTION_MASK = 0x7;
+
+    private static final PieceType[] PROMOTION_TYPES = new PieceType[]
+    {
+        PieceType.NONE, PieceType.KNIGHT, PieceType.BISHOP, PieceType.ROOK, PieceType.QUEEN
+    };
+
+    private PackedMove() {}
+
+    /**
+     * @param _move the move to pack
+     * @return the packed move
+     */
+    static short Encode(Move _move)
+    {
+        int _promotion = 0;
+
+        if (_move.getPromotion() != null && _move.getPromotion() != Piece.NONE)
+        {
+            switch (_move.getPromotion().getPieceType())
+            {
+                case KNIGHT:
+                    _promotion = 1;
+                    break;
+
+                case BISHOP:
+                    _promotion = 2;
+                    break;
+
+                case ROOK:
+                    _promotion = 3;
+                    break;
+
+                default:
+                    _promotion = 4;
+                    break;
+            }
+        }
+
+        return (short) (_move.getFrom().ordinal() | _move.getTo().ordinal() << TO_SHIFT | _promotion << PROMOTION_SHIFT);
+    }
+
+    /**
+     * @param _packedMove the packed move
+     * @return the move, or null for NONE
+     */
+    static Move Decode(short _packedMove)
+    {
+        if (_packedMove == NONE)
+            return null;
+
+        Square _from = Square.squareAt(GetFrom(_packedMove));
+        Square _to = Square.squareAt(GetTo(_packedMove));
+        int _promotion = (_packedMove >>> PROMOTION_SHIFT) & PROMOTION_MASK;
+
+        if (_promotion == 0)
+            return new Move(_from, _to);
+
+        // only white promotes on the eighth rank
+        Side _side = _to.getRank() == Rank.RANK_8 ? Side.WHITE : Side.BLACK;
+
+        return new Move(_from, _to, Piece.make(_side, PROMOTION_TYPES[_promotion]));
+    }
+
+    static int GetFrom(short _packedMove)
+    {
+        return _packedMove & SQUARE_MASK;
+    }
+
+    static int GetTo(short _packedMove)
+    {
+        return (_packedMove >>> TO_SHIFT) & SQUARE_MASK;
+    }
+
+    /**
+     * Moves the given move to the front of the list, keeping the order of the others.
+     * @param _moves the moves
+     * @param _packedMove the packed move to move to the front
+     * @return true if the move is in the list
+     */
+    static boolean MoveToFront(List<Move> _moves, short _packedMove)
+    {
+        if (_packedMove == NONE)
+            return false;
+
+        for (int i = 0; i < _moves.size(); i++)
+        {
+            if (Encode(_moves.get(i)) == _packedMove)
+            {
+                _moves.add(0, _moves.remove(i));
+                return true;
+            }
+        }
+
+        return false;
+    }
+}
@@ -0,0 +1,196 @@
+package com.chess.engine;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * An optional on-disk hash table of deep search results that outlives the process, so that
+ * positions analyzed before a restart don't have to be searched again from scratch.
+ * <p>
+ * The file is memory-mapped, so probing it costs about as much as probing the
+ * com.chess.engine.TranspositionTable, and the operating system writes changed pages back to disk.
+ * Entries use the same packed data as the transposition table and are stored the same way, as the key
+ * xor the data followed by the data, both little-endian longs. An entry left half written by a crash or
+ * by two threads writing it at once doesn't xor back to its key, so it reads as missing. When two
+ * positions share a slot, the deeper result is kept.
+ * <p>
+ * The file starts with a 32 byte header: MAGIC, VERSION, and the number of entries as big-endian ints,
+ * 4 reserved bytes, the CRC32 of those 16 bytes as a long, and 8 more reserved bytes. The header is
+ * written last when a file is created, so a file whose creation was interrupted fails the check and is
+ * recreated empty on the next open instead of being trusted.
+ * <p>
+ * Zobrist keys come from chesslib's fixed tables, so they are the same in every process.
+ */
+public final class PersistentHashStore implements Closeable
+{
+    public static final int MAGIC = 0x50485348;
+    public static final int VERSION = 1;
+
+    // shallower results are cheap to search again and would only push deep ones out
+    static final int MIN_DEPTH = 3;
+
+    private static final int HEADER_SIZE = 32;
+    private static final int MAX_SIZE_MEGABYTES = 1024;
+
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    // [key ^ data, data] for every entry, after the header
+    private final LongBuffer entries;
+    private final int indexMask;
+
+    private PersistentHashStore(FileChannel _channel, MappedByteBuffer _buffer, int _numEntries)
+    {
+        channel = _channel;
+        buffer = _buffer;
+        indexMask = _numEntries - 1;
+
+        _buffer.position(HEADER_SIZE);
+        entries = _buffer.slice().order(ByteOrder.LITTLE_ENDIAN).asLongBuffer();
+        _buffer.position(0);
+    }
+
+    /**
+     * Opens a store, or creates an empty one if the file doesn't exist, has a different size,
+     * or has a broken header.
+     * @param _path the file of the store
+     * @param _sizeMegabytes the size of the store, at most 1024 megabytes.
+     * The number of entries is rounded down to a power of two.
+     * @return the store
+     * @throws IOException if the file can't be opened or mapped
+     */
+    public static PersistentHashStore Open(Path _path, int _sizeMegabytes) throws IOException
+    {
+        if (_sizeMegabytes < 1 || _sizeMegabytes > MAX_SIZE_MEGABYTES)
+            throw new IllegalArgumentException("The size should be between 1 and " + MAX_SIZE_MEGABYTES + " megabytes.");
+
+        // 16 bytes per entry
+        int _numEntries = Integer.highestOneBit(_sizeMegabytes * 1024 * 1024 / 16);
+        long _fileSize = HEADER_SIZE + (long) _numEntries * 16;
+
+        FileChannel _channel = FileChannel.open
+        (
+            _path, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.CREATE
+        );
+
+        try
+        {
+            ByteBuffer _header = ByteBuffer.allocate(HEADER_SIZE);
+            boolean _isValid = _channel.size() == _fileSize
+                && _channel.read(_header, 0) == HEADER_SIZE
+                && IsHeaderValid(_header, _numEntries);
+
+            // a file growing past its end is filled with zeroes, which are empty entries
+            if (!_isValid)
+                _channel.truncate(0);
+
+            MappedByteBuffer _buffer = _channel.map(FileChannel.MapMode.READ_WRITE, 0, _fileSize);
+
+            if (!_isValid)
+            {
+                // the empty entries reach the disk before the header that says they can be trusted
+                _buffer.force();
+                WriteHeader(_buffer, _numEntries);
+                _buffer.force();
+            }
+
+            return new PersistentHashStore(_channel, _buffer, _numEntries);
+        }
+
+        catch (IOException | RuntimeException e)
+        {
+            _channel.close();
+            throw e;
+        }
+    }
+
+    private static boolean IsHeaderValid(ByteBuffer _buffer, int _numEntries)
+    {
+        return _buffer.getInt(0) == MAGIC && _buffer.getInt(4) == VERSION && _buffer.getInt(8) == _numEntries
+            && _buffer.getLong(16) == CalculateHeaderChecksum(_buffer);
+    }
+
+    private static void WriteHeader(ByteBuffer _buffer, int _numEntries)
+    {
+        _buffer.putInt(0, MAGIC);
+        _buffer.putInt(4, VERSION);
+        _buffer.putInt(8, _numEntries);
+        _buffer.putInt(12, 0);
+        _buffer.putLong(16, CalculateHeaderChecksum(_buffer));
+    }
+
+    private static long CalculateHeaderChecksum(ByteBuffer _buffer)
+    {
+        CRC32 _checksum = new CRC32();
+        for (int i = 0; i < 16; i++)
+            _checksum.update(_buffer.get(i));
+
+        return _checksum.getValue();
+    }
+
+    /**
+     * @param _key the Zobrist key of the position
+     * @return the data stored for the position, unpacked with the com.chess.engine.TranspositionTable
+     * getters, or TranspositionTable.NO_ENTRY if there is none
+     */
+    long Probe(long _key)
+    {
+        int _index = GetIndex(_key);
+        long _data = entries.get(_index + 1);
+
+        return (entries.get(_index) ^ _data) == _key ? _data : TranspositionTable.NO_ENTRY;
+    }
+
+    /**
+     * Stores a search result unless its slot holds a deeper one.
+     * @param _key the Zobrist key of the position
+     * @param _depth the number of plies searched below the position
+     * @param _bound TranspositionTable.EXACT, LOWER_BOUND, or UPPER_BOUND
+     * @param _score the score from the perspective of the side to move
+     * @param _bestMove the packed best move found, or PackedMove.NONE if there isn't one
+     */
+    void Store(long _key, int _depth, int _bound, float _score, short _bestMove)
+    {
+        int _index = GetIndex(_key);
+        long _storedData = entries.get(_index + 1);
+
+        if (_storedData != TranspositionTable.NO_ENTRY && TranspositionTable.GetDepth(_storedData) > _depth)
+            return;
+
+        long _data = TranspositionTable.Pack(_depth, _bound, _score, _bestMove);
+
+        entries.put(_index, _key ^ _data);
+        entries.put(_index + 1, _data);
+    }
+
+    /**
+     * Writes every changed entry to disk. The operating system does this on its own too,
+     * so this is only needed to be safe against the whole machine going down.
+     */
+    public void Flush()
+    {
+        buffer.force();
+    }
+
+    /**
+     * Flushes and closes the file. The store must not be used by a search after this.
+     */
+    @Override
+    public void close() throws IOException
+    {
+        Flush();
+        channel.close();
+    }
+
+    private int GetIndex(long _key)
+    {
+        return ((int) _key & indexMask) * 2;
+    }
+}
@@ -0,0 +1,70 @@
+package com.chess.engine;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.EventType;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.FlightRecorderListener;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Recording;
+import jdk.jfr.StackTrace;
+
+/**
+ * A Java Flight Recorder event for a sample of the quiescence searches.
+ * <p>
+ * Every leaf starts a quiescence search, so recording all of them would flood the recording, and even
+ * creating an event at every leaf costs an allocation. Only one in SAMPLE_INTERVAL quiescence searches of
+ * each search is timed, and only while a recording has the event enabled, which the search checks
+ * with "IsSampled" before creating the event. The recording's threshold can drop the short ones.
+ */
+@Name("com.chess.engine.QuiescenceBurst")
+@Label("Quiescence Burst")
+@Description("A sampled quiescence search")
+@Category({ "Chess Engine", "Search" })
+@StackTrace(false)
+final class QuiescenceBurstEvent extends jdk.jfr.Event
+{
+    static final int SAMPLE_INTERVAL = 64;
+
+    // kept up to date whenever a recording starts or stops, so the search reads a field instead of asking JFR
+    private static volatile boolean isEnabled;
+
+    static
+    {
+        if (FlightRecorder.isAvailable())
+        {
+            FlightRecorder.addListener(new FlightRecorderListener()
+            {
+                @Override
+                public void recordingStateChanged(Recording _recording)
+                {
+                    isEnabled = EventType.getEventType(QuiescenceBurstEvent.class).isEnabled();
+                }
+            });
+
+            // a recording may have started before this class was loaded
+            if (FlightRecorder.isInitialized())
+                isEnabled = EventType.getEventType(QuiescenceBurstEvent.class).isEnabled();
+        }
+    }
+
+    @Label("FEN")
+    @Description("The leaf the quiescence search started from")
+    String fen;
+
+    @Label("Ply")
+    int ply;
+
+    @Label("Nodes")
+    long numNodes;
+
+    /**
+     * @param _numQuiescenceSearches the number of quiescence searches the search started before this one
+     * @return true if this quiescence search should be recorded
+     */
+    static boolean IsSampled(long _numQuiescenceSearches)
+    {
+        return isEnabled && _numQuiescenceSearches % SAMPLE_INTERVAL == 0;
+    }
+}
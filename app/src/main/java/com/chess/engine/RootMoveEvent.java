@@ -0,0 +1,37 @@
+package com.chess.engine;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A Java Flight Recorder event for the search of one root move at one depth.
+ * Root moves that take many nodes after the first one usually mean the move ordering failed.
+ */
+@Name("com.chess.engine.RootMove")
+@Label("Root Move")
+@Description("The search of one root move at one depth")
+@Category({ "Chess Engine", "Search" })
+@StackTrace(false)
+final class RootMoveEvent extends jdk.jfr.Event
+{
+    @Label("Move")
+    String move;
+
+    @Label("Move Index")
+    @Description("The position of the move in the ordered root moves")
+    int moveIndex;
+
+    @Label("Depth")
+    int depth;
+
+    @Label("Score")
+    @Description("The score from the perspective of the side to move. Worse moves only have an upper bound")
+    float score;
+
+    @Label("Nodes")
+    @Description("The nodes searched below the move")
+    long numNodes;
+}
@@ -0,0 +1,401 @@
+package com.chess.engine;
+
+import org.apache.commons.lang3.mutable.MutableInt;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+import com.github.bhlangonijr.chesslib.Board;
+import com.github.bhlangonijr.chesslib.Piece;
+import com.github.bhlangonijr.chesslib.PieceType;
+import com.github.bhlangonijr.chesslib.move.Move;
+
+/**
+ * Everything a single search changes while it runs: the board it searches on, its settings,
+ * its principal variation table, its move ordering heuristics, and its counters.
+ * <p>
+ * The killer moves and history scores are kept by "Reset", so that a com.chess.engine.GameSession
+ * can carry them from one move of its game to the next. Searches of unrelated positions clear them first.
+ * <p>
+ * A context is only used by one search at a time, so nothing in it is synchronized.
+ * Everything else the search reads from the com.chess.engine.ChessEngine is read-only,
+ * which is what lets one engine run many searches at once.
+ */
+class SearchContext
+{
+    // how many nodes are searched between checks of the clock
+    private static final int NODES_PER_TIME_CHECK = 1024;
+
+    // the fifty-move rule ends the game before a position can repeat one more than 100 plies back,
+    // so the key history only needs to hold that many plies and wraps around
+    private static final int KEY_HISTORY_SIZE = 128;
+    private static final int KEY_HISTORY_MASK = KEY_HISTORY_SIZE - 1;
+    private static final int FIFTY_MOVE_RULE_PLIES = 100;
+    private static final long LIGHT_SQUARES = 0x55AA55AA55AA55AAL;
+    // every history score is halved once one of them reaches this
+    private static final int MAX_HISTORY_SCORE = 1 << 16;
+    // more than the most legal moves any position has
+    private static final int MAX_MOVES = 256;
+
+    Board board;
+    // null when the engine uses the hand-crafted evaluation
+    final NnueAccumulator accumulator;
+
+    // triangular table of principal variations, as com.chess.engine.PackedMove.
+    // row n holds the best line found from ply n onwards
+    final short[][] pvTable = new short[ChessEngine.MAX_PLY][ChessEngine.MAX_PLY];
+    final int[] pvLengths = new int[ChessEngine.MAX_PLY];
+
+    // [ply][n] the last two quiet moves that caused a beta cutoff at a ply, packed
+    final short[][] killerMoves = new short[ChessEngine.MAX_PLY][2];
+    // [from square][to square] how often a quiet move caused a beta cutoff, weighted by the depth
+    final int[][] historyScores = new int[64][64];
+    // searched first at the root. the best move of the last depth, or the move a game expects to play next. packed
+    short rootMoveHint;
+    // the guessed scores of the moves being ordered. only used while one node orders its moves
+    final float[] orderingScores = new float[MAX_MOVES];
+
+    // the incremental Zobrist keys of the positions leading up to the current one, including the
+    // moves played before the search, and the number of plies since a capture or pawn move in each.
+    // position n is stored at n & KEY_HISTORY_MASK
+    private final long[] keys = new long[KEY_HISTORY_SIZE];
+    private final int[] halfMoveClocks = new int[KEY_HISTORY_SIZE];
+    private int keyIndex;
+    private int rootKeyIndex;
+
+    boolean shouldUseAlphaBetaPruning;
+    boolean shouldUseHeuristicMoveOrdering;
+    boolean shouldUseQuiescence;
+    boolean shouldUseTranspositionTable;
+    MutableInt numPositionsEvaluatedReciever;
+
+    // the engine's table, or a game's own
+    TranspositionTable transpositionTable;
+
+    long numNodes;
+    // leaves whose evaluation stopped after the material and piece placement
+    long numLazyEvaluations;
+    // the number of leaves that started a quiescence search, to sample them for JFR
+    long numQuiescenceSearches;
+    // null unless the limits ask for a profile
+    SearchProfile profile;
+    // 0 if there is no limit
+    long maxNodes;
+    // 0 if there is no limit
+    long deadlineNanoseconds;
+    // null unless the limits have a clock
+    TimeManager timeManager;
+    // the skill level's noise on the root scores, and how far behind the best root move a move
+    // may be and still be played. both are 0 at full strength
+    float rootScoreNoise;
+    float rootScoreMargin;
+    // set by the caller before the search instead of by "Reset", and cleared when the context is released.
+    // another thread sets the signal to stop the search, and the listener gets the best line of every completed depth
+    AtomicBoolean stopSignal;
+    Consumer<ScoredLine> iterationListener;
+    // set once a limit is reached. the search unwinds without trusting any score after it
+    boolean isStopped;
+
+    SearchContext(Board _board, NnueNetwork _network)
+    {
+        board = _board;
+        // quiescence can go past the max depth of the main search
+        accumulator = _network != null ? new NnueAccumulator(_network, 2 * ChessEngine.MAX_PLY) : null;
+    }
+
+    /**
+     * Prepares the context for a new search on its current board without any node or time limit.
+     */
+    void Reset(boolean _shouldUseAlphaBetaPruning, boolean _shouldUseHeuristicMoveOrdering,
+    boolean _shouldUseQuiescence, MutableInt _numPositionsEvaluatedReciever)
+    {
+        shouldUseAlphaBetaPruning = _shouldUseAlphaBetaPruning;
+        shouldUseHeuristicMoveOrdering = _shouldUseHeuristicMoveOrdering;
+        shouldUseQuiescence = _shouldUseQuiescence;
+        // the stored bounds are only meaningful with alpha beta pruning
+        shouldUseTranspositionTable = _shouldUseAlphaBetaPruning;
+        numPositionsEvaluatedReciever = _numPositionsEvaluatedReciever;
+        rootMoveHint = PackedMove.NONE;
+
+        numNodes = 0;
+        numLazyEvaluations = 0;
+        numQuiescenceSearches = 0;
+        profile = null;
+        maxNodes = 0;
+        deadlineNanoseconds = 0;
+        timeManager = null;
+        rootScoreNoise = 0f;
+        rootScoreMargin = 0f;
+        isStopped = false;
+
+        if (accumulator != null)
+            accumulator.Refresh(board);
+
+        ResetKeyHistory();
+    }
+
+    /**
+     * Seeds the key history with the board's own history back to its last irreversible move,
+     * so that repetitions of positions played before the search are found too.
+     */
+    private void ResetKeyHistory()
+    {
+        int _halfMoveClock = board.getHalfMoveCounter();
+        Iterator<Long> _history = board.getHistory().descendingIterator();
+
+        // the last key of the board's history is the current position
+        if (_history.hasNext())
+            _history.next();
+
+        int _numEarlierKeys = 0;
+        long[] _earlierKeys = new long[Math.min(_halfMoveClock, FIFTY_MOVE_RULE_PLIES)];
+        while (_numEarlierKeys < _earlierKeys.length && _history.hasNext())
+            _earlierKeys[_numEarlierKeys++] = _history.next();
+
+        keyIndex = 0;
+        for (int i = _numEarlierKeys - 1; i >= 0; i--)
+        {
+            keys[keyIndex] = _earlierKeys[i];
+            halfMoveClocks[keyIndex] = _halfMoveClock - i - 1;
+            keyIndex++;
+        }
+
+        keys[keyIndex] = board.getIncrementalHashKey();
+        halfMoveClocks[keyIndex] = _halfMoveClock;
+        rootKeyIndex = keyIndex;
+    }
+
+    /**
+     * @param _limits the limits of the search
+     * @param _startTimeNanoseconds when the search started, according to System.nanoTime()
+     */
+    void SetLimits(SearchLimits _limits, long _startTimeNanoseconds)
+    {
+        shouldUseTranspositionTable = shouldUseAlphaBetaPruning && _limits.isTranspositionTable();
+        profile = _limits.isProfiling() ? new SearchProfile() : null;
+        maxNodes = _limits.getMaxNodes();
+        deadlineNanoseconds = _limits.getMoveTimeMilliseconds() > 0
+            ? _startTimeNanoseconds + _limits.getMoveTimeMilliseconds() * 1000000L
+            : 0;
+
+        // noise more than 3 standard deviations away is too rare to change which move is played
+        rootScoreNoise = _limits.GetScoreNoise();
+        rootScoreMargin = 3 * rootScoreNoise;
+
+        // the clock's hard limit stops the search too, whichever deadline comes first
+        timeManager = TimeManager.Of(_limits, _startTimeNanoseconds);
+        if (timeManager != null)
+        {
+            long _hardDeadline = timeManager.GetHardDeadlineNanoseconds();
+
+            if (deadlineNanoseconds == 0 || _hardDeadline - deadlineNanoseconds < 0)
+                deadlineNanoseconds = _hardDeadline;
+        }
+    }
+
+    /**
+     * Forgets the killer moves and history scores, for a search unrelated to the one before it.
+     */
+    void ClearMoveOrdering()
+    {
+        for (short[] _killers : killerMoves)
+            Arrays.fill(_killers, PackedMove.NONE);
+
+        for (int[] _scores : historyScores)
+            Arrays.fill(_scores, 0);
+    }
+
+    /**
+     * Keeps the killer moves and history scores for the next search of a game,
+     * after the given number of plies were played since the last one.
+     * <p>
+     * The killers of each ply move to where the same positions are in the new search,
+     * and the history scores are halved so that the new position's cutoffs soon outweigh them.
+     * @param _numPliesPlayed the number of moves played since the last search
+     */
+    void AgeMoveOrdering(int _numPliesPlayed)
+    {
+        for (int _ply = 0; _ply < ChessEngine.MAX_PLY; _ply++)
+        {
+            int _oldPly = _ply + _numPliesPlayed;
+
+            killerMoves[_ply][0] = _oldPly < ChessEngine.MAX_PLY ? killerMoves[_oldPly][0] : PackedMove.NONE;
+            killerMoves[_ply][1] = _oldPly < ChessEngine.MAX_PLY ? killerMoves[_oldPly][1] : PackedMove.NONE;
+        }
+
+        HalveHistoryScores();
+    }
+
+    /**
+     * Remembers a quiet move that caused a beta cutoff, so that it is tried early in its sibling positions.
+     * @param _move the packed move, which must not be a capture or promotion
+     * @param _ply the ply of the position the move was played in
+     * @param _depth the number of plies searched below the position
+     */
+    void AddCutoffMove(short _move, int _ply, int _depth)
+    {
+        if (_move != killerMoves[_ply][0])
+        {
+            killerMoves[_ply][1] = killerMoves[_ply][0];
+            killerMoves[_ply][0] = _move;
+        }
+
+        int[] _scores = historyScores[PackedMove.GetFrom(_move)];
+        int _toIndex = PackedMove.GetTo(_move);
+
+        // deep cutoffs are rarer and say more about the move
+        _scores[_toIndex] += _depth * _depth;
+
+        if (_scores[_toIndex] >= MAX_HISTORY_SCORE)
+            HalveHistoryScores();
+    }
+
+    private void HalveHistoryScores()
+    {
+        for (int[] _scores : historyScores)
+        {
+            for (int i = 0; i < _scores.length; i++)
+                _scores[i] >>= 1;
+        }
+    }
+
+    /**
+     * @return the history score of the move as a fraction of MAX_HISTORY_SCORE, from 0 to 1
+     */
+    float GetHistoryFraction(short _move)
+    {
+        return historyScores[PackedMove.GetFrom(_move)][PackedMove.GetTo(_move)] / (float) MAX_HISTORY_SCORE;
+    }
+
+    /**
+     * Makes a move on the board and keeps the network's accumulators up to date.
+     * The search makes and unmakes its moves through here instead of the board.
+     */
+    void DoMove(Move _move)
+    {
+        if (accumulator != null)
+            accumulator.Push(board, _move);
+
+        boolean _isIrreversible = board.getPiece(_move.getTo()) != Piece.NONE
+            || board.getPiece(_move.getFrom()).getPieceType() == PieceType.PAWN;
+        int _halfMoveClock = halfMoveClocks[keyIndex & KEY_HISTORY_MASK];
+
+        board.doMove(_move);
+
+        keyIndex++;
+        keys[keyIndex & KEY_HISTORY_MASK] = board.getIncrementalHashKey();
+        halfMoveClocks[keyIndex & KEY_HISTORY_MASK] = _isIrreversible ? 0 : _halfMoveClock + 1;
+    }
+
+    void UndoMove()
+    {
+        board.undoMove();
+        keyIndex--;
+
+        if (accumulator != null)
+            accumulator.Pop();
+    }
+
+    /**
+     * @return the incremental Zobrist key of the current position
+     */
+    long GetKey()
+    {
+        return keys[keyIndex & KEY_HISTORY_MASK];
+    }
+
+    /**
+     * Counts a searched node and checks the limits.
+     * @return true if the search should stop
+     */
+    boolean CountNode()
+    {
+        if (isStopped)
+            return true;
+
+        numNodes++;
+
+        if (maxNodes > 0 && numNodes >= maxNodes)
+            isStopped = true;
+
+        else if (numNodes % NODES_PER_TIME_CHECK == 0)
+        {
+            if (deadlineNanoseconds != 0 && System.nanoTime() - deadlineNanoseconds >= 0)
+                isStopped = true;
+
+            else if (stopSignal != null && stopSignal.get())
+                isStopped = true;
+        }
+
+        return isStopped;
+    }
+
+    /**
+     * Checks the fifty-move rule, insufficient material, and repetitions of the current position.
+     * This replaces <code>Board.isDraw()</code> in the search, which goes through the board's
+     * whole history every time.
+     * @return true if the current position is a draw
+     */
+    boolean IsDraw()
+    {
+        int _halfMoveClock = halfMoveClocks[keyIndex & KEY_HISTORY_MASK];
+
+        if (_halfMoveClock >= FIFTY_MOVE_RULE_PLIES)
+            return true;
+
+        return IsInsufficientMaterial() || IsRepetition(_halfMoveClock);
+    }
+
+    private boolean IsRepetition(int _halfMoveClock)
+    {
+        long _key = keys[keyIndex & KEY_HISTORY_MASK];
+        int _oldestIndex = Math.max(keyIndex - _halfMoveClock, 0);
+        int _numEarlierRepetitions = 0;
+
+        // a position can only repeat after an irreversible move, and only with the same side
+        // to move, so only every other position back to the last irreversible move is checked.
+        // the closest one is four plies back
+        for (int _index = keyIndex - 4; _index >= _oldestIndex; _index -= 2)
+        {
+            if (keys[_index & KEY_HISTORY_MASK] != _key)
+                continue;
+
+            // the search could repeat a position of its own forever, so once is enough
+            if (_index >= rootKeyIndex)
+                return true;
+
+            // positions played before the search are only draws on the third occurrence
+            if (++_numEarlierRepetitions == 2)
+                return true;
+        }
+
+        return false;
+    }
+
+    private boolean IsInsufficientMaterial()
+    {
+        int _numPieces = Long.bitCount(board.getBitboard());
+
+        if (_numPieces > 4)
+            return false;
+
+        long _majorPiecesAndPawns =
+            board.getBitboard(Piece.WHITE_PAWN) | board.getBitboard(Piece.BLACK_PAWN)
+            | board.getBitboard(Piece.WHITE_ROOK) | board.getBitboard(Piece.BLACK_ROOK)
+            | board.getBitboard(Piece.WHITE_QUEEN) | board.getBitboard(Piece.BLACK_QUEEN);
+
+        if (_majorPiecesAndPawns != 0L)
+            return false;
+
+        // the kings alone or with a single minor piece
+        if (_numPieces <= 3)
+            return true;
+
+        // two bishops can only mate if they are on squares of different colors
+        long _bishops = board.getBitboard(Piece.WHITE_BISHOP) | board.getBitboard(Piece.BLACK_BISHOP);
+
+        return Long.bitCount(_bishops) == 2 && ((_bishops & LIGHT_SQUARES) == 0L || (_bishops & ~LIGHT_SQUARES) == 0L);
+    }
+}
@@ -0,0 +1,42 @@
+package com.chess.engine;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A Java Flight Recorder event for one depth of an iterative deepening search.
+ * <p>
+ * Like every event of the engine, it costs nothing unless a recording enables it, for example with
+ * <code>-XX:StartFlightRecording</code> or <code>jcmd &lt;pid&gt; JFR.start</code>.
+ */
+@Name("com.chess.engine.SearchIteration")
+@Label("Search Iteration")
+@Description("One depth of an iterative deepening search")
+@Category({ "Chess Engine", "Search" })
+@StackTrace(false)
+final class SearchIterationEvent extends jdk.jfr.Event
+{
+    @Label("FEN")
+    String fen;
+
+    @Label("Depth")
+    int depth;
+
+    @Label("Best Move")
+    String bestMove;
+
+    @Label("Score")
+    @Description("The score of the best line. Positive scores are better for white")
+    float score;
+
+    @Label("Nodes")
+    @Description("The nodes searched by the search so far")
+    long numNodes;
+
+    @Label("Completed")
+    @Description("False if a node or time limit stopped the depth")
+    boolean isCompleted;
+}
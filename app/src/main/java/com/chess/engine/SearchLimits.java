@@ -0,0 +1,123 @@
+package com.chess.engine;
+
+import lombok.Builder;
+import lombok.Getter;
+
+/**
+ * How deep and how long a search may go, and which search features it uses.
+ * <p>
+ * Limits are immutable, so the same limits can be shared by every search.
+ * The search stops at whichever limit it reaches first.
+ */
+@Getter
+@Builder(toBuilder = true)
+public class SearchLimits
+{
+    public static final int MAX_SKILL_LEVEL = 20;
+    // the node budget of skill level 0. it doubles every 2 levels
+    private static final long MIN_SKILL_NODES = 256;
+    // the standard deviation of the root score noise grows by this many pawns for every level below the max
+    private static final float NOISE_PER_SKILL_LEVEL = 0.05f;
+
+    // the max number of plies to search into
+    @Builder.Default
+    private final int depth = 4;
+
+    // 0 for no limit
+    @Builder.Default
+    private final long maxNodes = 0;
+
+    // 0 for no limit
+    @Builder.Default
+    private final long moveTimeMilliseconds = 0;
+
+    // the time left on the side to move's clock. 0 if the game has no clock.
+    // a com.chess.engine.TimeManager decides how much of it the search spends
+    @Builder.Default
+    private final long remainingTimeMilliseconds = 0;
+
+    @Builder.Default
+    private final long incrementMilliseconds = 0;
+
+    // the number of moves until more time is added, or 0 if the rest of the game has to be played in the remaining time
+    @Builder.Default
+    private final int movesToGo = 0;
+
+    @Builder.Default
+    private final boolean alphaBetaPruning = true;
+
+    @Builder.Default
+    private final boolean heuristicMoveOrdering = true;
+
+    @Builder.Default
+    private final boolean quiescence = true;
+
+    // only used with alpha beta pruning
+    @Builder.Default
+    private final boolean transpositionTable = true;
+
+    // fills in the per-ply counters of the result's com.chess.engine.SearchProfile
+    @Builder.Default
+    private final boolean profiling = false;
+
+    // from 0 to MAX_SKILL_LEVEL. below the max, noise is added to the scores of the root moves,
+    // so the search sometimes plays a move that's a little worse than the best one
+    @Builder.Default
+    private final int skillLevel = MAX_SKILL_LEVEL;
+
+    /**
+     * @param _depth the max number of plies to search into
+     * @return limits that only limit the depth
+     */
+    public static SearchLimits OfDepth(int _depth)
+    {
+        return SearchLimits.builder().depth(_depth).build();
+    }
+
+    /**
+     * @param _remainingTimeMilliseconds the time left on the side to move's clock
+     * @param _incrementMilliseconds the time added to the clock after each move
+     * @param _movesToGo the number of moves until more time is added, or 0 if there is none
+     * @return limits that only limit the time, as a game under that clock allows
+     */
+    public static SearchLimits OfClock(long _remainingTimeMilliseconds, long _incrementMilliseconds, int _movesToGo)
+    {
+        return SearchLimits.builder()
+            .depth(ChessEngine.MAX_PLY - 2)
+            .remainingTimeMilliseconds(_remainingTimeMilliseconds)
+            .incrementMilliseconds(_incrementMilliseconds)
+            .movesToGo(_movesToGo)
+            .build();
+    }
+
+    /**
+     * Limits for cheap, weaker opponents. The search is capped by nodes instead of depth, so every move
+     * costs about the same CPU time no matter the position, and the lower the level, the fewer the
+     * nodes and the more noise on the scores of the root moves.
+     * <p>
+     * At level 0, the noise has a standard deviation of a pawn, so a move a pawn behind the best one is
+     * still played fairly often. At MAX_SKILL_LEVEL, there is no noise, and the node budget is about 250,000.
+     * @param _skillLevel the skill level, from 0 to MAX_SKILL_LEVEL
+     * @return the limits of the skill level
+     * @throws IllegalArgumentException if the skill level is out of range
+     */
+    public static SearchLimits OfSkill(int _skillLevel) throws IllegalArgumentException
+    {
+        if (_skillLevel < 0 || _skillLevel > MAX_SKILL_LEVEL)
+            throw new IllegalArgumentException("The skill level should be from 0 to " + MAX_SKILL_LEVEL + ".");
+
+        return SearchLimits.builder()
+            .depth(ChessEngine.MAX_PLY - 2)
+            .maxNodes(MIN_SKILL_NODES << (_skillLevel / 2))
+            .skillLevel(_skillLevel)
+            .build();
+    }
+
+    /**
+     * @return the standard deviation of the noise on the scores of the root moves at the skill level, in pawns
+     */
+    public float GetScoreNoise()
+    {
+        return Math.max(MAX_SKILL_LEVEL - skillLevel, 0) * NOISE_PER_SKILL_LEVEL;
+    }
+}
@@ -0,0 +1,115 @@
+package com.chess.engine;
+
+import java.io.PrintStream;
+
+/**
+ * Per-ply counters of a search, to find out where a slow search spends its nodes:
+ * a high branching factor, quiescence searches that explode, or cutoffs that only
+ * happen late in the move order.
+ * <p>
+ * Plies are counted from the root, so the positions after the root moves are ply 1.
+ * Searches only fill in a profile when their limits ask for one, and otherwise skip
+ * every counter with a single null check.
+ */
+public class SearchProfile
+{
+    // cutoffs by moves at or past this index are counted together
+    private static final int MAX_CUTOFF_MOVE_INDEX = 8;
+    private static final int HISTOGRAM_WIDTH = 40;
+
+    // quiescence goes past the max depth of the main search
+    private final long[] numNodes = new long[2 * ChessEngine.MAX_PLY];
+    private final long[] numQuiescenceNodes = new long[2 * ChessEngine.MAX_PLY];
+    private final long[] numCutoffs = new long[2 * ChessEngine.MAX_PLY];
+    // [ply][the index of the move that caused the cutoff]
+    private final long[][] numCutoffsByMoveIndex = new long[2 * ChessEngine.MAX_PLY][MAX_CUTOFF_MOVE_INDEX + 1];
+
+    void CountNode(int _ply)
+    {
+        numNodes[Math.min(_ply, numNodes.length - 1)]++;
+    }
+
+    void CountQuiescenceNode(int _ply)
+    {
+        numQuiescenceNodes[Math.min(_ply, numQuiescenceNodes.length - 1)]++;
+    }
+
+    /**
+     * @param _ply the ply of the node that was cut off
+     * @param _moveIndex the index of the move that caused the cutoff in the node's ordered moves
+     */
+    void CountCutoff(int _ply, int _moveIndex)
+    {
+        _ply = Math.min(_ply, numCutoffs.length - 1);
+
+        numCutoffs[_ply]++;
+        numCutoffsByMoveIndex[_ply][Math.min(_moveIndex, MAX_CUTOFF_MOVE_INDEX)]++;
+    }
+
+    /**
+     * Adds the counters of another profile to this one, for example to profile a batch of searches.
+     * @param _profile the profile to add
+     */
+    public void Add(SearchProfile _profile)
+    {
+        for (int _ply = 0; _ply < numNodes.length; _ply++)
+        {
+            numNodes[_ply] += _profile.numNodes[_ply];
+            numQuiescenceNodes[_ply] += _profile.numQuiescenceNodes[_ply];
+            numCutoffs[_ply] += _profile.numCutoffs[_ply];
+
+            for (int i = 0; i <= MAX_CUTOFF_MOVE_INDEX; i++)
+                numCutoffsByMoveIndex[_ply][i] += _profile.numCutoffsByMoveIndex[_ply][i];
+        }
+    }
+
+    /**
+     * Prints a table of the counters of every ply that was reached, followed by a histogram
+     * of the move indices that caused cutoffs.
+     * @param _output where to print
+     */
+    public void Print(PrintStream _output)
+    {
+        _output.printf("%4s %12s %12s %8s %10s %8s%n", "Ply", "Nodes", "Q-nodes", "EBF", "Cutoffs", "First %");
+
+        for (int _ply = 0; _ply < numNodes.length; _ply++)
+        {
+            if (numNodes[_ply] == 0 && numQuiescenceNodes[_ply] == 0)
+                continue;
+
+            // the effective branching factor from the ply before
+            String _branchingFactor = _ply > 0 && numNodes[_ply - 1] > 0 && numNodes[_ply] > 0
+                ? String.format("%.2f", (double) numNodes[_ply] / numNodes[_ply - 1])
+                : "-";
+            String _firstMoveCutoffPercent = numCutoffs[_ply] > 0
+                ? String.format("%.1f", 100.0 * numCutoffsByMoveIndex[_ply][0] / numCutoffs[_ply])
+                : "-";
+
+            _output.printf("%4d %12d %12d %8s %10d %8s%n", _ply, numNodes[_ply], numQuiescenceNodes[_ply],
+                _branchingFactor, numCutoffs[_ply], _firstMoveCutoffPercent);
+        }
+
+        long[] _totalCutoffsByMoveIndex = new long[MAX_CUTOFF_MOVE_INDEX + 1];
+        long _maxCutoffs = 0;
+
+        for (long[] _plyCutoffs : numCutoffsByMoveIndex)
+        {
+            for (int i = 0; i <= MAX_CUTOFF_MOVE_INDEX; i++)
+            {
+                _totalCutoffsByMoveIndex[i] += _plyCutoffs[i];
+                _maxCutoffs = Math.max(_maxCutoffs, _totalCutoffsByMoveIndex[i]);
+            }
+        }
+
+        _output.println();
+        _output.println("Cutoffs by move index:");
+
+        for (int i = 0; i <= MAX_CUTOFF_MOVE_INDEX; i++)
+        {
+            int _barLength = _maxCutoffs > 0 ? (int) (HISTOGRAM_WIDTH * _totalCutoffsByMoveIndex[i] / _maxCutoffs) : 0;
+            String _label = i == MAX_CUTOFF_MOVE_INDEX ? i + "+" : String.valueOf(i);
+
+            _output.printf("%4s %12d %s%n", _label, _totalCutoffsByMoveIndex[i], "#".repeat(_barLength));
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package com.chess.engine;
+
+import com.github.bhlangonijr.chesslib.move.Move;
+
+import lombok.Data;
+
+/**
+ * The outcome of a search started with "ChessEngine.Search".
+ */
+@Data
+public class SearchResult
+{
+    // the best line found. if the score is positive, the position is better for white
+    private final ScoredLine bestLine;
+    // the deepest depth that was fully searched. 0 if a limit stopped the first depth
+    private final int depth;
+    private final long numNodes;
+    // how many leaves were evaluated lazily. compare it to the number of nodes when tuning the margin
+    private final long numLazyEvaluations;
+    private final long timeNanoseconds;
+    // null unless the limits asked for profiling
+    private final SearchProfile profile;
+
+    /**
+     * @return the first move of the best line, or null if the game is already over
+     */
+    public Move getBestMove()
+    {
+        return bestLine.getLine().isEmpty() ? null : bestLine.getLine().get(0);
+    }
+}
@@ -0,0 +1,74 @@
+package com.chess.engine;
+
+import java.util.concurrent.Semaphore;
+import java.util.function.Supplier;
+
+/**
+ * Bounds how many searches run at once across every service that shares it.
+ * <p>
+ * Searches are CPU-bound, so running more of them than there are cores only makes all of them slower,
+ * and virtual threads don't bound themselves. Searches past the bound wait in the order they arrived,
+ * so under load every caller's wait grows evenly instead of some callers starving.
+ */
+public class SearchScheduler
+{
+    private final int maxSearches;
+    private final Semaphore permits;
+
+    /**
+     * @param _maxSearches the max number of searches that run at once, usually the number of cores
+     */
+    public SearchScheduler(int _maxSearches)
+    {
+        if (_maxSearches < 1)
+            throw new IllegalArgumentException("The max searches should be at least 1.");
+
+        maxSearches = _maxSearches;
+        permits = new Semaphore(_maxSearches, true);
+    }
+
+    /**
+     * Runs a search once there is room for it, on the calling thread.
+     * @param _search the search to run
+     * @return the result of the search
+     * @throws InterruptedException if the thread is interrupted while waiting for room
+     */
+    public <T> T Run(Supplier<T> _search) throws InterruptedException
+    {
+        permits.acquire();
+
+        try
+        {
+            return _search.get();
+        }
+
+        finally
+        {
+            permits.release();
+        }
+    }
+
+    /**
+     * @return the max number of searches that run at once
+     */
+    public int GetMaxSearches()
+    {
+        return maxSearches;
+    }
+
+    /**
+     * @return about how many searches are running
+     */
+    public int GetNumRunning()
+    {
+        return maxSearches - permits.availablePermits();
+    }
+
+    /**
+     * @return about how many searches are waiting for room
+     */
+    public int GetNumWaiting()
+    {
+        return permits.getQueueLength();
+    }
+}
@@ -0,0 +1,153 @@
+package com.chess.engine;
+
+/**
+ * The statistics of a match: the sequential probability ratio test and Elo estimates.
+ * <p>
+ * The test uses the normal approximation of the trinomial (win, draw, loss) model: the
+ * log-likelihood ratio of "the test engine is elo1 stronger" against "the test engine is
+ * elo0 stronger" is <code>n * (s1 - s0) * (2 * s - s0 - s1) / (2 * variance)</code>, where s is the
+ * test engine's average score and s0 and s1 are the expected scores under each hypothesis.
+ */
+public final class Sprt
+{
+    public static final int CONTINUE = 0;
+    public static final int ACCEPT_H0 = 1;
+    public static final int ACCEPT_H1 = 2;
+
+    // the z-score of a 95% confidence interval
+    private static final double CONFIDENCE_Z_SCORE = 1.959964;
+
+    private final double elo0;
+    private final double elo1;
+    private final double lowerBound;
+    private final double upperBound;
+
+    /**
+     * @param _elo0 the Elo difference of the null hypothesis, usually 0 or slightly negative for speedups
+     * @param _elo1 the Elo difference of the alternative hypothesis
+     * @param _alpha the chance of accepting H1 when H0 is true
+     * @param _beta the chance of accepting H0 when H1 is true
+     */
+    public Sprt(double _elo0, double _elo1, double _alpha, double _beta)
+    {
+        if (_elo0 >= _elo1)
+            throw new IllegalArgumentException("elo0 should be less than elo1.");
+
+        if (_alpha <= 0 || _alpha >= 1 || _beta <= 0 || _beta >= 1)
+            throw new IllegalArgumentException("alpha and beta should be between 0 and 1.");
+
+        elo0 = _elo0;
+        elo1 = _elo1;
+        lowerBound = Math.log(_beta / (1 - _alpha));
+        upperBound = Math.log((1 - _beta) / _alpha);
+    }
+
+    /**
+     * @return the log-likelihood ratio of H1 against H0, or 0 if there isn't enough data yet
+     */
+    public double CalculateLogLikelihoodRatio(int _numWins, int _numDraws, int _numLosses)
+    {
+        int _numGames = _numWins + _numDraws + _numLosses;
+
+        // every game having the same result gives no variance to work with
+        if (_numWins + _numDraws == 0 || _numLosses + _numDraws == 0)
+            return 0;
+
+        double _score = CalculateScore(_numWins, _numDraws, _numLosses);
+        double _variance = CalculateVariance(_numWins, _numDraws, _numLosses);
+
+        if (_variance <= 0)
+            return 0;
+
+        double _score0 = GetExpectedScore(elo0);
+        double _score1 = GetExpectedScore(elo1);
+
+        return _numGames * (_score1 - _score0) * (2 * _score - _score0 - _score1) / (2 * _variance);
+    }
+
+    /**
+     * @return CONTINUE, ACCEPT_H0, or ACCEPT_H1
+     */
+    public int GetDecision(int _numWins, int _numDraws, int _numLosses)
+    {
+        double _logLikelihoodRatio = CalculateLogLikelihoodRatio(_numWins, _numDraws, _numLosses);
+
+        if (_logLikelihoodRatio >= upperBound)
+            return ACCEPT_H1;
+
+        if (_logLikelihoodRatio <= lowerBound)
+            return ACCEPT_H0;
+
+        return CONTINUE;
+    }
+
+    public double GetLowerBound()
+    {
+        return lowerBound;
+    }
+
+    public double GetUpperBound()
+    {
+        return upperBound;
+    }
+
+    /**
+     * @return the Elo difference that matches the average score of the games
+     */
+    public static double CalculateElo(int _numWins, int _numDraws, int _numLosses)
+    {
+        return GetElo(CalculateScore(_numWins, _numDraws, _numLosses));
+    }
+
+    /**
+     * @return half the width of the 95% confidence interval of the Elo difference
+     */
+    public static double CalculateEloErrorMargin(int _numWins, int _numDraws, int _numLosses)
+    {
+        int _numGames = _numWins + _numDraws + _numLosses;
+        if (_numGames == 0)
+            return Double.POSITIVE_INFINITY;
+
+        double _score = CalculateScore(_numWins, _numDraws, _numLosses);
+        double _scoreErrorMargin = CONFIDENCE_Z_SCORE * Math.sqrt(CalculateVariance(_numWins, _numDraws, _numLosses) / _numGames);
+
+        return (GetElo(_score + _scoreErrorMargin) - GetElo(_score - _scoreErrorMargin)) / 2;
+    }
+
+    private static double CalculateScore(int _numWins, int _numDraws, int _numLosses)
+    {
+        int _numGames = _numWins + _numDraws + _numLosses;
+
+        return _numGames == 0 ? 0.5 : (_numWins + _numDraws / 2.0) / _numGames;
+    }
+
+    // the variance of the score of a single game
+    private static double CalculateVariance(int _numWins, int _numDraws, int _numLosses)
+    {
+        int _numGames = _numWins + _numDraws + _numLosses;
+        if (_numGames == 0)
+            return 0;
+
+        double _winRatio = (double) _numWins / _numGames;
+        double _drawRatio = (double) _numDraws / _numGames;
+        double _score = CalculateScore(_numWins, _numDraws, _numLosses);
+
+        return _winRatio + _drawRatio / 4 - _score * _score;
+    }
+
+    private static double GetExpectedScore(double _elo)
+    {
+        return 1 / (1 + Math.pow(10, -_elo / 400));
+    }
+
+    private static double GetElo(double _score)
+    {
+        if (_score <= 0)
+            return Double.NEGATIVE_INFINITY;
+
+        if (_score >= 1)
+            return Double.POSITIVE_INFINITY;
+
+        return -400 * Math.log10(1 / _score - 1);
+    }
+}
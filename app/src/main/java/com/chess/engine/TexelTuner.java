@@ -0,0 +1,501 @@
+package com.chess.engine;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import com.github.bhlangonijr.chesslib.Board;
+
+/**
+ * Tunes the com.chess.engine.EvaluationParameters on positions labelled with the result of their game.
+ * <p>
+ * The evaluation is linear in the tuned parameters, so every position is turned into its features once
+ * by the "preprocess" command and stored in a compact binary file: the result followed by the index and
+ * coefficient of every nonzero feature. Each epoch of the "tune" command then only takes dot products.
+ * <p>
+ * The predicted result of a position is <code>1 / (1 + e^(-K * evaluation))</code>, and the tuner minimizes
+ * the mean squared error between the predicted and actual results. K is fitted to the starting parameters
+ * first. The gradient over the whole dataset is summed by a fork-join pool in every epoch, and the
+ * parameters are updated with Adam, a gradient descent with momentum and per-parameter step sizes.
+ * <p>
+ * The features are calculated with the endgame weight of the preprocessing parameters. If the tuned piece
+ * values are far from those, preprocess again with the tuned parameters and keep tuning.
+ * <p>
+ * Usage:
+ * <br><code>TexelTuner preprocess &lt;positions file&gt; &lt;dataset file&gt; [--parameters file]</code>
+ * <br><code>TexelTuner tune &lt;dataset file&gt; &lt;output parameters file&gt; [--parameters file] [--epochs n]
+ * [--learning-rate n]</code>
+ * <p>
+ * Every line of a positions file is a FEN or EPD position followed by the result for white,
+ * either as <code>1-0</code>, <code>1/2-1/2</code>, or <code>0-1</code>, or as 1, 0.5, or 0.
+ */
+public class TexelTuner
+{
+    private static final int MAGIC = 0x54455845;
+    private static final int VERSION = 1;
+
+    private static final int DEFAULT_NUM_EPOCHS = 1000;
+    private static final double DEFAULT_LEARNING_RATE = 0.002;
+    private static final int EPOCHS_PER_SAVE = 50;
+
+    // Adam's decay rates of the mean and variance of the gradient
+    private static final double FIRST_MOMENT_DECAY = 0.9;
+    private static final double SECOND_MOMENT_DECAY = 0.999;
+    private static final double EPSILON = 1e-8;
+
+    // positions per fork-join task
+    private static final int POSITIONS_PER_TASK = 16384;
+
+    private final Dataset dataset;
+
+    public TexelTuner(Dataset _dataset)
+    {
+        dataset = _dataset;
+    }
+
+    public static void main(String[] args) throws IOException
+    {
+        if (args.length < 3 || !(args[0].equals("preprocess") || args[0].equals("tune")))
+        {
+            System.out.println("Usage: TexelTuner preprocess <positions file> <dataset file> [--parameters file]");
+            System.out.println("       TexelTuner tune <dataset file> <output parameters file> [--parameters file]"
+                + " [--epochs n] [--learning-rate n]");
+            return;
+        }
+
+        EvaluationParameters _parameters = new EvaluationParameters();
+        int _numEpochs = DEFAULT_NUM_EPOCHS;
+        double _learningRate = DEFAULT_LEARNING_RATE;
+
+        for (int i = 3; i < args.length; i++)
+        {
+            switch (args[i])
+            {
+                case "--parameters":
+                    _parameters = EvaluationParameters.Load(Paths.get(args[++i]));
+                    break;
+
+                case "--epochs":
+                    _numEpochs = Integer.parseInt(args[++i]);
+                    break;
+
+                case "--learning-rate":
+                    _learningRate = Double.parseDouble(args[++i]);
+                    break;
+
+                default:
+                    throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+
+        double _startTimeNanoseconds = System.nanoTime();
+
+        if (args[0].equals("preprocess"))
+        {
+            long _numPositions = Preprocess(Paths.get(args[1]), Paths.get(args[2]), _parameters);
+            System.out.println("Positions written: " + _numPositions);
+        }
+
+        else
+        {
+            Dataset _dataset = Dataset.Load(Paths.get(args[1]));
+            System.out.println("Positions loaded: " + _dataset.numPositions);
+
+            new TexelTuner(_dataset).Tune(_parameters, _numEpochs, _learningRate, Paths.get(args[2]));
+        }
+
+        double _timeTakenSeconds = (System.nanoTime() - _startTimeNanoseconds) / 1000000000;
+        System.out.println("Time taken (seconds): " + _timeTakenSeconds);
+    }
+
+    //#region Preprocessing
+    /**
+     * Turns labelled positions into the binary feature format.
+     * Positions that are checkmate or in check are skipped because they aren't quiet.
+     * @param _inputPath the labelled positions
+     * @param _outputPath the dataset file to write
+     * @param _parameters the parameters whose endgame weight is used for the features
+     * @return the number of positions written
+     * @throws IOException if reading or writing fails
+     */
+    public static long Preprocess(Path _inputPath, Path _outputPath, EvaluationParameters _parameters) throws IOException
+    {
+        Board _board = new Board();
+        ChessEngine _engine = new ChessEngine(_board, _parameters);
+        float[] _features = new float[EvaluationParameters.NUM_TUNED_PARAMETERS];
+        long _numPositions = 0;
+
+        try (BufferedReader _reader = Files.newBufferedReader(_inputPath, StandardCharsets.UTF_8);
+             DataOutputStream _output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(_outputPath), 1 << 16)))
+        {
+            _output.writeInt(MAGIC);
+            _output.writeInt(VERSION);
+            _output.writeInt(EvaluationParameters.NUM_TUNED_PARAMETERS);
+
+            String _line;
+            while ((_line = _reader.readLine()) != null)
+            {
+                _line = _line.trim();
+                if (_line.isEmpty() || _line.startsWith("#"))
+                    continue;
+
+                float _result = ParseResult(_line);
+                if (Float.isNaN(_result))
+                    continue;
+
+                try
+                {
+                    _board.loadFromFen(BatchAnalyzer.ParsePosition(0, _line).getFen());
+                }
+
+                catch (RuntimeException e)
+                {
+                    continue;
+                }
+
+                if (_board.isKingAttacked())
+                    continue;
+
+                _engine.ExtractFeatures(_board, _features);
+
+                int _numFeatures = 0;
+                for (float _feature : _features)
+                {
+                    if (_feature != 0f)
+                        _numFeatures++;
+                }
+
+                _output.writeFloat(_result);
+                _output.writeShort(_numFeatures);
+                for (int i = 0; i < _features.length; i++)
+                {
+                    if (_features[i] == 0f)
+                        continue;
+
+                    _output.writeShort(i);
+                    _output.writeFloat(_features[i]);
+                }
+
+                _numPositions++;
+            }
+        }
+
+        return _numPositions;
+    }
+
+    /**
+     * @return the result for white, or NaN if the line has no result
+     */
+    static float ParseResult(String _line)
+    {
+        if (_line.contains("1/2-1/2"))
+            return 0.5f;
+
+        if (_line.contains("1-0"))
+            return 1f;
+
+        if (_line.contains("0-1"))
+            return 0f;
+
+        String[] _tokens = _line.split("[\\s;|\\[\\]\"]+");
+
+        // a FEN without a result ends with its move number, which could be read as a result
+        if (_tokens.length == 6 || _tokens.length < 5)
+            return Float.NaN;
+
+        try
+        {
+            float _result = Float.parseFloat(_tokens[_tokens.length - 1]);
+
+            return _result == 0f || _result == 0.5f || _result == 1f ? _result : Float.NaN;
+        }
+
+        catch (NumberFormatException e)
+        {
+            return Float.NaN;
+        }
+    }
+    //#endregion
+
+    //#region Tuning
+    /**
+     * Tunes the parameters and saves them every few epochs and at the end.
+     * @param _parameters the starting parameters. They are changed to the tuned parameters.
+     * @param _numEpochs the number of passes over the dataset
+     * @param _learningRate Adam's step size, in pawns
+     * @param _outputPath where the tuned parameters are saved
+     * @throws IOException if the parameters can't be saved
+     */
+    public void Tune(EvaluationParameters _parameters, int _numEpochs, double _learningRate, Path _outputPath) throws IOException
+    {
+        double[] _vector = _parameters.ToVector();
+
+        double _k = FitK(_vector);
+        System.out.println("K: " + _k);
+        System.out.println("Starting error: " + CalculateError(_vector, _k));
+
+        double[] _firstMoments = new double[_vector.length];
+        double[] _secondMoments = new double[_vector.length];
+
+        for (int _epoch = 1; _epoch <= _numEpochs; _epoch++)
+        {
+            double _startTimeNanoseconds = System.nanoTime();
+            GradientTask.Result _result = ForkJoinPool.commonPool().invoke(new GradientTask(dataset, _vector, _k, true, 0, dataset.numPositions));
+
+            double _firstMomentCorrection = 1 - Math.pow(FIRST_MOMENT_DECAY, _epoch);
+            double _secondMomentCorrection = 1 - Math.pow(SECOND_MOMENT_DECAY, _epoch);
+
+            for (int i = 0; i < _vector.length; i++)
+            {
+                double _gradient = _result.gradient[i] / dataset.numPositions;
+
+                _firstMoments[i] = FIRST_MOMENT_DECAY * _firstMoments[i] + (1 - FIRST_MOMENT_DECAY) * _gradient;
+                _secondMoments[i] = SECOND_MOMENT_DECAY * _secondMoments[i] + (1 - SECOND_MOMENT_DECAY) * _gradient * _gradient;
+
+                _vector[i] -= _learningRate * (_firstMoments[i] / _firstMomentCorrection)
+                    / (Math.sqrt(_secondMoments[i] / _secondMomentCorrection) + EPSILON);
+            }
+
+            double _timeTakenSeconds = (System.nanoTime() - _startTimeNanoseconds) / 1000000000;
+            System.out.println("Epoch " + _epoch + ", error: " + _result.error / dataset.numPositions
+                + ", time taken (seconds): " + _timeTakenSeconds);
+
+            if (_epoch % EPOCHS_PER_SAVE == 0 || _epoch == _numEpochs)
+            {
+                _parameters.FromVector(_vector);
+                _parameters.Save(_outputPath);
+            }
+        }
+    }
+
+    /**
+     * @return the mean squared error of the predicted results
+     */
+    public double CalculateError(double[] _vector, double _k)
+    {
+        return ForkJoinPool.commonPool().invoke(new GradientTask(dataset, _vector, _k, false, 0, dataset.numPositions)).error
+            / dataset.numPositions;
+    }
+
+    /**
+     * Finds the K that fits the predicted results of the given parameters best with a golden section search.
+     */
+    private double FitK(double[] _vector)
+    {
+        final double _GOLDEN_RATIO = (Math.sqrt(5) - 1) / 2;
+
+        double _low = 0.01;
+        double _high = 10;
+
+        for (int i = 0; i < 40; i++)
+        {
+            double _lowProbe = _high - _GOLDEN_RATIO * (_high - _low);
+            double _highProbe = _low + _GOLDEN_RATIO * (_high - _low);
+
+            if (CalculateError(_vector, _lowProbe) < CalculateError(_vector, _highProbe))
+                _high = _highProbe;
+
+            else
+                _low = _lowProbe;
+        }
+
+        return (_low + _high) / 2;
+    }
+
+    /**
+     * Sums the squared errors and, optionally, their gradient over a range of positions,
+     * splitting the range in half until it is small enough.
+     */
+    private static class GradientTask extends RecursiveTask<GradientTask.Result>
+    {
+        private final Dataset dataset;
+        private final double[] vector;
+        private final double k;
+        private final boolean shouldCalculateGradient;
+        private final int start;
+        private final int end;
+
+        GradientTask(Dataset _dataset, double[] _vector, double _k, boolean _shouldCalculateGradient, int _start, int _end)
+        {
+            dataset = _dataset;
+            vector = _vector;
+            k = _k;
+            shouldCalculateGradient = _shouldCalculateGradient;
+            start = _start;
+            end = _end;
+        }
+
+        @Override
+        protected Result compute()
+        {
+            if (end - start > POSITIONS_PER_TASK)
+            {
+                int _middle = (start + end) >>> 1;
+
+                GradientTask _left = new GradientTask(dataset, vector, k, shouldCalculateGradient, start, _middle);
+                GradientTask _right = new GradientTask(dataset, vector, k, shouldCalculateGradient, _middle, end);
+
+                _left.fork();
+                Result _rightResult = _right.compute();
+                Result _leftResult = _left.join();
+
+                _leftResult.error += _rightResult.error;
+                if (shouldCalculateGradient)
+                {
+                    for (int i = 0; i < _leftResult.gradient.length; i++)
+                        _leftResult.gradient[i] += _rightResult.gradient[i];
+                }
+
+                return _leftResult;
+            }
+
+            Result _result = new Result(shouldCalculateGradient ? vector.length : 0);
+
+            for (int _position = start; _position < end; _position++)
+            {
+                int _featuresStart = dataset.featureOffsets[_position];
+                int _featuresEnd = dataset.featureOffsets[_position + 1];
+
+                double _evaluation = 0;
+                for (int i = _featuresStart; i < _featuresEnd; i++)
+                    _evaluation += dataset.coefficients[i] * vector[dataset.indices[i]];
+
+                double _prediction = 1 / (1 + Math.exp(-k * _evaluation));
+                double _difference = _prediction - dataset.results[_position];
+
+                _result.error += _difference * _difference;
+
+                if (!shouldCalculateGradient)
+                    continue;
+
+                // derivative of the squared error with respect to the evaluation
+                double _slope = 2 * _difference * k * _prediction * (1 - _prediction);
+                for (int i = _featuresStart; i < _featuresEnd; i++)
+                    _result.gradient[dataset.indices[i]] += _slope * dataset.coefficients[i];
+            }
+
+            return _result;
+        }
+
+        private static class Result
+        {
+            private final double[] gradient;
+            private double error;
+
+            private Result(int _numParameters)
+            {
+                gradient = new double[_numParameters];
+            }
+        }
+    }
+    //#endregion
+
+    /**
+     * A preprocessed dataset held in flat arrays. The features of position i are
+     * the entries from featureOffsets[i] up to featureOffsets[i + 1].
+     */
+    public static class Dataset
+    {
+        private final int numPositions;
+        private final float[] results;
+        private final int[] featureOffsets;
+        private final short[] indices;
+        private final float[] coefficients;
+
+        private Dataset(int _numPositions, float[] _results, int[] _featureOffsets, short[] _indices, float[] _coefficients)
+        {
+            numPositions = _numPositions;
+            results = _results;
+            featureOffsets = _featureOffsets;
+            indices = _indices;
+            coefficients = _coefficients;
+        }
+
+        /**
+         * Streams a dataset written by "Preprocess" into memory.
+         * @param _path the dataset file
+         * @return the dataset
+         * @throws IOException if the file can't be read or isn't a dataset for the current parameters
+         */
+        public static Dataset Load(Path _path) throws IOException
+        {
+            try (DataInputStream _input = new DataInputStream(new BufferedInputStream(Files.newInputStream(_path), 1 << 16)))
+            {
+                if (_input.readInt() != MAGIC || _input.readInt() != VERSION)
+                    throw new IOException(_path + " is not a Texel tuning dataset.");
+
+                if (_input.readInt() != EvaluationParameters.NUM_TUNED_PARAMETERS)
+                    throw new IOException(_path + " was made for a different set of parameters. Preprocess it again.");
+
+                int _numPositions = 0;
+                int _numFeatures = 0;
+                float[] _results = new float[1024];
+                int[] _featureOffsets = new int[1025];
+                short[] _indices = new short[1024 * 32];
+                float[] _coefficients = new float[1024 * 32];
+
+                while (true)
+                {
+                    float _result;
+                    try
+                    {
+                        _result = _input.readFloat();
+                    }
+
+                    catch (EOFException e)
+                    {
+                        break;
+                    }
+
+                    int _numPositionFeatures = _input.readUnsignedShort();
+
+                    if (_numPositions == _results.length)
+                    {
+                        _results = Arrays.copyOf(_results, _results.length * 2);
+                        _featureOffsets = Arrays.copyOf(_featureOffsets, _results.length + 1);
+                    }
+
+                    if (_numFeatures + _numPositionFeatures > _indices.length)
+                    {
+                        int _newLength = Math.max(_indices.length * 2, _numFeatures + _numPositionFeatures);
+                        _indices = Arrays.copyOf(_indices, _newLength);
+                        _coefficients = Arrays.copyOf(_coefficients, _newLength);
+                    }
+
+                    for (int i = 0; i < _numPositionFeatures; i++)
+                    {
+                        _indices[_numFeatures] = _input.readShort();
+                        _coefficients[_numFeatures] = _input.readFloat();
+                        _numFeatures++;
+                    }
+
+                    _results[_numPositions] = _result;
+                    _numPositions++;
+                    _featureOffsets[_numPositions] = _numFeatures;
+                }
+
+                return new Dataset
+                (
+                    _numPositions, Arrays.copyOf(_results, _numPositions), Arrays.copyOf(_featureOffsets, _numPositions + 1),
+                    Arrays.copyOf(_indices, _numFeatures), Arrays.copyOf(_coefficients, _numFeatures)
+                );
+            }
+        }
+
+        public int GetNumPositions()
+        {
+            return numPositions;
+        }
+    }
+}
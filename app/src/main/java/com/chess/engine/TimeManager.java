@@ -0,0 +1,135 @@
+package com.chess.engine;
+
+import com.github.bhlangonijr.chesslib.move.Move;
+
+import lombok.Getter;
+
+/**
+ * Decides how long one search of a game under a clock may take.
+ * <p>
+ * The time is split into two limits. The hard limit is a deadline the search stops at even in the middle
+ * of a depth, so the engine can't run out of time. The soft limit is checked after each completed depth:
+ * once it has passed, no new depth is started. The soft limit shrinks when the best move and score stay
+ * the same depth after depth, since more depths are unlikely to change them, and grows when the best move
+ * changes or the score drops, since the position is harder than it looked.
+ * <p>
+ * A time manager belongs to a single search and isn't thread-safe.
+ */
+public class TimeManager
+{
+    // the number of moves the remaining time is split between when there's no moves-to-go
+    private static final int DEFAULT_MOVES_TO_GO = 30;
+    // time kept back for everything around the search, like sending the move
+    static final long MOVE_OVERHEAD_MILLISECONDS = 30;
+    static final float MAX_HARD_LIMIT_FRACTION = 0.8f;
+    private static final float HARD_LIMIT_MULTIPLIER = 4f;
+
+    // how much the soft limit is scaled after the best move stayed the same for 2 and 4 depths, or just changed
+    private static final float STABLE_SCALE = 0.7f;
+    private static final float VERY_STABLE_SCALE = 0.4f;
+    private static final float UNSTABLE_SCALE = 1.3f;
+    // how much the soft limit is scaled when the score drops by at least SCORE_DROP_THRESHOLD pawns
+    private static final float SCORE_DROP_THRESHOLD = 0.3f;
+    private static final float SCORE_DROP_SCALE = 1.6f;
+    // the score may change this much and still count as stable
+    private static final float STABLE_SCORE_TOLERANCE = 0.1f;
+
+    @Getter
+    private final long softLimitMilliseconds;
+    @Getter
+    private final long hardLimitMilliseconds;
+    private final long startTimeNanoseconds;
+
+    private Move lastBestMove;
+    private float lastScore;
+    private int numStableIterations;
+
+    /**
+     * @param _remainingTimeMilliseconds the time left on the side to move's clock
+     * @param _incrementMilliseconds the time added to the clock after each move
+     * @param _movesToGo the number of moves until more time is added, or 0 if the rest of the game has to be played in the remaining time
+     * @param _startTimeNanoseconds when the search started, according to System.nanoTime()
+     */
+    public TimeManager(long _remainingTimeMilliseconds, long _incrementMilliseconds, int _movesToGo, long _startTimeNanoseconds)
+    {
+        if (_remainingTimeMilliseconds <= 0 || _incrementMilliseconds < 0 || _movesToGo < 0)
+            throw new IllegalArgumentException("The remaining time should be positive and the increment and moves to go shouldn't be negative.");
+
+        long _availableMilliseconds = Math.max(_remainingTimeMilliseconds - MOVE_OVERHEAD_MILLISECONDS, 1);
+        int _numMovesLeft = _movesToGo > 0 ? _movesToGo : DEFAULT_MOVES_TO_GO;
+
+        // most of the increment comes back after the move, so it can be spent now
+        long _idealMilliseconds = _availableMilliseconds / _numMovesLeft + _incrementMilliseconds * 3 / 4;
+
+        // with almost no time left this is 0, and the search stops at its first check of the clock
+        hardLimitMilliseconds = Math.min
+        (
+            (long) (_idealMilliseconds * HARD_LIMIT_MULTIPLIER), (long) (_availableMilliseconds * MAX_HARD_LIMIT_FRACTION)
+        );
+        softLimitMilliseconds = Math.min(_idealMilliseconds, hardLimitMilliseconds);
+        startTimeNanoseconds = _startTimeNanoseconds;
+    }
+
+    /**
+     * @param _limits the limits of a search
+     * @param _startTimeNanoseconds when the search started, according to System.nanoTime()
+     * @return the time manager of the search, or null if the limits have no clock
+     */
+    static TimeManager Of(SearchLimits _limits, long _startTimeNanoseconds)
+    {
+        if (_limits.getRemainingTimeMilliseconds() <= 0)
+            return null;
+
+        return new TimeManager
+        (
+            _limits.getRemainingTimeMilliseconds(), _limits.getIncrementMilliseconds(),
+            _limits.getMovesToGo(), _startTimeNanoseconds
+        );
+    }
+
+    /**
+     * @return the time the search has to stop at, according to System.nanoTime()
+     */
+    public long GetHardDeadlineNanoseconds()
+    {
+        return startTimeNanoseconds + hardLimitMilliseconds * 1000000L;
+    }
+
+    /**
+     * Called after every completed depth to decide if the next one is worth starting.
+     * @param _bestMove the best root move of the depth
+     * @param _score the score of the best move from the perspective of the side to move
+     * @param _nowNanoseconds the current time, according to System.nanoTime()
+     * @return true if the search should go one depth deeper
+     */
+    public boolean ShouldStartNextIteration(Move _bestMove, float _score, long _nowNanoseconds)
+    {
+        float _scale = 1f;
+
+        if (lastBestMove != null)
+        {
+            boolean _isStable = _bestMove.equals(lastBestMove) && Math.abs(_score - lastScore) <= STABLE_SCORE_TOLERANCE;
+            numStableIterations = _isStable ? numStableIterations + 1 : 0;
+
+            if (!_bestMove.equals(lastBestMove))
+                _scale = UNSTABLE_SCALE;
+
+            else if (numStableIterations >= 4)
+                _scale = VERY_STABLE_SCALE;
+
+            else if (numStableIterations >= 2)
+                _scale = STABLE_SCALE;
+
+            // a falling score means trouble the earlier depths didn't see
+            if (lastScore - _score >= SCORE_DROP_THRESHOLD)
+                _scale *= SCORE_DROP_SCALE;
+        }
+
+        lastBestMove = _bestMove;
+        lastScore = _score;
+
+        long _elapsedMilliseconds = (_nowNanoseconds - startTimeNanoseconds) / 1000000L;
+
+        return _elapsedMilliseconds < Math.min(softLimitMilliseconds * _scale, hardLimitMilliseconds);
+    }
+}
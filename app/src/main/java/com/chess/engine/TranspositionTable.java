@@ -0,0 +1,193 @@
+package com.chess.engine;
+
+import java.util.Arrays;
+
+/**
+ * A hash table of search results, shared by every search of a com.chess.engine.ChessEngine,
+ * including searches running at once on different threads.
+ * <p>
+ * Each entry is two longs: the Zobrist key of the position xor the entry's data, and the data itself.
+ * Nothing is locked, so two threads can write the same entry at once and leave the halves of different
+ * writes behind. Such an entry no longer xors back to its key, so a probe treats it as missing instead
+ * of returning a wrong result.
+ * <p>
+ * The data packs everything about the result into one long: the score's float bits in the low 32 bits,
+ * then the remaining depth of the search (8 bits), the bound (2 bits), the best move as a
+ * com.chess.engine.PackedMove (16 bits), and the generation of the table when it was stored (5 bits).
+ * The top bit is always set so that no stored data is 0.
+ * <p>
+ * Entries are grouped into buckets of two that a position can be stored in. A new position replaces
+ * an entry left over from an earlier generation first, and the shallower entry of the bucket otherwise.
+ * A game advances the generation before each of its moves, so entries of positions the game has left
+ * behind give way to the current search, while the deep ones it still needs are kept.
+ */
+final class TranspositionTable
+{
+    static final long NO_ENTRY = 0L;
+
+    // the score is the exact score of the position
+    static final int EXACT = 0;
+    // the score is at least the stored score
+    static final int LOWER_BOUND = 1;
+    // the score is at most the stored score
+    static final int UPPER_BOUND = 2;
+
+    private static final int DEPTH_SHIFT = 32;
+    private static final int BOUND_SHIFT = 40;
+    private static final int MOVE_SHIFT = 42;
+    private static final int GENERATION_SHIFT = 58;
+    private static final int GENERATION_MASK = 0x1F;
+    private static final long VALID_BIT = 1L << 63;
+    private static final int ENTRIES_PER_BUCKET = 2;
+
+    // [key ^ data, data] for every entry
+    private final long[] entries;
+    private final int bucketMask;
+    // wraps around, so entries from 32 generations ago look current again. by then they were almost surely replaced
+    private volatile int generation;
+
+    /**
+     * @param _sizeKilobytes the max size of the table. The number of entries is rounded down to a power of two.
+     */
+    TranspositionTable(long _sizeKilobytes)
+    {
+        if (_sizeKilobytes < 1)
+            throw new IllegalArgumentException("The transposition table should be at least 1 kilobyte.");
+
+        // 16 bytes per entry
+        long _maxEntries = _sizeKilobytes * 1024 / 16;
+        int _numEntries = Integer.highestOneBit((int) Math.min(_maxEntries, 1 << 28));
+
+        entries = new long[_numEntries * 2];
+        bucketMask = _numEntries / ENTRIES_PER_BUCKET - 1;
+    }
+
+    /**
+     * @param _key the Zobrist key of the position
+     * @return the data stored for the position, or NO_ENTRY if there is none
+     */
+    long Probe(long _key)
+    {
+        int _bucketIndex = GetBucketIndex(_key);
+
+        for (int _index = _bucketIndex; _index < _bucketIndex + ENTRIES_PER_BUCKET * 2; _index += 2)
+        {
+            long _data = entries[_index + 1];
+
+            if ((entries[_index] ^ _data) == _key)
+                return _data;
+        }
+
+        return NO_ENTRY;
+    }
+
+    /**
+     * Stores a search result. An entry of the same position from a deeper search is kept instead.
+     * Otherwise the entry of the position, an entry of an earlier generation, or the shallower entry
+     * of the bucket is replaced, in that order.
+     * @param _key the Zobrist key of the position
+     * @param _depth the number of plies searched below the position
+     * @param _bound EXACT, LOWER_BOUND, or UPPER_BOUND
+     * @param _score the score from the perspective of the side to move
+     * @param _bestMove the packed best move found, or PackedMove.NONE if there isn't one
+     */
+    void Store(long _key, int _depth, int _bound, float _score, short _bestMove)
+    {
+        int _bucketIndex = GetBucketIndex(_key);
+        int _currentGeneration = generation;
+        int _index = -1;
+        int _replacementValue = Integer.MAX_VALUE;
+
+        for (int _entryIndex = _bucketIndex; _entryIndex < _bucketIndex + ENTRIES_PER_BUCKET * 2; _entryIndex += 2)
+        {
+            long _storedData = entries[_entryIndex + 1];
+
+            if ((entries[_entryIndex] ^ _storedData) == _key)
+            {
+                if (GetDepth(_storedData) > _depth)
+                    return;
+
+                _index = _entryIndex;
+                break;
+            }
+
+            // stale entries are worth less than any current one, then shallow entries less than deep ones
+            int _value = GetDepth(_storedData) + (GetGeneration(_storedData) == _currentGeneration ? 0x100 : 0);
+            if (_value < _replacementValue)
+            {
+                _index = _entryIndex;
+                _replacementValue = _value;
+            }
+        }
+
+        long _data = Pack(_depth, _bound, _score, _bestMove) | ((long) _currentGeneration << GENERATION_SHIFT);
+
+        entries[_index] = _key ^ _data;
+        entries[_index + 1] = _data;
+    }
+
+    /**
+     * Empties the table. Must not be called while a search is using it.
+     */
+    void Clear()
+    {
+        Arrays.fill(entries, 0L);
+        generation = 0;
+    }
+
+    /**
+     * Marks every entry stored so far as older than the ones stored from now on,
+     * so that they are replaced first.
+     */
+    void AdvanceGeneration()
+    {
+        generation = (generation + 1) & GENERATION_MASK;
+    }
+
+    /**
+     * Packs a search result into the data of an entry. Also used by com.chess.engine.PersistentHashStore.
+     * @return the data, which is never NO_ENTRY
+     */
+    static long Pack(int _depth, int _bound, float _score, short _bestMove)
+    {
+        return VALID_BIT
+            | (Float.floatToRawIntBits(_score) & 0xFFFFFFFFL)
+            | ((long) Math.min(_depth, 0xFF) << DEPTH_SHIFT)
+            | ((long) _bound << BOUND_SHIFT)
+            | ((_bestMove & 0xFFFFL) << MOVE_SHIFT);
+    }
+
+    static float GetScore(long _data)
+    {
+        return Float.intBitsToFloat((int) _data);
+    }
+
+    static int GetDepth(long _data)
+    {
+        return (int) (_data >>> DEPTH_SHIFT) & 0xFF;
+    }
+
+    static int GetBound(long _data)
+    {
+        return (int) (_data >>> BOUND_SHIFT) & 0x3;
+    }
+
+    static int GetGeneration(long _data)
+    {
+        return (int) (_data >>> GENERATION_SHIFT) & GENERATION_MASK;
+    }
+
+    /**
+     * @return the packed best move of the entry, or PackedMove.NONE if it has none
+     */
+    static short GetMove(long _data)
+    {
+        return (short) (_data >>> MOVE_SHIFT);
+    }
+
+    private int GetBucketIndex(long _key)
+    {
+        // the low bits of the key pick the bucket, the whole key checks the entry
+        return ((int) _key & bucketMask) * ENTRIES_PER_BUCKET * 2;
+    }
+}
@@ -0,0 +1,367 @@
+package com.chess.engine;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import com.github.bhlangonijr.chesslib.Board;
+import com.github.bhlangonijr.chesslib.Piece;
+import com.github.bhlangonijr.chesslib.Side;
+import com.github.bhlangonijr.chesslib.Square;
+import com.github.bhlangonijr.chesslib.move.Move;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.*;
+
+/**
+ * Fails when the hot paths of the search start allocating more than their budget, since garbage made
+ * at every node turns into GC pauses under load.
+ * <p>
+ * The bytes are read from the thread's own allocation counter, after a warm-up that lets the JIT
+ * compile the code being measured. Only the engine's own bytes count: the boards meter what chesslib
+ * allocates inside their calls, like its move lists and move backups, and that is taken out.
+ * <p>
+ * The figures were measured on JDK 21 with compressed oops, against a board whose methods allocate nothing:
+ * <ul>
+ * <li>evaluation: 464 B per call, mostly the AttackMaps with its arrays (376 B) and the array of
+ * "GetPieceBitboards" (120 B), less what escape analysis removes. 488 B without escape analysis</li>
+ * <li>ordering: 0 B per move. the view that drops the illegal moves is 32 B per call without escape analysis</li>
+ * <li>quiescence: 464 B per node, the evaluation of the stand pat</li>
+ * <li>search: not measured on its own. its leaves are quiescence nodes, its interior nodes allocate nothing
+ * of the engine's own, and the root adds its result and lines once per depth</li>
+ * </ul>
+ * Each budget is its figure plus 64 B, which covers the JVM's own variation but not a new array at every
+ * node (a long[13] is 120 B). The search has another 64 B for its root. Measure again and update the figures
+ * along with the budgets when an allocation is removed or knowingly added.
+ */
+class AllocationBudgetTest
+{
+    private static final long EVALUATION_BYTES_PER_CALL = 464 + 64;
+    private static final long ORDERING_BYTES_PER_MOVE = 0 + 16;
+    private static final long QUIESCENCE_BYTES_PER_NODE = 464 + 64;
+    private static final long SEARCH_BYTES_PER_NODE = 464 + 64 + 64;
+
+    private static final int NUM_WARM_UP_ROUNDS = 3;
+    private static final int NUM_MEASURED_ROUNDS = 20;
+    private static final int SEARCH_DEPTH = 4;
+
+    private static final String[] FENS =
+    {
+        "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1",
+        // middlegame with many captures
+        "r1bq1rk1/pp2bppp/2n1pn2/3p4/2PP4/2N1PN2/PP2BPPP/R2QKB1R w KQ - 0 8",
+        "r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1",
+        // endgame
+        "8/5k2/3p4/8/2P5/2P5/5K2/8 w - - 0 1"
+    };
+
+    private static com.sun.management.ThreadMXBean threadBean;
+
+    @BeforeAll
+    public static void EnableAllocationCounting()
+    {
+        assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+
+        threadBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        assumeTrue(threadBean.isThreadAllocatedMemorySupported());
+
+        threadBean.setThreadAllocatedMemoryEnabled(true);
+    }
+
+    @Test
+    public void TestEvaluationBudget()
+    {
+        ChessEngine _engine = new ChessEngine(new Board());
+        List<MeteredBoard> _boards = LoadBoards();
+
+        for (int i = 0; i < NUM_WARM_UP_ROUNDS * 1000; i++)
+            _engine.Evaluate(_boards.get(i % _boards.size()), false);
+
+        long _bytesBefore = GetEngineBytes(_boards);
+        int _numCalls = NUM_MEASURED_ROUNDS * 1000;
+
+        for (int i = 0; i < _numCalls; i++)
+            _engine.Evaluate(_boards.get(i % _boards.size()), false);
+
+        AssertWithinBudget("evaluation", GetEngineBytes(_boards) - _bytesBefore, _numCalls, EVALUATION_BYTES_PER_CALL);
+    }
+
+    @Test
+    public void TestOrderingBudget()
+    {
+        ChessEngine _engine = new ChessEngine(new Board());
+        SearchContext _context = new SearchContext(new Board(), null);
+        List<MeteredBoard> _boards = LoadBoards();
+
+        List<List<Move>> _moveLists = new ArrayList<>();
+        for (Board _board : _boards)
+            _moveLists.add(new ArrayList<>(_board.legalMoves()));
+
+        for (int i = 0; i < NUM_WARM_UP_ROUNDS * 1000; i++)
+            OrderMoves(_engine, _context, _boards, _moveLists, i);
+
+        long _numMoves = 0;
+        long _bytesBefore = GetEngineBytes(_boards);
+
+        for (int i = 0; i < NUM_MEASURED_ROUNDS * 1000; i++)
+            _numMoves += OrderMoves(_engine, _context, _boards, _moveLists, i);
+
+        AssertWithinBudget("move ordering", GetEngineBytes(_boards) - _bytesBefore, _numMoves, ORDERING_BYTES_PER_MOVE);
+    }
+
+    @Test
+    public void TestQuiescenceBudget()
+    {
+        ChessEngine _engine = new ChessEngine(new Board());
+        List<MeteredBoard> _boards = LoadBoards();
+        SearchContext _context = new SearchContext(null, null);
+
+        for (int i = 0; i < NUM_WARM_UP_ROUNDS * 100; i++)
+            RunQuiescence(_engine, _context, _boards.get(i % _boards.size()));
+
+        long _numNodes = 0;
+        long _bytesBefore = GetEngineBytes(_boards);
+
+        for (int i = 0; i < NUM_MEASURED_ROUNDS * 100; i++)
+            _numNodes += RunQuiescence(_engine, _context, _boards.get(i % _boards.size()));
+
+        AssertWithinBudget("quiescence", GetEngineBytes(_boards) - _bytesBefore, _numNodes, QUIESCENCE_BYTES_PER_NODE);
+    }
+
+    @Test
+    public void TestSearchBudget()
+    {
+        ChessEngine _engine = new ChessEngine(new Board());
+        TranspositionTable _table = new TranspositionTable(ChessEngine.DEFAULT_TRANSPOSITION_TABLE_SIZE_MEGABYTES * 1024L);
+        SearchLimits _limits = SearchLimits.OfDepth(SEARCH_DEPTH);
+        List<MeteredBoard> _boards = LoadBoards();
+
+        List<SearchContext> _contexts = new ArrayList<>();
+        for (Board _board : _boards)
+        {
+            SearchContext _context = new SearchContext(_board, null);
+            _context.transpositionTable = _table;
+            _contexts.add(_context);
+        }
+
+        for (int i = 0; i < NUM_WARM_UP_ROUNDS; i++)
+        {
+            for (SearchContext _context : _contexts)
+            {
+                _table.Clear();
+                _engine.Search(_context, _limits);
+            }
+        }
+
+        long _numNodes = 0;
+        long _bytesBefore = GetEngineBytes(_boards);
+
+        for (SearchContext _context : _contexts)
+        {
+            // an empty table makes every round search the same nodes
+            _table.Clear();
+            _numNodes += _engine.Search(_context, _limits).getNumNodes();
+        }
+
+        AssertWithinBudget("fixed-depth search", GetEngineBytes(_boards) - _bytesBefore, _numNodes, SEARCH_BYTES_PER_NODE);
+    }
+
+    private static int OrderMoves(ChessEngine _engine, SearchContext _context, List<MeteredBoard> _boards,
+    List<List<Move>> _moveLists, int _round)
+    {
+        int _index = _round % _boards.size();
+        List<Move> _moves = _moveLists.get(_index);
+
+        _engine.SortMovesHeuristically(_boards.get(_index), _moves, false, _context, 2, false);
+
+        return _moves.size();
+    }
+
+    private static long RunQuiescence(ChessEngine _engine, SearchContext _context, Board _board)
+    {
+        _context.board = _board;
+        _context.Reset(true, true, true, null);
+        _engine.Quiescence(_context, -Float.MAX_VALUE, Float.MAX_VALUE, 1);
+
+        return _context.numNodes;
+    }
+
+    private static List<MeteredBoard> LoadBoards()
+    {
+        List<MeteredBoard> _boards = new ArrayList<>();
+
+        for (String _fen : FENS)
+        {
+            MeteredBoard _board = new MeteredBoard();
+            _board.loadFromFen(_fen);
+            _boards.add(_board);
+        }
+
+        return _boards;
+    }
+
+    /**
+     * @return the bytes the thread has allocated so far, without the ones chesslib allocated inside the given boards
+     */
+    private static long GetEngineBytes(List<MeteredBoard> _boards)
+    {
+        long _numBytes = GetAllocatedBytes();
+
+        for (MeteredBoard _board : _boards)
+            _numBytes -= _board.numChesslibBytes;
+
+        return _numBytes;
+    }
+
+    private static long GetAllocatedBytes()
+    {
+        return threadBean.getCurrentThreadAllocatedBytes();
+    }
+
+    private static void AssertWithinBudget(String _name, long _numBytes, long _numUnits, long _budgetPerUnit)
+    {
+        assertTrue(_numUnits > 0, _name + " did no work");
+
+        long _bytesPerUnit = _numBytes / _numUnits;
+
+        assertTrue
+        (
+            _bytesPerUnit <= _budgetPerUnit,
+            _name + " allocated " + _bytesPerUnit + " bytes per unit, over its budget of " + _budgetPerUnit
+        );
+    }
+
+    /**
+     * Counts the bytes allocated inside the board's calls that the engine makes in its hot paths.
+     * Calls made from inside another one, like "isKingAttacked" from "legalMoves", are only counted once.
+     */
+    private static final class MeteredBoard extends Board
+    {
+        long numChesslibBytes;
+        private int numOpenCalls;
+
+        @Override
+        public boolean doMove(Move _move)
+        {
+            long _bytesBefore = Open();
+            boolean _isDone = super.doMove(_move);
+            Close(_bytesBefore);
+
+            return _isDone;
+        }
+
+        @Override
+        public boolean doMove(Move _move, boolean _fullValidation)
+        {
+            long _bytesBefore = Open();
+            boolean _isDone = super.doMove(_move, _fullValidation);
+            Close(_bytesBefore);
+
+            return _isDone;
+        }
+
+        @Override
+        public Move undoMove()
+        {
+            long _bytesBefore = Open();
+            Move _move = super.undoMove();
+            Close(_bytesBefore);
+
+            return _move;
+        }
+
+        @Override
+        public List<Move> legalMoves()
+        {
+            long _bytesBefore = Open();
+            List<Move> _moves = super.legalMoves();
+            Close(_bytesBefore);
+
+            return _moves;
+        }
+
+        @Override
+        public List<Move> pseudoLegalCaptures()
+        {
+            long _bytesBefore = Open();
+            List<Move> _captures = super.pseudoLegalCaptures();
+            Close(_bytesBefore);
+
+            return _captures;
+        }
+
+        @Override
+        public List<Square> getPieceLocation(Piece _piece)
+        {
+            long _bytesBefore = Open();
+            List<Square> _locations = super.getPieceLocation(_piece);
+            Close(_bytesBefore);
+
+            return _locations;
+        }
+
+        @Override
+        public boolean isMoveLegal(Move _move, boolean _fullValidation)
+        {
+            long _bytesBefore = Open();
+            boolean _isLegal = super.isMoveLegal(_move, _fullValidation);
+            Close(_bytesBefore);
+
+            return _isLegal;
+        }
+
+        @Override
+        public long squareAttackedBy(Square _square, Side _side)
+        {
+            long _bytesBefore = Open();
+            long _attackers = super.squareAttackedBy(_square, _side);
+            Close(_bytesBefore);
+
+            return _attackers;
+        }
+
+        @Override
+        public boolean isKingAttacked()
+        {
+            long _bytesBefore = Open();
+            boolean _isAttacked = super.isKingAttacked();
+            Close(_bytesBefore);
+
+            return _isAttacked;
+        }
+
+        @Override
+        public boolean isDraw()
+        {
+            long _bytesBefore = Open();
+            boolean _isDraw = super.isDraw();
+            Close(_bytesBefore);
+
+            return _isDraw;
+        }
+
+        @Override
+        public boolean isMated()
+        {
+            long _bytesBefore = Open();
+            boolean _isMated = super.isMated();
+            Close(_bytesBefore);
+
+            return _isMated;
+        }
+
+        private long Open()
+        {
+            return numOpenCalls++ == 0 ? GetAllocatedBytes() : 0;
+        }
+
+        private void Close(long _bytesBefore)
+        {
+            if (--numOpenCalls == 0)
+                numChesslibBytes += GetAllocatedBytes() - _bytesBefore;
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.chess.engine;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+import com.github.bhlangonijr.chesslib.Board;
+
+import com.chess.engine.AnalysisServer.Analysis;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AnalysisServerTest
+{
+    private static final String FEN = "r1bq1rk1/pp2bppp/2n1pn2/3p4/2PP4/2N1PN2/PP2BPPP/R2QKB1R w KQ - 0 8";
+    private static final int DEPTH = 5;
+    private static final int NUM_REQUESTS = 16;
+
+    @Test
+    public void TestConcurrentRequestsShareOneSearch() throws Exception
+    {
+        AnalysisServer _server = new AnalysisServer(new ChessEngine(new Board()), NUM_REQUESTS, 16, DEPTH);
+        CountDownLatch _start = new CountDownLatch(1);
+        List<Future<Analysis>> _requests = new ArrayList<>();
+
+        try (ExecutorService _executor = Executors.newVirtualThreadPerTaskExecutor())
+        {
+            for (int i = 0; i < NUM_REQUESTS; i++)
+            {
+                _requests.add(_executor.submit(() ->
+                {
+                    _start.await();
+                    return _server.Analyze(FEN, DEPTH);
+                }));
+            }
+
+            // released together, so most of them arrive while the first one's search is running
+            _start.countDown();
+        }
+
+        List<Analysis> _searched = new ArrayList<>();
+        for (Future<Analysis> _request : _requests)
+        {
+            Analysis _analysis = _request.get(1, TimeUnit.MINUTES);
+
+            // a request that missed the running search finds its result in the cache instead
+            if (_analysis.getSource() == Analysis.Source.SEARCH)
+                _searched.add(_analysis);
+
+            else
+                assertTrue(_analysis.getSource() == Analysis.Source.COALESCED || _analysis.getSource() == Analysis.Source.CACHE);
+        }
+
+        assertEquals(1, _searched.size());
+        SearchResult _result = _searched.get(0).getResult();
+
+        for (Future<Analysis> _request : _requests)
+            assertSame(_result, _request.get().getResult());
+
+        // a shallower request is answered by the deeper search, and the move counters aren't part of the position
+        Analysis _shallower = _server.Analyze(FEN, DEPTH - 2);
+        assertEquals(Analysis.Source.CACHE, _shallower.getSource());
+        assertSame(_result, _shallower.getResult());
+
+        Analysis _laterInGame = _server.Analyze(FEN.replace(" 0 8", " 2 10"), DEPTH);
+        assertEquals(Analysis.Source.CACHE, _laterInGame.getSource());
+        assertSame(_result, _laterInGame.getResult());
+    }
+}
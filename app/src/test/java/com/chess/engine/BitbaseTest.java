@@ -0,0 +1,54 @@
+package com.chess.engine;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.github.bhlangonijr.chesslib.Board;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BitbaseTest
+{
+    @TempDir
+    Path bitbaseDirectory;
+
+    @Test
+    public void TestKnownEndgameResults() throws IOException
+    {
+        Bitbases _bitbases = Bitbases.Load(bitbaseDirectory);
+        Board _board = new Board();
+
+        // queen against a lone king
+        _board.loadFromFen("8/8/8/4k3/8/8/8/3QK3 w - - 0 1");
+        assertEquals(Bitbases.WIN, _bitbases.Probe(_board));
+
+        _board.loadFromFen("8/8/8/4k3/8/8/8/3QK3 b - - 0 1");
+        assertEquals(Bitbases.LOSS, _bitbases.Probe(_board));
+
+        // the lone king takes the undefended rook
+        _board.loadFromFen("8/8/8/8/8/8/3kR3/7K b - - 0 1");
+        assertEquals(Bitbases.DRAW, _bitbases.Probe(_board));
+
+        // king on the sixth rank in front of the pawn wins no matter who moves
+        _board.loadFromFen("4k3/8/4K3/4P3/8/8/8/8 w - - 0 1");
+        assertEquals(Bitbases.WIN, _bitbases.Probe(_board));
+
+        _board.loadFromFen("4k3/8/4K3/4P3/8/8/8/8 b - - 0 1");
+        assertEquals(Bitbases.LOSS, _bitbases.Probe(_board));
+
+        // same position as above with the colors swapped
+        _board.loadFromFen("8/8/8/8/4p3/4k3/8/4K3 b - - 0 1");
+        assertEquals(Bitbases.WIN, _bitbases.Probe(_board));
+
+        // rook pawn with the lone king in the corner
+        _board.loadFromFen("k7/8/8/8/8/8/P7/1K6 w - - 0 1");
+        assertEquals(Bitbases.DRAW, _bitbases.Probe(_board));
+
+        // not a bitbase position
+        _board.loadFromFen("rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1");
+        assertEquals(Bitbases.NOT_FOUND, _bitbases.Probe(_board));
+    }
+}
@@ -0,0 +1,113 @@
+package com.chess.engine;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.jupiter.api.Test;
+
+import com.github.bhlangonijr.chesslib.Board;
+import com.github.bhlangonijr.chesslib.Square;
+import com.github.bhlangonijr.chesslib.move.Move;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ClusterTest
+{
+    // white wins the undefended queen on d5
+    private static final String FEN = "4k3/8/8/3q4/8/8/3R4/4K3 w - - 0 1";
+    private static final Move WINNING_MOVE = new Move(Square.D2, Square.D5);
+    private static final int DEPTH = 3;
+
+    @Test
+    public void TestWorkersFindBestMove() throws IOException
+    {
+        List<ClusterWorker> _workers = StartWorkers(3);
+
+        try (ClusterCoordinator _coordinator = new ClusterCoordinator(new ChessEngine(new Board()), GetAddresses(_workers)))
+        {
+            SearchResult _result = _coordinator.Search(FEN, DEPTH);
+
+            assertEquals(WINNING_MOVE, _result.getBestMove());
+            assertTrue(_result.getBestLine().getScore() > 0);
+            assertEquals(3, _coordinator.GetNumLiveWorkers());
+        }
+
+        finally
+        {
+            StopWorkers(_workers);
+        }
+    }
+
+    @Test
+    public void TestSearchSurvivesLostWorkers() throws IOException
+    {
+        List<ClusterWorker> _workers = StartWorkers(2);
+
+        try (ClusterCoordinator _coordinator = new ClusterCoordinator(new ChessEngine(new Board()), GetAddresses(_workers)))
+        {
+            _coordinator.Search(FEN, DEPTH);
+
+            // the units of the stopped worker go to the other one
+            _workers.get(0).Stop();
+            assertEquals(WINNING_MOVE, _coordinator.Search(FEN, DEPTH).getBestMove());
+
+            // the coordinator's own engine searches once every worker is gone
+            _workers.get(1).Stop();
+            assertEquals(WINNING_MOVE, _coordinator.Search(FEN, DEPTH).getBestMove());
+        }
+
+        finally
+        {
+            StopWorkers(_workers);
+        }
+    }
+
+    @Test
+    public void TestStopSignalStopsUnit()
+    {
+        ChessEngine _engine = new ChessEngine(new Board());
+        AtomicBoolean _stopSignal = new AtomicBoolean(true);
+
+        // far too deep to finish, so only the signal can end it
+        assertTimeoutPreemptively
+        (
+            Duration.ofSeconds(10),
+            () -> { _engine.SearchRootMove(FEN, WINNING_MOVE, 60, -Float.MAX_VALUE, _stopSignal); }
+        );
+    }
+
+    private static List<ClusterWorker> StartWorkers(int _numWorkers) throws IOException
+    {
+        List<ClusterWorker> _workers = new ArrayList<>();
+
+        for (int i = 0; i < _numWorkers; i++)
+        {
+            ClusterWorker _worker = new ClusterWorker(new ChessEngine(new Board()));
+            _worker.Start(0);
+            _workers.add(_worker);
+        }
+
+        return _workers;
+    }
+
+    private static List<InetSocketAddress> GetAddresses(List<ClusterWorker> _workers)
+    {
+        List<InetSocketAddress> _addresses = new ArrayList<>();
+
+        for (ClusterWorker _worker : _workers)
+            _addresses.add(new InetSocketAddress(InetAddress.getLoopbackAddress(), _worker.GetPort()));
+
+        return _addresses;
+    }
+
+    private static void StopWorkers(List<ClusterWorker> _workers)
+    {
+        for (ClusterWorker _worker : _workers)
+            _worker.Stop();
+    }
+}
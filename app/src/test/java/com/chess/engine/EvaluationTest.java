@@ -50,4 +50,65 @@ class EvaluationTest
         _newMaterial = _engine.EvaluateMaterial(8, 2, 2, 2, 0, false);
         assertTrue(_startingMaterial > _newMaterial);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void TestFeaturesMatchEvaluation()
+    {
+        ChessEngine _engine = new ChessEngine(new Board());
+        double[] _parameters = _engine.getParameters().ToVector();
+        float[] _features = new float[EvaluationParameters.NUM_TUNED_PARAMETERS];
+
+        String[] _fens =
+        {
+            "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1",
+            // doubled and isolated pawns for both sides
+            "r3k2r/p1p2pp1/2p5/8/3P4/3P4/P4PPP/R3K2R b KQkq - 0 1",
+            // endgame, so the kings use their endgame table
+            "8/5k2/3p4/8/2P5/2P5/5K2/8 w - - 0 1"
+        };
+
+        for (String _fen : _fens)
+        {
+            _engine.getBoard().loadFromFen(_fen);
+            _engine.ExtractFeatures(_engine.getBoard(), _features);
+
+            double _evaluation = 0;
+            for (int i = 0; i < _features.length; i++)
+                _evaluation += _features[i] * _parameters[i];
+
+            assertEquals(_engine.Evaluate(false), _evaluation, 0.001, _fen);
+        }
+    }
+
+    @Test
+    public void TestBatchMatchesEvaluation()
+    {
+        ChessEngine _engine = new ChessEngine(new Board());
+        BatchEvaluator _batchEvaluator = new BatchEvaluator();
+
+        String[] _fens =
+        {
+            "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1",
+            "r3k2r/p1p2pp1/2p5/8/3P4/3P4/P4PPP/R3K2R b KQkq - 0 1",
+            "8/5k2/3p4/8/2P5/2P5/5K2/8 w - - 0 1",
+            // hanging pieces and two white queens, of which only the first counts
+            "4k3/8/3n4/8/1b6/8/2Q5/Q3K3 w - - 0 1"
+        };
+
+        long[][] _bitboards = BatchEvaluator.NewBitboards(_fens.length);
+        for (int i = 0; i < _fens.length; i++)
+        {
+            _engine.getBoard().loadFromFen(_fens[i]);
+            BatchEvaluator.Pack(_engine.getBoard(), _bitboards, i);
+        }
+
+        float[] _results = new float[_fens.length];
+        _batchEvaluator.Evaluate(_bitboards, _fens.length, _results);
+
+        for (int i = 0; i < _fens.length; i++)
+        {
+            _engine.getBoard().loadFromFen(_fens[i]);
+            assertEquals(_engine.Evaluate(false), _results[i], 0.001, _fens[i]);
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package com.chess.engine;
+
+import org.junit.jupiter.api.Test;
+
+import com.github.bhlangonijr.chesslib.Board;
+import com.github.bhlangonijr.chesslib.Side;
+import com.github.bhlangonijr.chesslib.move.Move;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class NnueAccumulatorTest
+{
+    private static final int HIDDEN_SIZE = 128;
+    private static final int DEPTH = 2;
+
+    private static final String[] FENS =
+    {
+        "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1",
+        // captures and castling on both sides for both colors
+        "r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1",
+        "r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R b KQkq - 0 1",
+        // en passant for both colors
+        "rnbqkbnr/ppp1p1pp/8/3pPp2/8/8/PPPP1PPP/RNBQKBNR w KQkq f6 0 3",
+        "rnbqkbnr/pppp1ppp/8/8/3PpP2/8/PPP1P1PP/RNBQKBNR b KQkq f3 0 3",
+        // promotions by pushing and by capturing, for both colors
+        "r3k3/1P6/8/8/8/8/6p1/4K2R w - - 0 1",
+        "r3k3/1P6/8/8/8/8/6p1/4K2R b - - 0 1"
+    };
+
+    @Test
+    public void TestIncrementalUpdatesMatchRefresh()
+    {
+        NnueNetwork _network = NnueNetwork.CreateRandom(HIDDEN_SIZE, 1);
+        NnueAccumulator _accumulator = new NnueAccumulator(_network, DEPTH);
+        Board _board = new Board();
+
+        for (String _fen : FENS)
+        {
+            _board.loadFromFen(_fen);
+            _accumulator.Refresh(_board);
+
+            CheckMoves(_network, _accumulator, _board, DEPTH);
+        }
+    }
+
+    /**
+     * Makes every legal move through the accumulator, down to the given depth, and checks that the
+     * accumulators match the ones calculated from scratch both after each move and after it is unmade.
+     */
+    private static void CheckMoves(NnueNetwork _network, NnueAccumulator _accumulator, Board _board, int _depth)
+    {
+        for (Move _move : _board.legalMoves())
+        {
+            _accumulator.Push(_board, _move);
+            _board.doMove(_move);
+
+            AssertMatchesRefresh(_network, _accumulator, _board, _move);
+
+            if (_depth > 1)
+                CheckMoves(_network, _accumulator, _board, _depth - 1);
+
+            _board.undoMove();
+            _accumulator.Pop();
+
+            AssertMatchesRefresh(_network, _accumulator, _board, _move);
+        }
+    }
+
+    private static void AssertMatchesRefresh(NnueNetwork _network, NnueAccumulator _accumulator, Board _board, Move _move)
+    {
+        NnueAccumulator _refreshed = new NnueAccumulator(_network, 0);
+        _refreshed.Refresh(_board);
+
+        // both perspectives, since the side to move's accumulator is read first
+        for (Side _side : Side.values())
+            assertEquals(_refreshed.Evaluate(_side), _accumulator.Evaluate(_side), _board.getFen() + " after " + _move);
+    }
+}
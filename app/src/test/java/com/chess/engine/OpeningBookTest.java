@@ -0,0 +1,165 @@
+package com.chess.engine;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.github.bhlangonijr.chesslib.Board;
+import com.github.bhlangonijr.chesslib.Piece;
+import com.github.bhlangonijr.chesslib.Square;
+import com.github.bhlangonijr.chesslib.move.Move;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OpeningBookTest
+{
+    private static final String STARTING_FEN = "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1";
+    private static final String PROMOTION_FEN = "8/P6k/8/8/8/8/8/K7 w - - 0 1";
+
+    private static final String GAMES = """
+        [Event "1"]
+        [Result "1-0"]
+
+        1. e4 e5 2. Nf3 Nc6 3. Bb5 a6 1-0
+
+        [Event "2"]
+        [Result "0-1"]
+
+        1. e4 c5 2. Nf3 d6 3. d4 cxd4 0-1
+
+        [Event "3"]
+        [Result "1/2-1/2"]
+
+        1. d4 d5 2. c4 e6 3. Nc3 Nf6 1/2-1/2
+
+        [Event "4"]
+        [Result "1-0"]
+
+        1. e4 e5 2. Nf3 {a comment} (2. Bc4 Nf6) Nc6 3. Bc4 Bc5 4. O-O Nf6 1-0
+
+        [Event "unfinished"]
+        [Result "*"]
+
+        1. e4 e5 *
+
+        [Event "illegal move"]
+        [Result "1-0"]
+
+        1. e4 e5 2. Ke3 1-0
+
+        [Event "from a position"]
+        [FEN "%s"]
+        [Result "1-0"]
+
+        1. a8=Q+ Kg6 1-0
+        """.formatted(PROMOTION_FEN);
+
+    // far fewer records than the games make, so every thread spills several runs that the merge combines
+    private static final int RUN_SIZE = 4;
+    private static final int MAX_PLY = 8;
+    private static final int NUM_THREADS = 2;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void TestBuildAndProbe() throws IOException, InterruptedException
+    {
+        Path _bookPath = BuildBook();
+        OpeningBook _book = new OpeningBook(_bookPath);
+
+        assertEquals(MAX_PLY, _book.getMaxPly());
+        AssertEntries(_book);
+    }
+
+    @Test
+    public void TestProbeAcrossChunks() throws IOException, InterruptedException
+    {
+        Path _bookPath = BuildBook();
+
+        // a few entries per chunk, so the binary search and the runs of a position's moves cross chunks
+        for (int _entriesPerChunk = 1; _entriesPerChunk <= 4; _entriesPerChunk++)
+            AssertEntries(new OpeningBook(_bookPath, _entriesPerChunk));
+    }
+
+    @Test
+    public void TestFindSanMove()
+    {
+        // both knights can go to d2
+        Board _board = new Board();
+        _board.loadFromFen("4k3/8/8/8/8/8/8/1N2KN2 w - - 0 1");
+
+        assertEquals(new Move(Square.B1, Square.D2), OpeningBookBuilder.FindSanMove(_board, "Nbd2"));
+        assertEquals(new Move(Square.F1, Square.D2), OpeningBookBuilder.FindSanMove(_board, "Nfd2+"));
+        assertNull(OpeningBookBuilder.FindSanMove(_board, "Nd2"));
+        assertNull(OpeningBookBuilder.FindSanMove(_board, "N1d2"));
+        assertNull(OpeningBookBuilder.FindSanMove(_board, "Nd3"));
+
+        // promotions with and without the '=', and castling
+        _board.loadFromFen("4k3/1P6/8/8/8/8/8/R3K3 w Q - 0 1");
+        assertEquals(new Move(Square.B7, Square.B8, Piece.WHITE_KNIGHT), OpeningBookBuilder.FindSanMove(_board, "b8=N"));
+        assertEquals(new Move(Square.B7, Square.B8, Piece.WHITE_QUEEN), OpeningBookBuilder.FindSanMove(_board, "b8Q+"));
+        assertEquals(new Move(Square.E1, Square.C1), OpeningBookBuilder.FindSanMove(_board, "O-O-O"));
+        assertNull(OpeningBookBuilder.FindSanMove(_board, "O-O"));
+        assertNull(OpeningBookBuilder.FindSanMove(_board, "b8"));
+    }
+
+    private Path BuildBook() throws IOException, InterruptedException
+    {
+        Path _pgnPath = directory.resolve("games.pgn");
+        Files.writeString(_pgnPath, GAMES);
+
+        Path _bookPath = directory.resolve("book.bin");
+        long _numEntries = new OpeningBookBuilder(MAX_PLY, 1, RUN_SIZE, NUM_THREADS).Build(List.of(_pgnPath), _bookPath);
+
+        assertEquals(_numEntries, new OpeningBook(_bookPath).getNumEntries());
+
+        return _bookPath;
+    }
+
+    private static void AssertEntries(OpeningBook _book)
+    {
+        Board _board = new Board();
+        _board.loadFromFen(STARTING_FEN);
+
+        // the unfinished game and the one with an illegal move add nothing
+        List<BookMove> _bookMoves = _book.Probe(_board.getZobristKey());
+        assertEquals(2, _bookMoves.size());
+        assertEquals(new BookMove(new Move(Square.E2, Square.E4), 3, 4), _bookMoves.get(0));
+        assertEquals(new BookMove(new Move(Square.D2, Square.D4), 1, 1), _bookMoves.get(1));
+
+        // the half points are from the perspective of the side that played the move
+        _board.doMove(new Move(Square.E2, Square.E4));
+        _bookMoves = _book.Probe(_board.getZobristKey());
+        assertEquals(2, _bookMoves.size());
+        assertEquals(new BookMove(new Move(Square.E7, Square.E5), 2, 0), _bookMoves.get(0));
+        assertEquals(new BookMove(new Move(Square.C7, Square.C5), 1, 2), _bookMoves.get(1));
+
+        // the variation after 2. Nf3 isn't part of the game
+        _board.doMove(new Move(Square.E7, Square.E5));
+        assertEquals(List.of(new BookMove(new Move(Square.G1, Square.F3), 2, 4)), _book.Probe(_board.getZobristKey()));
+
+        // castling, from the last moves of a game
+        _board.doMove(new Move(Square.G1, Square.F3));
+        _board.doMove(new Move(Square.B8, Square.C6));
+        _board.doMove(new Move(Square.F1, Square.C4));
+        _board.doMove(new Move(Square.F8, Square.C5));
+        assertEquals(List.of(new BookMove(new Move(Square.E1, Square.G1), 1, 2)), _book.Probe(_board.getZobristKey()));
+
+        // a game that starts from its own position
+        _board.loadFromFen(PROMOTION_FEN);
+        assertEquals
+        (
+            List.of(new BookMove(new Move(Square.A7, Square.A8, Piece.WHITE_QUEEN), 1, 2)),
+            _book.Probe(_board.getZobristKey())
+        );
+
+        // a position no game reached
+        _board.loadFromFen("4k3/8/8/8/8/8/8/4K3 w - - 0 1");
+        assertTrue(_book.Probe(_board.getZobristKey()).isEmpty());
+    }
+}
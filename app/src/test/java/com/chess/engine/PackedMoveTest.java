@@ -0,0 +1,92 @@
+package com.chess.engine;
+
+import java.util.EnumSet;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+import com.github.bhlangonijr.chesslib.Board;
+import com.github.bhlangonijr.chesslib.Piece;
+import com.github.bhlangonijr.chesslib.Square;
+import com.github.bhlangonijr.chesslib.move.Move;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PackedMoveTest
+{
+    private static final String[] FENS =
+    {
+        "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1",
+        // castling on both sides for both colors
+        "r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1",
+        "r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R b KQkq - 0 1",
+        // en passant
+        "rnbqkbnr/ppp1p1pp/8/3pPp2/8/8/PPPP1PPP/RNBQKBNR w KQkq f6 0 3",
+        // promotions by pushing and by capturing, for both colors
+        "r3k3/1P6/8/8/8/8/6p1/4K2R w - - 0 1",
+        "r3k3/1P6/8/8/8/8/6p1/4K2R b - - 0 1"
+    };
+
+    @Test
+    public void TestRoundTrip()
+    {
+        Set<Piece> _promotions = EnumSet.noneOf(Piece.class);
+        Board _board = new Board();
+
+        for (String _fen : FENS)
+        {
+            _board.loadFromFen(_fen);
+
+            for (Move _move : _board.legalMoves())
+            {
+                short _packedMove = PackedMove.Encode(_move);
+
+                assertTrue(_packedMove != PackedMove.NONE, _fen + " " + _move);
+                assertEquals(_move, PackedMove.Decode(_packedMove), _fen + " " + _move);
+                assertEquals(_move.getFrom().ordinal(), PackedMove.GetFrom(_packedMove));
+                assertEquals(_move.getTo().ordinal(), PackedMove.GetTo(_packedMove));
+
+                if (_move.getPromotion() != Piece.NONE)
+                    _promotions.add(_move.getPromotion());
+            }
+        }
+
+        // every underpromotion and the queen promotion, for both colors
+        assertEquals
+        (
+            EnumSet.of
+            (
+                Piece.WHITE_KNIGHT, Piece.WHITE_BISHOP, Piece.WHITE_ROOK, Piece.WHITE_QUEEN,
+                Piece.BLACK_KNIGHT, Piece.BLACK_BISHOP, Piece.BLACK_ROOK, Piece.BLACK_QUEEN
+            ),
+            _promotions
+        );
+    }
+
+    @Test
+    public void TestCastlingRoundTrip()
+    {
+        Move[] _castles =
+        {
+            new Move(Square.E1, Square.G1), new Move(Square.E1, Square.C1),
+            new Move(Square.E8, Square.G8), new Move(Square.E8, Square.C8)
+        };
+
+        Board _board = new Board();
+
+        for (Move _castle : _castles)
+        {
+            // white's castles are legal in the first position, and black's in the second
+            _board.loadFromFen(_castle.getFrom() == Square.E1 ? FENS[1] : FENS[2]);
+
+            assertTrue(_board.legalMoves().contains(_castle), _castle.toString());
+            assertEquals(_castle, PackedMove.Decode(PackedMove.Encode(_castle)));
+        }
+    }
+
+    @Test
+    public void TestNone()
+    {
+        assertNull(PackedMove.Decode(PackedMove.NONE));
+    }
+}
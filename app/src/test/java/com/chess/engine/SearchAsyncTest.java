@@ -0,0 +1,102 @@
+package com.chess.engine;
+
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+import com.github.bhlangonijr.chesslib.Board;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SearchAsyncTest
+{
+    private static final String MIDDLEGAME_FEN = "r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1";
+
+    // far deeper than a test could ever finish
+    private static final int DEEP_DEPTH = 60;
+    // the search checks its stop signal every 1024 nodes, which takes well under this
+    private static final long STOP_TIMEOUT_MILLISECONDS = 2000;
+
+    @Test
+    public void TestCompletedSearchPublishesEveryDepth() throws Exception
+    {
+        ChessEngine _engine = new ChessEngine(new Board());
+        RecordingSubscriber _subscriber = new RecordingSubscriber();
+
+        CompletableFuture<ScoredLine> _search = _engine.SearchAsync(MIDDLEGAME_FEN, SearchLimits.OfDepth(4), _subscriber);
+        ScoredLine _bestLine = _search.get(1, TimeUnit.MINUTES);
+
+        assertTrue(_subscriber.end.await(1, TimeUnit.MINUTES));
+        assertTrue(_subscriber.isComplete);
+        assertNull(_subscriber.error);
+
+        // one line per depth, the last of which is the result
+        assertEquals(4, _subscriber.lines.size());
+        assertEquals(_bestLine.getLine(), _subscriber.lines.get(3).getLine());
+        assertEquals(_bestLine.getScore(), _subscriber.lines.get(3).getScore());
+    }
+
+    @Test
+    public void TestCancelStopsSearch() throws Exception
+    {
+        ChessEngine _engine = new ChessEngine(new Board());
+        RecordingSubscriber _subscriber = new RecordingSubscriber();
+
+        CompletableFuture<ScoredLine> _search = _engine.SearchAsync(MIDDLEGAME_FEN, SearchLimits.OfDepth(DEEP_DEPTH), _subscriber);
+
+        // the search is well underway once its first depth is published
+        assertTrue(_subscriber.firstLine.await(1, TimeUnit.MINUTES));
+        assertTrue(_search.cancel(true));
+
+        // the subscriber only ends once the search thread has returned from the search
+        assertTrue(_subscriber.end.await(STOP_TIMEOUT_MILLISECONDS, TimeUnit.MILLISECONDS), "the search didn't stop");
+        assertInstanceOf(CancellationException.class, _subscriber.error);
+        assertFalse(_subscriber.isComplete);
+        assertTrue(_search.isCancelled());
+    }
+
+    /**
+     * Keeps every line it's given and how the publisher ended.
+     */
+    private static final class RecordingSubscriber implements Flow.Subscriber<ScoredLine>
+    {
+        final List<ScoredLine> lines = new CopyOnWriteArrayList<>();
+        final CountDownLatch firstLine = new CountDownLatch(1);
+        final CountDownLatch end = new CountDownLatch(1);
+        volatile Throwable error;
+        volatile boolean isComplete;
+
+        @Override
+        public void onSubscribe(Flow.Subscription _subscription)
+        {
+            _subscription.request(Long.MAX_VALUE);
+        }
+
+        @Override
+        public void onNext(ScoredLine _line)
+        {
+            lines.add(_line);
+            firstLine.countDown();
+        }
+
+        @Override
+        public void onError(Throwable _error)
+        {
+            error = _error;
+            end.countDown();
+        }
+
+        @Override
+        public void onComplete()
+        {
+            isComplete = true;
+            end.countDown();
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package com.chess.engine;
+
+import org.junit.jupiter.api.Test;
+
+import com.github.bhlangonijr.chesslib.Board;
+import com.github.bhlangonijr.chesslib.Square;
+import com.github.bhlangonijr.chesslib.move.Move;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SearchContextTest
+{
+    private static final String STARTING_FEN = "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1";
+
+    // the knights go out and back, repeating the position they started from
+    private static final Move[] KNIGHT_SHUFFLE =
+    {
+        new Move(Square.G1, Square.F3), new Move(Square.G8, Square.F6),
+        new Move(Square.F3, Square.G1), new Move(Square.F6, Square.G8)
+    };
+
+    @Test
+    public void TestRepetitionInSearch()
+    {
+        SearchContext _context = NewContext(STARTING_FEN);
+
+        for (int i = 0; i < KNIGHT_SHUFFLE.length; i++)
+        {
+            assertFalse(_context.IsDraw());
+            _context.DoMove(KNIGHT_SHUFFLE[i]);
+        }
+
+        // a repetition of a position of the search is enough
+        assertTrue(_context.IsDraw());
+
+        _context.UndoMove();
+        assertFalse(_context.IsDraw());
+    }
+
+    @Test
+    public void TestRepetitionAfterPawnMove()
+    {
+        SearchContext _context = NewContext(STARTING_FEN);
+
+        _context.DoMove(new Move(Square.E2, Square.E4));
+        _context.DoMove(new Move(Square.E7, Square.E5));
+
+        for (Move _move : KNIGHT_SHUFFLE)
+        {
+            assertFalse(_context.IsDraw());
+            _context.DoMove(_move);
+        }
+
+        assertTrue(_context.IsDraw());
+    }
+
+    @Test
+    public void TestFiftyMoveRule()
+    {
+        // 99 plies without a capture or pawn move
+        SearchContext _context = NewContext("4k3/8/8/8/8/8/8/R3K3 w - - 99 80");
+        assertFalse(_context.IsDraw());
+
+        _context.DoMove(new Move(Square.A1, Square.A2));
+        assertTrue(_context.IsDraw());
+    }
+
+    @Test
+    public void TestCaptureResetsFiftyMoveRule()
+    {
+        SearchContext _context = NewContext("4k3/8/8/8/8/8/r7/R3K3 w - - 99 80");
+
+        _context.DoMove(new Move(Square.A1, Square.A2));
+        assertFalse(_context.IsDraw());
+
+        _context.DoMove(new Move(Square.E8, Square.D8));
+        assertFalse(_context.IsDraw());
+    }
+
+    @Test
+    public void TestPawnMoveResetsFiftyMoveRule()
+    {
+        SearchContext _context = NewContext("4k3/p7/8/8/8/8/8/R3K3 b - - 99 80");
+
+        _context.DoMove(new Move(Square.A7, Square.A6));
+        assertFalse(_context.IsDraw());
+
+        _context.DoMove(new Move(Square.A1, Square.B1));
+        assertFalse(_context.IsDraw());
+    }
+
+    @Test
+    public void TestInsufficientMaterial()
+    {
+        // the kings alone, or with a single knight or bishop
+        assertTrue(NewContext("8/8/8/4k3/8/8/8/4K3 w - - 0 1").IsDraw());
+        assertTrue(NewContext("8/8/8/4k3/8/8/8/4K1N1 w - - 0 1").IsDraw());
+        assertTrue(NewContext("8/8/8/4k3/8/8/8/2B1K3 w - - 0 1").IsDraw());
+
+        // two bishops can only mate on squares of different colors
+        assertTrue(NewContext("8/8/8/4k3/8/8/8/2B1K1B1 w - - 0 1").IsDraw());
+        assertFalse(NewContext("8/8/8/4k3/8/8/8/2B1KB2 w - - 0 1").IsDraw());
+
+        // two knights can mate if the other side helps
+        assertFalse(NewContext("8/8/8/4k3/8/8/8/1N2K1N1 w - - 0 1").IsDraw());
+
+        // and a rook or pawn always can
+        assertFalse(NewContext("8/8/8/4k3/8/8/8/4K2R w - - 0 1").IsDraw());
+        assertFalse(NewContext("8/8/8/4k3/8/8/7P/4K3 w - - 0 1").IsDraw());
+    }
+
+    @Test
+    public void TestRepetitionBeforeSearch()
+    {
+        Board _board = new Board();
+        _board.loadFromFen(STARTING_FEN);
+
+        // the starting position has occurred twice, so a search from it isn't a draw yet
+        for (Move _move : KNIGHT_SHUFFLE)
+            _board.doMove(_move);
+
+        assertFalse(NewContext(_board).IsDraw());
+
+        // and a third time
+        for (Move _move : KNIGHT_SHUFFLE)
+            _board.doMove(_move);
+
+        assertTrue(NewContext(_board).IsDraw());
+    }
+
+    @Test
+    public void TestRepetitionBeforeSearchStopsAtPawnMove()
+    {
+        Board _board = new Board();
+        _board.loadFromFen(STARTING_FEN);
+
+        for (Move _move : KNIGHT_SHUFFLE)
+            _board.doMove(_move);
+
+        _board.doMove(new Move(Square.E2, Square.E4));
+        _board.doMove(new Move(Square.E7, Square.E5));
+
+        for (Move _move : KNIGHT_SHUFFLE)
+            _board.doMove(_move);
+
+        // the position after the pawn moves occurred twice, and the starting position can't come back
+        SearchContext _context = NewContext(_board);
+        assertFalse(_context.IsDraw());
+
+        // a repetition inside the search is still found on top of the seeded history
+        for (Move _move : KNIGHT_SHUFFLE)
+            _context.DoMove(_move);
+
+        assertTrue(_context.IsDraw());
+    }
+
+    private static SearchContext NewContext(String _fen)
+    {
+        Board _board = new Board();
+        _board.loadFromFen(_fen);
+
+        return NewContext(_board);
+    }
+
+    private static SearchContext NewContext(Board _board)
+    {
+        SearchContext _context = new SearchContext(_board, null);
+        _context.Reset(true, true, true, null);
+
+        return _context;
+    }
+}
@@ -0,0 +1,99 @@
+package com.chess.engine;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.github.bhlangonijr.chesslib.Board;
+import com.github.bhlangonijr.chesslib.Square;
+import com.github.bhlangonijr.chesslib.move.Move;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SearchTest
+{
+    @TempDir
+    Path bitbaseDirectory;
+
+    @Test
+    public void TestCheckmateScoresAsMate()
+    {
+        ChessEngine _engine = new ChessEngine(new Board());
+
+        // back rank mate, found at the interior node after the move and at the leaf
+        for (int _depth = 1; _depth <= 2; _depth++)
+        {
+            SearchResult _result = _engine.Search("6k1/5ppp/8/8/8/8/8/R5K1 w - - 0 1", SearchLimits.OfDepth(_depth));
+
+            assertEquals(new Move(Square.A1, Square.A8), _result.getBestMove());
+            assertEquals(Float.MAX_VALUE, _result.getBestLine().getScore());
+        }
+
+        // black mates, so the score is from white's perspective
+        SearchResult _result = _engine.Search("r5k1/8/8/8/8/8/5PPP/6K1 b - - 0 1", SearchLimits.OfDepth(2));
+        assertEquals(new Move(Square.A8, Square.A1), _result.getBestMove());
+        assertEquals(-Float.MAX_VALUE, _result.getBestLine().getScore());
+    }
+
+    @Test
+    public void TestStalemateScoresAsDraw()
+    {
+        ChessEngine _engine = new ChessEngine(new Board());
+
+        // black has no legal move and isn't in check
+        _engine.getBoard().loadFromFen("7k/5Q2/6K1/8/8/8/8/8 b - - 0 1");
+        assertEquals(0f, _engine.Quiescence(-Float.MAX_VALUE, Float.MAX_VALUE));
+
+        // black's pawn is blocked by the white king, so black is stalemated with a pawn left
+        _engine.getBoard().loadFromFen("k7/P7/1K6/8/8/8/7p/7K b - - 0 1");
+        assertEquals(0f, _engine.Quiescence(-Float.MAX_VALUE, Float.MAX_VALUE));
+    }
+
+    @Test
+    public void TestRepetitionOfGameBeforeSearch()
+    {
+        ChessEngine _engine = new ChessEngine(new Board());
+        String _fen = "kq6/8/8/8/8/8/7P/6NK b - - 0 1";
+
+        // the king and knight go out and back, so the knight's move back to g1 repeats the first position a third time
+        Board _board = new Board();
+        _board.loadFromFen(_fen);
+        _board.doMove(new Move(Square.A8, Square.A7));
+        _board.doMove(new Move(Square.G1, Square.F3));
+        _board.doMove(new Move(Square.A7, Square.A8));
+        _board.doMove(new Move(Square.F3, Square.G1));
+        _board.doMove(new Move(Square.A8, Square.A7));
+        _board.doMove(new Move(Square.G1, Square.F3));
+        _board.doMove(new Move(Square.A7, Square.A8));
+
+        // white is a queen down and takes the draw, which only the game's history shows
+        SearchResult _result = _engine.Search(_board, SearchLimits.OfDepth(2));
+        assertEquals(new Move(Square.F3, Square.G1), _result.getBestMove());
+        assertEquals(0f, _result.getBestLine().getScore(), 0f);
+
+        assertTrue(_engine.Search(_board.getFen(), SearchLimits.OfDepth(2)).getBestLine().getScore() < 0f);
+    }
+
+    @Test
+    public void TestBitbaseMateScoresAsMate() throws IOException
+    {
+        ChessEngine _engine = new ChessEngine(new Board());
+        _engine.setBitbases(Bitbases.Load(bitbaseDirectory));
+
+        // every queen move keeps the bitbase win, but only mate scores as mate
+        String _fen = "k7/8/1K6/8/8/8/8/7Q w - - 0 1";
+
+        for (int _depth = 1; _depth <= 2; _depth++)
+        {
+            SearchResult _result = _engine.Search(_fen, SearchLimits.OfDepth(_depth));
+            assertEquals(Float.MAX_VALUE, _result.getBestLine().getScore());
+
+            Board _board = new Board();
+            _board.loadFromFen(_fen);
+            _board.doMove(_result.getBestMove());
+            assertTrue(_board.isMated());
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package com.chess.engine;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SprtTest
+{
+    private static final double TOLERANCE = 1e-6;
+
+    // the usual bounds of a test for a 5 Elo gain
+    private final Sprt sprt = new Sprt(0, 5, 0.05, 0.05);
+
+    @Test
+    public void TestBounds()
+    {
+        // ln(0.05 / 0.95) and ln(0.95 / 0.05)
+        assertEquals(-2.944438979, sprt.GetLowerBound(), TOLERANCE);
+        assertEquals(2.944438979, sprt.GetUpperBound(), TOLERANCE);
+    }
+
+    @Test
+    public void TestLogLikelihoodRatio()
+    {
+        // calculated separately from n * (s1 - s0) * (2 * s - s0 - s1) / (2 * variance)
+        assertEquals(4.312191440, sprt.CalculateLogLikelihoodRatio(1200, 1600, 1000), TOLERANCE);
+        assertEquals(-5.677902779, sprt.CalculateLogLikelihoodRatio(1000, 1600, 1200), TOLERANCE);
+        assertEquals(1.389547402, sprt.CalculateLogLikelihoodRatio(6000, 8000, 5800), TOLERANCE);
+        assertEquals(-0.414153606, sprt.CalculateLogLikelihoodRatio(500, 1000, 500), TOLERANCE);
+
+        // not enough data
+        assertEquals(0, sprt.CalculateLogLikelihoodRatio(0, 0, 0));
+        assertEquals(0, sprt.CalculateLogLikelihoodRatio(10, 0, 0));
+        assertEquals(0, sprt.CalculateLogLikelihoodRatio(0, 10, 0));
+    }
+
+    @Test
+    public void TestDecision()
+    {
+        assertEquals(Sprt.ACCEPT_H1, sprt.GetDecision(1200, 1600, 1000));
+        assertEquals(Sprt.ACCEPT_H0, sprt.GetDecision(1000, 1600, 1200));
+        assertEquals(Sprt.CONTINUE, sprt.GetDecision(6000, 8000, 5800));
+        assertEquals(Sprt.CONTINUE, sprt.GetDecision(500, 1000, 500));
+        assertEquals(Sprt.CONTINUE, sprt.GetDecision(0, 0, 0));
+    }
+
+    @Test
+    public void TestElo()
+    {
+        // an even score is no difference, and swapping the wins and losses flips the sign
+        assertEquals(0, Sprt.CalculateElo(500, 1000, 500), TOLERANCE);
+        assertEquals(0, Sprt.CalculateElo(0, 100, 0), TOLERANCE);
+        assertEquals(18.302996224, Sprt.CalculateElo(1200, 1600, 1000), TOLERANCE);
+        assertEquals(-18.302996224, Sprt.CalculateElo(1000, 1600, 1200), TOLERANCE);
+
+        // the margin doesn't depend on which side won
+        double _errorMargin = Sprt.CalculateEloErrorMargin(1200, 1600, 1000);
+        assertTrue(_errorMargin > 0);
+        assertEquals(_errorMargin, Sprt.CalculateEloErrorMargin(1000, 1600, 1200), TOLERANCE);
+        assertEquals(Double.POSITIVE_INFINITY, Sprt.CalculateEloErrorMargin(0, 0, 0));
+    }
+
+    @Test
+    public void TestInvalidHypotheses()
+    {
+        assertThrows(IllegalArgumentException.class, () -> new Sprt(5, 0, 0.05, 0.05));
+        assertThrows(IllegalArgumentException.class, () -> new Sprt(0, 5, 0, 0.05));
+        assertThrows(IllegalArgumentException.class, () -> new Sprt(0, 5, 0.05, 1));
+    }
+}
@@ -0,0 +1,99 @@
+package com.chess.engine;
+
+import org.junit.jupiter.api.Test;
+
+import com.github.bhlangonijr.chesslib.Square;
+import com.github.bhlangonijr.chesslib.move.Move;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TimeManagerTest
+{
+    private static final Move FIRST_MOVE = new Move(Square.E2, Square.E4);
+    private static final Move SECOND_MOVE = new Move(Square.D2, Square.D4);
+
+    // a minute with no increment: the soft limit is 1999 ms and the hard limit 7996 ms
+    private static final long REMAINING_MILLISECONDS = 60000;
+
+    @Test
+    public void TestHardLimitStaysUnderClock()
+    {
+        long[] _increments = { 0, 100, 1000, 10000 };
+        int[] _movesToGos = { 0, 1, 2, 40 };
+
+        // down to a clock with less than the overhead left
+        for (long _remaining = 1; _remaining <= 5000; _remaining++)
+        {
+            for (long _increment : _increments)
+            {
+                for (int _movesToGo : _movesToGos)
+                {
+                    TimeManager _timeManager = new TimeManager(_remaining, _increment, _movesToGo, 0);
+                    long _availableMilliseconds = Math.max(_remaining - TimeManager.MOVE_OVERHEAD_MILLISECONDS, 1);
+                    String _clock = _remaining + " ms + " + _increment + " ms, " + _movesToGo + " moves to go";
+
+                    assertTrue(_timeManager.getHardLimitMilliseconds() <= TimeManager.MAX_HARD_LIMIT_FRACTION * _availableMilliseconds, _clock);
+                    assertTrue(_timeManager.getHardLimitMilliseconds() >= 0, _clock);
+                    assertTrue(_timeManager.getSoftLimitMilliseconds() <= _timeManager.getHardLimitMilliseconds(), _clock);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void TestLastMoveBeforeTimeControl()
+    {
+        // the whole clock is for this move, apart from the overhead and what the hard limit keeps back
+        TimeManager _timeManager = new TimeManager(10000, 0, 1, 0);
+        assertEquals(7976, _timeManager.getHardLimitMilliseconds());
+        assertEquals(7976, _timeManager.getSoftLimitMilliseconds());
+
+        // and more than when another move has to be played with the same clock
+        assertTrue(new TimeManager(10000, 0, 2, 0).getSoftLimitMilliseconds() < _timeManager.getSoftLimitMilliseconds());
+    }
+
+    @Test
+    public void TestStableBestMoveStopsEarly()
+    {
+        TimeManager _timeManager = new TimeManager(REMAINING_MILLISECONDS, 0, 0, 0);
+        assertEquals(1999, _timeManager.getSoftLimitMilliseconds());
+        assertEquals(7996, _timeManager.getHardLimitMilliseconds());
+
+        // half the soft limit is used after every depth. once the move stayed the same for two depths the soft limit
+        // shrinks to 70%, which is still enough, but after four it shrinks to 40%, which isn't
+        assertTrue(_timeManager.ShouldStartNextIteration(FIRST_MOVE, 0.5f, AtMilliseconds(1000)));
+        assertTrue(_timeManager.ShouldStartNextIteration(FIRST_MOVE, 0.5f, AtMilliseconds(1000)));
+        assertTrue(_timeManager.ShouldStartNextIteration(FIRST_MOVE, 0.55f, AtMilliseconds(1000)));
+        assertTrue(_timeManager.ShouldStartNextIteration(FIRST_MOVE, 0.5f, AtMilliseconds(1000)));
+        assertFalse(_timeManager.ShouldStartNextIteration(FIRST_MOVE, 0.5f, AtMilliseconds(1000)));
+
+        // a best move that keeps changing keeps the search going
+        TimeManager _unstableTimeManager = new TimeManager(REMAINING_MILLISECONDS, 0, 0, 0);
+        for (int i = 0; i < 6; i++)
+            assertTrue(_unstableTimeManager.ShouldStartNextIteration(i % 2 == 0 ? FIRST_MOVE : SECOND_MOVE, 0.5f, AtMilliseconds(1000)));
+    }
+
+    @Test
+    public void TestScoreDropExtendsSearch()
+    {
+        // past the soft limit, an unchanged score stops the search
+        TimeManager _timeManager = new TimeManager(REMAINING_MILLISECONDS, 0, 0, 0);
+        assertTrue(_timeManager.ShouldStartNextIteration(FIRST_MOVE, 0.5f, AtMilliseconds(1000)));
+        assertFalse(_timeManager.ShouldStartNextIteration(FIRST_MOVE, 0.5f, AtMilliseconds(2500)));
+
+        // but a score that fell by 0.4 pawns makes the soft limit 60% longer
+        _timeManager = new TimeManager(REMAINING_MILLISECONDS, 0, 0, 0);
+        assertTrue(_timeManager.ShouldStartNextIteration(FIRST_MOVE, 0.5f, AtMilliseconds(1000)));
+        assertTrue(_timeManager.ShouldStartNextIteration(FIRST_MOVE, 0.1f, AtMilliseconds(2500)));
+
+        // which never goes past the hard limit, even when the soft limit is already the hard limit
+        _timeManager = new TimeManager(10000, 0, 1, 0);
+        assertTrue(_timeManager.ShouldStartNextIteration(FIRST_MOVE, 0.5f, AtMilliseconds(1000)));
+        assertFalse(_timeManager.ShouldStartNextIteration(SECOND_MOVE, -1f, AtMilliseconds(7980)));
+    }
+
+    private static long AtMilliseconds(long _milliseconds)
+    {
+        return _milliseconds * 1000000L;
+    }
+}